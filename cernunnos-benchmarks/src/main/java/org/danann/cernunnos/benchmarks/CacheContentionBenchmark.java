@@ -0,0 +1,132 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.danann.cernunnos.CacheHelper;
+import org.danann.cernunnos.DynamicCacheHelper;
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.Reagent;
+import org.danann.cernunnos.SimpleFormula;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
+import org.danann.cernunnos.runtime.XmlGrammar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * 32 threads share one cache-all <code>DynamicCacheHelper</code>, each 
+ * working with its own key, using a factory that returns one global mutex 
+ * (as <code>XslTransformTask</code> and <code>ScriptEnginePhrase</code> do) 
+ * and takes <code>loadMillis</code> to create each object.  With 
+ * <code>evictEvery</code> &gt; 0, every n-th call by a thread clears the 
+ * cache first, forcing slow loads while the other threads keep reading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(32)
+@Fork(1)
+public class CacheContentionBenchmark {
+
+    private static final Object GLOBAL_MUTEX = new Object();
+
+    @Param({"0", "1000"})
+    public int evictEvery;
+
+    @Param({"5"})
+    public int loadMillis;
+
+    private final AtomicInteger nextKey = new AtomicInteger();
+    private CacheHelper<String,Object> helper;
+    private CacheHelper.Factory<String,Object> factory;
+    private Map<Object,Object> cache;
+    private RuntimeRequestResponse req;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        String key;
+        int calls;
+
+        @Setup
+        public void setUp(CacheContentionBenchmark b) {
+            key = "key." + b.nextKey.getAndIncrement();
+            calls = 0;
+        }
+
+    }
+
+    @Setup
+    public void setUp() {
+
+        cache = new ConcurrentHashMap<Object,Object>();
+        final Map<Reagent,Object> mappings = new HashMap<Reagent,Object>();
+        mappings.put(CacheHelper.CACHE, new LiteralPhrase(cache));
+        mappings.put(CacheHelper.CACHE_MODEL, new LiteralPhrase(CacheHelper.CacheMode.ALL.name()));
+        final SimpleFormula f = new SimpleFormula(getClass(), 
+                        new Reagent[] {CacheHelper.CACHE, CacheHelper.CACHE_MODEL});
+        helper = new DynamicCacheHelper<String,Object>(new SimpleEntityConfig(
+                        XmlGrammar.getMainGrammar(), "benchmark", null, f, mappings));
+
+        factory = new CacheHelper.Factory<String,Object>() {
+            public Object createObject(String key) {
+                try {
+                    Thread.sleep(loadMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                return new StringBuilder(key);
+            }
+            public boolean isThreadSafe(String key, Object instance) {
+                return true;
+            }
+            public Object getMutex(String key) {
+                return GLOBAL_MUTEX;
+            }
+            public Serializable getCacheNamespace(String key) {
+                return "benchmark";
+            }
+        };
+
+        req = new RuntimeRequestResponse();
+
+    }
+
+    @Benchmark
+    public Object getCachedObject(ThreadState state) {
+        if (evictEvery > 0 && ++state.calls % evictEvery == 0) {
+            cache.clear();
+        }
+        return helper.getCachedObject(req, req, state.key, factory);
+    }
+
+}
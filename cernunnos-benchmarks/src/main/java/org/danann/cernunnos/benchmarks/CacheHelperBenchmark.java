@@ -0,0 +1,105 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.CacheHelper;
+import org.danann.cernunnos.DynamicCacheHelper;
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.PoolingCacheHelper;
+import org.danann.cernunnos.Reagent;
+import org.danann.cernunnos.SimpleFormula;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
+import org.danann.cernunnos.runtime.XmlGrammar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures <code>DynamicCacheHelper.getCachedObject</code> and 
+ * <code>releaseCachedObject</code> (cache hits, for the most part) with several threads competing for the same key, for each 
+ * <code>CacheMode</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+@Fork(1)
+public class CacheHelperBenchmark {
+
+    @Param({"NONE", "ONE", "ALL", "POOL"})
+    public String mode;
+
+    @Param({"true", "false"})
+    public boolean threadSafe;
+
+    private PoolingCacheHelper<String,Object> helper;
+    private CacheHelper.Factory<String,Object> factory;
+    private RuntimeRequestResponse req;
+
+    @Setup
+    public void setUp() {
+
+        final Map<Reagent,Object> mappings = new HashMap<Reagent,Object>();
+        mappings.put(CacheHelper.CACHE, new LiteralPhrase(new ConcurrentHashMap<Object,Object>()));
+        mappings.put(CacheHelper.CACHE_MODEL, new LiteralPhrase(mode));
+        final SimpleFormula f = new SimpleFormula(getClass(), 
+                        new Reagent[] {CacheHelper.CACHE, CacheHelper.CACHE_MODEL});
+        helper = new DynamicCacheHelper<String,Object>(new SimpleEntityConfig(
+                        XmlGrammar.getMainGrammar(), "benchmark", null, f, mappings), true);
+
+        factory = new CacheHelper.Factory<String,Object>() {
+            private final Object mutex = new Object();
+            public Object createObject(String key) {
+                return new StringBuilder(key);
+            }
+            public boolean isThreadSafe(String key, Object instance) {
+                return threadSafe;
+            }
+            public Object getMutex(String key) {
+                return mutex;
+            }
+            public Serializable getCacheNamespace(String key) {
+                return "benchmark";
+            }
+        };
+
+        req = new RuntimeRequestResponse();
+
+    }
+
+    @Benchmark
+    public Object getCachedObject() {
+        final Object rslt = helper.getCachedObject(req, req, "key", factory);
+        helper.releaseCachedObject(req, req, "key", factory, rslt);
+        return rslt;
+    }
+
+}
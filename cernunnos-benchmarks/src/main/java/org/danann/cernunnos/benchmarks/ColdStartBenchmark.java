@@ -0,0 +1,54 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the first script run in a fresh JVM, which includes loading 
+ * <code>main.grammar</code>.  Each fork takes one sample.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+    private static final String SCRIPT = "<sequence><org.danann.cernunnos.NoOpTask/></sequence>";
+
+    @Benchmark
+    public Object firstRun() throws Exception {
+        final Task k = new ScriptRunner().compileTask(DocumentHelper.parseText(SCRIPT).getRootElement());
+        final RuntimeRequestResponse res = new RuntimeRequestResponse();
+        k.perform(new RuntimeRequestResponse(), res);
+        return res;
+    }
+
+}
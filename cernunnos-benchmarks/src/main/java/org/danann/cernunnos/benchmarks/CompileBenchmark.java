@@ -0,0 +1,70 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures <code>ScriptRunner.compileTask</code> for a script with many 
+ * branches, most of which never run, with and without lazy compilation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class CompileBenchmark {
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private ScriptRunner runner;
+    private Element script;
+
+    @Setup
+    public void setUp() throws Exception {
+        final StringBuilder xml = new StringBuilder("<sequence>");
+        for (int i = 0; i < 100; i++) {
+            xml.append("<choose><when test=\"${false()}\"><echo>Branch ").append(i)
+                        .append(":  ${Attributes.STRING}</echo></when><otherwise>")
+                        .append("<org.danann.cernunnos.NoOpTask/></otherwise></choose>");
+        }
+        xml.append("</sequence>");
+        script = DocumentHelper.parseText(xml.toString()).getRootElement();
+        runner = new ScriptRunner();
+        runner.setLazyCompilation(lazy);
+    }
+
+    @Benchmark
+    public Task compile() {
+        return runner.compileTask(script);
+    }
+
+}
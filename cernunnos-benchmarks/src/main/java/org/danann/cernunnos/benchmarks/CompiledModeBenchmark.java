@@ -0,0 +1,117 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.danann.cernunnos.sql.SqlAttributes;
+import org.dom4j.DocumentHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Compares <code>ScriptRunner</code>'s interpreted and compiled modes on the 
+ * per-item overhead of <code>&lt;for-each&gt;</code> and of 
+ * <code>&lt;sql-query&gt;</code> (against an in-memory HSQLDB table), each 
+ * over a body of tasks that do nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class CompiledModeBenchmark {
+
+    private static final String BODY = "<org.danann.cernunnos.NoOpTask/><org.danann.cernunnos.NoOpTask/>" 
+                    + "<org.danann.cernunnos.NoOpTask/>";
+
+    private static final String FOR_EACH = "<for-each items=\"${items}\" attribute-name=\"item\">" 
+                    + BODY + "</for-each>";
+
+    private static final String QUERY = "<sql-query><sql>SELECT id FROM bench_items</sql><subtasks>" 
+                    + BODY + "</subtasks></sql-query>";
+
+    @Param({"interpreted", "compiled"})
+    public String mode;
+
+    @Param({"1000"})
+    public int items;
+
+    private SingleConnectionDataSource dataSource;
+    private Task forEachTask;
+    private Task queryTask;
+    private RuntimeRequestResponse req;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataSource = new SingleConnectionDataSource("jdbc:hsqldb:mem:compiled", "sa", "", true);
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE bench_items (id INTEGER)");
+        for (int i = 0; i < items; i++) {
+            jdbcTemplate.update("INSERT INTO bench_items(id) VALUES(?)", new Object[] { Integer.valueOf(i) });
+        }
+
+        final ScriptRunner runner = new ScriptRunner();
+        runner.setCompiledMode("compiled".equals(mode));
+        forEachTask = runner.compileTask(DocumentHelper.parseText(FOR_EACH).getRootElement());
+        queryTask = runner.compileTask(DocumentHelper.parseText(QUERY).getRootElement());
+
+        final List<Integer> list = new ArrayList<Integer>(items);
+        for (int i = 0; i < items; i++) {
+            list.add(Integer.valueOf(i));
+        }
+        req = new RuntimeRequestResponse();
+        req.setAttribute("items", list);
+        req.setAttribute(SqlAttributes.DATA_SOURCE, dataSource);
+    }
+
+    @TearDown
+    public void tearDown() {
+        new JdbcTemplate(dataSource).execute("SHUTDOWN");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public Object forEach() {
+        // NB:  Bypasses ScriptRunner.run(), which logs the request every time...
+        final RuntimeRequestResponse res = new RuntimeRequestResponse();
+        forEachTask.perform(req, res);
+        return res;
+    }
+
+    @Benchmark
+    public Object query() {
+        final RuntimeRequestResponse res = new RuntimeRequestResponse();
+        queryTask.perform(req, res);
+        return res;
+    }
+
+}
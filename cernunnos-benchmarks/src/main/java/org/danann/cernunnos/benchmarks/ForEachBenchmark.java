@@ -0,0 +1,75 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-item overhead of <code>&lt;for-each&gt;</code> over a 
+ * body that does nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class ForEachBenchmark {
+
+    private static final String SCRIPT = "<for-each items=\"${items}\" attribute-name=\"item\">" 
+                    + "<org.danann.cernunnos.NoOpTask/><org.danann.cernunnos.NoOpTask/></for-each>";
+
+    @Param({"10", "1000"})
+    public int items;
+
+    private Task task;
+    private RuntimeRequestResponse req;
+
+    @Setup
+    public void setUp() throws Exception {
+        task = new ScriptRunner().compileTask(DocumentHelper.parseText(SCRIPT).getRootElement());
+        final List<Integer> list = new ArrayList<Integer>(items);
+        for (int i = 0; i < items; i++) {
+            list.add(Integer.valueOf(i));
+        }
+        req = new RuntimeRequestResponse();
+        req.setAttribute("items", list);
+    }
+
+    @Benchmark
+    public Object iterate() {
+        // NB:  Bypasses ScriptRunner.run(), which logs the request every time...
+        final RuntimeRequestResponse res = new RuntimeRequestResponse();
+        task.perform(req, res);
+        return res;
+    }
+
+}
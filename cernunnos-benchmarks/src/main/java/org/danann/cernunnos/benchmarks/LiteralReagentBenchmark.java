@@ -0,0 +1,71 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.ReagentType;
+import org.danann.cernunnos.SimpleReagent;
+import org.danann.cernunnos.runtime.RuntimeReagentDecorator;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures evaluating a literal reagent value with and without the 
+ * <code>RuntimeReagentDecorator</code> that <code>SimpleEntityConfig</code> 
+ * no longer applies to literals of the expected type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class LiteralReagentBenchmark {
+
+    private Phrase literal;
+    private Phrase decorated;
+    private RuntimeRequestResponse req;
+    private RuntimeRequestResponse res;
+
+    @Setup
+    public void setUp() {
+        literal = new LiteralPhrase("value");
+        decorated = new RuntimeReagentDecorator(literal, new SimpleReagent("VALUE", "@value", 
+                                ReagentType.PHRASE, String.class, "A literal value."));
+        req = new RuntimeRequestResponse();
+        res = new RuntimeRequestResponse();
+    }
+
+    @Benchmark
+    public Object literal() {
+        return literal.evaluate(req, res);
+    }
+
+    @Benchmark
+    public Object decorated() {
+        return decorated.evaluate(req, res);
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.Grammar;
+import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.XmlGrammar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures compiling phrase text with <code>XmlGrammar.newPhrase</code> and 
+ * evaluating the resulting <code>ConcatenatingPhrase</code>, for texts of 
+ * roughly <code>length</code> characters;  the time per call should grow 
+ * linearly with the length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class PhraseBenchmark {
+
+    private static final String TEXT = "Dear ${title} ${name}, your order ${order} shipped on ${date}.\n";
+
+    @Param({"1000", "10000", "100000"})
+    private int length;
+
+    private String text;
+    private Grammar grammar;
+    private Phrase phrase;
+    private RuntimeRequestResponse req;
+
+    @Setup
+    public void setUp() {
+        final StringBuilder buffer = new StringBuilder(length + TEXT.length());
+        while (buffer.length() < length) {
+            buffer.append(TEXT);
+        }
+        text = buffer.toString();
+        grammar = XmlGrammar.getMainGrammar();
+        phrase = grammar.newPhrase(text);
+        req = new RuntimeRequestResponse();
+        req.setAttribute("title", "Dr.");
+        req.setAttribute("name", "Jones");
+        req.setAttribute("order", "12345");
+        req.setAttribute("date", "Tuesday");
+    }
+
+    @Benchmark
+    public Phrase compile() {
+        return grammar.newPhrase(text);
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return phrase.evaluate(req, new RuntimeRequestResponse());
+    }
+
+}
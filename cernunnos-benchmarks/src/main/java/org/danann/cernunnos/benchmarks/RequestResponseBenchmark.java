@@ -0,0 +1,104 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the request frames the runtime creates for each task (see 
+ * <code>RuntimeRequestResponse</code>) and attribute lookups through them, 
+ * for requests of different sizes.  The scripts nest <code>depth</code> 
+ * <code>&lt;with-attribute&gt;</code> tasks;  <code>lookup</code> also reads 
+ * an attribute of the outermost request from the innermost task, so the 
+ * difference between the two is the cost of one lookup <code>depth</code> 
+ * frames up the scope chain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class RequestResponseBenchmark {
+
+    @Param({"1", "16", "256"})
+    public int size;
+
+    @Param({"1", "8"})
+    public int depth;
+
+    private Task enclose;
+    private Task lookup;
+    private RuntimeRequestResponse req;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ScriptRunner runner = new ScriptRunner();
+        enclose = runner.compileTask(DocumentHelper.parseText(nest("${frame}")).getRootElement());
+        lookup = runner.compileTask(DocumentHelper.parseText(nest("${attr.0}")).getRootElement());
+        req = new RuntimeRequestResponse();
+        for (int i = 0; i < size; i++) {
+            req.setAttribute("attr." + i, Integer.valueOf(i));
+        }
+        req.setAttribute("frame", "0");
+    }
+
+    @Benchmark
+    public Object enclose() {
+        // NB:  Bypasses ScriptRunner.run(), which logs the request every time...
+        final RuntimeRequestResponse res = new RuntimeRequestResponse();
+        enclose.perform(req, res);
+        return res;
+    }
+
+    @Benchmark
+    public Object lookup() {
+        final RuntimeRequestResponse res = new RuntimeRequestResponse();
+        lookup.perform(req, res);
+        return res;
+    }
+
+    /*
+     * Implementation.
+     */
+
+    private String nest(String innermostValue) {
+        final StringBuilder rslt = new StringBuilder();
+        for (int i = 1; i < depth; i++) {
+            rslt.append("<with-attribute key=\"frame\" value=\"").append(i).append("\">");
+        }
+        rslt.append("<with-attribute key=\"value\" value=\"").append(innermostValue).append("\">")
+                        .append("<org.danann.cernunnos.NoOpTask/></with-attribute>");
+        for (int i = 1; i < depth; i++) {
+            rslt.append("</with-attribute>");
+        }
+        return rslt.toString();
+    }
+
+}
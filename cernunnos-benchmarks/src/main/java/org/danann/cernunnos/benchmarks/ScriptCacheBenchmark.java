@@ -0,0 +1,104 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.danann.cernunnos.runtime.ScriptCache;
+import org.danann.cernunnos.runtime.XmlGrammar;
+import org.dom4j.Document;
+import org.dom4j.io.SAXReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares reading a large script (a copy of <code>main.grammar</code>) with 
+ * a <code>SAXReader</code> against reading it from a warm 
+ * <code>ScriptCache</code>, validated either by timestamp or -- for recently 
+ * modified scripts -- by content hash.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class ScriptCacheBenchmark {
+
+    private File directory;
+    private URL oldScript;
+    private URL newScript;
+    private ScriptCache cache;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = File.createTempFile("ScriptCacheBenchmark", "");
+        directory.delete();
+        directory.mkdirs();
+        oldScript = copyMainGrammar(new File(directory, "old.grammar"), System.currentTimeMillis() - 60000L);
+        newScript = copyMainGrammar(new File(directory, "new.grammar"), System.currentTimeMillis() + 3600000L);
+        cache = new ScriptCache(new File(directory, "cache"));
+        cache.read(oldScript);
+        cache.read(newScript);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public Document saxReader() throws Exception {
+        return new SAXReader().read(oldScript);
+    }
+
+    @Benchmark
+    public Document cacheHitByTimestamp() {
+        return cache.read(oldScript);
+    }
+
+    @Benchmark
+    public Document cacheHitByHash() {
+        return cache.read(newScript);
+    }
+
+    private static URL copyMainGrammar(File f, long lastModified) throws Exception {
+        final InputStream inpt = XmlGrammar.class.getResourceAsStream("main.grammar");
+        final OutputStream out = new FileOutputStream(f);
+        try {
+            IOUtils.copy(inpt, out);
+        } finally {
+            IOUtils.closeQuietly(inpt);
+            out.close();
+        }
+        f.setLastModified(lastModified);
+        return f.toURI().toURL();
+    }
+
+}
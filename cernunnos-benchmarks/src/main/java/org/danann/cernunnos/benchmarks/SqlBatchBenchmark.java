@@ -0,0 +1,107 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.danann.cernunnos.sql.SqlAttributes;
+import org.dom4j.DocumentHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Measures <code>&lt;sql-statement&gt;</code> in a loop against an in-memory 
+ * HSQLDB database, executed once per row (<code>batchSize=0</code>) or inside 
+ * <code>&lt;sql-batch&gt;</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class SqlBatchBenchmark {
+
+    private static final String INSERT = "<for-each items=\"${items}\" attribute-name=\"id\">" 
+                    + "<sql-statement sql=\"INSERT INTO bench_rows(id, name) VALUES(?, ?)\">" 
+                    + "<parameter value=\"${id}\"/><parameter value=\"row-${id}\"/>" 
+                    + "</sql-statement></for-each>";
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"0", "100", "1000"})
+    public int batchSize;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private Task task;
+    private RuntimeRequestResponse req;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataSource = new SingleConnectionDataSource("jdbc:hsqldb:mem:bench", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE bench_rows (id INTEGER, name VARCHAR(32))");
+        
+        final String script = batchSize == 0 
+                        ? INSERT 
+                        : "<sql-batch batch-size=\"" + batchSize + "\">" + INSERT + "</sql-batch>";
+        task = new ScriptRunner().compileTask(DocumentHelper.parseText(script).getRootElement());
+        
+        final List<Integer> list = new ArrayList<Integer>(rows);
+        for (int i = 0; i < rows; i++) {
+            list.add(Integer.valueOf(i));
+        }
+        req = new RuntimeRequestResponse();
+        req.setAttribute("items", list);
+        req.setAttribute(SqlAttributes.DATA_SOURCE, dataSource);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearRows() {
+        jdbcTemplate.update("DELETE FROM bench_rows");
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public Object insert() {
+        final RuntimeRequestResponse res = new RuntimeRequestResponse();
+        task.perform(req, res);
+        return res;
+    }
+
+}
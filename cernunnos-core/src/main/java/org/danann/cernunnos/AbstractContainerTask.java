@@ -16,9 +16,11 @@
 
 package org.danann.cernunnos;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,7 +59,34 @@ public abstract class AbstractContainerTask implements Task {
 	public void init(EntityConfig config) {
 	    this.subtasks = this.loadSubtasks(config, SUBTASKS, true);
 	}
-	
+
+	/**
+	 * Provides the (bootstrapped) child tasks this container will run from
+	 * <code>performSubtasks(TaskRequest, TaskResponse)</code>, or
+	 * <code>null</code> if <code>init</code> hasn't been called.
+	 */
+	public final List<Task> getSubtasks() {
+	    return subtasks;
+	}
+
+	/**
+	 * Replaces the child tasks this container will run with an equivalent
+	 * <code>List</code>.  Intended for the Cernunnos runtime (e.g.
+	 * <code>ScriptRunner</code> in compiled mode), which calls it once after
+	 * <code>init</code> and before the task is first performed.
+	 */
+	public final void setSubtasks(List<Task> subtasks) {
+
+        // Assertions...
+        if (subtasks == null) {
+            String msg = "Argument 'subtasks' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+	    this.subtasks = subtasks;
+
+	}
+
 	/*
 	 * Protected API.
 	 */
@@ -86,26 +115,31 @@ public abstract class AbstractContainerTask implements Task {
 	 */
 	@SuppressWarnings("unchecked")
     protected List<Task> loadSubtasks(EntityConfig config, Reagent subtasksPhrase, boolean warnIfMissing) {
-	    final List<Task> subtasks = new LinkedList<Task>();
-	    
 	    final List<Element> taskElements = (List<Element>) config.getValue(subtasksPhrase);
-	    final Grammar grammar = config.getGrammar();
-        for (final Element taskElement : taskElements) {
-            final Task task = grammar.newTask(taskElement, this);
-            subtasks.add(task);
-        }
-        
+	    
         // There's likely an error in the Cernunnos XML 
         // if we don't have any subtasks, issue a warning...
-        if (warnIfMissing && subtasks.size() == 0 && log.isWarnEnabled()) {
-            log.warn("POSSIBLE PROGRAMMING ERROR:  Class '" 
-                    + getClass().getName() 
-                    + "' has an empty collection of " + subtasksPhrase.getName()            
-                    + "\n\t\tSource:  " + config.getSource()
-                    + "\n\t\tEntity Name:  " + config.getEntryName());
+        if (taskElements.size() == 0) {
+            if (warnIfMissing && log.isWarnEnabled()) {
+                log.warn("POSSIBLE PROGRAMMING ERROR:  Class '" 
+                        + getClass().getName() 
+                        + "' has an empty collection of " + subtasksPhrase.getName()            
+                        + "\n\t\tSource:  " + config.getSource()
+                        + "\n\t\tEntity Name:  " + config.getEntryName());
+            }
+            return Collections.emptyList();
+        }
+	    
+	    // An array-backed List lets performSubtasks() walk the children by 
+	    // index;  it's sized exactly and can't change once compiled...
+	    final Task[] subtasks = new Task[taskElements.size()];
+	    final Grammar grammar = config.getGrammar();
+	    int i = 0;
+        for (final Element taskElement : taskElements) {
+            subtasks[i++] = grammar.newTask(taskElement, this);
         }
         
-        return subtasks;
+        return Collections.unmodifiableList(Arrays.asList(subtasks));
 	}
 
 	/**
@@ -144,8 +178,15 @@ public abstract class AbstractContainerTask implements Task {
         }
         
         // Invoke each of our children...
-        for (Task k : tasks) {
-            k.perform(req, res);
+        if (tasks instanceof RandomAccess) {
+            // Straight-line loop;  no Iterator for every pass...
+            for (int i = 0, size = tasks.size(); i < size; i++) {
+                tasks.get(i).perform(req, res);
+            }
+        } else {
+            for (Task k : tasks) {
+                k.perform(req, res);
+            }
         }
 	}
 	
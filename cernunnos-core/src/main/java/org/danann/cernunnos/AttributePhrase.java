@@ -26,6 +26,7 @@ public final class AttributePhrase implements Phrase {
 	// Instance Members.
 	private Phrase name;
 	private Phrase dflt;
+	private AttributeSlot slot;	// Non-null when the name is known at bootstrap time
 
 	/*
 	 * Public API.
@@ -47,6 +48,7 @@ public final class AttributePhrase implements Phrase {
 	 */
 	public AttributePhrase(String name) {
 		this(new LiteralPhrase(name));
+		this.slot = name != null ? AttributeSlot.forName(name) : null;
 	}
 
 	/**
@@ -59,6 +61,7 @@ public final class AttributePhrase implements Phrase {
 	public AttributePhrase(Phrase name) {
 		this.name = name;
 		this.dflt = null;	// Signifies none was specified...
+		this.slot = null;
 	}
 
 	/**
@@ -73,6 +76,7 @@ public final class AttributePhrase implements Phrase {
 	 */
 	public AttributePhrase(String name, Phrase dflt) {
 		this(new LiteralPhrase(name), dflt);
+		this.slot = name != null ? AttributeSlot.forName(name) : null;
 	}
 
 	/**
@@ -96,6 +100,7 @@ public final class AttributePhrase implements Phrase {
 
 		this.name = name;	// May be null... is this ok?
 		this.dflt = dflt;
+		this.slot = null;
 
 	}
 
@@ -118,10 +123,31 @@ public final class AttributePhrase implements Phrase {
 		this.name = (Phrase) config.getValue(NAME);
 		this.dflt = (Phrase) config.getValue(DEFAULT);
 
+		// The Grammar compiles a name without nested phrases (by far the most 
+		// common case) to a LiteralPhrase;  resolve it to a slot now...
+		final Object rawName = config.getValues().get(NAME);
+		if (rawName instanceof LiteralPhrase) {
+			// NB:  LiteralPhrase ignores both arguments...
+			final Object n = ((LiteralPhrase) rawName).evaluate(null, null);
+			this.slot = n instanceof String ? AttributeSlot.forName((String) n) : null;
+		} else {
+			this.slot = null;
+		}
+
 	}
 
 	public Object evaluate(TaskRequest req, TaskResponse res) {
 
+		if (slot != null && req instanceof IndexedTaskRequest) {
+			final Object rslt = ((IndexedTaskRequest) req).findAttribute(slot);
+			if (rslt != AttributeSlot.UNDEFINED) {
+				return rslt;
+			} else if (dflt != null) {
+				return dflt.evaluate(req, res);
+			}
+			throw new IllegalArgumentException("The specified attribute is not defined:  " + slot.getName());
+		}
+
 		String n = (String) name.evaluate(req, res);
 
 		// Check to see if the default should be appliead instead...
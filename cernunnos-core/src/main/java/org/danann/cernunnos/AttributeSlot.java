@@ -0,0 +1,126 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.danann.cernunnos;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An interned request attribute name with a stable integer index.  Phrases 
+ * that know the name of the attribute they read at bootstrap time (most 
+ * commonly <code>AttributePhrase</code>) obtain a slot once and pass it to 
+ * <code>IndexedTaskRequest.findAttribute</code> on each evaluation, which 
+ * allows the request to resolve the attribute without hashing the name.  
+ * Slots are shared by all grammars and scripts within the JVM and are never 
+ * released, so at most <code>MAX_SLOTS</code> names are interned;  beyond 
+ * that, attributes are simply resolved by name.
+ */
+public final class AttributeSlot {
+
+	// Static Members.
+	private static final int MAX_SLOTS = 4096;
+	private static final ConcurrentMap<String,AttributeSlot> SLOTS = 
+						new ConcurrentHashMap<String,AttributeSlot>();
+	private static final AtomicInteger NEXT_INDEX = new AtomicInteger();
+
+	// Instance Members.
+	private final String name;
+	private final int index;
+
+	/*
+	 * Public API.
+	 */
+
+	/**
+	 * Returned by <code>IndexedTaskRequest.findAttribute</code> when the 
+	 * specified attribute is not defined.  (<code>null</code> is a legal 
+	 * attribute value.)
+	 */
+	public static final Object UNDEFINED = new Object();
+
+	/**
+	 * Obtains the slot for the specified attribute name, creating it if 
+	 * necessary.  Use this method at bootstrap time, with names that appear 
+	 * literally in a script or in Java code.
+	 * 
+	 * @param name The name of a request attribute.
+	 * @return The one <code>AttributeSlot</code> for that name, or 
+	 * <code>null</code> if there is none and <code>MAX_SLOTS</code> names 
+	 * have already been interned.
+	 */
+	public static AttributeSlot forName(String name) {
+
+		// Assertions.
+		if (name == null) {
+			String msg = "Argument 'name' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+
+		AttributeSlot rslt = SLOTS.get(name);
+		if (rslt == null) {
+			if (NEXT_INDEX.get() >= MAX_SLOTS) {
+				// Names compiled at runtime (e.g. in dynamically generated 
+				// scripts) would otherwise grow this map without limit...
+				return null;
+			}
+			final AttributeSlot created = new AttributeSlot(name, NEXT_INDEX.getAndIncrement());
+			rslt = SLOTS.putIfAbsent(name, created);
+			if (rslt == null) {
+				rslt = created;
+			}
+		}
+		return rslt;
+
+	}
+
+	/**
+	 * Obtains the slot for the specified attribute name if one has already 
+	 * been created, but never creates one.  Use this method at runtime, where 
+	 * attribute names may be dynamic.
+	 * 
+	 * @param name The name of a request attribute.
+	 * @return The <code>AttributeSlot</code> for that name, or 
+	 * <code>null</code>.
+	 */
+	public static AttributeSlot peek(String name) {
+		return SLOTS.get(name);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public String toString() {
+		return name + "[" + index + "]";
+	}
+
+	/*
+	 * Implementation.
+	 */
+
+	private AttributeSlot(String name, int index) {
+		this.name = name;
+		this.index = index;
+	}
+
+}
@@ -17,6 +17,7 @@
 package org.danann.cernunnos;
 
 import java.io.Serializable;
+import java.net.URL;
 import java.util.concurrent.ConcurrentMap;
 
 
@@ -36,7 +37,9 @@ public interface CacheHelper<K extends Serializable, V> {
             new AttributePhrase(Attributes.CACHE));
 
     public static final Reagent CACHE_MODEL = new SimpleReagent("CACHE_MODEL", "@cache-model", ReagentType.PHRASE, String.class,
-            "Specify either NONE, ONE, or ALL.  The default is ONE.", new AttributePhrase(Attributes.CACHE_MODEL, new LiteralPhrase(CacheMode.ONE.toString())));
+            "Specify either NONE, ONE, ALL, or POOL.  The default is ONE.  POOL is honored only by entities " +
+            "that give back each cached object after use (their cache helper is created with poolable=true);  " +
+            "the others treat it as ALL.", new AttributePhrase(Attributes.CACHE_MODEL, new LiteralPhrase(CacheMode.ONE.toString())));
 
     /**
      * Get from cache or create and cache an object for the specified request, response and key. The passed
@@ -47,7 +50,14 @@ public interface CacheHelper<K extends Serializable, V> {
     public enum CacheMode {
         NONE,
         ONE,
-        ALL;
+        ALL,
+        
+        /**
+         * Like ALL for thread-safe objects;  other objects are kept in a bounded pool per key in the shared cache,
+         * borrowed by each use and returned by {@link PoolingCacheHelper#releaseCachedObject}, so the number of instances 
+         * follows the actual concurrency instead of the number of threads.
+         */
+        POOL;
     }
     
     /**
@@ -67,6 +77,9 @@ public interface CacheHelper<K extends Serializable, V> {
         
         /**
          * Gets the best mutex to use for synchronizing on when creating the object. This can NEVER return null.
+         * {@link DynamicCacheHelper} no longer synchronizes on it (it coordinates loads per key instead), so
+         * factories whose {@link #createObject(Serializable)} uses shared, non-thread-safe state must guard
+         * that state themselves.
          */
         public Object getMutex(K key);
         
@@ -77,6 +90,18 @@ public interface CacheHelper<K extends Serializable, V> {
         public Serializable getCacheNamespace(K key);
     }
     
+    /**
+     * Factory for objects that are read from a resource, such as a document or script.  When the resource is a local
+     * file (a <code>file:</code> or <code>jar:</code> URL) {@link DynamicCacheHelper} creates the object again after
+     * the file changes;  see {@link ResourceStamp}.
+     */
+    public interface ResourceFactory<K extends Serializable, V> extends Factory<K, V> {
+        /**
+         * Gets the URL the object for the key is read from, or null if it isn't known.
+         */
+        public URL getResource(K key);
+    }
+    
     /**
      * Marks a cache Map that can notify listeners of entry eviction
      */
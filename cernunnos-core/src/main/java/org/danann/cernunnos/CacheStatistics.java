@@ -0,0 +1,160 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.danann.cernunnos.CacheHelper.CacheEvictionListener;
+import org.danann.cernunnos.CacheHelper.CacheMode;
+
+/**
+ * Registry of {@link NamespaceStatistics} for every cache namespace and 
+ * {@link CacheMode} that {@link DynamicCacheHelper} has served.  Statistics 
+ * are disabled by default;  while disabled, cache helpers only read a single 
+ * flag, so they can be switched on (e.g. over JMX) when needed.
+ * 
+ * @version $Revision$
+ */
+public final class CacheStatistics implements CacheStatisticsMBean {
+    private static final CacheStatistics INSTANCE = new CacheStatistics();
+    
+    /**
+     * Name under which {@link #registerMBean()} publishes the registry.
+     */
+    public static final String OBJECT_NAME = "org.danann.cernunnos:type=CacheStatistics";
+    
+    private final ConcurrentMap<Tuple<Serializable, CacheMode>, NamespaceStatistics> namespaces = 
+        new ConcurrentHashMap<Tuple<Serializable, CacheMode>, NamespaceStatistics>();
+    private final CacheEvictionListener<Object, Object> evictionListener = new EvictionCounter();
+    private volatile boolean enabled = false;
+    
+    public static CacheStatistics getInstance() {
+        return INSTANCE;
+    }
+    
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public int getNamespaceCount() {
+        return this.namespaces.size();
+    }
+    
+    public String[] getNamespaces() {
+        final List<NamespaceStatistics> list = this.getNamespaceStatistics();
+        final String[] rslt = new String[list.size()];
+        for (int i = 0; i < rslt.length; i++) {
+            rslt[i] = list.get(i).toString();
+        }
+        return rslt;
+    }
+    
+    /**
+     * Returns the statistics recorded so far, most expensive (by total load 
+     * time) first.
+     */
+    public List<NamespaceStatistics> getNamespaceStatistics() {
+        final List<NamespaceStatistics> rslt = new ArrayList<NamespaceStatistics>(this.namespaces.values());
+        Collections.sort(rslt, new Comparator<NamespaceStatistics>() {
+            public int compare(NamespaceStatistics s1, NamespaceStatistics s2) {
+                final long t1 = s1.getLoadNanos();
+                final long t2 = s2.getLoadNanos();
+                return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        return rslt;
+    }
+    
+    /**
+     * Returns the statistics for the specified namespace and mode, creating 
+     * them if necessary.
+     * 
+     * @param namespace May be <code>null</code> (the global namespace)
+     */
+    public NamespaceStatistics getNamespaceStatistics(Serializable namespace, CacheMode cacheMode) {
+        if (cacheMode == null) {
+            throw new IllegalArgumentException("Argument 'cacheMode' cannot be null.");
+        }
+        
+        final Tuple<Serializable, CacheMode> key = new Tuple<Serializable, CacheMode>(namespace, cacheMode);
+        NamespaceStatistics rslt = this.namespaces.get(key);
+        if (rslt == null) {
+            final NamespaceStatistics s = new NamespaceStatistics(namespace, cacheMode);
+            rslt = this.namespaces.putIfAbsent(key, s);
+            if (rslt == null) {
+                rslt = s;
+            }
+        }
+        return rslt;
+    }
+    
+    /**
+     * Listener that counts evictions of {@link DynamicCacheHelper} entries 
+     * (keyed by namespace) from an {@link CacheHelper.EvictionAwareCache}.
+     */
+    public CacheEvictionListener<Object, Object> getEvictionListener() {
+        return this.evictionListener;
+    }
+    
+    /**
+     * Sets the counters of every namespace back to zero.  Namespaces are kept 
+     * (not removed) because cache helpers hold on to them.
+     */
+    public void reset() {
+        for (NamespaceStatistics s : this.namespaces.values()) {
+            s.reset();
+        }
+    }
+    
+    /**
+     * Publishes this registry to the platform <code>MBeanServer</code> under 
+     * {@link #OBJECT_NAME}, unless it's already there.
+     */
+    public synchronized void registerMBean() {
+        MBeanUtil.register(this, OBJECT_NAME);
+    }
+    
+    public synchronized void unregisterMBean() {
+        MBeanUtil.unregister(OBJECT_NAME);
+    }
+    
+    private CacheStatistics() {
+    }
+    
+    private final class EvictionCounter implements CacheEvictionListener<Object, Object> {
+        public void onEviction(Object key, Object value) {
+            if (CacheStatistics.this.enabled && key instanceof Tuple<?, ?>) {
+                final Object namespace = ((Tuple<?, ?>) key).first;
+                if (namespace == null || namespace instanceof Serializable) {
+                    //Count it under the mode that stored the entry
+                    final CacheMode cacheMode = DynamicCacheHelper.getStoredCacheMode(value);
+                    CacheStatistics.this.getNamespaceStatistics((Serializable) namespace, cacheMode).recordEviction();
+                }
+            }
+        }
+    }
+}
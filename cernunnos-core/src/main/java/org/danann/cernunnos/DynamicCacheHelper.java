@@ -16,182 +16,726 @@
 
 package org.danann.cernunnos;
 
+import java.io.NotSerializableException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
+
 
 /**
+ * Default <code>CacheHelper</code> implementation.  Cache hits never block;  
+ * a miss loads the object at most once at a time per key (concurrent 
+ * requests for the same key wait for that load, while requests for other keys 
+ * proceed), so a slow factory call only delays callers that need its result.
+ * Hits, misses, load times and evictions are counted per cache namespace and 
+ * mode in {@link CacheStatistics}.  Objects from a {@link ResourceFactory} are 
+ * created again once their file changes.
+ * <p>
+ * cache-model POOL is only honored for helpers created with 
+ * <code>poolable</code> set, i.e. by callers that promise to call 
+ * {@link #releaseCachedObject(TaskRequest, TaskResponse, Serializable, Factory, Object)};  
+ * other helpers treat it as ALL.
+ * 
  * @author Eric Dalquist
  * @version $Revision$
  */
-public class DynamicCacheHelper<K extends Serializable, V> implements CacheHelper<K, V> {
+public class DynamicCacheHelper<K extends Serializable, V> implements PoolingCacheHelper<K, V> {
     protected final Log logger = LogFactory.getLog(this.getClass());
 
+    private static final Object NULL_KEY = new Object();
+    
+    private static volatile int poolMinIdle = 0;
+    private static volatile int poolMaxIdle = Math.max(Runtime.getRuntime().availableProcessors() * 2, 8);
+
     private final Phrase cachePhrase;
     private final Phrase cacheModelPhrase;
+    private final CacheMode cacheMode;  // Non-null if CACHE_MODEL is a literal
+    private final boolean poolable;
     
     //Instance variables for cache-one storage
-    private final ThreadLocal<V> threadInstanceHolder = new ThreadLocal<V>();
-    private final ThreadLocal<K> threadKeyHolder = new ThreadLocal<K>();
-    private V instance;
-    private K key;
+    private final ThreadLocal<Holder<K, V>> threadHolder = new ThreadLocal<Holder<K, V>>();
+    private volatile Holder<K, V> sharedHolder;
+    private final ConcurrentMap<Object, PendingLoad<V>> pendingLoads = new ConcurrentHashMap<Object, PendingLoad<V>>();
+    
+    //Most recently used statistics, helpers almost always serve a single namespace
+    private volatile NamespaceStatistics lastStatistics;
     
     public DynamicCacheHelper(EntityConfig config) {
+        this(config, false);
+    }
+    
+    /**
+     * @param poolable True if the caller releases every object it gets, which lets cache-model POOL be used
+     */
+    public DynamicCacheHelper(EntityConfig config, boolean poolable) {
         this.cachePhrase = (Phrase) config.getValue(CacheHelper.CACHE);
         this.cacheModelPhrase = (Phrase) config.getValue(CacheHelper.CACHE_MODEL);
+        this.cacheMode = SimpleEntityConfig.getConstant(config, CacheHelper.CACHE_MODEL, CacheMode.class);
+        this.poolable = poolable;
+    }
+    
+    /**
+     * Sets the number of objects created up front for each new pool in cache-model POOL.  The default is 0.
+     */
+    public static void setPoolMinIdle(int minIdle) {
+        poolMinIdle = minIdle;
+    }
+    
+    public static int getPoolMinIdle() {
+        return poolMinIdle;
+    }
+    
+    /**
+     * Sets the most objects kept idle per key in cache-model POOL;  objects released to a full pool are discarded.  
+     * The default is twice the number of processors, but at least 8.
+     */
+    public static void setPoolMaxIdle(int maxIdle) {
+        poolMaxIdle = maxIdle;
+    }
+    
+    public static int getPoolMaxIdle() {
+        return poolMaxIdle;
     }
     
     /* (non-Javadoc)
      * @see org.danann.cernunnos.cache.CacheHelper#getCachedObject(org.danann.cernunnos.TaskRequest, org.danann.cernunnos.TaskResponse, java.lang.Object, org.danann.cernunnos.cache.CacheHelper.Factory)
      */
     public V getCachedObject(TaskRequest req, TaskResponse res, K key, Factory<K, V> factory) {
-        final CacheMode cacheMode = CacheMode.valueOf((String) this.cacheModelPhrase.evaluate(req, res));
+        final CacheMode cacheMode = this.getCacheMode(req, res);
         
         if (this.logger.isDebugEnabled()) {
             this.logger.debug("Getting cached object for '" + key + "' using cache mode " + cacheMode + " and factory " + factory);
         }
         
-        //Load the cache only if cache-all is enabled
-        final ConcurrentMap<Tuple<Serializable, K>, Object> cache;
-        final Tuple<Serializable, K> compoundCacheKey;
         switch (cacheMode) {
             case NONE: {
-                return factory.createObject(key);
+                return this.create(key, factory, this.getStatistics(cacheMode, factory, key));
             }
             
-            default:
-            case ONE: {
-                cache = null;
-                compoundCacheKey = null;
+            case ALL: {
+                final ConcurrentMap<Tuple<Serializable, K>, Object> cache = (ConcurrentMap<Tuple<Serializable, K>, Object>) this.cachePhrase.evaluate(req, res);
+                final Serializable cacheNamespace = factory.getCacheNamespace(key);
+                final NamespaceStatistics statistics = this.getStatistics(cacheMode, cacheNamespace);
+                return this.getFromCache(cache, new Tuple<Serializable, K>(cacheNamespace, key), key, factory, statistics);
             }
-            break;
             
-            case ALL: {
-                cache = (ConcurrentMap<Tuple<Serializable, K>, Object>) this.cachePhrase.evaluate(req, res);
+            case POOL: {
+                final ConcurrentMap<Tuple<Serializable, K>, Object> cache = (ConcurrentMap<Tuple<Serializable, K>, Object>) this.cachePhrase.evaluate(req, res);
                 final Serializable cacheNamespace = factory.getCacheNamespace(key);
-                compoundCacheKey = new Tuple<Serializable, K>(cacheNamespace, key);
+                final Tuple<Serializable, K> compoundCacheKey = new Tuple<Serializable, K>(cacheNamespace, key);
+                if (!this.poolable) {
+                    return this.getFromCache(cache, compoundCacheKey, key, factory, this.getStatistics(CacheMode.ALL, cacheNamespace));
+                }
+                return this.getFromPool(cache, compoundCacheKey, key, factory, this.getStatistics(cacheMode, cacheNamespace));
+            }
+            
+            default:
+            case ONE: {
+                return this.getFromLocal(key, factory, this.getStatistics(CacheMode.ONE, factory, key));
             }
-            break;
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see org.danann.cernunnos.PoolingCacheHelper#releaseCachedObject(org.danann.cernunnos.TaskRequest, org.danann.cernunnos.TaskResponse, java.io.Serializable, org.danann.cernunnos.CacheHelper.Factory, java.lang.Object)
+     */
+    @SuppressWarnings("unchecked")
+    public void releaseCachedObject(TaskRequest req, TaskResponse res, K key, Factory<K, V> factory, V instance) {
+        if (!this.poolable || instance == null) {
+            return;
+        }
+        
+        final CacheMode cacheMode = this.getCacheMode(req, res);
+        if (cacheMode != CacheMode.POOL) {
+            return;
         }
         
-        //Determine the object to synchronize around
-        final Object syncTarget = factory.getMutex(key);
+        final ConcurrentMap<Tuple<Serializable, K>, Object> cache = (ConcurrentMap<Tuple<Serializable, K>, Object>) this.cachePhrase.evaluate(req, res);
+        final Serializable cacheNamespace = factory.getCacheNamespace(key);
+        Object object = cache.get(new Tuple<Serializable, K>(cacheNamespace, key));
+        if (object instanceof Stamped) {
+            //NB:  A modified pool is discarded by the next borrower
+            object = ((Stamped) object).value;
+        }
+        
+        //Thread-safe objects aren't pooled;  if the pool was evicted, so is this object
+        if (object instanceof Pool<?>) {
+            if (!((Pool<V>) object).release(instance, poolMaxIdle)) {
+                final NamespaceStatistics statistics = this.getStatistics(cacheMode, cacheNamespace);
+                if (statistics != null) {
+                    statistics.recordEviction();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Basic logic to compare two keys for equality
+     */
+    protected final boolean compareKeys(K k1, K k2) {
+        return k1 == k2 || (k1 != null && k1.equals(k2));
+    }
+    
+    /**
+     * Uses the mode parsed in the constructor when CACHE_MODEL is a literal, otherwise evaluates it per call
+     */
+    private CacheMode getCacheMode(TaskRequest req, TaskResponse res) {
+        if (this.cacheMode != null) {
+            return this.cacheMode;
+        }
+        return CacheMode.valueOf((String) this.cacheModelPhrase.evaluate(req, res));
+    }
 
-        //get or create & cache the target object
-        V instance = null;
-        synchronized (syncTarget) {
-            //Get the object from the local variables if no cache is available
-            if (cache == null) {
-                //Try for a thread-local instance first
-                if (this.compareKeys(key, this.threadKeyHolder.get())) {
-                    instance = this.threadInstanceHolder.get();
-                }
-                //Next try for a singleton instance
-                else if (this.compareKeys(key, this.key)) {
-                    instance = this.instance;
-                } 
-            }
-            //Look in the passed cache for the instance
-            else {
-                final Object object = cache.get(compoundCacheKey);
+    /**
+     * cache-one:  the most recent object is kept in instance variables (or a
+     * ThreadLocal, if it isn't thread-safe)
+     */
+    private V getFromLocal(K key, Factory<K, V> factory, NamespaceStatistics statistics) {
+        //Try for a thread-local instance first, then a shared one
+        Holder<K, V> holder = this.threadHolder.get();
+        if (holder == null || !this.compareKeys(key, holder.key)) {
+            holder = this.sharedHolder;
+        }
+        if (holder != null && this.compareKeys(key, holder.key) && !this.isModified(holder.stamp, statistics)) {
+            this.logHit(key, holder.instance, statistics);
+            return holder.instance;
+        }
+        
+        //Miss, load it unless another thread already is;  stamp first so that a failure can't strand waiters
+        final ResourceStamp stamp = this.getResourceStamp(key, factory);
+        final Object pendingKey = key != null ? key : NULL_KEY;
+        final PendingLoad<V> pending = new PendingLoad<V>();
+        final PendingLoad<V> existing = this.pendingLoads.putIfAbsent(pendingKey, pending);
+        if (existing == null) {
+            try {
+                //Another thread may have finished loading it between the miss and putIfAbsent
+                final Holder<K, V> loaded = this.sharedHolder;
+                if (loaded != null && loaded != holder && this.compareKeys(key, loaded.key) 
+                        && (loaded.stamp == null || !loaded.stamp.isModified())) {
+                    pending.complete(loaded.instance, true);
+                    this.logHit(key, loaded.instance, statistics);
+                    return loaded.instance;
+                }
                 
-                //If the cached object is a ThreadLocal use it for the instance
-                if (object instanceof ThreadLocal<?>) {
-                    instance = ((ThreadLocal<V>) object).get();
+                final V instance = this.load(key, factory, pending, statistics);
+                if (pending.threadSafe) {
+                    this.logReplacement(this.sharedHolder, key, statistics);
+                    this.sharedHolder = new Holder<K, V>(key, instance, stamp);
                 }
-                //If not assume it is the instance 
                 else {
-                    instance = (V) object;
+                    this.logReplacement(this.threadHolder.get(), key, statistics);
+                    this.threadHolder.set(new Holder<K, V>(key, instance, stamp));
                 }
+                return instance;
+            }
+            finally {
+                this.pendingLoads.remove(pendingKey, pending);
             }
+        }
+        
+        final V instance = this.await(key, factory, existing, statistics);
+        if (existing.threadSafe) {
+            return instance;
+        }
+        
+        //Not thread-safe, this thread needs its own
+        final V own = this.create(key, factory, statistics);
+        this.logReplacement(this.threadHolder.get(), key, statistics);
+        this.threadHolder.set(new Holder<K, V>(key, own, stamp));
+        return own;
+    }
+    
+    /**
+     * cache-all:  objects are kept in the shared cache;  a PendingLoad stands in 
+     * for an object while it's created, a ThreadLocal holds objects that 
+     * aren't thread-safe, and a Stamped wrapper holds objects (or ThreadLocals) 
+     * that were read from a local file
+     */
+    @SuppressWarnings("unchecked")
+    private V getFromCache(ConcurrentMap<Tuple<Serializable, K>, Object> cache, Tuple<Serializable, K> compoundCacheKey, K key, Factory<K, V> factory, NamespaceStatistics statistics) {
+        while (true) {
+            final Object entry = cache.get(compoundCacheKey);
+            Object object = entry;
+            ResourceStamp stamp = null;
             
-            //If no instance was found create and cache one
-            if (instance == null) {
-                instance = factory.createObject(key);
-                final boolean threadSafe = factory.isThreadSafe(key, instance);
+            if (entry instanceof Stamped) {
+                stamp = ((Stamped) entry).stamp;
+                if (this.isModified(stamp, statistics)) {
+                    //The file changed, drop the entry and load it again
+                    cache.remove(compoundCacheKey, entry);
+                    continue;
+                }
+                object = ((Stamped) entry).value;
+            }
+            
+            if (object == null) {
+                //NB:  Stamp before publishing the placeholder, a ResourceFactory that throws mustn't leave it behind
+                final ResourceStamp newStamp = this.getResourceStamp(key, factory);
+                final PendingLoad<V> pending = new PendingLoad<V>();
+                if (cache.putIfAbsent(compoundCacheKey, pending) != null) {
+                    //Someone beat us to it, look again
+                    continue;
+                }
                 
-                if (this.logger.isDebugEnabled()) {
-                    this.logger.debug("Cache miss for '" + key + "' created '" + instance + "' threadSafe=" + threadSafe);
+                final V instance;
+                try {
+                    instance = this.load(key, factory, pending, statistics);
+                }
+                catch (RuntimeException re) {
+                    cache.remove(compoundCacheKey, pending);
+                    throw re;
+                }
+                catch (Error e) {
+                    cache.remove(compoundCacheKey, pending);
+                    throw e;
                 }
                 
-                //If no cache is available store the instance in the local variables
-                if (cache == null) {
-                    if (threadSafe) {
-                        this.instance = instance;
-                        this.key = key;
-                    }
-                    else {
-                        this.threadInstanceHolder.set(instance);
-                        this.threadKeyHolder.set(key);
-                    }
+                if (pending.threadSafe) {
+                    this.publish(cache, compoundCacheKey, pending, this.stamp(instance, newStamp));
                 }
-                //Cache available store there
                 else {
-                    if (threadSafe) {
-                        cache.put(compoundCacheKey, instance);
-                    }
-                    else {
-                        ThreadLocal<V> threadInstanceHolder = (ThreadLocal<V>)cache.get(compoundCacheKey);
-                        if (threadInstanceHolder == null) {
-                            threadInstanceHolder = new ThreadLocal<V>();
-                            
-                            while (true) {
-                                Object existing = cache.putIfAbsent(compoundCacheKey, threadInstanceHolder);
-                                if (existing == null) {
-                                    //nothing existed for that key, put was successful
-                                    break;
-                                }
-                                
-                                if (existing instanceof ThreadLocal) {
-                                    //Existing ThreadLocal, just use it
-                                    threadInstanceHolder = (ThreadLocal)existing;
-                                    break;
-                                }
-                                
-                                //something other than a ThreadLocal already exists, try replacing with the ThreadLocal
-                                final boolean replaced = cache.replace(compoundCacheKey, threadInstanceHolder, existing);
-                                if (replaced) {
-                                    //Replace worked!
-                                    break;
-                                }
-                                
-                                //Replace didn't work, try the whole process again, yay non-blocking!
-                            }
-                            
-                            if (cache instanceof EvictionAwareCache) {
-                                ((EvictionAwareCache) cache).registerCacheEvictionListener(ThreadLocalCacheEvictionListener.INSTANCE);
-                            }
-                        }
-
-                        threadInstanceHolder.set(instance);
+                    final ThreadLocal<V> threadInstanceHolder = new ThreadInstanceHolder<V>();
+                    threadInstanceHolder.set(instance);
+                    this.publish(cache, compoundCacheKey, pending, this.stamp(threadInstanceHolder, newStamp));
+                    
+                    if (cache instanceof EvictionAwareCache) {
+                        ((EvictionAwareCache) cache).registerCacheEvictionListener(ThreadLocalCacheEvictionListener.INSTANCE);
                     }
                 }
+                
+                if (statistics != null && cache instanceof EvictionAwareCache) {
+                    ((EvictionAwareCache) cache).registerCacheEvictionListener(CacheStatistics.getInstance().getEvictionListener());
+                }
+                return instance;
+            }
+            
+            if (object instanceof PendingLoad<?>) {
+                final PendingLoad<V> pending = (PendingLoad<V>) object;
+                final V instance = this.await(key, factory, pending, statistics);
+                if (pending.threadSafe) {
+                    return instance;
+                }
+                
+                //Not thread-safe;  by now there's a ThreadLocal in the cache
+                continue;
+            }
+            
+            //If the cached object is a ThreadLocal use it for the instance
+            if (object instanceof ThreadLocal<?>) {
+                final ThreadLocal<V> threadInstanceHolder = (ThreadLocal<V>) object;
+                V instance = threadInstanceHolder.get();
+                if (instance != null) {
+                    this.logHit(key, instance, statistics);
+                    return instance;
+                }
+                
+                //Nobody else can be creating this thread's instance, no need to coordinate
+                instance = this.create(key, factory, statistics);
+                if (factory.isThreadSafe(key, instance)) {
+                    cache.replace(compoundCacheKey, entry, this.stamp(instance, stamp));
+                }
+                else {
+                    threadInstanceHolder.set(instance);
+                }
+                return instance;
             }
-            else if (this.logger.isDebugEnabled()) {
-                this.logger.debug("Cache hit for '" + key + "' using '" + instance + "'");
+            
+            //If not assume it is the instance
+            this.logHit(key, object, statistics);
+            return (V) object;
+        }
+    }
+    
+    /**
+     * cache-pool:  objects that aren't thread-safe are kept in a Pool in the 
+     * shared cache and lent out one use at a time;  thread-safe objects are 
+     * kept as in cache-all
+     */
+    @SuppressWarnings("unchecked")
+    private V getFromPool(ConcurrentMap<Tuple<Serializable, K>, Object> cache, Tuple<Serializable, K> compoundCacheKey, K key, Factory<K, V> factory, NamespaceStatistics statistics) {
+        final Object entry = cache.get(compoundCacheKey);
+        Object object = entry;
+        if (entry instanceof Stamped) {
+            if (this.isModified(((Stamped) entry).stamp, statistics)) {
+                //The file changed, drop the pool and start another
+                cache.remove(compoundCacheKey, entry);
+                return this.getFromPool(cache, compoundCacheKey, key, factory, statistics);
+            }
+            object = ((Stamped) entry).value;
+        }
+        
+        if (object instanceof Pool<?>) {
+            final V instance = ((Pool<V>) object).borrow();
+            if (instance != null) {
+                this.logHit(key, instance, statistics);
+                return instance;
+            }
+            
+            //Every pooled object is in use, this one will join them when it's released
+            return this.create(key, factory, statistics);
+        }
+        
+        if (object != null) {
+            //A thread-safe object (or an entry from another cache mode)
+            return this.getFromCache(cache, compoundCacheKey, key, factory, statistics);
+        }
+        
+        //First use;  concurrent first uses may each create an object, which is fine since none are shared
+        final ResourceStamp stamp = this.getResourceStamp(key, factory);
+        final V instance = this.create(key, factory, statistics);
+        if (factory.isThreadSafe(key, instance)) {
+            cache.putIfAbsent(compoundCacheKey, this.stamp(instance, stamp));
+        }
+        else {
+            final Pool<V> pool = new Pool<V>();
+            for (int i = 0; i < poolMinIdle; i++) {
+                pool.release(this.create(key, factory, statistics), poolMaxIdle);
             }
+            cache.putIfAbsent(compoundCacheKey, this.stamp(pool, stamp));
         }
         
+        if (statistics != null && cache instanceof EvictionAwareCache) {
+            ((EvictionAwareCache) cache).registerCacheEvictionListener(CacheStatistics.getInstance().getEvictionListener());
+        }
         return instance;
     }
     
     /**
-     * Basic logic to compare two keys for equality
+     * Creates the object for a PendingLoad this thread owns and releases any 
+     * threads waiting for it.
      */
-    protected final boolean compareKeys(K k1, K k2) {
-        return k1 == k2 || (k1 != null && k1.equals(k2));
+    private V load(K key, Factory<K, V> factory, PendingLoad<V> pending, NamespaceStatistics statistics) {
+        try {
+            final V instance = this.create(key, factory, statistics);
+            final boolean threadSafe = factory.isThreadSafe(key, instance);
+            
+            if (this.logger.isDebugEnabled()) {
+                this.logger.debug("Cache miss for '" + key + "' created '" + instance + "' threadSafe=" + threadSafe);
+            }
+            
+            pending.complete(instance, threadSafe);
+            return instance;
+        }
+        catch (RuntimeException re) {
+            pending.fail(re);
+            throw re;
+        }
+        catch (Error e) {
+            pending.fail(e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Waits for a PendingLoad that another thread owns.
+     */
+    private V await(K key, Factory<K, V> factory, PendingLoad<V> pending, NamespaceStatistics statistics) {
+        if (pending.loader == Thread.currentThread()) {
+            //The factory needs the object it's creating;  don't deadlock, just make another
+            return this.create(key, factory, statistics);
+        }
+        
+        final V instance = pending.await();
+        this.logHit(key, instance, statistics);
+        return instance;
+    }
+    
+    /**
+     * Takes a stamp of the file the object for the key is read from, if any;  
+     * this happens before the object is read so that changes made while it's 
+     * being read aren't missed.
+     */
+    @SuppressWarnings("unchecked")
+    private ResourceStamp getResourceStamp(K key, Factory<K, V> factory) {
+        if (!(factory instanceof ResourceFactory<?, ?>)) {
+            return null;
+        }
+        return ResourceStamp.forResource(((ResourceFactory<K, V>) factory).getResource(key));
+    }
+    
+    private boolean isModified(ResourceStamp stamp, NamespaceStatistics statistics) {
+        if (stamp == null || !stamp.isModified()) {
+            return false;
+        }
+        
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Discarding cached object, its file has changed:  " + stamp);
+        }
+        if (statistics != null) {
+            statistics.recordEviction();
+        }
+        return true;
+    }
+    
+    private Object stamp(Object value, ResourceStamp stamp) {
+        return stamp != null ? new Stamped(value, stamp) : value;
+    }
+    
+    /**
+     * Calls the factory, timing it if statistics are being kept.
+     */
+    private V create(K key, Factory<K, V> factory, NamespaceStatistics statistics) {
+        if (statistics == null) {
+            return factory.createObject(key);
+        }
+        
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final V instance = factory.createObject(key);
+            failed = false;
+            return instance;
+        }
+        finally {
+            statistics.recordLoad(System.nanoTime() - start, failed);
+        }
+    }
+    
+    /**
+     * Returns the statistics to update for this request, or <code>null</code> 
+     * if they're disabled;  the namespace is only computed when needed.
+     */
+    private NamespaceStatistics getStatistics(CacheMode cacheMode, Factory<K, V> factory, K key) {
+        if (!CacheStatistics.getInstance().isEnabled()) {
+            return null;
+        }
+        return this.getStatistics(cacheMode, factory.getCacheNamespace(key));
+    }
+    
+    private NamespaceStatistics getStatistics(CacheMode cacheMode, Serializable cacheNamespace) {
+        final CacheStatistics registry = CacheStatistics.getInstance();
+        if (!registry.isEnabled()) {
+            return null;
+        }
+        
+        final NamespaceStatistics last = this.lastStatistics;
+        if (last != null && last.getCacheMode() == cacheMode 
+                && (last.getNamespace() == cacheNamespace || (cacheNamespace != null && cacheNamespace.equals(last.getNamespace())))) {
+            return last;
+        }
+        
+        //NB:  A race here is harmless;  the registry returns the same object
+        final NamespaceStatistics rslt = registry.getNamespaceStatistics(cacheNamespace, cacheMode);
+        this.lastStatistics = rslt;
+        return rslt;
+    }
+    
+    private void publish(ConcurrentMap<Tuple<Serializable, K>, Object> cache, Tuple<Serializable, K> compoundCacheKey, PendingLoad<V> pending, Object value) {
+        if (!cache.replace(compoundCacheKey, pending, value)) {
+            //The placeholder was evicted while loading
+            cache.putIfAbsent(compoundCacheKey, value);
+        }
+    }
+    
+    private void logHit(K key, Object instance, NamespaceStatistics statistics) {
+        if (statistics != null) {
+            statistics.recordHit();
+        }
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Cache hit for '" + key + "' using '" + instance + "'");
+        }
+    }
+    
+    /**
+     * cache-one keeps a single object, so loading a new one evicts the old.
+     */
+    private void logReplacement(Holder<K, V> previous, K key, NamespaceStatistics statistics) {
+        //NB:  Replacing a modified object was already counted
+        if (previous != null && statistics != null && !this.compareKeys(key, previous.key)) {
+            statistics.recordEviction();
+        }
+    }
+    
+    /**
+     * Returns the mode that stored the specified entry of the shared cache:  
+     * POOL for a pool of idle objects, otherwise ALL.
+     */
+    static CacheMode getStoredCacheMode(Object entry) {
+        final Object object = entry instanceof Stamped ? ((Stamped) entry).value : entry;
+        return object instanceof Pool<?> ? CacheMode.POOL : CacheMode.ALL;
+    }
+    
+    private static final class Holder<K, V> {
+        private final K key;
+        private final V instance;
+        private final ResourceStamp stamp;
+        
+        public Holder(K key, V instance, ResourceStamp stamp) {
+            this.key = key;
+            this.instance = instance;
+            this.stamp = stamp;
+        }
+    }
+    
+    /**
+     * Cache entry for an object (or ThreadLocal) that was read from a file.  
+     * Serializable so that the stamp travels with the object if the cache 
+     * moves it off the heap.
+     */
+    private static final class Stamped implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final Object value;
+        private final ResourceStamp stamp;
+        
+        public Stamped(Object value, ResourceStamp stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+    }
+    
+    /**
+     * Holds the objects that aren't thread-safe in cache-model ALL.  
+     * Serializing it writes the object of the current thread instead;  see 
+     * SerializationProxy.
+     */
+    private static final class ThreadInstanceHolder<V> extends ThreadLocal<V> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private Object writeReplace() throws ObjectStreamException {
+            final V instance = this.get();
+            if (instance == null) {
+                throw new NotSerializableException("No instance for this thread");
+            }
+            return new SerializationProxy(instance, false);
+        }
+    }
+    
+    /**
+     * Idle objects for one key in cache-model POOL.  Serializing it takes one 
+     * of the idle objects out and writes that instead;  see SerializationProxy.
+     */
+    private static final class Pool<V> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final ConcurrentLinkedQueue<V> idle = new ConcurrentLinkedQueue<V>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+        
+        public V borrow() {
+            final V instance = this.idle.poll();
+            if (instance != null) {
+                this.idleCount.decrementAndGet();
+            }
+            return instance;
+        }
+        
+        /**
+         * @return false if the pool was full and the object was discarded
+         */
+        public boolean release(V instance, int maxIdle) {
+            if (this.idleCount.incrementAndGet() > maxIdle) {
+                this.idleCount.decrementAndGet();
+                return false;
+            }
+            this.idle.offer(instance);
+            return true;
+        }
+        
+        private Object writeReplace() throws ObjectStreamException {
+            //Idle objects for the same key are interchangeable, one is enough;  
+            //take it out so that nobody borrows it while it's written
+            final V instance = this.borrow();
+            if (instance == null) {
+                throw new NotSerializableException("No idle instances");
+            }
+            return new SerializationProxy(instance, true);
+        }
+    }
+    
+    /**
+     * Serialized form of a ThreadInstanceHolder or Pool, which lets a cache 
+     * that moves entries off the heap (e.g. <code>TieredCache</code>) keep the 
+     * cached object itself;  the holder is rebuilt around it when the entry is 
+     * read back, for the thread that reads it.  The object must be 
+     * Serializable, of course.
+     */
+    private static final class SerializationProxy implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final Object instance;
+        private final boolean pooled;
+        
+        public SerializationProxy(Object instance, boolean pooled) {
+            this.instance = instance;
+            this.pooled = pooled;
+        }
+        
+        private Object readResolve() throws ObjectStreamException {
+            if (this.pooled) {
+                final Pool<Object> rslt = new Pool<Object>();
+                rslt.release(this.instance, poolMaxIdle);
+                return rslt;
+            }
+            final ThreadInstanceHolder<Object> rslt = new ThreadInstanceHolder<Object>();
+            rslt.set(this.instance);
+            return rslt;
+        }
+    }
+    
+    /**
+     * Placeholder for an object that one thread is creating and others may 
+     * wait for.
+     */
+    private static final class PendingLoad<V> {
+        private final Thread loader = Thread.currentThread();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile V instance;
+        private volatile boolean threadSafe;
+        private volatile Throwable failure;
+        
+        public void complete(V instance, boolean threadSafe) {
+            this.instance = instance;
+            this.threadSafe = threadSafe;
+            this.done.countDown();
+        }
+        
+        public void fail(Throwable failure) {
+            this.failure = failure;
+            this.done.countDown();
+        }
+        
+        public V await() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        this.done.await();
+                        break;
+                    }
+                    catch (InterruptedException ie) {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            
+            if (this.failure != null) {
+                throw new RuntimeException("Another thread failed to create the cached object", this.failure);
+            }
+            return this.instance;
+        }
     }
     
     private static final class ThreadLocalCacheEvictionListener<K1, V1> implements CacheEvictionListener<K1, V1> {
         public static final ThreadLocalCacheEvictionListener INSTANCE = new ThreadLocalCacheEvictionListener();
         
         public void onEviction(K1 key, V1 value) {
-            if (value instanceof ThreadLocal) {
-                ((ThreadLocal) value).remove();
+            final Object object = value instanceof Stamped ? ((Stamped) value).value : value;
+            if (object instanceof ThreadLocal) {
+                ((ThreadLocal) object).remove();
             }
         }
     }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.danann.cernunnos;
+
+/**
+ * Optional contract for <code>TaskRequest</code> implementations that can 
+ * resolve attributes by <code>AttributeSlot</code> as well as by name.
+ */
+public interface IndexedTaskRequest extends TaskRequest {
+
+	/**
+	 * Obtains the value of the attribute identified by the specified slot in 
+	 * a single lookup.
+	 * 
+	 * @param slot The interned name of an attribute that may exist.
+	 * @return The value of the attribute, or 
+	 * <code>AttributeSlot.UNDEFINED</code> if there is no such attribute.
+	 */
+	Object findAttribute(AttributeSlot slot);
+
+}
@@ -25,6 +25,9 @@ package org.danann.cernunnos;
  */
 public final class LiteralPhrase implements Phrase {
 
+	// Static Members.
+	private static final Object NOT_CONVERTIBLE = new Object();
+
 	// Instance Members.
 	private final Object value;
 
@@ -64,4 +67,101 @@ public final class LiteralPhrase implements Phrase {
 		return value;
 	}
 
+	/**
+	 * Returns the literal value converted to the specified type, so that 
+	 * callers can parse a constant once instead of on every evaluation.  
+	 * <code>String</code> values are converted to <code>Boolean</code>, 
+	 * <code>Integer</code>, <code>Long</code>, <code>Double</code>, and enum 
+	 * types only when the conversion is exact, i.e. when the converted value 
+	 * prints as the same string (so <code>"true"</code> converts to 
+	 * <code>Boolean</code> but <code>"ture"</code> and <code>"1"</code> do 
+	 * not);  values that already match the type are returned as they are.  
+	 * Use <code>isConvertible</code> to find out first.
+	 *
+	 * @param type The desired type.
+	 * @return The converted value, or <code>null</code> if the value is 
+	 * <code>null</code>.
+	 * @throws IllegalArgumentException If the value cannot be converted 
+	 * exactly to the specified type.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getValue(Class<T> type) {
+
+		// Assertions...
+		if (type == null) {
+			String msg = "Argument 'type' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+
+		final Object rslt = convert(type);
+		if (rslt == NOT_CONVERTIBLE) {
+			String msg = "The literal value '" + value + "' cannot be "
+							+ "converted exactly to type " + type.getName();
+			throw new IllegalArgumentException(msg);
+		}
+		return (T) rslt;
+
+	}
+
+	/**
+	 * Indicates whether <code>getValue</code> can convert the literal value to 
+	 * the specified type.  <code>null</code> is convertible to any type.
+	 *
+	 * @param type The desired type.
+	 * @return <code>true</code> if <code>getValue</code> will succeed for the 
+	 * specified type.
+	 */
+	public boolean isConvertible(Class<?> type) {
+
+		// Assertions...
+		if (type == null) {
+			String msg = "Argument 'type' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+
+		return convert(type) != NOT_CONVERTIBLE;
+
+	}
+
+	/*
+	 * Implementation.
+	 */
+
+	@SuppressWarnings("unchecked")
+	private Object convert(Class<?> type) {
+
+		if (value == null || type.isInstance(value)) {
+			return value;
+		}
+		if (!(value instanceof String)) {
+			return NOT_CONVERTIBLE;
+		}
+
+		final String s = (String) value;
+		final Object rslt;
+		try {
+			if (type == Boolean.class) {
+				rslt = Boolean.valueOf(s);
+			} else if (type == Integer.class) {
+				rslt = Integer.valueOf(s);
+			} else if (type == Long.class) {
+				rslt = Long.valueOf(s);
+			} else if (type == Double.class) {
+				rslt = Double.valueOf(s);
+			} else if (type.isEnum()) {
+				rslt = Enum.valueOf((Class) type, s);
+			} else {
+				return NOT_CONVERTIBLE;
+			}
+		} catch (IllegalArgumentException iae) {
+			return NOT_CONVERTIBLE;
+		}
+
+		// Only exact round-trips;  anything else (e.g. a misspelled boolean, 
+		// which Boolean.valueOf() reads as false) is left for evaluation...
+		final String printed = rslt instanceof Enum ? ((Enum) rslt).name() : rslt.toString();
+		return printed.equals(s) ? rslt : NOT_CONVERTIBLE;
+
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the Cernunnos management beans (e.g. <code>CacheStatistics</code> 
+ * and <code>ExecutionMetrics</code>) to the platform <code>MBeanServer</code>.
+ */
+public final class MBeanUtil {
+
+    /*
+     * Public API.
+     */
+
+    /**
+     * Registers the specified MBean under the specified name, unless 
+     * something is already registered under it.
+     */
+    public static void register(Object mbean, String objectName) {
+
+        // Assertions...
+        if (mbean == null) {
+            String msg = "Argument 'mbean' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        if (objectName == null) {
+            String msg = "Argument 'objectName' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(objectName);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(mbean, name);
+            }
+        } catch (Throwable t) {
+            String msg = "Unable to register the MBean '" + objectName + "'.";
+            throw new RuntimeException(msg, t);
+        }
+
+    }
+
+    /**
+     * Unregisters whatever is registered under the specified name, if 
+     * anything.
+     */
+    public static void unregister(String objectName) {
+
+        // Assertions...
+        if (objectName == null) {
+            String msg = "Argument 'objectName' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Throwable t) {
+            String msg = "Unable to unregister the MBean '" + objectName + "'.";
+            throw new RuntimeException(msg, t);
+        }
+
+    }
+
+    /*
+     * Implementation.
+     */
+
+    private MBeanUtil() {
+        // Static methods only...
+    }
+
+}
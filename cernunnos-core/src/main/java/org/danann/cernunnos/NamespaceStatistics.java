@@ -0,0 +1,143 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.danann.cernunnos.CacheHelper.CacheMode;
+
+/**
+ * Hit, miss, load-time and eviction counters for one cache namespace (see 
+ * {@link CacheHelper.Factory#getCacheNamespace(Serializable)}) used in one 
+ * {@link CacheMode}.  Hits are counted in {@link StripedCounters} because 
+ * they're recorded on the lock-free path of {@link DynamicCacheHelper};  
+ * everything else happens at most once per load.
+ * 
+ * @version $Revision$
+ */
+public final class NamespaceStatistics {
+    private final Serializable namespace;
+    private final CacheMode cacheMode;
+    private final StripedCounters hits = new StripedCounters(1);
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    NamespaceStatistics(Serializable namespace, CacheMode cacheMode) {
+        if (cacheMode == null) {
+            throw new IllegalArgumentException("Argument 'cacheMode' cannot be null.");
+        }
+        
+        this.namespace = namespace;
+        this.cacheMode = cacheMode;
+    }
+    
+    /**
+     * The cache namespace, <code>null</code> for the global namespace.
+     */
+    public Serializable getNamespace() {
+        return this.namespace;
+    }
+    
+    public CacheMode getCacheMode() {
+        return this.cacheMode;
+    }
+    
+    public long getHitCount() {
+        return this.hits.sum(0);
+    }
+    
+    /**
+     * Number of times the factory was asked to create an object.
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+    
+    /**
+     * Time spent in the factory, including failed loads.
+     */
+    public long getLoadNanos() {
+        return this.loadNanos.get();
+    }
+    
+    public long getLoadFailureCount() {
+        return this.loadFailures.get();
+    }
+    
+    /**
+     * Number of cached objects that were evicted from (ALL) or replaced in 
+     * (ONE) the cache.
+     */
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+    
+    /**
+     * Fraction of requests served from the cache, 0 if there were none.
+     */
+    public double getHitRatio() {
+        final long h = this.getHitCount();
+        final long total = h + this.getMissCount();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+    
+    /**
+     * Sets all counters back to zero.  Events recorded during the reset may 
+     * be partially lost.
+     */
+    public void reset() {
+        this.hits.reset();
+        this.misses.set(0L);
+        this.loadNanos.set(0L);
+        this.loadFailures.set(0L);
+        this.evictions.set(0L);
+    }
+    
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder rslt = new StringBuilder();
+        rslt.append(this.namespace).append(" (").append(this.cacheMode).append(")")
+            .append(":  hits=").append(this.getHitCount())
+            .append(", misses=").append(this.getMissCount())
+            .append(", loadMillis=").append(this.getLoadNanos() / 1000000L)
+            .append(", loadFailures=").append(this.getLoadFailureCount())
+            .append(", evictions=").append(this.getEvictionCount());
+        return rslt.toString();
+    }
+    
+    void recordHit() {
+        this.hits.increment(0);
+    }
+    
+    void recordLoad(long nanos, boolean failed) {
+        this.misses.incrementAndGet();
+        this.loadNanos.addAndGet(nanos);
+        if (failed) {
+            this.loadFailures.incrementAndGet();
+        }
+    }
+    
+    void recordEviction() {
+        this.evictions.incrementAndGet();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos;
+
+import java.io.Serializable;
+
+/**
+ * A {@link CacheHelper} that can keep objects that aren't thread-safe in a 
+ * pool (cache-model POOL).  Callers that get an object from a pooling helper 
+ * must give it back once they're done with it;  callers that only know they 
+ * have a <code>CacheHelper</code> should check for this interface with 
+ * <code>instanceof</code>.
+ * 
+ * @param <K>
+ * @param <V>
+ */
+public interface PoolingCacheHelper<K extends Serializable, V> extends CacheHelper<K, V> {
+
+    /**
+     * Gives back an object obtained from {@link #getCachedObject(TaskRequest, TaskResponse, Serializable, Factory)}
+     * once the caller is done with it.  In cache-model POOL this returns the object to the pool for its key;  in the
+     * other modes it does nothing.  Callers that use the object only for the duration of a single call should invoke
+     * this in a finally block.
+     */
+    public abstract void releaseCachedObject(TaskRequest req, TaskResponse res, K key, Factory<K, V> factory, V instance);
+
+}
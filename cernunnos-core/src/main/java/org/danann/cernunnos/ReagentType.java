@@ -16,8 +16,8 @@
 
 package org.danann.cernunnos;
 
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.dom4j.Node;
@@ -60,7 +60,12 @@ public enum ReagentType {
                 throw new IllegalArgumentException(msg);
             }
 
-            Node match = xpath.selectSingleNode(src);
+            Node match;
+            try {
+                match = xpath.selectSingleNode(src);
+            } finally {
+                release(xpath);
+            }
 			
             // We're obligated to intercept empty 
             // TEXT nodes and treat them as null...
@@ -96,7 +101,12 @@ public enum ReagentType {
                 throw new IllegalArgumentException(msg);
             }
 
-            final String value = xpath.valueOf(src).trim();	// do we need to trim?
+            final String value;
+            try {
+                value = xpath.valueOf(src).trim();	// do we need to trim?
+            } finally {
+                release(xpath);
+            }
             return value.length() > 0 ? value : null;
 
         }
@@ -125,8 +135,13 @@ public enum ReagentType {
             }
 
             // The following fancy conversion is here to avoid type safety warnings..
-            final List<?> matches = xpath.selectNodes(src);
-            final List<Node> rslt = new LinkedList<Node>();
+            final List<?> matches;
+            try {
+                matches = xpath.selectNodes(src);
+            } finally {
+                release(xpath);
+            }
+            final List<Node> rslt = new ArrayList<Node>(matches.size());
 
             for (final Iterator<?> it = matches.iterator(); it.hasNext();) {
                 Node match = (Node) it.next();
@@ -157,4 +172,18 @@ public enum ReagentType {
      */
     public abstract Object evaluate(Grammar grammar, Node src, XPath xpath);
 
+    /*
+     * Implementation.
+     */
+
+    /**
+     * Reagent <code>XPath</code> objects are cached per thread, and dom4j 
+     * keeps the namespace context of the last node they were evaluated 
+     * against;  clearing it keeps that node's <code>Document</code> from 
+     * being pinned after the task that came from it is compiled.
+     */
+    private static void release(XPath xpath) {
+        xpath.setNamespaceContext(null);
+    }
+
 }
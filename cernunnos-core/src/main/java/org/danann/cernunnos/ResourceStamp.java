@@ -0,0 +1,149 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos;
+
+import java.io.File;
+import java.io.Serializable;
+import java.net.URL;
+
+/**
+ * Size and modification time of the local file behind a <code>file:</code> or 
+ * <code>jar:</code> URL, taken when an object was read from it.  
+ * {@link DynamicCacheHelper} uses stamps to reload objects from a 
+ * {@link CacheHelper.ResourceFactory} when their file changes.  The file is 
+ * looked at no more than once per check interval, so a cache hit normally 
+ * costs a single clock read.
+ * 
+ * @version $Revision$
+ */
+public final class ResourceStamp implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Default for {@link #setCheckInterval(long)}.
+     */
+    public static final long DEFAULT_CHECK_INTERVAL = 2000L;
+    
+    private static volatile long checkInterval = DEFAULT_CHECK_INTERVAL;
+    
+    private final File file;
+    private final long lastModified;
+    private final long length;
+    private volatile long nextCheck;
+    private volatile boolean modified = false;
+    
+    /**
+     * Sets how often (in milliseconds) cached objects are compared with their 
+     * files.  A negative interval turns modification checks off;  zero checks 
+     * on every cache hit.
+     */
+    public static void setCheckInterval(long millis) {
+        checkInterval = millis;
+    }
+    
+    public static long getCheckInterval() {
+        return checkInterval;
+    }
+    
+    /**
+     * Takes a stamp of the file behind the specified URL.
+     * 
+     * @return A stamp, or <code>null</code> if the URL isn't backed by a local 
+     * file or checks are turned off
+     */
+    public static ResourceStamp forResource(URL resource) {
+        if (resource == null || checkInterval < 0) {
+            return null;
+        }
+        
+        final File f = toFile(resource);
+        return f != null ? new ResourceStamp(f) : null;
+    }
+    
+    public File getFile() {
+        return this.file;
+    }
+    
+    /**
+     * Returns true if the file has a different size or modification time than 
+     * when this stamp was taken.  Once a change is seen this stamp keeps 
+     * reporting it.
+     */
+    public boolean isModified() {
+        if (this.modified) {
+            return true;
+        }
+        
+        final long interval = checkInterval;
+        if (interval < 0) {
+            return false;
+        }
+        
+        final long now = System.currentTimeMillis();
+        if (now < this.nextCheck) {
+            return false;
+        }
+        
+        //NB:  Racing threads may both look at the file, which is harmless
+        this.nextCheck = now + interval;
+        if (this.file.lastModified() != this.lastModified || this.file.length() != this.length) {
+            this.modified = true;
+        }
+        return this.modified;
+    }
+    
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return this.file + " [lastModified=" + this.lastModified + ", length=" + this.length + "]";
+    }
+    
+    private ResourceStamp(File file) {
+        this.file = file;
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        this.nextCheck = System.currentTimeMillis() + checkInterval;
+    }
+    
+    private static File toFile(URL resource) {
+        try {
+            URL u = resource;
+            if ("jar".equals(u.getProtocol())) {
+                //jar:file:/path/to/archive.jar!/entry -- watch the archive
+                final String path = u.getPath();
+                final int separator = path.indexOf("!/");
+                u = new URL(separator != -1 ? path.substring(0, separator) : path);
+            }
+            if (!"file".equals(u.getProtocol())) {
+                return null;
+            }
+            try {
+                return new File(u.toURI());
+            }
+            catch (Exception e) {
+                //Unescaped characters in the URL, use the path as-is
+                return new File(u.getPath());
+            }
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small, fixed set of <code>long</code> counters that many threads update 
+ * at once.  Each thread updates its own stripe (chosen by thread id), so 
+ * concurrent updates don't contend for one memory location;  readers sum the 
+ * stripes.  Used for counters that are recorded on hot paths, such as cache 
+ * hits and task invocations.
+ */
+public final class StripedCounters {
+
+    // Static Members.
+    private static final int STRIPES = stripeCount();
+    private static final int PADDING = 8;   // Keeps each stripe on its own cache line
+
+    // Instance Members.
+    private final int fields;
+    private final AtomicLongArray cells;
+
+    /*
+     * Public API.
+     */
+
+    /**
+     * @param fields The number of counters, at most 8.
+     */
+    public StripedCounters(int fields) {
+
+        // Assertions...
+        if (fields < 1 || fields > PADDING) {
+            String msg = "Argument 'fields' must be between 1 and " + PADDING + ".";
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Instance Members.
+        this.fields = fields;
+        this.cells = new AtomicLongArray(STRIPES * PADDING);
+
+    }
+
+    public void increment(int field) {
+        cells.incrementAndGet(index(field));
+    }
+
+    public void add(int field, long delta) {
+        cells.addAndGet(index(field), delta);
+    }
+
+    /**
+     * Returns the current value of the specified counter.
+     */
+    public long sum(int field) {
+        check(field);
+        long rslt = 0L;
+        for (int i = 0; i < STRIPES; i++) {
+            rslt += cells.get(i * PADDING + field);
+        }
+        return rslt;
+    }
+
+    /**
+     * Sets all counters back to zero.  Updates made during the reset may be 
+     * partially lost.
+     */
+    public void reset() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0L);
+        }
+    }
+
+    /*
+     * Implementation.
+     */
+
+    private int index(int field) {
+        check(field);
+        return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING + field;
+    }
+
+    private void check(int field) {
+        if (field < 0 || field >= fields) {
+            String msg = "Argument 'field' is out of range:  " + field;
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    private static int stripeCount() {
+        // Smallest power of two that's at least twice the number of CPUs...
+        final int target = Math.min(Runtime.getRuntime().availableProcessors() * 2, 64);
+        int rslt = 1;
+        while (rslt < target) {
+            rslt <<= 1;
+        }
+        return rslt;
+    }
+
+}
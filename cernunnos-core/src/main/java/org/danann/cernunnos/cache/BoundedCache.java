@@ -0,0 +1,640 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.danann.cernunnos.CacheHelper.CacheEvictionListener;
+import org.danann.cernunnos.CacheHelper.EvictionAwareCache;
+
+/**
+ * Bounded <code>ConcurrentMap</code> suitable for <code>Attributes.CACHE</code>.  
+ * Entries are evicted in (approximately) least-recently-used order once the 
+ * cache holds more than <code>maxEntries</code> entries or more than 
+ * <code>maxWeight</code> total weight, and optionally expire a fixed time 
+ * after they were last read or written.  Registered 
+ * <code>CacheEvictionListener</code> objects are notified of every entry 
+ * that is evicted or expires (but not of entries that are removed or 
+ * replaced explicitly).
+ * <p>
+ * The cache is divided into independently locked segments, each of which 
+ * enforces its share of the limits;  this is what makes the LRU order 
+ * approximate.  Like <code>ConcurrentHashMap</code>, it doesn't allow 
+ * <code>null</code> keys or values.  Views returned by <code>entrySet</code>, 
+ * <code>keySet</code>, and <code>values</code> are snapshots.
+ * 
+ * @see #fromSpec(String)
+ */
+public class BoundedCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, EvictionAwareCache<K, V> {
+    
+    /**
+     * Default value of <code>maxEntries</code> when none is specified.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final int SEGMENTS = 16;
+    
+    protected final Log logger = LogFactory.getLog(this.getClass());
+    
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Weigher<? super K, ? super V> weigher;
+    private final long expireAfterAccessNanos;
+    private final long expireAfterWriteNanos;
+    private final Segment[] segments;
+    private final CopyOnWriteArrayList<CacheEvictionListener<K, V>> listeners = new CopyOnWriteArrayList<CacheEvictionListener<K, V>>();
+    
+    /**
+     * Calculates the weight of an entry for the <code>maxWeight</code> limit.
+     */
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+    
+    /**
+     * Weighs each entry by a rough estimate of its size in bytes:  strings and 
+     * arrays by their length, collections and maps by their number of elements 
+     * (not counting the elements themselves), anything else as a small 
+     * constant.  Selected in a spec with <code>weigher=estimate</code>;  caches 
+     * that hold large objects of other types should use their own 
+     * <code>Weigher</code>.
+     */
+    public static class EstimatingWeigher implements Weigher<Object, Object> {
+        
+        private static final int OBJECT_BYTES = 64;
+        
+        public int weigh(Object key, Object value) {
+            final long rslt = this.estimate(key) + this.estimate(value);
+            return (int) Math.min(rslt, Integer.MAX_VALUE);
+        }
+        
+        protected long estimate(Object o) {
+            if (o instanceof CharSequence) {
+                return 40L + 2L * ((CharSequence) o).length();
+            }
+            if (o instanceof byte[]) {
+                return 16L + ((byte[]) o).length;
+            }
+            if (o instanceof char[]) {
+                return 16L + 2L * ((char[]) o).length;
+            }
+            if (o instanceof Object[]) {
+                return 16L + 8L * ((Object[]) o).length;
+            }
+            if (o instanceof Collection<?>) {
+                return OBJECT_BYTES + 32L * ((Collection<?>) o).size();
+            }
+            if (o instanceof Map<?, ?>) {
+                return OBJECT_BYTES + 48L * ((Map<?, ?>) o).size();
+            }
+            return OBJECT_BYTES;
+        }
+    }
+    
+    /**
+     * Creates a cache that holds up to {@link #DEFAULT_MAX_ENTRIES} entries.
+     */
+    public BoundedCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+    
+    public BoundedCache(int maxEntries) {
+        this(maxEntries, 0L, 0L);
+    }
+    
+    /**
+     * @param maxEntries Maximum number of entries
+     * @param expireAfterAccessMillis Entries expire this long after they were last read or written;  0 means never
+     * @param expireAfterWriteMillis Entries expire this long after they were written;  0 means never
+     */
+    public BoundedCache(int maxEntries, long expireAfterAccessMillis, long expireAfterWriteMillis) {
+        this(maxEntries, Long.MAX_VALUE, null, expireAfterAccessMillis, expireAfterWriteMillis);
+    }
+    
+    /**
+     * @param maxEntries Maximum number of entries
+     * @param maxWeight Maximum total weight of all entries, as calculated by <code>weigher</code>
+     * @param weigher Calculates the weight of each entry;  <code>null</code> gives each entry a weight of 1
+     * @param expireAfterAccessMillis Entries expire this long after they were last read or written;  0 means never
+     * @param expireAfterWriteMillis Entries expire this long after they were written;  0 means never
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(int maxEntries, long maxWeight, Weigher<? super K, ? super V> weigher, 
+            long expireAfterAccessMillis, long expireAfterWriteMillis) {
+        
+        // Assertions...
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Argument 'maxEntries' must be greater than zero:  " + maxEntries);
+        }
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Argument 'maxWeight' must be greater than zero:  " + maxWeight);
+        }
+        if (expireAfterAccessMillis < 0 || expireAfterWriteMillis < 0) {
+            throw new IllegalArgumentException("Expiration times cannot be negative.");
+        }
+        
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.expireAfterAccessNanos = TimeUnit.MILLISECONDS.toNanos(expireAfterAccessMillis);
+        this.expireAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos(expireAfterWriteMillis);
+        
+        // Small caches use one segment so the LRU order stays meaningful
+        final int segmentCount = maxEntries >= SEGMENTS * SEGMENTS ? SEGMENTS : 1;
+        this.segments = new BoundedCache.Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment(
+                    (maxEntries + segmentCount - 1) / segmentCount,
+                    maxWeight == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1L, maxWeight / segmentCount));
+        }
+    }
+    
+    /**
+     * Creates a cache from a comma-separated list of settings, for example 
+     * <code>"maxEntries=5000, maxWeight=50000000, expireAfterAccessSeconds=600"</code>.  
+     * Supported settings are <code>maxEntries</code>, <code>maxWeight</code>, 
+     * <code>weigher</code>, <code>expireAfterAccessSeconds</code>, and 
+     * <code>expireAfterWriteSeconds</code>;  any that are omitted take their 
+     * defaults ({@link #DEFAULT_MAX_ENTRIES}, no weight limit, and no 
+     * expiration).  The <code>weigher</code> is either <code>estimate</code> 
+     * (an {@link EstimatingWeigher}, the default when <code>maxWeight</code> is 
+     * specified) or the name of a class that implements {@link Weigher} and 
+     * has a public no-argument constructor.
+     */
+    public static <K, V> BoundedCache<K, V> fromSpec(String spec) {
+        
+        // Assertions...
+        if (spec == null) {
+            throw new IllegalArgumentException("Argument 'spec' cannot be null.");
+        }
+        
+        int maxEntries = DEFAULT_MAX_ENTRIES;
+        long maxWeight = Long.MAX_VALUE;
+        String weigherName = null;
+        long expireAfterAccessSeconds = 0L;
+        long expireAfterWriteSeconds = 0L;
+        for (final String setting : spec.split(",")) {
+            if (setting.trim().length() == 0) {
+                continue;
+            }
+            
+            final String[] pair = setting.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Invalid cache setting '" + setting.trim() + "' in spec:  " + spec);
+            }
+            
+            final String name = pair[0].trim();
+            final String value = pair[1].trim();
+            try {
+                if ("maxEntries".equals(name)) {
+                    maxEntries = Integer.parseInt(value);
+                }
+                else if ("maxWeight".equals(name)) {
+                    maxWeight = Long.parseLong(value);
+                }
+                else if ("weigher".equals(name)) {
+                    weigherName = value;
+                }
+                else if ("expireAfterAccessSeconds".equals(name)) {
+                    expireAfterAccessSeconds = Long.parseLong(value);
+                }
+                else if ("expireAfterWriteSeconds".equals(name)) {
+                    expireAfterWriteSeconds = Long.parseLong(value);
+                }
+                else {
+                    throw new IllegalArgumentException("Unknown cache setting '" + name + "' in spec:  " + spec);
+                }
+            }
+            catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("Invalid value for cache setting '" + name + "' in spec:  " + spec, nfe);
+            }
+        }
+        
+        Weigher<Object, Object> weigher = null;
+        if (weigherName != null || maxWeight != Long.MAX_VALUE) {
+            weigher = weigherName == null || "estimate".equals(weigherName) 
+                    ? new EstimatingWeigher() 
+                    : createWeigher(weigherName, spec);
+        }
+        
+        return new BoundedCache<K, V>(maxEntries, maxWeight, weigher, 
+                expireAfterAccessSeconds * 1000L, expireAfterWriteSeconds * 1000L);
+    }
+    
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+    
+    public long getMaxWeight() {
+        return this.maxWeight;
+    }
+    
+    public long getExpireAfterAccessMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.expireAfterAccessNanos);
+    }
+    
+    public long getExpireAfterWriteMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.expireAfterWriteNanos);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.danann.cernunnos.CacheHelper.EvictionAwareCache#registerCacheEvictionListener(org.danann.cernunnos.CacheHelper.CacheEvictionListener)
+     */
+    public void registerCacheEvictionListener(CacheEvictionListener<K, V> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Argument 'listener' cannot be null.");
+        }
+        this.listeners.addIfAbsent(listener);
+    }
+    
+    @Override
+    public V get(Object key) {
+        final Segment segment = this.segmentFor(key);
+        final long now = this.now();
+        final List<Node<K, V>> evicted = new ArrayList<Node<K, V>>(0);
+        V rslt = null;
+        segment.lock.lock();
+        try {
+            final Node<K, V> node = segment.map.get(key);  // NB:  moves the entry to the back of the LRU order
+            if (node != null) {
+                if (this.isExpired(node, now)) {
+                    segment.removeNode(node);
+                    evicted.add(node);
+                }
+                else {
+                    node.accessNanos = now;
+                    rslt = node.value;
+                }
+            }
+        }
+        finally {
+            segment.lock.unlock();
+        }
+        this.notifyListeners(evicted);
+        return rslt;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+    
+    @Override
+    public V put(K key, V value) {
+        return this.put(key, value, false);
+    }
+    
+    public V putIfAbsent(K key, V value) {
+        return this.put(key, value, true);
+    }
+    
+    @Override
+    public V remove(Object key) {
+        final Segment segment = this.segmentFor(key);
+        final long now = this.now();
+        segment.lock.lock();
+        try {
+            final Node<K, V> node = segment.map.get(key);
+            if (node == null) {
+                return null;
+            }
+            segment.removeNode(node);
+            return this.isExpired(node, now) ? null : node.value;
+        }
+        finally {
+            segment.lock.unlock();
+        }
+    }
+    
+    public boolean remove(Object key, Object value) {
+        if (value == null) {
+            return false;
+        }
+        final Segment segment = this.segmentFor(key);
+        final long now = this.now();
+        segment.lock.lock();
+        try {
+            final Node<K, V> node = segment.map.get(key);
+            if (node == null || this.isExpired(node, now) || !value.equals(node.value)) {
+                return false;
+            }
+            segment.removeNode(node);
+            return true;
+        }
+        finally {
+            segment.lock.unlock();
+        }
+    }
+    
+    public V replace(K key, V value) {
+        this.checkNotNull(key, value);
+        final Segment segment = this.segmentFor(key);
+        final long now = this.now();
+        final List<Node<K, V>> evicted = new ArrayList<Node<K, V>>(0);
+        segment.lock.lock();
+        try {
+            final Node<K, V> node = segment.map.get(key);
+            if (node == null || this.isExpired(node, now)) {
+                return null;
+            }
+            segment.putNode(this.createNode(key, value, now));
+            this.evict(segment, now, evicted);
+            return node.value;
+        }
+        finally {
+            segment.lock.unlock();
+            this.notifyListeners(evicted);
+        }
+    }
+    
+    public boolean replace(K key, V oldValue, V newValue) {
+        this.checkNotNull(key, newValue);
+        if (oldValue == null) {
+            throw new NullPointerException();
+        }
+        final Segment segment = this.segmentFor(key);
+        final long now = this.now();
+        final List<Node<K, V>> evicted = new ArrayList<Node<K, V>>(0);
+        segment.lock.lock();
+        try {
+            final Node<K, V> node = segment.map.get(key);
+            if (node == null || this.isExpired(node, now) || !oldValue.equals(node.value)) {
+                return false;
+            }
+            segment.putNode(this.createNode(key, newValue, now));
+            this.evict(segment, now, evicted);
+            return true;
+        }
+        finally {
+            segment.lock.unlock();
+            this.notifyListeners(evicted);
+        }
+    }
+    
+    @Override
+    public int size() {
+        int rslt = 0;
+        for (final Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                rslt += segment.map.size();
+            }
+            finally {
+                segment.lock.unlock();
+            }
+        }
+        return rslt;
+    }
+    
+    @Override
+    public void clear() {
+        for (final Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                segment.map.clear();
+                segment.weight = 0L;
+            }
+            finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Evicts all expired entries now, rather than as they're encountered.
+     */
+    public void cleanUp() {
+        final long now = this.now();
+        for (final Segment segment : this.segments) {
+            final List<Node<K, V>> evicted = new ArrayList<Node<K, V>>(0);
+            segment.lock.lock();
+            try {
+                for (final Iterator<Node<K, V>> it = segment.map.values().iterator(); it.hasNext();) {
+                    final Node<K, V> node = it.next();
+                    if (this.isExpired(node, now)) {
+                        it.remove();
+                        segment.weight -= node.weight;
+                        evicted.add(node);
+                    }
+                }
+            }
+            finally {
+                segment.lock.unlock();
+            }
+            this.notifyListeners(evicted);
+        }
+    }
+    
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        final long now = this.now();
+        final Map<K, V> snapshot = new HashMap<K, V>();
+        for (final Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                for (final Node<K, V> node : segment.map.values()) {
+                    if (!this.isExpired(node, now)) {
+                        snapshot.put(node.key, node.value);
+                    }
+                }
+            }
+            finally {
+                segment.lock.unlock();
+            }
+        }
+        return Collections.unmodifiableMap(snapshot).entrySet();
+    }
+    
+    private V put(K key, V value, boolean onlyIfAbsent) {
+        this.checkNotNull(key, value);
+        final Segment segment = this.segmentFor(key);
+        final long now = this.now();
+        final List<Node<K, V>> evicted = new ArrayList<Node<K, V>>(0);
+        segment.lock.lock();
+        try {
+            V rslt = null;
+            final Node<K, V> existing = segment.map.get(key);
+            if (existing != null) {
+                if (this.isExpired(existing, now)) {
+                    segment.removeNode(existing);
+                    evicted.add(existing);
+                }
+                else {
+                    rslt = existing.value;
+                    if (onlyIfAbsent) {
+                        existing.accessNanos = now;
+                        return rslt;
+                    }
+                }
+            }
+            segment.putNode(this.createNode(key, value, now));
+            this.evict(segment, now, evicted);
+            return rslt;
+        }
+        finally {
+            segment.lock.unlock();
+            this.notifyListeners(evicted);
+        }
+    }
+    
+    /**
+     * Removes expired entries from the least-recently-used end of the 
+     * segment, then as many more as needed to honor the limits.  Must be 
+     * called with the segment locked.
+     */
+    private void evict(Segment segment, long now, List<Node<K, V>> evicted) {
+        final Iterator<Node<K, V>> it = segment.map.values().iterator();
+        while (it.hasNext()) {
+            final Node<K, V> node = it.next();
+            final boolean overLimit = segment.map.size() > segment.maxEntries || segment.weight > segment.maxWeight;
+            if (!overLimit && !this.isExpired(node, now)) {
+                break;
+            }
+            it.remove();
+            segment.weight -= node.weight;
+            evicted.add(node);
+        }
+    }
+    
+    private Node<K, V> createNode(K key, V value, long now) {
+        final int weight = this.weigher != null ? this.weigher.weigh(key, value) : 1;
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weigher returned a negative weight for key:  " + key);
+        }
+        return new Node<K, V>(key, value, weight, now);
+    }
+    
+    private boolean isExpired(Node<K, V> node, long now) {
+        return (this.expireAfterAccessNanos > 0 && now - node.accessNanos >= this.expireAfterAccessNanos)
+            || (this.expireAfterWriteNanos > 0 && now - node.writeNanos >= this.expireAfterWriteNanos);
+    }
+    
+    private long now() {
+        // Don't bother reading the clock if nothing expires
+        return this.expireAfterAccessNanos > 0 || this.expireAfterWriteNanos > 0 ? System.nanoTime() : 0L;
+    }
+    
+    private Segment segmentFor(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return this.segments[h & (this.segments.length - 1)];
+    }
+    
+    private void checkNotNull(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+    }
+    
+    private void notifyListeners(List<Node<K, V>> evicted) {
+        if (evicted.isEmpty()) {
+            return;
+        }
+        for (final Node<K, V> node : evicted) {
+            for (final CacheEvictionListener<K, V> listener : this.listeners) {
+                try {
+                    listener.onEviction(node.key, node.value);
+                }
+                catch (RuntimeException re) {
+                    this.logger.warn("CacheEvictionListener '" + listener + "' failed for key '" + node.key + "'", re);
+                }
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Weigher<Object, Object> createWeigher(String className, String spec) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = BoundedCache.class.getClassLoader();
+        }
+        try {
+            final Class<?> c = Class.forName(className, true, loader);
+            if (!Weigher.class.isAssignableFrom(c)) {
+                throw new IllegalArgumentException("Class '" + className 
+                        + "' does not implement BoundedCache.Weigher in spec:  " + spec);
+            }
+            return (Weigher<Object, Object>) c.newInstance();
+        }
+        catch (IllegalArgumentException iae) {
+            throw iae;
+        }
+        catch (Throwable t) {
+            throw new IllegalArgumentException("Unable to create weigher '" + className + "' in spec:  " + spec, t);
+        }
+    }
+    
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final int weight;
+        private final long writeNanos;
+        private volatile long accessNanos;
+        
+        public Node(K key, V value, int weight, long now) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeNanos = now;
+            this.accessNanos = now;
+        }
+    }
+    
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Node<K, V>> map = new LinkedHashMap<K, Node<K, V>>(16, 0.75f, true);
+        private final int maxEntries;
+        private final long maxWeight;
+        private long weight = 0L;
+        
+        public Segment(int maxEntries, long maxWeight) {
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+        }
+        
+        public void putNode(Node<K, V> node) {
+            final Node<K, V> previous = this.map.put(node.key, node);
+            if (previous != null) {
+                this.weight -= previous.weight;
+            }
+            this.weight += node.weight;
+        }
+        
+        public void removeNode(Node<K, V> node) {
+            this.map.remove(node.key);
+            this.weight -= node.weight;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.danann.cernunnos.CacheStatistics;
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.NamespaceStatistics;
+import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.Reagent;
+import org.danann.cernunnos.ReagentType;
+import org.danann.cernunnos.SimpleFormula;
+import org.danann.cernunnos.SimpleReagent;
+import org.danann.cernunnos.TaskRequest;
+import org.danann.cernunnos.TaskResponse;
+
+/**
+ * Returns the {@link NamespaceStatistics} kept by {@link CacheStatistics}, 
+ * optionally limited to a single cache namespace.
+ * 
+ * @version $Revision$
+ */
+public final class CacheStatisticsPhrase implements Phrase {
+
+	// Instance Members.
+	private Phrase namespace;
+
+	/*
+	 * Public API.
+	 */
+
+	public static final Reagent NAMESPACE = new SimpleReagent("NAMESPACE", "descendant-or-self::text()", ReagentType.PHRASE, 
+				Serializable.class, "Optional cache namespace (e.g. 'CachedScriptEngineFactory') for which statistics should " +
+				"be returned.  If omitted, statistics for every namespace will be returned, most expensive (by total " +
+				"load time) first.", new LiteralPhrase(null));
+
+	public Formula getFormula() {
+		Reagent[] reagents = new Reagent[] {NAMESPACE};
+		return new SimpleFormula(CacheStatisticsPhrase.class, reagents);
+	}
+
+	public void init(EntityConfig config) {
+
+		// Instance Members.
+		this.namespace = (Phrase) config.getValue(NAMESPACE);
+
+	}
+
+	public Object evaluate(TaskRequest req, TaskResponse res) {
+
+		final List<NamespaceStatistics> all = CacheStatistics.getInstance().getNamespaceStatistics();
+
+		final Object ns = namespace.evaluate(req, res);
+		if (ns == null || ns.toString().length() == 0) {
+			return all;
+		}
+
+		final List<NamespaceStatistics> rslt = new ArrayList<NamespaceStatistics>();
+		for (NamespaceStatistics s : all) {
+			if (ns.equals(s.getNamespace()) || ns.toString().equals(String.valueOf(s.getNamespace()))) {
+				rslt.add(s);
+			}
+		}
+		return rslt;
+
+	}
+
+}
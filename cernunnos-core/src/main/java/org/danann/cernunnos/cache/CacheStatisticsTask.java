@@ -0,0 +1,189 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.cache;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.danann.cernunnos.AttributePhrase;
+import org.danann.cernunnos.Attributes;
+import org.danann.cernunnos.CacheHelper.CacheMode;
+import org.danann.cernunnos.CacheStatistics;
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.NamespaceStatistics;
+import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.Reagent;
+import org.danann.cernunnos.ReagentType;
+import org.danann.cernunnos.SimpleFormula;
+import org.danann.cernunnos.SimpleReagent;
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.TaskRequest;
+import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.Tuple;
+
+/**
+ * Writes a report of the largest cache namespaces -- by the number of entries 
+ * they occupy in the shared cache -- along with their {@link CacheStatistics} 
+ * counters.
+ * 
+ * @version $Revision$
+ */
+public final class CacheStatisticsTask implements Task {
+
+	// Instance Members.
+	private Phrase stream;
+	private Phrase cache;
+	private Phrase limit;
+
+	/*
+	 * Public API.
+	 */
+
+	public static final Reagent STREAM = new SimpleReagent("STREAM", "@stream", ReagentType.PHRASE, PrintStream.class,
+					"Optional PrintStream to which the report should be written.  If omitted, this task will use "
+					+ "either: (1) the value of the 'Attributes.STREAM' request attribute if present; or (2) "
+					+ "System.out.", new AttributePhrase(Attributes.STREAM, new LiteralPhrase(System.out)));
+
+	public static final Reagent CACHE = new SimpleReagent("CACHE", "@cache", ReagentType.PHRASE, Map.class,
+					"Optional shared cache whose entries should be counted.  If omitted, the value of the "
+					+ "'Attributes.CACHE' request attribute will be used if present;  otherwise only the "
+					+ "counters will be reported.", new AttributePhrase(Attributes.CACHE, new LiteralPhrase(null)));
+
+	public static final Reagent LIMIT = new SimpleReagent("LIMIT", "@limit", ReagentType.PHRASE, Integer.class,
+					"Optional maximum number of namespaces to report.  The default is 20.", 
+					new LiteralPhrase(new Integer(20)));
+
+	public Formula getFormula() {
+		Reagent[] reagents = new Reagent[] {STREAM, CACHE, LIMIT};
+		final Formula rslt = new SimpleFormula(CacheStatisticsTask.class, reagents);
+		return rslt;
+	}
+
+	public void init(EntityConfig config) {
+
+		// Instance Members.
+		this.stream = (Phrase) config.getValue(STREAM);
+		this.cache = (Phrase) config.getValue(CACHE);
+		this.limit = (Phrase) config.getValue(LIMIT);
+
+	}
+
+	public void perform(TaskRequest req, TaskResponse res) {
+
+		final PrintStream ps = (PrintStream) stream.evaluate(req, res);
+		final Map<?,?> map = (Map<?,?>) cache.evaluate(req, res);
+		final Integer max = (Integer) limit.evaluate(req, res);
+
+		final List<Row> rows = collectRows(map);
+
+		final StringBuilder report = new StringBuilder();
+		report.append("Cache namespaces (").append(rows.size()).append(" total)");
+		if (map != null) {
+			report.append(", ").append(map.size()).append(" cache entries");
+		}
+		report.append(":\n");
+		for (int i = 0; i < rows.size() && i < max.intValue(); i++) {
+			final Row r = rows.get(i);
+			report.append("    ");
+			if (r.statistics != null) {
+				report.append(r.statistics);
+			} else {
+				report.append(r.namespace).append(" (").append(CacheMode.ALL).append(")");
+			}
+			if (map != null && r.mode == CacheMode.ALL) {
+				report.append(", entries=").append(r.entries);
+			}
+			report.append("\n");
+		}
+
+		ps.print(report.toString());
+
+	}
+
+	/*
+	 * Private Stuff.
+	 */
+
+	private static List<Row> collectRows(Map<?,?> map) {
+
+		// Every namespace/mode with statistics...
+		final Map<Tuple<Object,CacheMode>,Row> rows = new HashMap<Tuple<Object,CacheMode>,Row>();
+		for (NamespaceStatistics s : CacheStatistics.getInstance().getNamespaceStatistics()) {
+			final Row r = new Row(s.getNamespace(), s.getCacheMode());
+			r.statistics = s;
+			rows.put(new Tuple<Object,CacheMode>(s.getNamespace(), s.getCacheMode()), r);
+		}
+
+		// Plus the number of entries each one occupies in the shared cache...
+		if (map != null) {
+			for (Object key : map.keySet()) {
+				if (key instanceof Tuple<?,?>) {
+					final Object ns = ((Tuple<?,?>) key).first;
+					final Tuple<Object,CacheMode> t = new Tuple<Object,CacheMode>(ns, CacheMode.ALL);
+					Row r = rows.get(t);
+					if (r == null) {
+						r = new Row(ns, CacheMode.ALL);
+						rows.put(t, r);
+					}
+					r.entries++;
+				}
+			}
+		}
+
+		// Largest first, then most expensive...
+		final List<Row> rslt = new ArrayList<Row>(rows.values());
+		Collections.sort(rslt, new Comparator<Row>() {
+			public int compare(Row r1, Row r2) {
+				if (r1.entries != r2.entries) {
+					return r1.entries > r2.entries ? -1 : 1;
+				}
+				final long t1 = r1.statistics != null ? r1.statistics.getLoadNanos() : 0L;
+				final long t2 = r2.statistics != null ? r2.statistics.getLoadNanos() : 0L;
+				return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1);
+			}
+		});
+		return rslt;
+
+	}
+
+	/*
+	 * Nested Types.
+	 */
+
+	private static final class Row {
+
+		// Instance Members.
+		private final Object namespace;
+		private final CacheMode mode;
+		private NamespaceStatistics statistics;
+		private int entries = 0;
+
+		public Row(Object namespace, CacheMode mode) {
+			this.namespace = namespace;
+			this.mode = mode;
+		}
+
+	}
+
+}
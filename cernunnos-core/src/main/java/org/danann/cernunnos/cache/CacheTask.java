@@ -19,6 +19,12 @@ package org.danann.cernunnos.cache;
 import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.danann.cernunnos.AbstractCacheHelperFactory;
 import org.danann.cernunnos.AbstractContainerTask;
@@ -38,10 +44,17 @@ import org.danann.cernunnos.SimpleReagent;
 import org.danann.cernunnos.Task;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ExecutionTrace;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
 
 /**
  * Caches the results of execting a phrase using a specified cache key and binds the result to an attribute accessible
  * to request attributes.
+ * <p>
+ * If <code>refresh-after</code> is specified, a cached object older than that is still served while a single
+ * background reload replaces it;  only an object older than <code>expire-after</code> makes callers wait for a
+ * reload.
  * 
  * @author Eric Dalquist
  * @version $Revision$
@@ -54,8 +67,12 @@ public final class CacheTask extends AbstractContainerTask {
     private Phrase keyPhrase;
 	private Phrase cacheKeyPhrase;
 	private Phrase threadSafePhrase;
+	private Boolean threadSafe;	// Non-null if THREAD_SAFE is a literal
 	private Phrase factoryPhrase;
     private List<Task> factoryTasks;
+    private Phrase refreshAfterPhrase;
+    private Phrase expireAfterPhrase;
+    private Phrase refreshExecutorPhrase;
 	
 	/*
 	 * Public API.
@@ -81,8 +98,21 @@ public final class CacheTask extends AbstractContainerTask {
                 "The Tasks to execute if the object isn't in the cache. Specifying factory tasks will override the factory attribute", 
                 new LinkedList<Task>());
 
+    public static final Reagent REFRESH_AFTER = new SimpleReagent("REFRESH_AFTER", "@refresh-after", ReagentType.PHRASE, String.class,
+                "Optional age, in seconds, after which the cached object is reloaded in the background.  The old object " +
+                "is returned until the reload completes.  The default is 0 (never).", new LiteralPhrase("0"));
+
+    public static final Reagent EXPIRE_AFTER = new SimpleReagent("EXPIRE_AFTER", "@expire-after", ReagentType.PHRASE, String.class,
+                "Optional age, in seconds, after which the cached object may no longer be returned;  the caller waits " +
+                "while it's reloaded.  The default is 0 (never).", new LiteralPhrase("0"));
+
+    public static final Reagent REFRESH_EXECUTOR = new SimpleReagent("REFRESH_EXECUTOR", "@refresh-executor", ReagentType.PHRASE, 
+                Executor.class, "Optional Executor that runs background reloads.  If omitted, a single shared daemon " +
+                "thread is used.", new LiteralPhrase(null));
+
 	public Formula getFormula() {
-		Reagent[] reagents = new Reagent[] {CacheHelper.CACHE, CacheHelper.CACHE_MODEL, KEY, CACHE_KEY, THREAD_SAFE, FACTORY, SUBTASKS, FACTORY_TASKS};
+		Reagent[] reagents = new Reagent[] {CacheHelper.CACHE, CacheHelper.CACHE_MODEL, KEY, CACHE_KEY, THREAD_SAFE, FACTORY, SUBTASKS, FACTORY_TASKS, 
+		                REFRESH_AFTER, EXPIRE_AFTER, REFRESH_EXECUTOR};
 		final Formula rslt = new SimpleFormula(getClass(), reagents);
 		return rslt;
 	}
@@ -96,17 +126,95 @@ public final class CacheTask extends AbstractContainerTask {
 	    this.keyPhrase = (Phrase) config.getValue(KEY);
         this.cacheKeyPhrase = (Phrase) config.getValue(CACHE_KEY);
         this.threadSafePhrase = (Phrase) config.getValue(THREAD_SAFE);
+        this.threadSafe = SimpleEntityConfig.getConstant(config, THREAD_SAFE, Boolean.class);
         this.factoryPhrase = (Phrase) config.getValue(FACTORY);
         this.factoryTasks = this.loadSubtasks(config, FACTORY_TASKS, false);
+        this.refreshAfterPhrase = (Phrase) config.getValue(REFRESH_AFTER);
+        this.expireAfterPhrase = (Phrase) config.getValue(EXPIRE_AFTER);
+        this.refreshExecutorPhrase = (Phrase) config.getValue(REFRESH_EXECUTOR);
 	}
 
 	public void perform(TaskRequest req, TaskResponse res) {
 	    final Serializable cacheKey = (Serializable)this.cacheKeyPhrase.evaluate(req, res);
-	    final Object rslt = this.cache.getCachedObject(req, res, cacheKey, new SubtaskCachedObjectFactory(req, res));
+	    final long refreshAfter = this.evaluateMillis(this.refreshAfterPhrase, req, res);
+	    final long expireAfter = this.evaluateMillis(this.expireAfterPhrase, req, res);
+	    
+	    final Object rslt;
+	    if (refreshAfter <= 0 && expireAfter <= 0) {
+	        rslt = this.cache.getCachedObject(req, res, cacheKey, new SubtaskCachedObjectFactory(req, res));
+	    }
+	    else {
+	        rslt = this.getTimedObject(req, res, cacheKey, refreshAfter, expireAfter);
+	    }
 	    
         res.setAttribute((String) this.keyPhrase.evaluate(req, res), rslt);
         super.performSubtasks(req, res);
 	}
+	
+	/**
+	 * Returns the value of a {@link TimedValue}, reloading it inline if it has expired or in the background if it's
+	 * due for a refresh.
+	 */
+	private Object getTimedObject(TaskRequest req, TaskResponse res, Serializable cacheKey, long refreshAfter, long expireAfter) {
+	    final SubtaskCachedObjectFactory factory = new SubtaskCachedObjectFactory(req, res);
+	    final TimedValue timedValue = (TimedValue) this.cache.getCachedObject(req, res, cacheKey, new TimedValueFactory(factory));
+	    
+	    if (expireAfter > 0 && timedValue.getAge() >= expireAfter) {
+	        //Only callers that need this object wait for it
+	        synchronized (timedValue) {
+	            if (timedValue.getAge() >= expireAfter) {
+	                timedValue.set(factory.createObject(cacheKey));
+	            }
+	        }
+	    }
+	    else if (refreshAfter > 0 && timedValue.getAge() >= refreshAfter && timedValue.refreshing.compareAndSet(false, true)) {
+	        this.refresh(req, res, cacheKey, timedValue);
+	    }
+	    
+	    return timedValue.value;
+	}
+	
+	/**
+	 * Reloads the object on the refresh executor.  The reload runs against a copy of the current request attributes
+	 * since this request will likely be done before the reload is.
+	 */
+	private void refresh(TaskRequest req, TaskResponse res, final Serializable cacheKey, final TimedValue timedValue) {
+	    Executor executor = (Executor) this.refreshExecutorPhrase.evaluate(req, res);
+	    if (executor == null) {
+	        executor = RefreshExecutorHolder.EXECUTOR;
+	    }
+	    
+	    final RuntimeRequestResponse snapshot = new RuntimeRequestResponse(req.getAttributes());
+	    final SubtaskCachedObjectFactory factory = new SubtaskCachedObjectFactory(snapshot, snapshot);
+	    try {
+	        executor.execute(ExecutionTrace.wrap(new Runnable() {
+	            public void run() {
+	                try {
+	                    timedValue.set(factory.createObject(cacheKey));
+	                }
+	                catch (Throwable t) {
+	                    log.warn("Background refresh failed for cache-key '" + cacheKey + "';  the previous object " +
+	                    		"will be used until it expires.", t);
+	                }
+	                finally {
+	                    timedValue.refreshing.set(false);
+	                }
+	            }
+	        }));
+	    }
+	    catch (RejectedExecutionException ree) {
+	        timedValue.refreshing.set(false);
+	        log.warn("The refresh executor rejected the reload for cache-key '" + cacheKey + "'.", ree);
+	    }
+	}
+	
+	private long evaluateMillis(Phrase secondsPhrase, TaskRequest req, TaskResponse res) {
+	    final Object seconds = secondsPhrase.evaluate(req, res);
+	    if (seconds == null) {
+	        return 0L;
+	    }
+	    return (long) (Double.parseDouble(seconds.toString()) * 1000L);
+	}
 
 	private final class SubtaskCachedObjectFactory extends AbstractCacheHelperFactory<Serializable, Object> {
 	    private final TaskRequest req;
@@ -116,7 +224,9 @@ public final class CacheTask extends AbstractContainerTask {
         public SubtaskCachedObjectFactory(TaskRequest req, TaskResponse res) {
             this.req = req;
             this.res = res;
-            this.threadSafe = Boolean.valueOf((String) CacheTask.this.threadSafePhrase.evaluate(this.req, this.res));
+            this.threadSafe = CacheTask.this.threadSafe != null 
+                    ? CacheTask.this.threadSafe 
+                    : Boolean.valueOf((String) CacheTask.this.threadSafePhrase.evaluate(this.req, this.res));
         }
 
         /* (non-Javadoc)
@@ -172,6 +282,64 @@ public final class CacheTask extends AbstractContainerTask {
         }
 	}
 	
+	/**
+	 * Wraps objects from a {@link SubtaskCachedObjectFactory} in {@link TimedValue}s;  its namespace keeps them apart
+	 * from the plain objects other cache tasks may store under the same cache-key.
+	 */
+	private static final class TimedValueFactory extends AbstractCacheHelperFactory<Serializable, Object> {
+	    private final SubtaskCachedObjectFactory enclosed;
+	    
+	    public TimedValueFactory(SubtaskCachedObjectFactory enclosed) {
+	        this.enclosed = enclosed;
+	    }
+
+        public Object createObject(Serializable key) {
+            final TimedValue rslt = new TimedValue();
+            rslt.set(this.enclosed.createObject(key));
+            return rslt;
+        }
+
+        @Override
+        public boolean isThreadSafe(Serializable key, Object instance) {
+            return this.enclosed.threadSafe;
+        }
+
+        public Object getMutex(Serializable key) {
+            return this.enclosed.getMutex(key);
+        }
+	}
+	
+	/**
+	 * A cached object and the time it was loaded;  replaced in place by reloads.
+	 */
+	private static final class TimedValue {
+	    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+	    private volatile Object value;
+	    private volatile long loadedMillis;
+	    
+	    public void set(Object value) {
+	        this.value = value;
+	        this.loadedMillis = System.currentTimeMillis();
+	    }
+	    
+	    public long getAge() {
+	        return System.currentTimeMillis() - this.loadedMillis;
+	    }
+	}
+	
+	/**
+	 * Lazily creates the default refresh executor, a single daemon thread.
+	 */
+	private static final class RefreshExecutorHolder {
+	    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+	        public Thread newThread(Runnable r) {
+	            final Thread rslt = new Thread(r, "CacheTask-refresh");
+	            rslt.setDaemon(true);
+	            return rslt;
+	        }
+	    });
+	}
+	
 	private final class CacheTaskMutex {
 	}
 }
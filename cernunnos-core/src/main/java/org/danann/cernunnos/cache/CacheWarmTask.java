@@ -0,0 +1,289 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.cache;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.xml.transform.Templates;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.danann.cernunnos.Attributes;
+import org.danann.cernunnos.CacheHelper;
+import org.danann.cernunnos.CurrentDirectoryUrlPhrase;
+import org.danann.cernunnos.DynamicCacheHelper;
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.Reagent;
+import org.danann.cernunnos.ReagentType;
+import org.danann.cernunnos.ResourceHelper;
+import org.danann.cernunnos.SimpleFormula;
+import org.danann.cernunnos.SimpleReagent;
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.TaskRequest;
+import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.Tuple;
+import org.danann.cernunnos.CacheHelper.CacheMode;
+import org.danann.cernunnos.CacheHelper.Factory;
+import org.danann.cernunnos.flow.CachedTaskFactory;
+import org.danann.cernunnos.io.FileIteratorTask;
+import org.danann.cernunnos.runtime.ExecutionTrace;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.danann.cernunnos.xml.XslTransformTask;
+
+/**
+ * Loads stylesheets or scripts into the shared cache ahead of time, several 
+ * at once, under the same keys and namespaces that <code>&lt;xslt&gt;</code> 
+ * and <code>&lt;crn&gt;</code> use to look them up.  Typically invoked once 
+ * when an application starts so that its first requests don't pay to read 
+ * and compile everything.  Documents read by <code>&lt;doc&gt;</code> are 
+ * not supported:  they aren't thread-safe, so each thread reads its own copy 
+ * and one loaded here would only serve the (discarded) loading thread.
+ * 
+ * @version $Revision$
+ */
+public final class CacheWarmTask implements Task {
+    
+    private static final Pattern LIST_DELIM = Pattern.compile(",");
+
+	// Instance Members.
+	private final Factory<Tuple<String, String>, Templates> transformerFactory = new XslTransformTask.CachedTransformerFactory();
+	private Factory<String, Task> taskFactory;
+	private CacheHelper<Tuple<String, String>, Templates> transformerCache;
+	private CacheHelper<String, Task> taskCache;
+	private Phrase type;
+	private Phrase context;
+	private Phrase locations;
+	private Phrase includes;
+	private Phrase excludes;
+	private Phrase threads;
+	private final Log log = LogFactory.getLog(CacheWarmTask.class);	// Don't declare as static in general libraries
+
+	/*
+	 * Public API.
+	 */
+
+	public static final Reagent CACHE_MODEL = new SimpleReagent("CACHE_MODEL", "@cache-model", ReagentType.PHRASE, String.class,
+				"The cache-model with which the resources will be looked up later:  ALL or POOL.  The default is ALL.  " +
+				"(Resources looked up with cache-model ONE are cached by each phrase or task separately, so they " +
+				"can't be loaded ahead of time.)", new LiteralPhrase(CacheMode.ALL.toString()));
+
+	public static final Reagent TYPE = new SimpleReagent("TYPE", "@type", ReagentType.PHRASE, String.class,
+				"The kind of resource to load:  'stylesheet' (as compiled by <xslt>) or 'script' (as compiled by <crn>).");
+
+	public static final Reagent CONTEXT = new SimpleReagent("CONTEXT", "@context", ReagentType.PHRASE, String.class,
+				"Optional context from which relative LOCATIONS are resolved, and beneath which INCLUDES are matched.  " +
+				"It must be the same CONTEXT the resources will be looked up with later.  The default is the default of " +
+				"the corresponding task:  the directory from which Java is executing for stylesheets, and the value of the 'Attributes.ORIGIN' request attribute for scripts.", 
+				new LiteralPhrase(null));
+
+	public static final Reagent LOCATIONS = new SimpleReagent("LOCATIONS", "@locations", ReagentType.PHRASE, String.class,
+				"Optional comma-separated list of resource locations to load, written exactly as they will be " +
+				"looked up later.", null);
+
+	public static final Reagent INCLUDES = new SimpleReagent("INCLUDES", "@includes", ReagentType.PHRASE, String.class,
+				"Optional comma-separated list of pattern expressions (e.g. *.xsl, **/*.crn) specifying files beneath " +
+				"the CONTEXT directory to load, in addition to LOCATIONS.  Each file is loaded under its path relative " +
+				"to CONTEXT.", null);
+
+	public static final Reagent EXCLUDES = new SimpleReagent("EXCLUDES", "@excludes", ReagentType.PHRASE, String.class,
+				"Optional comma-separated list of pattern expressions specifying files to leave out of INCLUDES.", null);
+
+	public static final Reagent THREADS = new SimpleReagent("THREADS", "@threads", ReagentType.PHRASE, String.class,
+				"Number of resources to load at once, defaults to 4.", new LiteralPhrase("4"));
+
+	public Formula getFormula() {
+		Reagent[] reagents = new Reagent[] {CacheHelper.CACHE, CACHE_MODEL, TYPE, CONTEXT, LOCATIONS, 
+							INCLUDES, EXCLUDES, THREADS};
+		final Formula rslt = new SimpleFormula(CacheWarmTask.class, reagents);
+		return rslt;
+	}
+
+	public void init(EntityConfig config) {
+
+		// Instance Members.
+		this.transformerCache = new DynamicCacheHelper<Tuple<String, String>, Templates>(config);
+		this.taskCache = new DynamicCacheHelper<String, Task>(config);
+		this.taskFactory = new CachedTaskFactory(new ScriptRunner(config.getGrammar()));
+		this.type = (Phrase) config.getValue(TYPE);
+		this.context = (Phrase) config.getValue(CONTEXT);
+		this.locations = (Phrase) config.getValue(LOCATIONS);
+		this.includes = (Phrase) config.getValue(INCLUDES);
+		this.excludes = (Phrase) config.getValue(EXCLUDES);
+		this.threads = (Phrase) config.getValue(THREADS);
+
+	}
+
+	public void perform(TaskRequest req, TaskResponse res) {
+	    
+	    final String typeName = (String) this.type.evaluate(req, res);
+	    if ("document".equalsIgnoreCase(typeName)) {
+	        throw new RuntimeException("Documents can't be loaded ahead of time:  each thread that uses <doc> " +
+	        		"reads its own copy, since they aren't thread-safe.");
+	    }
+	    final ResourceType resourceType;
+	    try {
+	        resourceType = ResourceType.valueOf(typeName.toUpperCase());
+	    }
+	    catch (IllegalArgumentException iae) {
+	        throw new RuntimeException("Unsupported TYPE '" + typeName + "';  specify stylesheet or script.", iae);
+	    }
+	    
+	    // Use the same default CONTEXT as the phrase or task that will look these up...
+	    String ctx = (String) this.context.evaluate(req, res);
+	    if (ctx == null) {
+	        ctx = resourceType == ResourceType.SCRIPT 
+	                ? (String) req.getAttribute(Attributes.ORIGIN) 
+	                : (String) new CurrentDirectoryUrlPhrase().evaluate(req, res);
+	    }
+	    
+	    final Set<String> locs = this.getLocations(ctx, req, res);
+	    final int threadCount = Integer.parseInt((String) this.threads.evaluate(req, res));
+	    
+	    // Each load sees its own copy of the request, like a fresh request would...
+	    final List<Callable<Object>> loads = new ArrayList<Callable<Object>>(locs.size());
+	    for (final String loc : locs) {
+	        final RuntimeRequestResponse snapshot = new RuntimeRequestResponse(req.getAttributes());
+	        final String contextLocation = ctx;
+	        loads.add(ExecutionTrace.wrap(new Callable<Object>() {
+	            public Object call() {
+	                return CacheWarmTask.this.load(resourceType, snapshot, new RuntimeRequestResponse(), contextLocation, loc);
+	            }
+	        }));
+	    }
+	    
+	    final long start = System.currentTimeMillis();
+	    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount), new WarmThreadFactory());
+	    int failures = 0;
+	    try {
+	        final List<Future<Object>> results = executor.invokeAll(loads);
+	        int i = 0;
+	        for (final String loc : locs) {
+	            try {
+	                results.get(i++).get();
+	            }
+	            catch (ExecutionException ee) {
+	                failures++;
+	                this.log.warn("Unable to load " + typeName + " '" + loc + "' into the cache;  it will be loaded " +
+	                		"when it's first used.", ee.getCause());
+	            }
+	        }
+	    }
+	    catch (InterruptedException ie) {
+	        Thread.currentThread().interrupt();
+	        this.log.warn("Interrupted while loading resources into the cache", ie);
+	        return;
+	    }
+	    finally {
+	        executor.shutdownNow();
+	    }
+	    
+	    if (this.log.isInfoEnabled()) {
+	        this.log.info("Loaded " + (locs.size() - failures) + " of " + locs.size() + " " + typeName + " resources " +
+	        		"into the cache in " + (System.currentTimeMillis() - start) + "ms");
+	    }
+
+	}
+
+	/*
+	 * Implementation.
+	 */
+	
+	/**
+	 * Gathers LOCATIONS and the files that match INCLUDES beneath the CONTEXT 
+	 * directory, in order and without duplicates.
+	 */
+	private Set<String> getLocations(String ctx, TaskRequest req, TaskResponse res) {
+	    
+	    final Set<String> rslt = new LinkedHashSet<String>();
+	    
+	    final String locs = this.locations != null ? (String) this.locations.evaluate(req, res) : null;
+	    if (locs != null) {
+	        for (final String loc : LIST_DELIM.split(locs)) {
+	            if (loc.trim().length() != 0) {
+	                rslt.add(loc.trim());
+	            }
+	        }
+	    }
+	    
+	    final String incl = this.includes != null ? (String) this.includes.evaluate(req, res) : null;
+	    if (incl != null) {
+	        final String excl = this.excludes != null ? (String) this.excludes.evaluate(req, res) : null;
+	        final File baseDir;
+	        try {
+	            baseDir = new File(ResourceHelper.evaluate(ctx, ".").toURI());
+	        }
+	        catch (Throwable t) {
+	            throw new RuntimeException("INCLUDES requires a CONTEXT in the local file system:  " + ctx, t);
+	        }
+	        for (final File f : FileIteratorTask.getMatchingFiles(baseDir, incl, excl)) {
+	            rslt.add(baseDir.toURI().relativize(f.toURI()).getPath());
+	        }
+	    }
+	    
+	    return rslt;
+	    
+	}
+	
+	private Object load(ResourceType resourceType, TaskRequest req, TaskResponse res, String ctx, String loc) {
+	    switch (resourceType) {
+	        case STYLESHEET:
+	            return this.transformerCache.getCachedObject(req, res, new Tuple<String, String>(ctx, loc), 
+	                        this.transformerFactory);
+	        case SCRIPT:
+	        default:
+	            final URL crn = ResourceHelper.evaluate(ctx, loc);
+	            return this.taskCache.getCachedObject(req, res, crn.toExternalForm(), this.taskFactory);
+	    }
+	}
+	
+	/*
+	 * Nested Types.
+	 */
+	
+	private enum ResourceType {
+	    STYLESHEET,
+	    SCRIPT;
+	}
+	
+	private static final class WarmThreadFactory implements ThreadFactory {
+	    private final AtomicInteger count = new AtomicInteger();
+	    
+	    public Thread newThread(Runnable r) {
+	        final Thread rslt = new Thread(r, "CacheWarmTask-" + this.count.incrementAndGet());
+	        rslt.setDaemon(true);
+	        return rslt;
+	    }
+	}
+
+}
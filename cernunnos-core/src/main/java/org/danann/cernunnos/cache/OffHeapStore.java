@@ -0,0 +1,115 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serialized values held in direct (off-heap) buffers, bounded by their total 
+ * size and dropped in least-recently-used order.  Only the keys and a small 
+ * <code>ByteBuffer</code> per entry stay on the heap.
+ */
+final class OffHeapStore<K> {
+
+    private final long maxBytes;
+    private final LinkedHashMap<K, ByteBuffer> buffers = new LinkedHashMap<K, ByteBuffer>(16, 0.75f, true);
+    private long usedBytes = 0L;
+    
+    public OffHeapStore(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Argument 'maxBytes' must be greater than zero:  " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * Stores the bytes under the key, replacing any earlier bytes.
+     * 
+     * @return Keys that were dropped to make room (including this one, if it 
+     * doesn't fit at all)
+     */
+    public synchronized List<K> put(K key, byte[] bytes) {
+        final List<K> dropped = new ArrayList<K>(0);
+        this.remove(key);
+        if (bytes.length > this.maxBytes) {
+            dropped.add(key);
+            return dropped;
+        }
+        
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        this.buffers.put(key, buffer);
+        this.usedBytes += bytes.length;
+        
+        for (final Iterator<Map.Entry<K, ByteBuffer>> it = this.buffers.entrySet().iterator(); 
+                this.usedBytes > this.maxBytes && it.hasNext();) {
+            final Map.Entry<K, ByteBuffer> eldest = it.next();
+            it.remove();
+            this.usedBytes -= eldest.getValue().capacity();
+            dropped.add(eldest.getKey());
+        }
+        return dropped;
+    }
+    
+    /**
+     * Removes and returns the bytes stored under the key, or <code>null</code>.
+     */
+    public synchronized byte[] remove(Object key) {
+        final ByteBuffer buffer = this.buffers.remove(key);
+        if (buffer == null) {
+            return null;
+        }
+        this.usedBytes -= buffer.capacity();
+        final byte[] rslt = new byte[buffer.capacity()];
+        buffer.duplicate().get(rslt);
+        return rslt;
+    }
+    
+    public synchronized boolean containsKey(Object key) {
+        return this.buffers.containsKey(key);
+    }
+    
+    public synchronized Set<K> keySet() {
+        return new HashSet<K>(this.buffers.keySet());
+    }
+    
+    public synchronized int size() {
+        return this.buffers.size();
+    }
+    
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+    
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+    
+    public synchronized void clear() {
+        this.buffers.clear();
+        this.usedBytes = 0L;
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.danann.cernunnos.CacheHelper.CacheEvictionListener;
+import org.danann.cernunnos.CacheHelper.EvictionAwareCache;
+
+/**
+ * Two-tier <code>ConcurrentMap</code> suitable for <code>Attributes.CACHE</code>.  
+ * Live objects are kept in a {@link BoundedCache};  entries that it evicts are 
+ * serialized into direct (off-heap) buffers instead of being discarded, and 
+ * are deserialized back into the heap tier the next time they're requested.  
+ * This arrangement keeps large, rarely used objects from occupying the heap 
+ * without paying to create them again, as long as they're serializable (dom4j 
+ * documents and JSON objects are, for example).
+ * <p>
+ * Only values that implement <code>Serializable</code> (and serialize 
+ * successfully) are moved off-heap;  others are simply evicted.  The holders 
+ * that <code>DynamicCacheHelper</code> stores for objects that aren't 
+ * thread-safe (cache-model ALL and POOL) serialize the object they hold, so 
+ * such an entry moves off-heap if that object is serializable and, in the 
+ * case of ALL, if the thread that evicts it has one.  The off-heap 
+ * tier is bounded by <code>offHeapMaxBytes</code> and drops entries in 
+ * least-recently-used order.  Registered <code>CacheEvictionListener</code> 
+ * objects are notified of every entry that leaves the cache altogether:  with 
+ * the value if it came from the heap tier, and with <code>null</code> if it 
+ * came from the off-heap tier.
+ * <p>
+ * Like <code>BoundedCache</code>, this class doesn't allow <code>null</code> 
+ * keys or values, and views returned by <code>entrySet</code>, 
+ * <code>keySet</code>, and <code>values</code> are snapshots (which 
+ * deserialize every off-heap entry, so use them sparingly).
+ */
+public class TieredCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, EvictionAwareCache<K, V> {
+    
+    /**
+     * Default value of <code>offHeapMaxBytes</code> when none is specified (64MB).
+     */
+    public static final long DEFAULT_OFF_HEAP_MAX_BYTES = 64L * 1024L * 1024L;
+    
+    protected final Log logger = LogFactory.getLog(this.getClass());
+    
+    private final BoundedCache<K, V> heapTier;
+    private final OffHeapStore<K> offHeapTier;
+    private final CopyOnWriteArrayList<CacheEvictionListener<K, V>> listeners = new CopyOnWriteArrayList<CacheEvictionListener<K, V>>();
+    
+    public TieredCache() {
+        this(new BoundedCache<K, V>(), DEFAULT_OFF_HEAP_MAX_BYTES);
+    }
+    
+    /**
+     * @param heapTier Holds live objects;  entries it evicts (including entries 
+     * that reach <code>expireAfterAccess</code>) move to the off-heap tier
+     * @param offHeapMaxBytes Maximum total size of the serialized entries in the off-heap tier
+     */
+    public TieredCache(BoundedCache<K, V> heapTier, long offHeapMaxBytes) {
+        
+        // Assertions...
+        if (heapTier == null) {
+            throw new IllegalArgumentException("Argument 'heapTier' cannot be null.");
+        }
+        if (heapTier.getExpireAfterWriteMillis() != 0L) {
+            // Entries that expire are stale;  they mustn't be kept off-heap
+            throw new IllegalArgumentException("The heap tier of a TieredCache cannot use expireAfterWrite.");
+        }
+        
+        this.heapTier = heapTier;
+        this.offHeapTier = new OffHeapStore<K>(offHeapMaxBytes);
+        this.heapTier.registerCacheEvictionListener(new Demoter());
+    }
+    
+    /**
+     * Number of entries currently held in serialized form off the heap.
+     */
+    public int getOffHeapSize() {
+        return this.offHeapTier.size();
+    }
+    
+    /**
+     * Total size of the serialized entries currently held off the heap.
+     */
+    public long getOffHeapBytes() {
+        return this.offHeapTier.getUsedBytes();
+    }
+    
+    public long getOffHeapMaxBytes() {
+        return this.offHeapTier.getMaxBytes();
+    }
+    
+    /* (non-Javadoc)
+     * @see org.danann.cernunnos.CacheHelper.EvictionAwareCache#registerCacheEvictionListener(org.danann.cernunnos.CacheHelper.CacheEvictionListener)
+     */
+    public void registerCacheEvictionListener(CacheEvictionListener<K, V> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Argument 'listener' cannot be null.");
+        }
+        this.listeners.addIfAbsent(listener);
+    }
+    
+    @Override
+    public V get(Object key) {
+        final V rslt = this.heapTier.get(key);
+        if (rslt != null) {
+            return rslt;
+        }
+        return this.promote(key);
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+    
+    @Override
+    public V put(K key, V value) {
+        final V rslt = this.heapTier.put(key, value);
+        this.offHeapTier.remove(key);
+        return rslt;
+    }
+    
+    public V putIfAbsent(K key, V value) {
+        final V existing = this.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        return this.heapTier.putIfAbsent(key, value);
+    }
+    
+    @Override
+    public V remove(Object key) {
+        final V rslt = this.heapTier.remove(key);
+        final byte[] bytes = this.offHeapTier.remove(key);
+        if (rslt == null && bytes != null) {
+            return this.deserialize(key, bytes);
+        }
+        return rslt;
+    }
+    
+    public boolean remove(Object key, Object value) {
+        this.get(key);  // NB:  brings the entry back from the off-heap tier
+        return this.heapTier.remove(key, value);
+    }
+    
+    public V replace(K key, V value) {
+        this.get(key);
+        return this.heapTier.replace(key, value);
+    }
+    
+    public boolean replace(K key, V oldValue, V newValue) {
+        this.get(key);
+        return this.heapTier.replace(key, oldValue, newValue);
+    }
+    
+    @Override
+    public int size() {
+        return this.heapTier.size() + this.offHeapTier.size();
+    }
+    
+    @Override
+    public void clear() {
+        this.heapTier.clear();
+        this.offHeapTier.clear();
+    }
+    
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        final Map<K, V> snapshot = new HashMap<K, V>();
+        for (final K key : this.offHeapTier.keySet()) {
+            final V value = this.peekOffHeap(key);
+            if (value != null) {
+                snapshot.put(key, value);
+            }
+        }
+        for (final Map.Entry<K, V> entry : this.heapTier.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue());
+        }
+        return Collections.unmodifiableMap(snapshot).entrySet();
+    }
+    
+    /*
+     * Implementation.
+     */
+    
+    /**
+     * Moves the entry for the specified key (if any) from the off-heap tier 
+     * back into the heap tier and returns it.
+     */
+    @SuppressWarnings("unchecked")
+    private V promote(Object key) {
+        final byte[] bytes = this.offHeapTier.remove(key);
+        if (bytes == null) {
+            return null;
+        }
+        
+        final V value = this.deserialize(key, bytes);
+        if (value == null) {
+            this.notifyListeners((K) key, null);
+            return null;
+        }
+        
+        final V existing = this.heapTier.putIfAbsent((K) key, value);
+        return existing != null ? existing : value;
+    }
+    
+    /**
+     * Reads an off-heap entry without moving it.
+     */
+    private V peekOffHeap(K key) {
+        final byte[] bytes = this.offHeapTier.remove(key);
+        if (bytes == null) {
+            return null;
+        }
+        this.offHeapTier.put(key, bytes);
+        return this.deserialize(key, bytes);
+    }
+    
+    private byte[] serialize(K key, V value) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            return bytes.toByteArray();
+        }
+        catch (IOException ioe) {
+            if (this.logger.isDebugEnabled()) {
+                this.logger.debug("Unable to move the entry for key '" + key + "' off the heap;  it will be evicted instead", ioe);
+            }
+            return null;
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private V deserialize(Object key, byte[] bytes) {
+        try {
+            final ObjectInputStream in = new ContextObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return (V) in.readObject();
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (Exception e) {
+            this.logger.warn("Unable to restore the entry for key '" + key + "' from off the heap;  it will be evicted instead", e);
+            return null;
+        }
+    }
+    
+    private void notifyListeners(K key, V value) {
+        for (final CacheEvictionListener<K, V> listener : this.listeners) {
+            try {
+                listener.onEviction(key, value);
+            }
+            catch (RuntimeException re) {
+                this.logger.warn("CacheEvictionListener '" + listener + "' failed for key '" + key + "'", re);
+            }
+        }
+    }
+    
+    /*
+     * Nested Types.
+     */
+    
+    /**
+     * Moves entries evicted from the heap tier into the off-heap tier.
+     */
+    private final class Demoter implements CacheEvictionListener<K, V> {
+        
+        public void onEviction(K key, V value) {
+            
+            // A newer value may already have replaced this one...
+            if (TieredCache.this.heapTier.containsKey(key)) {
+                return;
+            }
+            
+            final byte[] bytes = value instanceof Serializable ? TieredCache.this.serialize(key, value) : null;
+            if (bytes == null) {
+                TieredCache.this.notifyListeners(key, value);
+                return;
+            }
+            
+            final List<K> dropped = TieredCache.this.offHeapTier.put(key, bytes);
+            for (final K droppedKey : dropped) {
+                TieredCache.this.notifyListeners(droppedKey, null);
+            }
+        }
+        
+    }
+    
+    /**
+     * Resolves classes through the thread context ClassLoader, since cached 
+     * objects commonly come from libraries that Cernunnos itself can't see.
+     */
+    private static final class ContextObjectInputStream extends ObjectInputStream {
+        
+        public ContextObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+        
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, loader);
+                }
+                catch (ClassNotFoundException cnfe) {
+                    // Fall back to the default behavior...
+                }
+            }
+            return super.resolveClass(desc);
+        }
+        
+    }
+
+}
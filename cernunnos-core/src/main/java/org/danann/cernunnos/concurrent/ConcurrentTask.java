@@ -16,6 +16,8 @@ import org.danann.cernunnos.SimpleFormula;
 import org.danann.cernunnos.SimpleReagent;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.runtime.ExecutionTrace;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
 
 /**
  * @author Eric Dalquist
@@ -25,6 +27,7 @@ public class ConcurrentTask extends AbstractContainerTask {
 
     private Phrase executorServicePhrase;
     private Phrase failFastPhrase;
+    private Boolean failFast;   // Non-null if FAIL_FAST is a literal
 
     public static final Reagent EXECUTOR_SERVICE = new SimpleReagent("EXECUTOR_SERVICE", "@executor-service", ReagentType.PHRASE,
     			ExecutorService.class, "Optional instance of ExecutorService.  The default is a request attribute under the " +
@@ -47,6 +50,7 @@ public class ConcurrentTask extends AbstractContainerTask {
         super.init(config);        
         this.executorServicePhrase = (Phrase) config.getValue(EXECUTOR_SERVICE);
         this.failFastPhrase = (Phrase) config.getValue(FAIL_FAST);
+        this.failFast = SimpleEntityConfig.getConstant(config, FAIL_FAST, Boolean.class);
     }
     
     /* (non-Javadoc)
@@ -55,7 +59,9 @@ public class ConcurrentTask extends AbstractContainerTask {
     public void perform(final TaskRequest req, final TaskResponse res) {
     	
         final ExecutorService executorService = (ExecutorService) executorServicePhrase.evaluate(req, res);
-        final boolean failFast = Boolean.parseBoolean((String) this.failFastPhrase.evaluate(req, res));
+        final boolean failFast = this.failFast != null 
+                ? this.failFast 
+                : Boolean.parseBoolean((String) this.failFastPhrase.evaluate(req, res));
         
         // Copy all attributes into the response to ensure changes to higher level request objects don't
         // break execution of child tasks.
@@ -65,8 +71,8 @@ public class ConcurrentTask extends AbstractContainerTask {
         }
         
         
-        //Submit the sub-tasks to the thread pool
-        executorService.submit(new Runnable() {
+        //Submit the sub-tasks to the thread pool, traced like the rest of the script
+        executorService.submit(ExecutionTrace.wrap(new Runnable() {
             public void run() {
                 try {
                     ConcurrentTask.this.performSubtasks(req, res);
@@ -91,7 +97,7 @@ public class ConcurrentTask extends AbstractContainerTask {
                     log.error("Exception thrown while performing subtask in its own thread." + msg, t);
                 }
             }
-        });
+        }));
         
     }
     
@@ -16,6 +16,7 @@ import org.danann.cernunnos.SimpleFormula;
 import org.danann.cernunnos.SimpleReagent;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
 
 /**
  * @author Eric Dalquist
@@ -27,6 +28,10 @@ public class ThreadPoolTask extends AbstractContainerTask {
     private Phrase threadsPhrase;
     private Phrase queueRatioPhrase;
     private Phrase useExistingPhrase;
+    // Non-null if the corresponding reagent is a literal
+    private Integer threads;
+    private Integer queueRatio;
+    private Boolean useExisting;
 
     public static final Reagent ATTRIBUTE_NAME = new SimpleReagent("ATTRIBUTE_NAME", "@attribute-name", ReagentType.PHRASE, String.class,
              "Optional name under which the new ExecutorService will be registered as a request attribute.  If omitted, " +
@@ -58,6 +63,9 @@ public class ThreadPoolTask extends AbstractContainerTask {
          this.threadsPhrase = (Phrase) config.getValue(THREADS);
          this.queueRatioPhrase = (Phrase) config.getValue(QUEUE_RATIO);
          this.useExistingPhrase = (Phrase) config.getValue(USE_EXISTING);
+         this.threads = SimpleEntityConfig.getConstant(config, THREADS, Integer.class);
+         this.queueRatio = SimpleEntityConfig.getConstant(config, QUEUE_RATIO, Integer.class);
+         this.useExisting = SimpleEntityConfig.getConstant(config, USE_EXISTING, Boolean.class);
      }
 
      /* (non-Javadoc)
@@ -65,7 +73,9 @@ public class ThreadPoolTask extends AbstractContainerTask {
       */
      public void perform(TaskRequest req, TaskResponse res) {
          final String poolAttributeName = (String) this.attributeNamePhrase.evaluate(req, res);
-         final boolean useExisting = Boolean.valueOf((String) this.useExistingPhrase.evaluate(req, res));
+         final boolean useExisting = this.useExisting != null 
+                 ? this.useExisting 
+                 : Boolean.valueOf((String) this.useExistingPhrase.evaluate(req, res));
          
          final ExecutorService executorService;
          final boolean usingExisting;
@@ -76,8 +86,12 @@ public class ThreadPoolTask extends AbstractContainerTask {
          }
          else {
              //No existing pool or configured to ignore it, create a new pool
-             final int threads = Integer.parseInt((String) this.threadsPhrase.evaluate(req, res));
-             final int queueRatio = Integer.parseInt((String) this.queueRatioPhrase.evaluate(req, res));
+             final int threads = this.threads != null 
+                     ? this.threads 
+                     : Integer.parseInt((String) this.threadsPhrase.evaluate(req, res));
+             final int queueRatio = this.queueRatio != null 
+                     ? this.queueRatio 
+                     : Integer.parseInt((String) this.queueRatioPhrase.evaluate(req, res));
              
              if (this.log.isDebugEnabled()) {
                  this.log.debug("Creating ThreadPoolExecutor with " + threads + " threads and queue space of " + (threads * queueRatio));
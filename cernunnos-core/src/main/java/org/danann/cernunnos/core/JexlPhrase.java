@@ -26,6 +26,7 @@ import org.danann.cernunnos.DynamicCacheHelper;
 import org.danann.cernunnos.EntityConfig;
 import org.danann.cernunnos.Formula;
 import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.PoolingCacheHelper;
 import org.danann.cernunnos.Reagent;
 import org.danann.cernunnos.ReagentType;
 import org.danann.cernunnos.SimpleFormula;
@@ -40,7 +41,7 @@ public final class JexlPhrase implements Phrase {
     }
 
 	// Instance Members.
-    private CacheHelper<String, Expression> expressionCache;
+    private PoolingCacheHelper<String, Expression> expressionCache;
     private Phrase expression;
 	
 	/*
@@ -58,7 +59,7 @@ public final class JexlPhrase implements Phrase {
 	public void init(EntityConfig config) {
 
 		// Instance Members.
-	    this.expressionCache = new DynamicCacheHelper<String, Expression>(config);
+	    this.expressionCache = new DynamicCacheHelper<String, Expression>(config, true);
         this.expression = (Phrase) config.getValue(EXPRESSION);
 
 	}
@@ -79,6 +80,9 @@ public final class JexlPhrase implements Phrase {
 		catch (Throwable t) {
 			throw new RuntimeException("Unable to evaluate the following JEXL expression:  " + exp, t);
 		}
+		finally {
+		    this.expressionCache.releaseCachedObject(req, res, exp, CachableExpressionFactory.INSTANCE, e);
+		}
 	}
 	
 
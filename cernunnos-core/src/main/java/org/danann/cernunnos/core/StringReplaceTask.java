@@ -31,6 +31,7 @@ import org.danann.cernunnos.SimpleFormula;
 import org.danann.cernunnos.SimpleReagent;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
 
 public final class StringReplaceTask extends AbstractContainerTask {
 
@@ -39,6 +40,7 @@ public final class StringReplaceTask extends AbstractContainerTask {
 	private Phrase regex;
 	private Phrase replacement;
 	private Phrase dotall;
+	private Pattern pattern;	// Compiled in init() if REGEX & DOTALL are literals
 
 	/*
 	 * Public API.
@@ -75,19 +77,23 @@ public final class StringReplaceTask extends AbstractContainerTask {
 		this.replacement = (Phrase) config.getValue(REPLACEMENT);
 		this.dotall = (Phrase) config.getValue(DOTALL);
 
+		final String x = SimpleEntityConfig.getConstant(config, REGEX, String.class);
+		final Boolean d = SimpleEntityConfig.getConstant(config, DOTALL, Boolean.class);
+		if (x != null && d != null) {
+			this.pattern = compile(x, d);
+		}
+
 	}
 
 	public void perform(TaskRequest req, TaskResponse res) {
 
 		String s = (String) string.evaluate(req, res);
-		String x = (String) regex.evaluate(req, res);
 		String r = (String) replacement.evaluate(req, res);
 
-		Pattern p = null;
-		if ((Boolean) dotall.evaluate(req, res)) {
-			p = Pattern.compile(x, Pattern.DOTALL);
-		} else {
-			p = Pattern.compile(x);
+		Pattern p = pattern;
+		if (p == null) {
+			String x = (String) regex.evaluate(req, res);
+			p = compile(x, (Boolean) dotall.evaluate(req, res));
 		}
 
 	    String rslt = p.matcher(s).replaceAll(r);
@@ -97,4 +103,12 @@ public final class StringReplaceTask extends AbstractContainerTask {
 
 	}
 
+	/*
+	 * Implementation.
+	 */
+
+	private static Pattern compile(String regex, boolean dotall) {
+		return dotall ? Pattern.compile(regex, Pattern.DOTALL) : Pattern.compile(regex);
+	}
+
 }
\ No newline at end of file
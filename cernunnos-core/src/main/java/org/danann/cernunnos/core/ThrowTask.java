@@ -31,6 +31,7 @@ import org.danann.cernunnos.SimpleReagent;
 import org.danann.cernunnos.Task;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
 
 public final class ThrowTask implements Task {
     protected final Log log = LogFactory.getLog(this.getClass());
@@ -56,7 +57,7 @@ public final class ThrowTask implements Task {
 	    
 		// Instance Members.
 		this.exceptionPhrase = (Phrase) config.getValue(EXCEPTION);
-		this.config = config;
+		this.config = SimpleEntityConfig.compact(config);	// Only for error messages
 	}
 
 	public void perform(TaskRequest req, TaskResponse res) {
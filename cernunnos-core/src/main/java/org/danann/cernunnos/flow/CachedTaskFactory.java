@@ -16,14 +16,18 @@
 
 package org.danann.cernunnos.flow;
 
+import java.net.MalformedURLException;
+import java.net.URL;
+
 import org.danann.cernunnos.AbstractCacheHelperFactory;
 import org.danann.cernunnos.Task;
+import org.danann.cernunnos.CacheHelper.ResourceFactory;
 import org.danann.cernunnos.runtime.ScriptRunner;
 
 /**
  * Factory to create new Task instances
  */
-public class CachedTaskFactory extends AbstractCacheHelperFactory<String, Task> {
+public class CachedTaskFactory extends AbstractCacheHelperFactory<String, Task> implements ResourceFactory<String, Task> {
     //Hide factory mutex to avoid unforseen sync problems
     private enum CachedTaskFactoryMutex {
         INSTANCE;
@@ -42,6 +46,18 @@ public class CachedTaskFactory extends AbstractCacheHelperFactory<String, Task>
         return this.runner.compileTask(key);
     }
 
+    /* (non-Javadoc)
+     * @see org.danann.cernunnos.CacheHelper.ResourceFactory#getResource(java.io.Serializable)
+     */
+    public URL getResource(String key) {
+        try {
+            return new URL(key);
+        }
+        catch (MalformedURLException mue) {
+            return null;
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.danann.cernunnos.CacheHelper.Factory#getMutex(java.lang.Object)
      */
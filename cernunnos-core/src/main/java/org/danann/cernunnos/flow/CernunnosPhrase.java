@@ -36,6 +36,7 @@ import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
 import org.danann.cernunnos.CacheHelper.Factory;
 import org.danann.cernunnos.runtime.ScriptRunner;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
 
 public final class CernunnosPhrase implements Phrase {
 
@@ -69,7 +70,7 @@ public final class CernunnosPhrase implements Phrase {
         resource.init(config);
         this.taskFactory = new CachedTaskFactory(this.runner);
         this.taskCache = new DynamicCacheHelper<String, Task>(config);
-        this.config = config;
+        this.config = SimpleEntityConfig.compact(config);  // Only for error messages
 
 	}
 
@@ -34,6 +34,7 @@ import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
 import org.danann.cernunnos.CacheHelper.Factory;
 import org.danann.cernunnos.runtime.ScriptRunner;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
 
 public final class CernunnosTask implements Task {
 
@@ -67,7 +68,7 @@ public final class CernunnosTask implements Task {
         resource.init(config);
 		this.runner = new ScriptRunner(config.getGrammar());
 		this.taskFactory = new CachedTaskFactory(this.runner);
-		this.config = config;
+		this.config = SimpleEntityConfig.compact(config);	// Only for error messages
 		this.task = (Phrase) config.getValue(TASK);
 
 	}
@@ -19,7 +19,6 @@ package org.danann.cernunnos.flow;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -40,7 +39,7 @@ import org.danann.cernunnos.TaskResponse;
 public final class ChooseTask implements Task {
 
 	// Instance Members.
-	private List<IfTask> whenList;
+	private IfTask[] whenList;
 	private IfTask otherwise;
 
 	/*
@@ -66,14 +65,15 @@ public final class ChooseTask implements Task {
 
 		// Instance Members.
 		List<?> wElements = (List<?>) config.getValue(WHEN);
-		this.whenList = new LinkedList<IfTask>();
+		this.whenList = new IfTask[wElements.size()];
+		int i = 0;
 		for (final Iterator<?> wIt = wElements.iterator(); wIt.hasNext();) {
 			Element e = (Element) wIt.next();
 			IfTask k = new IfTask();
 			EntityConfig ec = new EntityConfigImpl(config.getGrammar(), 
 					"<when>", e.getUniquePath(), k.getFormula(), e);
 			k.init(ec);
-			whenList.add(k);
+			whenList[i++] = k;
 		}
 		
 		List<?> oElements = (List<?>) config.getValue(OTHERWISE);
@@ -108,25 +108,12 @@ public final class FileIteratorTask extends AbstractContainerTask {
 		}
 
 		String incl = (String) includes.evaluate(req, res);
-		String[] inclTokens = LIST_DELIM.split(incl);
-		List<String>[] inclStacks = new List[inclTokens.length];
-		for (int i=0; i < inclTokens.length; i++) {
-			inclStacks[i] = Arrays.asList(PATH_DELIM.split(inclTokens[i]));
-		}
-
-		String excl = "[Not Evaluated]";
+		String excl = excludes != null ? (String) excludes.evaluate(req, res) : null;
 
-		Set<File> fileSet = getMatchingDescendants(baseDir, inclStacks);
+		Set<File> fileSet = getMatchingFiles(baseDir, incl, excl);
 
-		if (excludes != null) {
-			excl = (String) excludes.evaluate(req, res);
-			String[] exclTokens = LIST_DELIM.split(excl);
-			List<String>[] exclStacks = new List[exclTokens.length];
-			for (int i=0; i < exclTokens.length; i++) {
-				exclStacks[i] = Arrays.asList(PATH_DELIM.split(exclTokens[i]));
-			}
-			Set<File> exclSet = getMatchingDescendants(baseDir, exclStacks);
-			fileSet.removeAll(exclSet);
+		if (excl == null) {
+			excl = "[Not Evaluated]";
 		}
 
 		// Report on the # of matched files...
@@ -178,10 +165,52 @@ public final class FileIteratorTask extends AbstractContainerTask {
 		}
 	}
 
+	/**
+	 * Finds the files beneath <code>baseDir</code> that match the specified 
+	 * patterns, in the same way as the INCLUDES and EXCLUDES reagents.
+	 * 
+	 * @param baseDir Directory from which to begin matching files
+	 * @param includes Comma-separated list of pattern expressions specifying 
+	 * files to include (e.g. *, *.jpg, **&#47;*.java)
+	 * @param excludes Optional comma-separated list of pattern expressions 
+	 * specifying files to exclude;  may be <code>null</code>
+	 * @return The matching files, in order
+	 */
+	public static Set<File> getMatchingFiles(File baseDir, String includes, String excludes) {
+
+		// Assertions...
+		if (baseDir == null) {
+			String msg = "Argument 'baseDir' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+		if (includes == null) {
+			String msg = "Argument 'includes' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+
+		Set<File> rslt = getMatchingDescendants(baseDir, toStacks(includes));
+		if (excludes != null) {
+			rslt.removeAll(getMatchingDescendants(baseDir, toStacks(excludes)));
+		}
+
+		return rslt;
+
+	}
+
 	/*
 	 * Implementation.
 	 */
 
+	@SuppressWarnings("unchecked")
+	private static List<String>[] toStacks(String patterns) {
+		String[] tokens = LIST_DELIM.split(patterns);
+		List<String>[] rslt = new List[tokens.length];
+		for (int i=0; i < tokens.length; i++) {
+			rslt[i] = Arrays.asList(PATH_DELIM.split(tokens[i]));
+		}
+		return rslt;
+	}
+
 	private static Set<File> getMatchingDescendants(File f, List<String>[] stackLists) {
 
 		Set<File> rslt = new TreeSet<File>();
@@ -18,6 +18,7 @@ package org.danann.cernunnos.json;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 
 import net.sf.json.JSONObject;
@@ -34,6 +35,7 @@ import org.danann.cernunnos.ResourceHelper;
 import org.danann.cernunnos.SimpleFormula;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.CacheHelper.ResourceFactory;
 
 public final class ParseJsonPhrase implements Phrase {
     // Instance Members.
@@ -69,7 +71,8 @@ public final class ParseJsonPhrase implements Phrase {
         
     }
     
-    protected static final class JsonFactory extends AbstractCacheHelperFactory<String, JSONObject> {
+    protected static final class JsonFactory extends AbstractCacheHelperFactory<String, JSONObject> 
+            implements ResourceFactory<String, JSONObject> {
 
         public JSONObject createObject(String key) {
             InputStream inpt = null;
@@ -102,6 +105,18 @@ public final class ParseJsonPhrase implements Phrase {
             }
         }
 
+        /* (non-Javadoc)
+         * @see org.danann.cernunnos.CacheHelper.ResourceFactory#getResource(java.io.Serializable)
+         */
+        public URL getResource(String key) {
+            try {
+                return new URL(key);
+            }
+            catch (MalformedURLException mue) {
+                return null;
+            }
+        }
+
         public Object getMutex(String key) {
             return key;
         }
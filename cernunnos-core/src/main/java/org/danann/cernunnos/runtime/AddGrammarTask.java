@@ -40,7 +40,6 @@ import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
 import org.dom4j.Node;
-import org.dom4j.io.SAXReader;
 
 @Deprecated
 public final class AddGrammarTask extends AbstractContainerTask {
@@ -92,10 +91,9 @@ public final class AddGrammarTask extends AbstractContainerTask {
 		}
 
 		// Read by passing a URL -- don't manage the URLConnection yourself...
-		final SAXReader saxReader = new SAXReader();
 		final Document doc;
         try {
-            doc = saxReader.read(loc);
+            doc = ScriptCache.load(loc, config.getGrammar());
         }
         catch (DocumentException de) {
             throw new RuntimeException("Failed to parse Document from loaction '" + loc + "'", de);
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the small, branch-free classes <code>TaskCompiler</code> generates.
+ * Only the parts of the class file format those classes need are supported:
+ * a constant pool of classes, strings (UTF8), and member references;  fields;
+ * and methods with a <code>Code</code> attribute.  Classes are written in
+ * the Java 5 format (version 49.0), which doesn't require
+ * <code>StackMapTable</code> attributes.
+ */
+final class ClassFileBuilder {
+
+    // Access flags...
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_PROTECTED = 0x0004;
+    static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // Constant pool tags...
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    // Instance Members.
+    private final Map<String,Integer> constants = new HashMap<String,Integer>();
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private int poolCount = 1;   // Entry 0 is reserved
+    private final ByteArrayOutputStream members = new ByteArrayOutputStream();
+    private int fieldCount = 0;
+    private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private int methodCount = 0;
+    private final int thisClass;
+    private final int superClass;
+
+    /*
+     * Package API.
+     */
+
+    /**
+     * Creates a builder for a public, final class.
+     *
+     * @param name Internal name (e.g. <code>java/lang/Object</code>) of the
+     * class to write.
+     * @param superName Internal name of its superclass.
+     */
+    ClassFileBuilder(String name, String superName) {
+
+        // Assertions.
+        if (name == null) {
+            String msg = "Argument 'name' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        if (superName == null) {
+            String msg = "Argument 'superName' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Instance Members.
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+
+    }
+
+    int classRef(String internalName) {
+        final Integer known = constants.get("C" + internalName);
+        if (known != null) {
+            return known.intValue();
+        }
+        final int nameIndex = utf8(internalName);
+        final DataOutputStream out = new DataOutputStream(pool);
+        try {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(nameIndex);
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);    // Not possible in memory
+        }
+        return register("C" + internalName);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+    }
+
+    void addField(int access, String name, String descriptor) {
+        final DataOutputStream out = new DataOutputStream(members);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);  // No attributes
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        ++fieldCount;
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code) {
+
+        // Assertions.
+        if (code == null) {
+            String msg = "Argument 'code' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        final byte[] bytecode = code.toByteArray();
+        final DataOutputStream out = new DataOutputStream(methods);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);  // Just the Code attribute
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + bytecode.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            out.writeShort(0);  // No exception table
+            out.writeShort(0);  // No attributes
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        ++methodCount;
+
+    }
+
+    byte[] toByteArray() {
+        final ByteArrayOutputStream rslt = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(rslt);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);      // Minor version
+            out.writeShort(49);     // Major version (Java 5)
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);      // No interfaces beyond the superclass'
+            out.writeShort(fieldCount);
+            members.writeTo(out);
+            out.writeShort(methodCount);
+            methods.writeTo(out);
+            out.writeShort(0);      // No class attributes
+            out.flush();
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        return rslt.toByteArray();
+    }
+
+    /*
+     * Implementation.
+     */
+
+    private int utf8(String value) {
+        final Integer known = constants.get("U" + value);
+        if (known != null) {
+            return known.intValue();
+        }
+        final DataOutputStream out = new DataOutputStream(pool);
+        try {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);    // Modified UTF-8, as the format requires
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        return register("U" + value);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        final String key = tag + owner + "." + name + descriptor;
+        final Integer known = constants.get(key);
+        if (known != null) {
+            return known.intValue();
+        }
+        final int classIndex = classRef(owner);
+        final int nameIndex = utf8(name);
+        final int descriptorIndex = utf8(descriptor);
+        final DataOutputStream out = new DataOutputStream(pool);
+        try {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            final int nameAndType = poolCount++;
+            out.writeByte(tag);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndType);
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        return register(key);
+    }
+
+    private int register(String key) {
+        final int rslt = poolCount++;
+        constants.put(key, Integer.valueOf(rslt));
+        return rslt;
+    }
+
+    /*
+     * Nested Types.
+     */
+
+    /**
+     * Accumulates the instructions of one method.  Callers specify the
+     * maximum stack depth and number of locals up front, since the generated
+     * methods are straight-line code with a depth that's easy to know.
+     */
+    static final class Code {
+
+        // Instance Members.
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final int maxStack;
+        private final int maxLocals;
+
+        Code(int maxStack, int maxLocals) {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        Code aload(int index) {
+            // NB:  Only the short forms (aload_0 - aload_3) are needed
+            if (index < 0 || index > 3) {
+                String msg = "Unsupported local variable index:  " + index;
+                throw new IllegalArgumentException(msg);
+            }
+            bytes.write(0x2A + index);
+            return this;
+        }
+
+        Code aaload() {
+            bytes.write(0x32);
+            return this;
+        }
+
+        Code pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                bytes.write(0x03 + value);  // iconst_<n>
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                bytes.write(0x10);          // bipush
+                bytes.write(value);
+            } else {
+                bytes.write(0x11);          // sipush
+                writeShort(value);
+            }
+            return this;
+        }
+
+        Code checkcast(int classRef) {
+            bytes.write(0xC0);
+            writeShort(classRef);
+            return this;
+        }
+
+        Code getfield(int fieldRef) {
+            bytes.write(0xB4);
+            writeShort(fieldRef);
+            return this;
+        }
+
+        Code putfield(int fieldRef) {
+            bytes.write(0xB5);
+            writeShort(fieldRef);
+            return this;
+        }
+
+        Code invokevirtual(int methodRef) {
+            bytes.write(0xB6);
+            writeShort(methodRef);
+            return this;
+        }
+
+        Code invokespecial(int methodRef) {
+            bytes.write(0xB7);
+            writeShort(methodRef);
+            return this;
+        }
+
+        Code invokeinterface(int interfaceMethodRef, int argumentSlots) {
+            bytes.write(0xB9);
+            writeShort(interfaceMethodRef);
+            bytes.write(argumentSlots + 1);   // Includes the receiver
+            bytes.write(0);
+            return this;
+        }
+
+        Code returnVoid() {
+            bytes.write(0xB1);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        private void writeShort(int value) {
+            bytes.write((value >>> 8) & 0xFF);
+            bytes.write(value & 0xFF);
+        }
+
+    }
+
+}
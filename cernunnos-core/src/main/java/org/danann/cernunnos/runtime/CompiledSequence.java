@@ -0,0 +1,53 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.danann.cernunnos.runtime;
+
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.Task;
+
+/**
+ * Base class for the classes <code>ScriptRunner</code> generates in compiled 
+ * mode to run the children of a container task.  Each generated subclass 
+ * holds its children in fields of their exact types and invokes them one 
+ * after another in a straight line, in place of a loop over a 
+ * <code>List</code>.  This class is public only so that the generated 
+ * classes (defined in their own <code>ClassLoader</code>) can extend it;  it 
+ * isn't intended for other uses.
+ */
+public abstract class CompiledSequence implements Task {
+
+    /*
+     * Public API.
+     */
+
+    public final Formula getFormula() {
+        throw new UnsupportedOperationException();
+    }
+
+    public final void init(EntityConfig config) {
+        throw new UnsupportedOperationException();
+    }
+
+    /*
+     * Protected API.
+     */
+
+    protected CompiledSequence() {}
+
+}
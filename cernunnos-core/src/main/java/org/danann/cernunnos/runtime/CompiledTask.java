@@ -0,0 +1,94 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.danann.cernunnos.runtime;
+
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.TaskRequest;
+import org.danann.cernunnos.TaskResponse;
+
+/**
+ * Base class for the classes <code>ScriptRunner</code> generates in compiled 
+ * mode to stand in for a <code>RuntimeTaskDecorator</code>.  Each generated 
+ * subclass is specific to one concrete <code>Task</code> type and calls it 
+ * directly from <code>performEnclosed</code>, so the JVM sees a single 
+ * receiver type at that call site.  This class is public only so that the 
+ * generated classes (defined in their own <code>ClassLoader</code>) can 
+ * extend it;  it isn't intended for other uses.
+ */
+public abstract class CompiledTask implements Task {
+
+    // Instance Members.
+    private final RuntimeTaskDecorator decorator;
+
+    /*
+     * Public API.
+     */
+
+    public final Formula getFormula() {
+        throw new UnsupportedOperationException();
+    }
+
+    public final void init(EntityConfig config) {
+        throw new UnsupportedOperationException();
+    }
+
+    public final void perform(TaskRequest req, TaskResponse res) {
+
+        // Metrics & trace events are recorded by the decorator itself...
+        if (ExecutionMetrics.getInstance().isEnabled() || ExecutionTrace.current() != null) {
+            decorator.perform(req, res);
+            return;
+        }
+
+        // Otherwise behave as the decorator's fast path does:  manage the 
+        // request attribute stack & provide enhanced error information
+        final RuntimeRequestResponse rrr = (RuntimeRequestResponse) res;
+        rrr.enclose(req);
+        try {
+            performEnclosed(rrr, new RuntimeRequestResponse());
+        } catch (Throwable t) {
+            throw decorator.failure(rrr, t);
+        }
+
+    }
+
+    /*
+     * Protected API.
+     */
+
+    protected CompiledTask(RuntimeTaskDecorator decorator) {
+
+        // Assertions.
+        if (decorator == null) {
+            String msg = "Argument 'decorator' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Instance Members.
+        this.decorator = decorator;
+
+    }
+
+    /**
+     * Invokes the enclosed <code>Task</code>.
+     */
+    protected abstract void performEnclosed(TaskRequest req, TaskResponse res);
+
+}
@@ -16,12 +16,13 @@
 
 package org.danann.cernunnos.runtime;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.dom4j.Node;
 
 import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.LiteralPhrase;
 import org.danann.cernunnos.Phrase;
 import org.danann.cernunnos.EntityConfig;
 import org.danann.cernunnos.TaskRequest;
@@ -30,7 +31,7 @@ import org.danann.cernunnos.TaskResponse;
 public final class ConcatenatingPhrase implements Phrase {
 	
 	// Instance Members.
-	private final List<Phrase> children;
+	private final Phrase[] children;
 
 	/*
 	 * Public API.
@@ -45,9 +46,22 @@ public final class ConcatenatingPhrase implements Phrase {
 		}
 
 		// Instance Members.
-		this.children = new LinkedList<Phrase>(children);
+		this.children = children.toArray(new Phrase[children.size()]);
 		
 	}
+
+	public ConcatenatingPhrase(Phrase[] children) {
+
+		// Assertions...
+		if (children == null) {
+			String msg = "Argument 'children' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+
+		// Instance Members.
+		this.children = children.clone();
+
+	}
 	
 	public Formula getFormula() {
 		throw new UnsupportedOperationException();
@@ -72,25 +86,14 @@ public final class ConcatenatingPhrase implements Phrase {
 		Object rslt = null;
 		
 		// NB:  If there's more than one component, the return type *must* be String.
-		switch (children.size()) {
+		switch (children.length) {
 			case 1:
-				rslt = children.get(0).evaluate(req, res);
+				rslt = children[0].evaluate(req, res);
 				break;
 			default:
-				StringBuffer buffer = new StringBuffer();
+				StringBuilder buffer = new StringBuilder();
 				for (Phrase p : children) {
-					Object value = p.evaluate(req, res);
-					if (value instanceof Node) {
-						// Concatenate the text value...
-						String text = ((Node) value).getText();
-						buffer.append(text);
-					} else if (value == null) {
-						// If null just write null...
-						buffer.append("null");
-					} else {
-						// Try toString()...
-						buffer.append(value.toString());
-					}
+					append(buffer, p.evaluate(req, res));
 				}
 				rslt = buffer.toString();
 				break;
@@ -100,4 +103,77 @@ public final class ConcatenatingPhrase implements Phrase {
 		
 	}
 
+	/*
+	 * Package API.
+	 */
+
+	/**
+	 * Returns a <code>Phrase</code> that concatenates the specified children, 
+	 * with each run of adjacent <code>LiteralPhrase</code> children folded 
+	 * into one.  If every child is literal the result is known at compile 
+	 * time, and a single <code>LiteralPhrase</code> is returned.
+	 */
+	static Phrase fold(Phrase[] children) {
+
+		// Assertions...
+		if (children == null) {
+			String msg = "Argument 'children' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+
+		// NB:  Matches evaluate() -- a single child keeps its type
+		if (children.length == 1) {
+			return children[0];
+		}
+
+		final List<Phrase> folded = new ArrayList<Phrase>(children.length);
+		StringBuilder run = null;	// Text of the current run of literals
+		for (Phrase p : children) {
+			if (p instanceof LiteralPhrase) {
+				if (run == null) {
+					run = new StringBuilder();
+				}
+				append(run, p.evaluate(null, null));
+			} else {
+				if (run != null) {
+					folded.add(new LiteralPhrase(run.toString()));
+					run = null;
+				}
+				folded.add(p);
+			}
+		}
+		if (run != null) {
+			folded.add(new LiteralPhrase(run.toString()));
+		}
+
+		// NB:  A lone survivor can only be the folded literal
+		switch (folded.size()) {
+			case 0:
+				return new LiteralPhrase("");
+			case 1:
+				return folded.get(0);
+			default:
+				return new ConcatenatingPhrase(folded);
+		}
+
+	}
+
+	/*
+	 * Private Stuff.
+	 */
+
+	private static void append(StringBuilder buffer, Object value) {
+		if (value instanceof Node) {
+			// Concatenate the text value...
+			String text = ((Node) value).getText();
+			buffer.append(text);
+		} else if (value == null) {
+			// If null just write null...
+			buffer.append("null");
+		} else {
+			// Try toString()...
+			buffer.append(value.toString());
+		}
+	}
+
 }
\ No newline at end of file
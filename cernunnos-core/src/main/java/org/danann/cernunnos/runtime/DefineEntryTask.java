@@ -16,8 +16,8 @@
 
 package org.danann.cernunnos.runtime;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.dom4j.Element;
@@ -95,20 +95,22 @@ public final class DefineEntryTask implements Task {
 		// Instance Members.
 		this.entry_name = (Phrase) config.getValue(NAME);
 		this.impl = (Phrase) config.getValue(IMPL);
+		// NB:  The grammar keeps these elements for as long as it lives, so 
+		// keep copies rather than pin the whole source document...
 		list = (List<?>) config.getValue(CONTENT_MODEL);
-		this.content = list.size() > 0 ? (Element) list.get(0) : null;
+		this.content = list.size() > 0 ? ((Element) list.get(0)).createCopy() : null;
 		list = (List<?>) config.getValue(DESCRIPTION);
-		this.description = list.size() > 0 ? (Element) list.get(0) : null;
-		this.examples = new LinkedList<Node>();
+		this.description = list.size() > 0 ? ((Element) list.get(0)).createCopy() : null;
 		list = (List<?>) config.getValue(EXAMPLES);
+		this.examples = new ArrayList<Node>(list.size());
 		for (Object o : list) {
-			examples.add((Node) o);
+			examples.add((Node) ((Node) o).clone());
 		}			
 		this.deprecation_version = (Phrase) config.getValue(DEPRECATION_VERSION);
-		this.deprecation_description = new LinkedList<Element>();
 		list = (List<?>) config.getValue(DEPRECATION_DESCRIPTION);
+		this.deprecation_description = new ArrayList<Element>(list.size());
 		for (Object o : list) {
-			deprecation_description.add((Element) o);
+			deprecation_description.add(((Element) o).createCopy());
 		}			
 		
 	}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.danann.cernunnos.StripedCounters;
+
+/**
+ * Invocation count, latency, and error count for a single grammar entry at a 
+ * single location in a script.  Counters are kept in 
+ * <code>StripedCounters</code> so that concurrent requests running the same 
+ * task don't contend for one memory location.  Latencies are inclusive (they contain 
+ * the time spent in child tasks and phrases).
+ */
+public final class EntryMetrics {
+
+    // Static Members.
+    private static final int COUNT = 0;
+    private static final int TOTAL_NANOS = 1;
+    private static final int ERRORS = 2;
+
+    // Instance Members.
+    private final String entryName;
+    private final String systemId;
+    private final String source;
+    private final StripedCounters cells;
+    private final AtomicLong maxNanos;
+
+    /*
+     * Public API.
+     */
+
+    public String getEntryName() {
+        return entryName;
+    }
+
+    /**
+     * Location of the script (may be <code>null</code>).
+     */
+    public String getSystemId() {
+        return systemId;
+    }
+
+    /**
+     * Location of the entity in its script (may be <code>null</code>).
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public long getInvocationCount() {
+        return cells.sum(COUNT);
+    }
+
+    public long getTotalNanos() {
+        return cells.sum(TOTAL_NANOS);
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getErrorCount() {
+        return cells.sum(ERRORS);
+    }
+
+    /**
+     * Adds one invocation to these metrics.
+     * 
+     * @param nanos Elapsed time of the invocation
+     * @param failed <code>true</code> if the invocation threw an exception
+     */
+    public void record(long nanos, boolean failed) {
+
+        cells.increment(COUNT);
+        cells.add(TOTAL_NANOS, nanos);
+        if (failed) {
+            cells.increment(ERRORS);
+        }
+
+        for (long max = maxNanos.get(); nanos > max; max = maxNanos.get()) {
+            if (maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+
+    }
+
+    /**
+     * Sets all counters back to zero.  Invocations that are recorded during 
+     * the reset may be partially lost.
+     */
+    public void reset() {
+        cells.reset();
+        maxNanos.set(0L);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder rslt = new StringBuilder();
+        rslt.append(entryName).append(" @ ");
+        if (systemId != null) {
+            rslt.append(systemId).append(" ");
+        }
+        rslt.append(source)
+                    .append(":  count=").append(getInvocationCount())
+                    .append(", totalMillis=").append(getTotalNanos() / 1000000L)
+                    .append(", maxMillis=").append(getMaxNanos() / 1000000L)
+                    .append(", errors=").append(getErrorCount());
+        return rslt.toString();
+    }
+
+    /*
+     * Package API.
+     */
+
+    EntryMetrics(String entryName, String systemId, String source) {
+
+        // Assertions...
+        if (entryName == null) {
+            String msg = "Argument 'entryName' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        // NB:  systemId & source may be null...
+
+        // Instance Members.
+        this.entryName = entryName;
+        this.systemId = systemId;
+        this.source = source;
+        this.cells = new StripedCounters(3);
+        this.maxNanos = new AtomicLong(0L);
+
+    }
+
+}
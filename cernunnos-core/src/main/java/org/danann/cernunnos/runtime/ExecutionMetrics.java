@@ -0,0 +1,194 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.MBeanUtil;
+
+/**
+ * Registry of <code>EntryMetrics</code> for every task and phrase that has 
+ * run since metrics were enabled, keyed by entry name, script, and location 
+ * in the script.  Metrics 
+ * are disabled by default;  while disabled, <code>RuntimeTaskDecorator</code> 
+ * and <code>RuntimePhraseDecorator</code> only read a single flag, so it's 
+ * fine to leave this capability in place in production and switch it on 
+ * (e.g. over JMX) when needed.
+ */
+public final class ExecutionMetrics implements ExecutionMetricsMBean {
+
+    // Static Members.
+    private static final ExecutionMetrics INSTANCE = new ExecutionMetrics();
+    private static final String[] ITEM_NAMES = new String[] {"entryName", "systemId", "source", 
+                        "invocationCount", "totalNanos", "maxNanos", "errorCount"};
+    private static final TabularType ENTRIES_TYPE;
+    static {
+        try {
+            final CompositeType rowType = new CompositeType("EntryMetrics", 
+                        "Invocation count, latency, and error count of one task or phrase", 
+                        ITEM_NAMES, 
+                        new String[] {"Grammar entry", "Script location ('' if unknown)", 
+                                "Location within the script ('' if unknown)", "Invocations", 
+                                "Total elapsed nanoseconds", "Longest invocation in nanoseconds", 
+                                "Invocations that threw an exception"}, 
+                        new OpenType<?>[] {SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, 
+                                SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG});
+            ENTRIES_TYPE = new TabularType("EntryMetricsTable", "Metrics for each recorded entry", 
+                        rowType, new String[] {"entryName", "systemId", "source"});
+        } catch (OpenDataException ode) {
+            throw new RuntimeException("Unable to define the open types of ExecutionMetrics.", ode);
+        }
+    }
+
+    // Instance Members.
+    private volatile boolean enabled;
+    private final ConcurrentMap<String,EntryMetrics> entries;
+
+    /*
+     * Public API.
+     */
+
+    /**
+     * Name under which <code>registerMBean</code> publishes the registry.
+     */
+    public static final String OBJECT_NAME = "org.danann.cernunnos:type=ExecutionMetrics";
+
+    public static ExecutionMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    public TabularData getEntries() {
+        final TabularData rslt = new TabularDataSupport(ENTRIES_TYPE);
+        for (EntryMetrics m : getEntryMetrics()) {
+            try {
+                rslt.put(new CompositeDataSupport(ENTRIES_TYPE.getRowType(), ITEM_NAMES, new Object[] {
+                            m.getEntryName(), 
+                            m.getSystemId() != null ? m.getSystemId() : "", 
+                            m.getSource() != null ? m.getSource() : "", 
+                            m.getInvocationCount(), m.getTotalNanos(), 
+                            m.getMaxNanos(), m.getErrorCount()}));
+            } catch (OpenDataException ode) {
+                String msg = "Unable to describe the following metrics:  " + m;
+                throw new RuntimeException(msg, ode);
+            }
+        }
+        return rslt;
+    }
+
+    /**
+     * Returns the metrics recorded so far, slowest (by total time) first.
+     */
+    public List<EntryMetrics> getEntryMetrics() {
+        final List<EntryMetrics> rslt = new ArrayList<EntryMetrics>(entries.values());
+        Collections.sort(rslt, new Comparator<EntryMetrics>() {
+            public int compare(EntryMetrics m1, EntryMetrics m2) {
+                final long t1 = m1.getTotalNanos();
+                final long t2 = m2.getTotalNanos();
+                return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        return rslt;
+    }
+
+    /**
+     * Returns the metrics for the entity described by the specified 
+     * <code>EntityConfig</code>, creating them if necessary.
+     */
+    public EntryMetrics getEntryMetrics(EntityConfig config) {
+
+        // Assertions...
+        if (config == null) {
+            String msg = "Argument 'config' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        // The source is only unique within one script...
+        final String systemId = config instanceof SimpleEntityConfig 
+                        ? ((SimpleEntityConfig) config).getSystemId() 
+                        : null;
+        final String key = config.getEntryName() + "\n" + systemId + "\n" + config.getSource();
+        EntryMetrics rslt = entries.get(key);
+        if (rslt == null) {
+            final EntryMetrics m = new EntryMetrics(config.getEntryName(), systemId, config.getSource());
+            rslt = entries.putIfAbsent(key, m);
+            if (rslt == null) {
+                rslt = m;
+            }
+        }
+        return rslt;
+
+    }
+
+    /**
+     * Sets the counters of every entry back to zero.  Entries are kept (not 
+     * removed) because decorators hold on to them.
+     */
+    public void reset() {
+        for (EntryMetrics m : entries.values()) {
+            m.reset();
+        }
+    }
+
+    /**
+     * Publishes this registry to the platform <code>MBeanServer</code> under 
+     * <code>OBJECT_NAME</code>, unless it's already there.
+     */
+    public synchronized void registerMBean() {
+        MBeanUtil.register(this, OBJECT_NAME);
+    }
+
+    public synchronized void unregisterMBean() {
+        MBeanUtil.unregister(OBJECT_NAME);
+    }
+
+    /*
+     * Private Stuff.
+     */
+
+    private ExecutionMetrics() {
+        this.enabled = false;
+        this.entries = new ConcurrentHashMap<String,EntryMetrics>();
+    }
+
+}
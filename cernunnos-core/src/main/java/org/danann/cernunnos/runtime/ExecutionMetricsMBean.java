@@ -0,0 +1,41 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.runtime;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * Management interface of <code>ExecutionMetrics</code>.
+ */
+public interface ExecutionMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    int getEntryCount();
+
+    /**
+     * Returns one row per recorded entry, indexed by entry name, script, 
+     * and location in the script, with the counters as numeric items so that 
+     * monitoring tools can read them.
+     */
+    TabularData getEntries();
+
+    void reset();
+
+}
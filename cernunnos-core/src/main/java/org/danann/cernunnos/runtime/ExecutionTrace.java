@@ -0,0 +1,146 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.runtime;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the <code>TaskExecutionListener</code> (if any) of the script running 
+ * on each thread.  Decorators check a shared counter before touching the 
+ * <code>ThreadLocal</code>, so tracing costs nothing when no listener is 
+ * attached anywhere.  Tasks that hand work to other threads should pass it 
+ * through <code>wrap</code> so that the work is traced as well.
+ */
+public final class ExecutionTrace {
+
+    // Static Members.
+    private static final AtomicInteger ACTIVE = new AtomicInteger(0);
+    private static final ThreadLocal<TaskExecutionListener> CURRENT = 
+                                    new ThreadLocal<TaskExecutionListener>();
+
+    /*
+     * Public API.
+     */
+
+    /**
+     * Returns a <code>Runnable</code> that runs the specified one with the 
+     * listener of the current thread (if any) attached;  call it when the work 
+     * is submitted, not when it runs.
+     */
+    public static Runnable wrap(final Runnable r) {
+
+        // Assertions...
+        if (r == null) {
+            String msg = "Argument 'r [Runnable]' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        final TaskExecutionListener listener = current();
+        if (listener == null) {
+            return r;
+        }
+        return new Runnable() {
+            public void run() {
+                final TaskExecutionListener previous = push(listener);
+                try {
+                    r.run();
+                } finally {
+                    pop(previous);
+                }
+            }
+        };
+
+    }
+
+    /**
+     * Returns a <code>Callable</code> that calls the specified one with the 
+     * listener of the current thread (if any) attached;  call it when the work 
+     * is submitted, not when it runs.
+     */
+    public static <V> Callable<V> wrap(final Callable<V> c) {
+
+        // Assertions...
+        if (c == null) {
+            String msg = "Argument 'c [Callable]' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        final TaskExecutionListener listener = current();
+        if (listener == null) {
+            return c;
+        }
+        return new Callable<V>() {
+            public V call() throws Exception {
+                final TaskExecutionListener previous = push(listener);
+                try {
+                    return c.call();
+                } finally {
+                    pop(previous);
+                }
+            }
+        };
+
+    }
+
+    /*
+     * Package API.
+     */
+
+    /**
+     * Returns the listener for the current thread, or <code>null</code>.
+     */
+    static TaskExecutionListener current() {
+        return ACTIVE.get() == 0 ? null : CURRENT.get();
+    }
+
+    /**
+     * Makes the specified listener current on this thread and returns the one 
+     * it replaces (possibly <code>null</code>), which must be passed to 
+     * <code>pop</code> when the script completes.
+     */
+    static TaskExecutionListener push(TaskExecutionListener listener) {
+
+        // Assertions...
+        if (listener == null) {
+            String msg = "Argument 'listener' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        final TaskExecutionListener rslt = CURRENT.get();
+        CURRENT.set(listener);
+        ACTIVE.incrementAndGet();
+        return rslt;
+
+    }
+
+    static void pop(TaskExecutionListener previous) {
+        ACTIVE.decrementAndGet();
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /*
+     * Private Stuff.
+     */
+
+    private ExecutionTrace() {}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.runtime;
+
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.TaskRequest;
+import org.danann.cernunnos.TaskResponse;
+import org.dom4j.Element;
+
+/**
+ * Stands in for a <code>Task</code> that hasn't been bootstrapped yet.  
+ * <code>XmlGrammar</code> hands these out when lazy compilation is enabled;  
+ * each one keeps its source <code>Element</code> and compiles it the first 
+ * time it is performed, so branches that never run (rarely taken 
+ * <code>&lt;when&gt;</code>, <code>&lt;catch&gt;</code> or 
+ * <code>&lt;empty-result&gt;</code> blocks) never cost anything.
+ * 
+ * <p>Bootstrapping reads (and normalizes) the DOM, which isn't thread-safe, 
+ * so the <code>LazyTask</code> objects created from one source 
+ * <code>Document</code> share a private lock;  compiling unrelated scripts 
+ * never contends.  A compile that fails is not attempted again;  later 
+ * calls fail fast with the original cause.
+ */
+final class LazyTask implements Task {
+
+	// Static Members.
+	private static final ThreadLocal<Compilation> CURRENT = new ThreadLocal<Compilation>();
+
+	// Instance Members.
+	private final XmlGrammar grammar;
+	private final Task parent;
+	private final Object lock;	// Shared by the LazyTasks of one Document
+	private Element source;	// Released once compiled
+	private volatile Task compiled;
+	private volatile RuntimeException failure;
+
+	/*
+	 * Public API.
+	 */
+
+	public LazyTask(XmlGrammar grammar, Element source, Task parent) {
+
+		// Assertions...
+		if (grammar == null) {
+			String msg = "Argument 'grammar' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+		if (source == null) {
+			String msg = "Argument 'source' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+		// NB:  parent may be null...
+
+		// Instance Members.
+		this.grammar = grammar;
+		this.parent = parent;
+		this.source = source;
+		this.compiled = null;
+		this.failure = null;
+
+		// LazyTasks created while compiling another part of the same 
+		// Document share its lock;  anything else gets one of its own...
+		final Compilation c = CURRENT.get();
+		this.lock = c != null && c.document == source.getDocument() ? c.lock : new Object();
+
+	}
+
+	public Formula getFormula() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void init(EntityConfig config) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void perform(TaskRequest req, TaskResponse res) {
+		getCompiledTask().perform(req, res);
+	}
+
+	/*
+	 * Package API.
+	 */
+
+	Task getCompiledTask() {
+		Task rslt = compiled;
+		if (rslt == null) {
+			synchronized (lock) {
+				rslt = compiled;
+				if (rslt == null) {
+					if (failure != null) {
+						String msg = "This task failed to compile earlier";
+						throw new RuntimeException(msg, failure);
+					}
+					final Compilation previous = CURRENT.get();
+					CURRENT.set(new Compilation(source.getDocument(), lock));
+					try {
+						rslt = grammar.bootstrapTask(source, parent);
+					} catch (RuntimeException re) {
+						failure = re;
+						source = null;
+						throw re;
+					} finally {
+						if (previous != null) {
+							CURRENT.set(previous);
+						} else {
+							CURRENT.remove();
+						}
+					}
+					compiled = rslt;
+					source = null;
+				}
+			}
+		}
+		return rslt;
+	}
+
+	/*
+	 * Nested Types.
+	 */
+
+	private static final class Compilation {
+
+		// Instance Members.
+		private final Object document;
+		private final Object lock;
+
+		public Compilation(Object document, Object lock) {
+			this.document = document;
+			this.lock = lock;
+		}
+
+	}
+
+}
@@ -99,8 +99,34 @@ public final class Main {
 				break;
 		}
 
+		// Reuse parsed scripts (including main.grammar) from previous runs if 
+		// CRN_SCRIPT_CACHE is defined...
+		String scriptCacheDir = System.getenv("CRN_SCRIPT_CACHE");
+		if (scriptCacheDir != null && scriptCacheDir.length() != 0) {
+			ScriptCache.setDefault(new ScriptCache(new File(scriptCacheDir)));
+		}
+
 		ScriptRunner runner = new ScriptRunner();
-		runner.run(location, req);
+
+		// Record a trace of the run if CRN_TRACE is defined...
+		TraceWriter trace = null;
+		String traceFile = System.getenv("CRN_TRACE");
+		if (traceFile != null && traceFile.length() != 0) {
+			trace = new TraceWriter(TraceWriter.Format.forFile(new File(traceFile)));
+			runner.setExecutionListener(trace);
+		}
+
+		try {
+			runner.run(location, req);
+		} finally {
+			if (trace != null) {
+				try {
+					trace.write(new File(traceFile));
+				} catch (Throwable t) {
+					log.warn("Unable to write the execution trace to " + traceFile, t);
+				}
+			}
+		}
 
 	}
 
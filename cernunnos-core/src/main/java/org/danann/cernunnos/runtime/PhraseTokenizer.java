@@ -0,0 +1,153 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.danann.cernunnos.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.danann.cernunnos.Phrase;
+
+/**
+ * Splits the text of a phrase into literal segments and dynamic 
+ * (<code>${...}</code>) segments in a single, index-based pass.  Nested 
+ * delimiters inside a dynamic segment are kept verbatim;  the nested text is 
+ * tokenized again when the enclosing phrase bootstraps its own reagents.
+ * 
+ * <p>Unbalanced input is handled the way Cernunnos always has:  a 
+ * <code>}</code> outside a dynamic segment is literal text, and an unclosed 
+ * dynamic segment becomes a literal (without its opening delimiter).
+ */
+final class PhraseTokenizer {
+
+    /*
+     * Package API.
+     */
+
+    static Segment[] tokenize(String text) {
+
+        // Assertions...
+        if (text == null) {
+            String msg = "Argument 'text' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        final String open = Phrase.OPEN_PHRASE_DELIMITER;
+        final String close = Phrase.CLOSE_PHRASE_DELIMITER;
+
+        final List<Segment> rslt = new ArrayList<Segment>();
+        final int len = text.length();
+        int mark = 0;   // Start of the pending literal or expression
+        int depth = 0;
+        int i = 0;
+        while (i < len) {
+            if (text.startsWith(open, i)) {
+                if (depth == 0) {
+                    if (i > mark) {
+                        rslt.add(Segment.literal(text.substring(mark, i)));
+                    }
+                    mark = i + open.length();
+                }
+                ++depth;
+                i += open.length();
+            } else if (depth != 0 && text.startsWith(close, i)) {
+                --depth;
+                if (depth == 0) {
+                    rslt.add(Segment.dynamic(text.substring(mark, i)));
+                    mark = i + close.length();
+                }
+                i += close.length();
+            } else {
+                ++i;
+            }
+        }
+        if (mark < len) {
+            // Add anything that's left...
+            rslt.add(Segment.literal(text.substring(mark)));
+        }
+
+        return rslt.toArray(new Segment[rslt.size()]);
+
+    }
+
+    /*
+     * Nested Types.
+     */
+
+    /**
+     * One immutable piece of a tokenized phrase.  For a dynamic segment, 
+     * <code>getPhraseName</code> is the entry named before the parentheses 
+     * (<code>null</code> if the default phrase applies) and 
+     * <code>getNestedText</code> is the text passed to that phrase.
+     */
+    static final class Segment {
+
+        // Instance Members.
+        private final boolean dynamic;
+        private final String text;
+        private final String phraseName;
+        private final String nestedText;
+
+        /*
+         * Public API.
+         */
+
+        public boolean isDynamic() {
+            return dynamic;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getPhraseName() {
+            return phraseName;
+        }
+
+        public String getNestedText() {
+            return nestedText;
+        }
+
+        /*
+         * Implementation.
+         */
+
+        private static Segment literal(String text) {
+            return new Segment(false, text, null, null);
+        }
+
+        private static Segment dynamic(String expression) {
+            // Determine if a Phrase impl was specified or if we should use the default...
+            final int openParenIndex = expression.indexOf('(');
+            if (openParenIndex != -1 && expression.endsWith(")")) {
+                return new Segment(true, expression, expression.substring(0, openParenIndex), 
+                        expression.substring(openParenIndex + 1, expression.length() - 1));
+            } else {
+                return new Segment(true, expression, null, expression);
+            }
+        }
+
+        private Segment(boolean dynamic, String text, String phraseName, String nestedText) {
+            this.dynamic = dynamic;
+            this.text = text;
+            this.phraseName = phraseName;
+            this.nestedText = nestedText;
+        }
+
+    }
+
+}
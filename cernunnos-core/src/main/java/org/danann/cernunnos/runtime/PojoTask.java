@@ -20,6 +20,7 @@ import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,6 +35,7 @@ import org.danann.cernunnos.ReturnValueImpl;
 import org.danann.cernunnos.Task;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.cache.BoundedCache;
 
 /**
  * Task implementation that's easy to use with dependency-injection strategies 
@@ -111,6 +113,26 @@ public class PojoTask implements Task, InitializingBean {
     public void setRequestAttributes(final Map<String,Object> requestAttributes) {
         this.requestAttributes = new HashMap<String,Object>(requestAttributes);
     }
+
+    /**
+     * Specifies a cache that every invocation of this task will share as 
+     * <code>Attributes.CACHE</code>, such as a <code>BoundedCache</code>.  By 
+     * default each invocation uses its own.
+     * 
+     * @see ScriptRunner#setCache(ConcurrentMap)
+     */
+    public void setCache(final ConcurrentMap<Object,Object> cache) {
+        runner.setCache(cache);
+    }
+
+    /**
+     * Shorthand for <code>setCache(BoundedCache.fromSpec(cacheSpec))</code>.
+     * 
+     * @see BoundedCache#fromSpec(String)
+     */
+    public void setCacheSpec(final String cacheSpec) {
+        runner.setCache(BoundedCache.<Object,Object>fromSpec(cacheSpec));
+    }
     
     /**
      * This method <em>must</em> be invoked after all POJO properties have been 
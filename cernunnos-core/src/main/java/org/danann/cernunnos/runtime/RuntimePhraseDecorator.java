@@ -28,6 +28,7 @@ public final class RuntimePhraseDecorator implements Phrase {
 	// Instance Members.
 	private final Phrase enclosed;
 	private final EntityConfig config;
+	private EntryMetrics metrics;	// Looked up the first time it's needed
 
 	/*
 	 * Public API.
@@ -60,16 +61,45 @@ public final class RuntimePhraseDecorator implements Phrase {
 
 		/*
 		 * RuntimePhraseDecorator.evaluate() decorates the evaluate() method of 
-		 * all Phrase instances.  It has two responsibilities:
-		 *   - (1) Provide enhanced error information for all phrases
+		 * all Phrase instances.  It has three responsibilities:
+		 *   - (1) Manage the request attribute stack
+		 *   - (2) Record execution metrics & trace events, if enabled
+		 *   - (3) Provide enhanced error information for all phrases
 		 */
 
-		Object rslt = null;
-
 		// Manage the request attribute stack
         RuntimeRequestResponse rrr = (RuntimeRequestResponse) res;
         rrr.enclose(req);
         
+		// Record execution metrics & trace events, if enabled
+		final ExecutionMetrics em = ExecutionMetrics.getInstance();
+		final TaskExecutionListener listener = ExecutionTrace.current();
+		if (!em.isEnabled() && listener == null) {
+			return evaluateEnclosed(rrr);
+		}
+		final long start = System.nanoTime();
+		if (listener != null) {
+			listener.begin(config, start);
+		}
+		boolean failed = true;
+		try {
+			final Object rslt = evaluateEnclosed(rrr);
+			failed = false;
+			return rslt;
+		} finally {
+			afterExecution(em, listener, start, failed);
+		}
+
+	}
+
+	/*
+	 * Private Stuff.
+	 */
+
+	private Object evaluateEnclosed(RuntimeRequestResponse rrr) {
+
+		Object rslt = null;
+
 		// Provide enhanced error information for all phrases
 		try {
 			rslt = enclosed.evaluate(rrr, new RuntimeRequestResponse());
@@ -107,4 +137,21 @@ public final class RuntimePhraseDecorator implements Phrase {
 
 	}
 
+	private void afterExecution(ExecutionMetrics em, TaskExecutionListener listener, 
+							long start, boolean failed) {
+		final long end = System.nanoTime();
+		if (em.isEnabled()) {
+			// NB:  A race here is harmless;  the registry returns the same object
+			EntryMetrics m = metrics;
+			if (m == null) {
+				m = em.getEntryMetrics(config);
+				metrics = m;
+			}
+			m.record(end - start, failed);
+		}
+		if (listener != null) {
+			listener.end(config, end, failed);
+		}
+	}
+
 }
@@ -16,22 +16,42 @@
 
 package org.danann.cernunnos.runtime;
 
+import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-
 import java.util.SortedSet;
 import java.util.TreeSet;
+
+import org.danann.cernunnos.AttributeSlot;
+import org.danann.cernunnos.IndexedTaskRequest;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
 
-public final class RuntimeRequestResponse implements TaskRequest, TaskResponse {
+/**
+ * Default implementation of both <code>TaskRequest</code> and 
+ * <code>TaskResponse</code>.  Each instance represents one frame in a chain of 
+ * attribute scopes:  attributes set on this frame are stored locally, while 
+ * lookups that miss locally fall through to the enclosing frame (see 
+ * <code>enclose</code>).  Nothing is copied from the enclosing frame, so the 
+ * cost of entering a new task or phrase does not depend on the number of 
+ * attributes in scope.
+ * 
+ * <p>Attributes whose names have an <code>AttributeSlot</code> are also 
+ * recorded in a small per-frame slot table, so that 
+ * <code>findAttribute</code> can resolve them by index.
+ */
+public final class RuntimeRequestResponse implements IndexedTaskRequest, TaskResponse {
 
 	// Instance Members.
 	private TaskRequest parent;
 	private final Map<String,Object> attributes;
-	private Map<String,Object> mergedAttributes;
+	private final Map<String,Object> mergedView;
+	private int[] slotIndices;
+	private Object[] slotValues;
+	private int slotCount;
+	private boolean unslottedWrites;	// Some local names have no slot table entry
 
 	/*
 	 * Public API.
@@ -42,7 +62,11 @@ public final class RuntimeRequestResponse implements TaskRequest, TaskResponse {
 		// Instance members.
 		this.parent = null;
 		this.attributes = new HashMap<String,Object>();
-		this.mergedAttributes = this.attributes;
+		this.mergedView = new MergedAttributesView();
+		this.slotIndices = null;
+		this.slotValues = null;
+		this.slotCount = 0;
+		this.unslottedWrites = false;
 
 	}
 	
@@ -55,13 +79,20 @@ public final class RuntimeRequestResponse implements TaskRequest, TaskResponse {
             throw new IllegalArgumentException(msg);
         }
         
-         this.attributes.putAll(attributes);
+        for (Map.Entry<String,Object> y : attributes.entrySet()) {
+            setAttribute(y.getKey(), y.getValue());
+        }
 	    
 	}
 
 	public void setAttribute(String name, Object value) {
 		this.attributes.put(name, value);
-		this.mergedAttributes.put(name, value);
+		final AttributeSlot slot = name != null ? AttributeSlot.peek(name) : null;
+		if (slot != null) {
+			this.storeSlot(slot.getIndex(), value);
+		} else {
+			this.unslottedWrites = true;
+		}
 	}
 
 	public boolean hasAttribute(String name) {
@@ -72,7 +103,46 @@ public final class RuntimeRequestResponse implements TaskRequest, TaskResponse {
 			throw new IllegalArgumentException(msg);
 		}
 
-		return this.mergedAttributes.containsKey(name);
+		return this.lookup(name) != AttributeSlot.UNDEFINED;
+
+	}
+
+	public Object findAttribute(AttributeSlot slot) {
+
+		// Assertions...
+		if (slot == null) {
+			String msg = "Argument 'slot' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+
+		final int index = slot.getIndex();
+		RuntimeRequestResponse cursor = this;
+		while (true) {
+			final int[] indices = cursor.slotIndices;
+			for (int i = 0; i < cursor.slotCount; i++) {
+				if (indices[i] == index) {
+					return cursor.slotValues[i];
+				}
+			}
+			if (cursor.unslottedWrites) {
+				// Some names in this frame had no slot when they were set;  
+				// the slot table isn't authoritative...
+				final Object value = cursor.attributes.get(slot.getName());
+				if (value != null || cursor.attributes.containsKey(slot.getName())) {
+					return value;
+				}
+			}
+			final TaskRequest next = cursor.parent;
+			if (next == null) {
+				return AttributeSlot.UNDEFINED;
+			} else if (next instanceof RuntimeRequestResponse) {
+				cursor = (RuntimeRequestResponse) next;
+			} else if (next instanceof IndexedTaskRequest) {
+				return ((IndexedTaskRequest) next).findAttribute(slot);
+			} else {
+				return next.hasAttribute(slot.getName()) ? next.getAttribute(slot.getName()) : AttributeSlot.UNDEFINED;
+			}
+		}
 
 	}
 
@@ -84,23 +154,34 @@ public final class RuntimeRequestResponse implements TaskRequest, TaskResponse {
 			throw new IllegalArgumentException(msg);
 		}
 
-		if (!this.mergedAttributes.containsKey(name)) {
+		final Object rslt = this.lookup(name);
+		if (rslt == AttributeSlot.UNDEFINED) {
 			throw new IllegalArgumentException("The specified attribute is not defined:  " + name);
 		}
 
-        return this.mergedAttributes.get(name);
+        return rslt;
 	}
 
+	/**
+	 * Returns a read-only view of the names of all attributes visible from 
+	 * this frame.  The view is computed lazily, on first access of its 
+	 * contents.
+	 */
 	public Set<String> getAttributeNames() {
-		return Collections.unmodifiableSet(this.mergedAttributes.keySet());
+		return this.mergedView.keySet();
 	}
 
+	/**
+	 * Returns a read-only view of all attributes visible from this frame.  
+	 * Single-key operations (<code>get</code>, <code>containsKey</code>) walk 
+	 * the scope chain directly;  iteration merges the chain on demand.
+	 */
 	public Map<String,Object> getAttributes() {
-		return Collections.unmodifiableMap(this.mergedAttributes);
+		return this.mergedView;
 	}
 
 	SortedSet<String> getSortedAttributeNames() {
-		return Collections.unmodifiableSortedSet(new TreeSet<String>(this.mergedAttributes.keySet()));
+		return Collections.unmodifiableSortedSet(new TreeSet<String>(this.mergedView.keySet()));
 	}
 	
 	/*
@@ -108,15 +189,104 @@ public final class RuntimeRequestResponse implements TaskRequest, TaskResponse {
 	 */
 
 	void enclose(TaskRequest req) {
-		parent = req;
-		if (this.parent != null) {
-    		final HashMap<String, Object> mergedAttributes = new HashMap<String, Object>(this.parent.getAttributes());
-    		mergedAttributes.putAll(this.attributes);
-    		this.mergedAttributes = mergedAttributes;
+		if (req == this) {
+			// Enclosing ourselves would create a cycle in the scope chain;  
+			// our attributes are already visible to us...
+			return;
+		}
+		this.parent = req;
+	}
+
+	/*
+	 * Implementation.
+	 */
+
+	private void storeSlot(int index, Object value) {
+		for (int i = 0; i < slotCount; i++) {
+			if (slotIndices[i] == index) {
+				slotValues[i] = value;
+				return;
+			}
+		}
+		if (slotIndices == null) {
+			slotIndices = new int[4];
+			slotValues = new Object[4];
+		} else if (slotCount == slotIndices.length) {
+			final int[] indices = new int[slotCount * 2];
+			final Object[] values = new Object[slotCount * 2];
+			System.arraycopy(slotIndices, 0, indices, 0, slotCount);
+			System.arraycopy(slotValues, 0, values, 0, slotCount);
+			slotIndices = indices;
+			slotValues = values;
 		}
-		else {
-		    this.mergedAttributes = this.attributes;
+		slotIndices[slotCount] = index;
+		slotValues[slotCount] = value;
+		++slotCount;
+	}
+
+	private Object lookup(String name) {
+		RuntimeRequestResponse cursor = this;
+		while (true) {
+			final Object value = cursor.attributes.get(name);
+			if (value != null || cursor.attributes.containsKey(name)) {
+				return value;
+			}
+			final TaskRequest next = cursor.parent;
+			if (next == null) {
+				return AttributeSlot.UNDEFINED;
+			} else if (next instanceof RuntimeRequestResponse) {
+				cursor = (RuntimeRequestResponse) next;
+			} else {
+				// Some other TaskRequest implementation;  use its public API...
+				return next.hasAttribute(name) ? next.getAttribute(name) : AttributeSlot.UNDEFINED;
+			}
 		}
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Flattens the scope chain into a single <code>Map</code>, with the 
+	 * nearest frame winning.
+	 */
+	private Map<String,Object> mergeAttributes() {
+		final Map<String,Object> rslt;
+		if (this.parent == null) {
+			rslt = new HashMap<String,Object>(this.attributes);
+		} else if (this.parent instanceof RuntimeRequestResponse) {
+			rslt = ((RuntimeRequestResponse) this.parent).mergeAttributes();
+			rslt.putAll(this.attributes);
+		} else {
+			rslt = new HashMap<String,Object>(this.parent.getAttributes());
+			rslt.putAll(this.attributes);
+		}
+		return rslt;
+	}
+
+	/*
+	 * Nested Types.
+	 */
+
+	/**
+	 * Read-only, live view of the attributes visible from the enclosing 
+	 * <code>RuntimeRequestResponse</code>.
+	 */
+	private final class MergedAttributesView extends AbstractMap<String,Object> {
+
+		public boolean containsKey(Object key) {
+			return key instanceof String && lookup((String) key) != AttributeSlot.UNDEFINED;
+		}
+
+		public Object get(Object key) {
+			if (!(key instanceof String)) {
+				return null;
+			}
+			final Object rslt = lookup((String) key);
+			return rslt != AttributeSlot.UNDEFINED ? rslt : null;
+		}
+
+		public Set<Map.Entry<String,Object>> entrySet() {
+			return Collections.unmodifiableMap(mergeAttributes()).entrySet();
+		}
+
+	}
+
+}
@@ -28,6 +28,7 @@ public final class RuntimeTaskDecorator implements Task {
 	// Instance Members.
 	private final Task enclosed;
 	private final EntityConfig config;
+	private EntryMetrics metrics;	// Looked up the first time it's needed
 	
 	/*
 	 * Public API.
@@ -63,48 +64,102 @@ public final class RuntimeTaskDecorator implements Task {
 		
 		/*
 		 * RuntimeTaskDecorator.perform() decorates the perform() method of 
-		 * every Task in Cernunnos.  It has two responsibilities:
+		 * every Task in Cernunnos.  It has three responsibilities:
 		 *   - (1) Manage the request attribute stack
-		 *   - (2) Provide enhanced error information for all tasks
+		 *   - (2) Record execution metrics & trace events, if enabled
+		 *   - (3) Provide enhanced error information for all tasks
 		 */
 		
 		// Manage the request attribute stack
 		RuntimeRequestResponse rrr = (RuntimeRequestResponse) res;
 		rrr.enclose(req);
 		
-		// Provide enhanced error information for all tasks
+		// Record execution metrics & trace events, if enabled
+		final ExecutionMetrics em = ExecutionMetrics.getInstance();
+		final TaskExecutionListener listener = ExecutionTrace.current();
+		if (!em.isEnabled() && listener == null) {
+			performEnclosed(rrr);
+			return;
+		}
+		final long start = System.nanoTime();
+		if (listener != null) {
+			listener.begin(config, start);
+		}
+		boolean failed = true;
 		try {
-			enclosed.perform(rrr, new RuntimeRequestResponse());
-		} catch (ManagedException me) {
-			
+			performEnclosed(rrr);
+			failed = false;
+		} finally {
+			afterExecution(em, listener, start, failed);
+		}
+
+	}
+
+	/*
+	 * Package API.
+	 */
+
+	Task getEnclosed() {
+		return enclosed;
+	}
+
+	/**
+	 * Returns the exception that should propagate when the enclosed 
+	 * <code>Task</code> fails with the specified <code>Throwable</code>.  
+	 * Shared with <code>CompiledTask</code>, which skips this decorator on 
+	 * its fast path but must report errors the same way.
+	 */
+	RuntimeException failure(RuntimeRequestResponse rrr, Throwable t) {
+
+		if (t instanceof ManagedException) {
 			// Already processed...
-			throw me;
-			
-		} catch (RuntimeException re) {
-			
-			// We're obligated to ensure there isn't 
-			// already a ManagedException in the stack trace...
-			for (Throwable cursor = re; cursor != null; cursor = cursor.getCause()) {
-				if (cursor instanceof ManagedException) {
-					throw re;
-				}
+			return (ManagedException) t;
+		}
+
+		// We're obligated to ensure there isn't 
+		// already a ManagedException in the stack trace...
+		for (Throwable cursor = t; cursor != null; cursor = cursor.getCause()) {
+			if (cursor instanceof ManagedException) {
+				return t instanceof RuntimeException 
+								? (RuntimeException) t 
+								: new RuntimeException(t);
 			}
-			
-			throw new ManagedException(config, rrr, re);
+		}
+
+		return new ManagedException(config, rrr, t);
 
+	}
+
+	/*
+	 * Private Stuff.
+	 */
+
+	private void performEnclosed(RuntimeRequestResponse rrr) {
+
+		// Provide enhanced error information for all tasks
+		try {
+			enclosed.perform(rrr, new RuntimeRequestResponse());
 		} catch (Throwable t) {
-			
-			// We're obligated to ensure there isn't 
-			// already a ManagedException in the stack trace...
-			for (Throwable cursor = t; cursor != null; cursor = cursor.getCause()) {
-				if (cursor instanceof ManagedException) {
-					throw new RuntimeException(t);
-				}
-			}
-			
-			throw new ManagedException(config, rrr, t);
+			throw failure(rrr, t);
 		}
 
 	}
 
-}
\ No newline at end of file
+	private void afterExecution(ExecutionMetrics em, TaskExecutionListener listener, 
+							long start, boolean failed) {
+		final long end = System.nanoTime();
+		if (em.isEnabled()) {
+			// NB:  A race here is harmless;  the registry returns the same object
+			EntryMetrics m = metrics;
+			if (m == null) {
+				m = em.getEntryMetrics(config);
+				metrics = m;
+			}
+			m.record(end - start, failed);
+		}
+		if (listener != null) {
+			listener.end(config, end, failed);
+		}
+	}
+
+}
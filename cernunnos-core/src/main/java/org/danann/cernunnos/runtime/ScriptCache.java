@@ -0,0 +1,560 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.danann.cernunnos.runtime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.danann.cernunnos.Grammar;
+import org.dom4j.Attribute;
+import org.dom4j.Branch;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.Node;
+import org.dom4j.ProcessingInstruction;
+import org.dom4j.QName;
+import org.dom4j.io.SAXReader;
+
+/**
+ * Stores a compact binary form of parsed Cernunnos scripts in a directory on 
+ * the file system, so that later runs (even in other JVMs) can skip XML 
+ * parsing.  Entries are keyed by the URL of the script and the grammar that 
+ * compiles it (see <code>read(URL, Grammar)</code>), and validated against 
+ * its last-modified time and length (for <code>file:</code> and 
+ * <code>jar:</code> URLs) or else a SHA-1 hash of its content, as well as the 
+ * version of the binary format;  a stale or unreadable entry is simply 
+ * replaced.
+ * 
+ * <p>Only the normalized script <code>Document</code> is cached;  this saves 
+ * reading and parsing the XML, but not compilation.  Each load still 
+ * bootstraps every task and phrase, which includes calculating its source 
+ * (<code>getUniquePath</code>) and evaluating the XPath expressions of its 
+ * reagents, since the results refer to nodes of the <code>Document</code> 
+ * and task implementations are not required to be serializable.  Problems 
+ * writing to the cache directory are logged and otherwise ignored.
+ * 
+ * <p>While a <code>ScriptRunner</code> with a <code>ScriptCache</code> runs a 
+ * script, the cache is also used for the scripts and grammars that script 
+ * loads in turn.
+ */
+public final class ScriptCache {
+
+    // Static Members.
+    private static final int MAGIC = 0x43524e43;   // 'CRNC'
+    private static final int FORMAT_VERSION = 2;
+    private static final long TIMESTAMP_GRANULARITY = 2000L;  // Milliseconds
+    private static final long[] UNKNOWN_STAMP = new long[] {-1L, -1L};
+    private static final ThreadLocal<ScriptCache> CURRENT = new ThreadLocal<ScriptCache>();
+    private static volatile ScriptCache defaultInstance = null;
+    private static final String FILE_SUFFIX = ".crnc";
+    private static final DocumentFactory fac = new DocumentFactory();
+
+    private static final byte END = 0;
+    private static final byte ELEMENT = 1;
+    private static final byte TEXT = 2;
+    private static final byte CDATA = 3;
+    private static final byte COMMENT = 4;
+    private static final byte PROCESSING_INSTRUCTION = 5;
+    private static final byte NAMESPACE = 6;
+
+    // Instance Members.
+    private final File directory;
+    private final Log log = LogFactory.getLog(ScriptCache.class);  // Don't declare as static in general libraries
+
+    /*
+     * Public API.
+     */
+
+    /**
+     * Creates a <code>ScriptCache</code> that stores entries in the specified 
+     * directory, which will be created if necessary.
+     */
+    public ScriptCache(File directory) {
+
+        // Assertions.
+        if (directory == null) {
+            String msg = "Argument 'directory' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Instance Members.
+        this.directory = directory;
+
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Specifies a <code>ScriptCache</code> that script loads will use when 
+     * no other cache applies, e.g. for <code>main.grammar</code> or for 
+     * <code>ScriptRunner</code> instances that don't have a cache of their 
+     * own.  The default is <code>null</code> (no cache).
+     */
+    public static void setDefault(ScriptCache scriptCache) {
+        defaultInstance = scriptCache;
+    }
+
+    public static ScriptCache getDefault() {
+        return defaultInstance;
+    }
+
+    /**
+     * Obtains the normalized <code>Document</code> for the script at the 
+     * specified location, from the cache if it holds a current entry or else 
+     * by parsing the script (and caching the result).
+     * 
+     * @param origin The absolute location of a Cernunnos script.
+     * @return The parsed script.
+     */
+    public Document read(URL origin) {
+        return read(origin, null);
+    }
+
+    /**
+     * Obtains the normalized <code>Document</code> for the script at the 
+     * specified location, as it will be compiled by the specified grammar.  
+     * Entries for different grammars (by name and origin, including their 
+     * parents) are kept apart, so that the cache can hold forms that depend on 
+     * the grammar without mixing them up.  Either way the <code>Document</code> 
+     * is named after the script's location, just like one read by a 
+     * <code>SAXReader</code>.
+     * 
+     * @param origin The absolute location of a Cernunnos script.
+     * @param grammar The grammar that will compile the script, or 
+     * <code>null</code> if it isn't known.
+     * @return The parsed script.
+     */
+    public Document read(URL origin, Grammar grammar) {
+
+        // Assertions.
+        if (origin == null) {
+            String msg = "Argument 'origin' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        // NB:  grammar may be null...
+
+        final String key = origin.toExternalForm() + "\n" + grammarKey(grammar);
+        final File f = new File(directory, hex(digest(key)) + FILE_SUFFIX);
+        final long[] stamp = stamp(origin);
+        byte[] content = null;
+        byte[] contentHash = null;
+
+        // Try the cache first...
+        Document hit = null;
+        if (f.exists()) {
+            try {
+                final DataInputStream inpt = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+                try {
+                    if (inpt.readInt() == MAGIC && inpt.readInt() == FORMAT_VERSION) {
+                        final long cachedModified = inpt.readLong();
+                        final long cachedLength = inpt.readLong();
+                        final byte[] cachedHash = new byte[inpt.readInt()];
+                        inpt.readFully(cachedHash);
+
+                        // A matching timestamp & length spare us reading the 
+                        // script;  otherwise compare content hashes...
+                        boolean current = stamp != null && stamp[0] == cachedModified 
+                                                && stamp[1] == cachedLength;
+                        if (!current) {
+                            content = readSource(origin);
+                            contentHash = sha1(content);
+                            current = Arrays.equals(cachedHash, contentHash);
+                        }
+
+                        if (current) {
+                            hit = fac.createDocument();
+                            hit.setName(origin.toExternalForm());
+                            readContent(inpt, hit, new ArrayList<String>());
+                        }
+                    }
+                } finally {
+                    inpt.close();
+                }
+            } catch (IOException ioe) {
+                log.warn("Unable to read script cache file '" + f + "';  it will be replaced.", ioe);
+                hit = null;
+            }
+        }
+        if (hit != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded script '" + origin + "' from cache file:  " + f);
+            }
+            if (content != null && isTrustworthy(stamp)) {
+                // Validate by timestamp from now on...
+                store(f, stamp, contentHash, hit);
+            }
+            return hit;
+        }
+
+        // Parse it...
+        if (content == null) {
+            content = readSource(origin);
+            contentHash = sha1(content);
+        }
+        Document rslt = null;
+        try {
+            rslt = new SAXReader().read(new ByteArrayInputStream(content), origin.toExternalForm());
+            rslt.normalize();
+        } catch (Throwable t) {
+            String msg = "Error reading a script from the specified location:  " + origin;
+            throw new RuntimeException(msg, t);
+        }
+
+        // Store it for next time...
+        store(f, isTrustworthy(stamp) ? stamp : null, contentHash, rslt);
+
+        return rslt;
+
+    }
+
+    /*
+     * Package API.
+     */
+
+    /**
+     * Returns the cache that script loads on this thread should use:  the 
+     * one registered with <code>push</code> by the script that is running, 
+     * if any, or else the default (possibly <code>null</code>).
+     */
+    static ScriptCache current() {
+        final ScriptCache rslt = CURRENT.get();
+        return rslt != null ? rslt : defaultInstance;
+    }
+
+    /**
+     * Makes the specified cache current on this thread, so that scripts 
+     * loaded by the running script (e.g. with <code>&lt;crn&gt;</code>) use 
+     * it too.  Returns the cache it replaces (possibly <code>null</code>), 
+     * which must be passed to <code>pop</code> afterwards.
+     */
+    static ScriptCache push(ScriptCache scriptCache) {
+
+        // Assertions.
+        if (scriptCache == null) {
+            String msg = "Argument 'scriptCache' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        final ScriptCache rslt = CURRENT.get();
+        CURRENT.set(scriptCache);
+        return rslt;
+
+    }
+
+    static void pop(ScriptCache previous) {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Reads the script at the specified location through the current cache 
+     * or, if there is none, with a plain <code>SAXReader</code>.
+     */
+    static Document load(URL origin, Grammar grammar) throws DocumentException {
+        final ScriptCache c = current();
+        return c != null ? c.read(origin, grammar) : new SAXReader().read(origin);
+    }
+
+    /*
+     * Implementation.
+     */
+
+    private static String grammarKey(Grammar grammar) {
+        final StringBuilder rslt = new StringBuilder();
+        for (Grammar g = grammar; g != null; g = g instanceof XmlGrammar ? ((XmlGrammar) g).getParent() : null) {
+            rslt.append(g.getClass().getName()).append(':').append(g.getName());
+            if (g instanceof XmlGrammar) {
+                rslt.append('@').append(((XmlGrammar) g).getOrigin());
+            }
+            rslt.append('\n');
+        }
+        return rslt.toString();
+    }
+
+    private byte[] readSource(URL origin) {
+        InputStream inpt = null;
+        try {
+            inpt = origin.openStream();
+            return IOUtils.toByteArray(inpt);
+        } catch (Throwable t) {
+            String msg = "Error reading a script from the specified location:  " + origin;
+            throw new RuntimeException(msg, t);
+        } finally {
+            IOUtils.closeQuietly(inpt);
+        }
+    }
+
+    private void store(File f, long[] stamp, byte[] contentHash, Document doc) {
+        try {
+            writeEntry(f, stamp != null ? stamp : UNKNOWN_STAMP, contentHash, doc);
+        } catch (Throwable t) {
+            log.warn("Unable to write script cache file:  " + f, t);
+        }
+    }
+
+    private void readContent(DataInputStream inpt, Branch parent, List<String> strings) throws IOException {
+        for (byte type = inpt.readByte(); type != END; type = inpt.readByte()) {
+            switch (type) {
+                case ELEMENT:
+                    final QName qname = readQName(inpt, strings);
+                    final Element e = fac.createElement(qname);
+                    for (int i = inpt.readInt(); i > 0; i--) {
+                        final QName attrName = readQName(inpt, strings);
+                        e.addAttribute(attrName, readString(inpt, strings));
+                    }
+                    parent.add(e);
+                    readContent(inpt, e, strings);
+                    break;
+                case TEXT:
+                    ((Element) parent).addText(readString(inpt, strings));
+                    break;
+                case CDATA:
+                    ((Element) parent).addCDATA(readString(inpt, strings));
+                    break;
+                case COMMENT:
+                    parent.add(fac.createComment(readString(inpt, strings)));
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    final String target = readString(inpt, strings);
+                    parent.add(fac.createProcessingInstruction(target, readString(inpt, strings)));
+                    break;
+                case NAMESPACE:
+                    final String prefix = readString(inpt, strings);
+                    ((Element) parent).addNamespace(prefix, readString(inpt, strings));
+                    break;
+                default:
+                    throw new IOException("Unrecognized node type in script cache file:  " + type);
+            }
+        }
+    }
+
+    private QName readQName(DataInputStream inpt, List<String> strings) throws IOException {
+        final String name = readString(inpt, strings);
+        final String prefix = readString(inpt, strings);
+        final String uri = readString(inpt, strings);
+        return fac.createQName(name, prefix, uri);
+    }
+
+    private String readString(DataInputStream inpt, List<String> strings) throws IOException {
+        final int index = inpt.readInt();
+        if (index != -1) {
+            return strings.get(index);
+        }
+        final byte[] bytes = new byte[inpt.readInt()];
+        inpt.readFully(bytes);
+        final String rslt = new String(bytes, "UTF-8");
+        strings.add(rslt);
+        return rslt;
+    }
+
+    private void writeEntry(File f, long[] stamp, byte[] contentHash, Document doc) throws IOException {
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the script cache directory:  " + directory);
+        }
+
+        // Write to a temporary file & rename it, so that readers in 
+        // other processes never see a partial entry...
+        final File tmp = File.createTempFile("script", ".tmp", directory);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(stamp[0]);
+            out.writeLong(stamp[1]);
+            out.writeInt(contentHash.length);
+            out.write(contentHash);
+            writeContent(out, doc.nodeIterator(), new HashMap<String,Integer>());
+        } finally {
+            out.close();
+        }
+
+        if (!tmp.renameTo(f)) {
+            // Some platforms won't rename over an existing file...
+            f.delete();
+            if (!tmp.renameTo(f)) {
+                tmp.delete();
+                throw new IOException("Unable to rename '" + tmp + "' to '" + f + "'");
+            }
+        }
+
+    }
+
+    private void writeContent(DataOutputStream out, Iterator<?> nodes, Map<String,Integer> strings) throws IOException {
+        while (nodes.hasNext()) {
+            final Node n = (Node) nodes.next();
+            switch (n.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    final Element e = (Element) n;
+                    out.writeByte(ELEMENT);
+                    writeQName(out, e.getQName(), strings);
+                    out.writeInt(e.attributeCount());
+                    for (Iterator<?> it = e.attributeIterator(); it.hasNext();) {
+                        final Attribute a = (Attribute) it.next();
+                        writeQName(out, a.getQName(), strings);
+                        writeString(out, a.getValue(), strings);
+                    }
+                    writeContent(out, e.nodeIterator(), strings);
+                    break;
+                case Node.TEXT_NODE:
+                case Node.ENTITY_REFERENCE_NODE:
+                    out.writeByte(TEXT);
+                    writeString(out, n.getText(), strings);
+                    break;
+                case Node.CDATA_SECTION_NODE:
+                    out.writeByte(CDATA);
+                    writeString(out, n.getText(), strings);
+                    break;
+                case Node.COMMENT_NODE:
+                    out.writeByte(COMMENT);
+                    writeString(out, n.getText(), strings);
+                    break;
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    out.writeByte(PROCESSING_INSTRUCTION);
+                    writeString(out, ((ProcessingInstruction) n).getTarget(), strings);
+                    writeString(out, n.getText(), strings);
+                    break;
+                case Node.NAMESPACE_NODE:
+                    out.writeByte(NAMESPACE);
+                    writeString(out, ((Namespace) n).getPrefix(), strings);
+                    writeString(out, ((Namespace) n).getURI(), strings);
+                    break;
+                default:
+                    // Nothing else (e.g. DOCTYPE) matters to Cernunnos...
+                    break;
+            }
+        }
+        out.writeByte(END);
+    }
+
+    private void writeQName(DataOutputStream out, QName qname, Map<String,Integer> strings) throws IOException {
+        writeString(out, qname.getName(), strings);
+        writeString(out, qname.getNamespacePrefix(), strings);
+        writeString(out, qname.getNamespaceURI(), strings);
+    }
+
+    /**
+     * Element names, attribute names & many values repeat throughout a 
+     * script, so each distinct string is written once and referenced by 
+     * index thereafter.
+     */
+    private void writeString(DataOutputStream out, String s, Map<String,Integer> strings) throws IOException {
+        final Integer index = strings.get(s);
+        if (index != null) {
+            out.writeInt(index.intValue());
+            return;
+        }
+        final byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(-1);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        strings.put(s, strings.size());
+    }
+
+    /**
+     * Returns the last-modified time and length of the script, if they can be 
+     * had without reading it, or else <code>null</code>.
+     */
+    private static long[] stamp(URL origin) {
+        try {
+            if (origin.getProtocol().equals("file")) {
+                final File f = new File(origin.toURI());
+                if (f.isFile()) {
+                    return new long[] {f.lastModified(), f.length()};
+                }
+            } else if (origin.getProtocol().equals("jar")) {
+                final URLConnection conn = origin.openConnection();
+                if (conn instanceof JarURLConnection) {
+                    final JarEntry entry = ((JarURLConnection) conn).getJarEntry();
+                    if (entry != null && entry.getSize() >= 0) {
+                        return new long[] {entry.getTime(), entry.getSize()};
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            // Fall back to comparing content...
+        }
+        return null;
+    }
+
+    /**
+     * A script modified within the last couple of seconds could change again 
+     * without its timestamp changing (file systems record times coarsely), 
+     * so only older timestamps are recorded for validation.
+     */
+    private static boolean isTrustworthy(long[] stamp) {
+        return stamp != null && stamp[0] > 0 
+                    && stamp[0] < System.currentTimeMillis() - TIMESTAMP_GRANULARITY;
+    }
+
+    private static byte[] sha1(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(content);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static byte[] digest(String s) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(s.getBytes("UTF-8"));
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder rslt = new StringBuilder();
+        for (byte b : bytes) {
+            rslt.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return rslt.toString();
+    }
+
+}
@@ -20,7 +20,7 @@ import java.io.File;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,9 +32,9 @@ import org.danann.cernunnos.ReturnValueImpl;
 import org.danann.cernunnos.Task;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.cache.BoundedCache;
 import org.dom4j.Document;
 import org.dom4j.Element;
-import org.dom4j.io.SAXReader;
 
 /**
  * Simplifies the process of invoking Cernunnos tasks from within Java code.
@@ -51,6 +51,11 @@ public class ScriptRunner {
 
     // Instance Members.
     private final Grammar grammar;
+    private ScriptCache scriptCache;
+    private volatile Grammar lazyGrammar;
+    private volatile TaskCompiler taskCompiler;
+    private volatile TaskExecutionListener executionListener;
+    private volatile ConcurrentMap<Object,Object> cache;
     private final Log log;  // Don't declare as static in general libraries
 
     /*
@@ -79,10 +84,113 @@ public class ScriptRunner {
 
         // Instance Members.
         this.grammar = g;
+        this.scriptCache = null;
+        this.lazyGrammar = null;
+        this.taskCompiler = null;
+        this.executionListener = null;
+        this.cache = null;
         this.log = LogFactory.getLog(ScriptRunner.class);
 
     }
 
+    /**
+     * Optionally specifies a <code>ScriptCache</code> that 
+     * <code>compileTask(String)</code> will use to avoid parsing scripts that 
+     * haven't changed since they were last read.  Scripts and grammars loaded 
+     * while this <code>ScriptRunner</code> compiles or runs a script (e.g. 
+     * with <code>&lt;crn&gt;</code>) use it as well.  The default is 
+     * <code>null</code>, which means <code>ScriptCache.getDefault()</code> 
+     * (if any) applies.
+     */
+    public void setScriptCache(ScriptCache scriptCache) {
+        this.scriptCache = scriptCache;
+    }
+
+    public ScriptCache getScriptCache() {
+        return scriptCache;
+    }
+
+    /**
+     * Specifies whether scripts compiled by this <code>ScriptRunner</code> 
+     * should bootstrap each task the first time it runs, instead of all at 
+     * once up front.  The <code>Grammar</code> passed to the constructor is 
+     * not modified.  Lazy compilation requires an <code>XmlGrammar</code>.
+     *
+     * @see XmlGrammar#setLazyCompilation(boolean)
+     */
+    public void setLazyCompilation(boolean lazyCompilation) {
+
+        if (!lazyCompilation) {
+            this.lazyGrammar = null;
+            return;
+        }
+
+        // Assertions.
+        if (!(grammar instanceof XmlGrammar)) {
+            String msg = "Lazy compilation requires an XmlGrammar:  " 
+                                        + grammar.getClass().getName();
+            throw new IllegalStateException(msg);
+        }
+
+        final XmlGrammar g = new XmlGrammar(grammar.getName(), ((XmlGrammar) grammar).getOrigin(), grammar);
+        g.setLazyCompilation(true);
+        this.lazyGrammar = g;
+
+    }
+
+    public boolean isLazyCompilation() {
+        return lazyGrammar != null;
+    }
+
+    /**
+     * Specifies whether scripts compiled by this <code>ScriptRunner</code> 
+     * should be turned into generated classes after they're bootstrapped.  In 
+     * compiled mode each task is invoked through a class specific to its 
+     * type, and the children of container tasks (e.g. 
+     * <code>&lt;for-each&gt;</code>) run as a straight line of calls instead 
+     * of a loop over a <code>List</code>;  this gives the JVM call sites it 
+     * can inline.  Error reporting, execution metrics, and trace events 
+     * behave as they do otherwise.  Tasks that can't be compiled (e.g. 
+     * branches not yet bootstrapped under lazy compilation) run interpreted.  
+     * The default is <code>false</code>.
+     */
+    public void setCompiledMode(boolean compiledMode) {
+        this.taskCompiler = compiledMode ? new TaskCompiler() : null;
+    }
+
+    public boolean isCompiledMode() {
+        return taskCompiler != null;
+    }
+
+    /**
+     * Optionally specifies a <code>TaskExecutionListener</code> that will 
+     * receive begin and end events for every task and phrase that runs under 
+     * this <code>ScriptRunner</code>, including scripts those tasks invoke in 
+     * turn.  The default is <code>null</code> (no listener).
+     */
+    public void setExecutionListener(TaskExecutionListener executionListener) {
+        this.executionListener = executionListener;
+    }
+
+    public TaskExecutionListener getExecutionListener() {
+        return executionListener;
+    }
+
+    /**
+     * Optionally specifies a cache that every run of this 
+     * <code>ScriptRunner</code> will share as <code>Attributes.CACHE</code> 
+     * (unless the <code>TaskRequest</code> already provides one).  The default 
+     * is <code>null</code>, which gives each run its own 
+     * <code>BoundedCache</code> with default settings.
+     */
+    public void setCache(ConcurrentMap<Object,Object> cache) {
+        this.cache = cache;
+    }
+
+    public ConcurrentMap<Object,Object> getCache() {
+        return cache;
+    }
+
     /**
      * Prepares a <code>Task</code> for (subsequent) execution.
      *
@@ -96,18 +204,29 @@ public class ScriptRunner {
             throw new IllegalArgumentException(msg);
         }
 
-        Document doc = null;
-        URL origin = null;
+        final ScriptCache c = scriptCache;
+        final ScriptCache previous = c != null ? ScriptCache.push(c) : null;
         try {
-            origin = new URL(new File(".").toURI().toURL(), location);
-            doc = new SAXReader().read(origin);
-        } catch (Throwable t) {
-            String msg = "Error reading a script from the specified location:  " + location;
-            throw new RuntimeException(msg, t);
-        }
 
-        return new TaskDecorator(grammar.newTask(doc.getRootElement(), null),
-                                                origin.toExternalForm());
+            final Grammar g = getCompilingGrammar();
+            Document doc = null;
+            URL origin = null;
+            try {
+                origin = new URL(new File(".").toURI().toURL(), location);
+                doc = ScriptCache.load(origin, g);
+            } catch (Throwable t) {
+                String msg = "Error reading a script from the specified location:  " + location;
+                throw new RuntimeException(msg, t);
+            }
+
+            return new TaskDecorator(compile(g.newTask(doc.getRootElement(), null)),
+                                                    origin.toExternalForm());
+
+        } finally {
+            if (c != null) {
+                ScriptCache.pop(previous);
+            }
+        }
 
     }
 
@@ -124,7 +243,7 @@ public class ScriptRunner {
             throw new IllegalArgumentException(msg);
         }
 
-        return grammar.newTask(m, null);
+        return compile(getCompilingGrammar().newTask(m, null));
 
     }
 
@@ -267,7 +386,8 @@ public class ScriptRunner {
         
         // Set up Attributes.CACHE if not already provided...
         if (!tr.hasAttribute(Attributes.CACHE)) {
-            tr.setAttribute(Attributes.CACHE, new ConcurrentHashMap<Object, Object>());
+            final ConcurrentMap<Object,Object> c = cache;
+            tr.setAttribute(Attributes.CACHE, c != null ? c : new BoundedCache<Object,Object>());
         }
 
         // Write the initial contents of the TaskRequest to the logs...
@@ -285,7 +405,24 @@ public class ScriptRunner {
         }
 
         // Invoke the task...
-        k.perform(tr, res);
+        final TaskExecutionListener listener = executionListener;
+        final ScriptCache c = scriptCache;
+        if (listener == null && c == null) {
+            k.perform(tr, res);
+            return res;
+        }
+        final TaskExecutionListener previousListener = listener != null ? ExecutionTrace.push(listener) : null;
+        final ScriptCache previousCache = c != null ? ScriptCache.push(c) : null;
+        try {
+            k.perform(tr, res);
+        } finally {
+            if (c != null) {
+                ScriptCache.pop(previousCache);
+            }
+            if (listener != null) {
+                ExecutionTrace.pop(previousListener);
+            }
+        }
         return res;
 
     }
@@ -392,6 +529,20 @@ public class ScriptRunner {
 
     }
 
+    /*
+     * Private Stuff.
+     */
+
+    private Grammar getCompilingGrammar() {
+        final Grammar g = lazyGrammar;
+        return g != null ? g : grammar;
+    }
+
+    private Task compile(Task k) {
+        final TaskCompiler c = taskCompiler;
+        return c != null ? c.compile(k) : k;
+    }
+
     /*
      * Nested Types.
      */
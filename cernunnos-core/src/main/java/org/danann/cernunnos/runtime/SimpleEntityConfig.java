@@ -21,6 +21,7 @@ import java.util.Map;
 
 import org.danann.cernunnos.Formula;
 import org.danann.cernunnos.Grammar;
+import org.danann.cernunnos.LiteralPhrase;
 import org.danann.cernunnos.Phrase;
 import org.danann.cernunnos.Reagent;
 import org.danann.cernunnos.ReagentType;
@@ -36,6 +37,7 @@ public final class SimpleEntityConfig implements EntityConfig {
 	private final Grammar grammar;
 	private final String entryName;
 	private final String source;
+	private final String systemId;
 	private final Formula formula;
 	private final Map<Reagent,Object> mappings;
 
@@ -44,6 +46,14 @@ public final class SimpleEntityConfig implements EntityConfig {
 	 */
 
 	public SimpleEntityConfig(Grammar grammar, String entryName, String source, Formula f, Map<Reagent,Object> mappings) {
+		this(grammar, entryName, source, null, f, mappings);
+	}
+
+	/**
+	 * Creates a config that also knows the location (system ID) of the 
+	 * script that defines the entity, which may be <code>null</code>.
+	 */
+	public SimpleEntityConfig(Grammar grammar, String entryName, String source, String systemId, Formula f, Map<Reagent,Object> mappings) {
 
 		// Assertions...
 		if (grammar == null) {
@@ -54,7 +64,7 @@ public final class SimpleEntityConfig implements EntityConfig {
 			String msg = "Argument 'entryName' cannot be null.";
 			throw new IllegalArgumentException(msg);
 		}
-		// NB:  'source' may be null.
+		// NB:  'source' & 'systemId' may be null.
 		if (f == null) {
 			String msg = "Argument 'f [Formula]' cannot be null.";
 			throw new IllegalArgumentException(msg);
@@ -68,6 +78,7 @@ public final class SimpleEntityConfig implements EntityConfig {
 		this.grammar = grammar;
 		this.entryName = entryName;
 		this.source = source;
+		this.systemId = systemId;
 		this.formula = f;
 		this.mappings = (Map<Reagent,Object>) Collections.unmodifiableMap(mappings);
 
@@ -85,12 +96,109 @@ public final class SimpleEntityConfig implements EntityConfig {
 		return source;
 	}
 
+	/**
+	 * Location of the script that defines this entity (e.g. its URL), or 
+	 * <code>null</code> if it isn't known.  Unlike <code>getSource</code>, 
+	 * which is only unique within one script, the pair is unique across 
+	 * scripts.
+	 */
+	public String getSystemId() {
+		return systemId;
+	}
+
 	public Formula getFormula() {
 		return formula;
 	}
 
 	public Object getValue(Reagent r) {
 
+		Object rslt = getMapping(r);
+		// Must not get in the way if the mapping value is
+		// 'null' -- downstream code will become confused
+		if (rslt != null && r.getReagentType().equals(ReagentType.PHRASE) 
+							&& !isWellTypedLiteral(rslt, r)) {
+			// This decorator will provide a very useful warning if there's likely
+			// trouble and allow the developer to find the problem very quickly...
+			rslt = new RuntimeReagentDecorator((Phrase) rslt, r);
+		}
+
+		return rslt;
+
+	}
+
+	public Map<Reagent,Object> getValues() {
+		return mappings;
+	}
+
+	/**
+	 * Returns a copy of this config without any reagent values.  The runtime 
+	 * decorators keep their config for error messages, metrics, and traces, 
+	 * which only need the entry name and source;  the values (NODE_LIST values 
+	 * especially, which pin the whole source <code>Document</code>) are no 
+	 * longer needed once the entity is initialized.
+	 */
+	public SimpleEntityConfig compact() {
+		return new SimpleEntityConfig(grammar, entryName, source, systemId, formula, 
+						Collections.<Reagent,Object>emptyMap());
+	}
+
+	/**
+	 * Returns <code>config.compact()</code> if the specified config is a 
+	 * <code>SimpleEntityConfig</code>, otherwise the config itself;  for 
+	 * entities that keep their config after <code>init</code> (e.g. for 
+	 * <code>ManagedException</code>).
+	 */
+	public static EntityConfig compact(EntityConfig config) {
+		return config instanceof SimpleEntityConfig 
+						? ((SimpleEntityConfig) config).compact() 
+						: config;
+	}
+
+	/**
+	 * Obtains the value of the specified <code>PHRASE</code> reagent as a 
+	 * constant of the specified type, if the value is a literal known when 
+	 * the entity is compiled.  Tasks may use this method in <code>init</code> 
+	 * to avoid evaluating and parsing the same value on every call;  when it 
+	 * returns <code>null</code> the phrase must be evaluated as usual.
+	 * 
+	 * @param config The config passed to the entity's <code>init</code> method.
+	 * @param r A <code>PHRASE</code> reagent defined by the entity.
+	 * @param type The desired type (e.g. <code>Boolean</code>, 
+	 * <code>Integer</code>, or an enum).
+	 * @return The constant value, or <code>null</code> if the value is 
+	 * dynamic, <code>null</code>, or cannot be converted exactly (see 
+	 * <code>LiteralPhrase.isConvertible</code>).
+	 * @see LiteralPhrase#getValue(Class)
+	 */
+	public static <T> T getConstant(EntityConfig config, Reagent r, Class<T> type) {
+
+		// Assertions...
+		if (config == null) {
+			String msg = "Argument 'config' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+		if (type == null) {
+			String msg = "Argument 'type' cannot be null.";
+			throw new IllegalArgumentException(msg);
+		}
+
+		// NB:  The raw mapping, not the (possibly) decorated value
+		final Object value = config instanceof SimpleEntityConfig 
+						? ((SimpleEntityConfig) config).getMapping(r) 
+						: config.getValue(r);
+		return value instanceof LiteralPhrase 
+						&& ((LiteralPhrase) value).isConvertible(type) 
+						? ((LiteralPhrase) value).getValue(type) 
+						: null;
+
+	}
+
+	/*
+	 * Implementation.
+	 */
+
+	private Object getMapping(Reagent r) {
+
 		// Assertions...
 		if (r == null) {
 			String msg = "Argument 'r [Reagent]' cannot be null.";
@@ -107,21 +215,21 @@ public final class SimpleEntityConfig implements EntityConfig {
 			throw new IllegalArgumentException(msg);
 		}
 
-		Object rslt = mappings.get(r);
-		// Must not get in the way if the mapping value is
-		// 'null' -- downstream code will become confused
-		if (rslt != null && r.getReagentType().equals(ReagentType.PHRASE)) {
-			// This decorator will provide a very useful warning if there's likely
-			// trouble and allow the developer to find the problem very quickly...
-			rslt = new RuntimeReagentDecorator((Phrase) rslt, r);
-		}
-
-		return rslt;
+		return mappings.get(r);
 
 	}
 
-	public Map<Reagent,Object> getValues() {
-		return mappings;
+	/**
+	 * Literals that already match the expected type can never trigger the 
+	 * warning in <code>RuntimeReagentDecorator</code>, so they're handed out 
+	 * as they are;  this saves a level of indirection on every evaluation.
+	 */
+	private static boolean isWellTypedLiteral(Object phrase, Reagent r) {
+		if (!(phrase instanceof LiteralPhrase)) {
+			return false;
+		}
+		final Object value = ((LiteralPhrase) phrase).evaluate(null, null);
+		return value == null || r.getExpectedType().isInstance(value);
 	}
 
 }
\ No newline at end of file
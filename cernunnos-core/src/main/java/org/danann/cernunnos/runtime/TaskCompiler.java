@@ -0,0 +1,354 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.danann.cernunnos.runtime;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.danann.cernunnos.AbstractContainerTask;
+import org.danann.cernunnos.Task;
+
+/**
+ * Turns a compiled (bootstrapped) <code>Task</code> tree into generated 
+ * classes for <code>ScriptRunner</code>'s compiled mode.  Two kinds of 
+ * classes are generated, each of them once per <code>TaskCompiler</code>:
+ * <ul>
+ *   <li>A <code>CompiledTask</code> for each concrete <code>Task</code> type, 
+ *   which replaces the <code>RuntimeTaskDecorator</code> of every task of 
+ *   that type and invokes it without an interface dispatch</li>
+ *   <li>A <code>CompiledSequence</code> for each distinct list of child 
+ *   types, which replaces the subtasks of an 
+ *   <code>AbstractContainerTask</code> with straight-line calls</li>
+ * </ul>
+ * Tasks that can't be compiled -- non-public classes, lazily-compiled 
+ * branches, the children of containers that don't extend 
+ * <code>AbstractContainerTask</code>, etc. -- are left as they are and run 
+ * interpreted.  Phrases aren't affected;  literal phrases are already 
+ * evaluated without a decorator.
+ */
+final class TaskCompiler {
+
+    /**
+     * Longer lists of subtasks keep the interpreted loop;  a straight line of 
+     * calls that long wouldn't be inlined in any case.
+     */
+    static final int MAX_SEQUENCE_LENGTH = 64;
+
+    private static final String GENERATED_PACKAGE = "org.danann.cernunnos.runtime.generated.";
+    private static final String TASK = "org/danann/cernunnos/Task";
+    private static final String COMPILED_TASK = "org/danann/cernunnos/runtime/CompiledTask";
+    private static final String COMPILED_SEQUENCE = "org/danann/cernunnos/runtime/CompiledSequence";
+    private static final String PERFORM_DESCRIPTOR = 
+            "(Lorg/danann/cernunnos/TaskRequest;Lorg/danann/cernunnos/TaskResponse;)V";
+
+    // Instance Members.
+    private final GeneratedClassLoader loader;
+    private final Map<Class<?>,Constructor<?>> compiledTasks;   // null means "can't"
+    private final Map<List<Class<?>>,Constructor<?>> compiledSequences;
+    private int generatedCount;
+    private final Log log;  // Don't declare as static in general libraries
+
+    /*
+     * Package API.
+     */
+
+    TaskCompiler() {
+
+        // Instance Members.
+        this.loader = new GeneratedClassLoader(TaskCompiler.class.getClassLoader());
+        this.compiledTasks = new HashMap<Class<?>,Constructor<?>>();
+        this.compiledSequences = new HashMap<List<Class<?>>,Constructor<?>>();
+        this.generatedCount = 0;
+        this.log = LogFactory.getLog(TaskCompiler.class);
+
+    }
+
+    /**
+     * Compiles the specified <code>Task</code> and its descendants, as far 
+     * as possible.  Subtasks are replaced in place;  the return value stands 
+     * in for <code>k</code> itself.
+     */
+    synchronized Task compile(Task k) {
+
+        // Assertions.
+        if (k == null) {
+            String msg = "Argument 'k [Task]' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (k instanceof RuntimeTaskDecorator) {
+            final RuntimeTaskDecorator d = (RuntimeTaskDecorator) k;
+            final Task enclosed = d.getEnclosed();
+            compileSubtasks(enclosed);
+            return compileDecorator(d, enclosed);
+        }
+
+        compileSubtasks(k);
+        return k;
+
+    }
+
+    /*
+     * Implementation.
+     */
+
+    private void compileSubtasks(Task k) {
+
+        if (!(k instanceof AbstractContainerTask)) {
+            return;
+        }
+
+        final AbstractContainerTask container = (AbstractContainerTask) k;
+        final List<Task> subtasks = container.getSubtasks();
+        if (subtasks == null || subtasks.size() == 0) {
+            // Nothing to do...
+            return;
+        }
+
+        final Task[] compiled = new Task[subtasks.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compile(subtasks.get(i));
+        }
+
+        final Task sequence = compiled.length > 1 && compiled.length <= MAX_SEQUENCE_LENGTH 
+                                    ? compileSequence(compiled) 
+                                    : null;
+        if (sequence != null) {
+            container.setSubtasks(Collections.singletonList(sequence));
+        } else {
+            container.setSubtasks(Collections.unmodifiableList(Arrays.asList(compiled)));
+        }
+
+    }
+
+    private Task compileDecorator(RuntimeTaskDecorator d, Task enclosed) {
+
+        final Class<?> type = enclosed.getClass();
+        Constructor<?> c = compiledTasks.get(type);
+        if (c == null && !compiledTasks.containsKey(type)) {
+            c = generateTask(type);
+            compiledTasks.put(type, c);
+        }
+        if (c == null) {
+            // Run interpreted...
+            return d;
+        }
+
+        return (Task) newInstance(c, d, enclosed);
+
+    }
+
+    private Constructor<?> generateTask(Class<?> type) {
+
+        if (!Modifier.isPublic(type.getModifiers()) || !loader.expose(type)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Task type will run interpreted:  " + type.getName());
+            }
+            return null;
+        }
+
+        final String name = GENERATED_PACKAGE + type.getSimpleName() + "_" + (++generatedCount);
+        final String self = internalName(name);
+        final String typeDescriptor = "L" + internalName(type.getName()) + ";";
+
+        final ClassFileBuilder cf = new ClassFileBuilder(self, COMPILED_TASK);
+        cf.addField(ClassFileBuilder.ACC_PRIVATE | ClassFileBuilder.ACC_FINAL, "task", typeDescriptor);
+        final int task = cf.fieldRef(self, "task", typeDescriptor);
+
+        // public <init>(RuntimeTaskDecorator decorator, Task task)
+        cf.addMethod(ClassFileBuilder.ACC_PUBLIC, "<init>", 
+                "(Lorg/danann/cernunnos/runtime/RuntimeTaskDecorator;Lorg/danann/cernunnos/Task;)V", 
+                new ClassFileBuilder.Code(2, 3)
+                    .aload(0)
+                    .aload(1)
+                    .invokespecial(cf.methodRef(COMPILED_TASK, "<init>", 
+                                "(Lorg/danann/cernunnos/runtime/RuntimeTaskDecorator;)V"))
+                    .aload(0)
+                    .aload(2)
+                    .checkcast(cf.classRef(internalName(type.getName())))
+                    .putfield(task)
+                    .returnVoid());
+
+        // protected void performEnclosed(TaskRequest req, TaskResponse res)
+        cf.addMethod(ClassFileBuilder.ACC_PROTECTED, "performEnclosed", PERFORM_DESCRIPTOR, 
+                new ClassFileBuilder.Code(3, 3)
+                    .aload(0)
+                    .getfield(task)
+                    .aload(1)
+                    .aload(2)
+                    .invokevirtual(cf.methodRef(internalName(type.getName()), "perform", PERFORM_DESCRIPTOR))
+                    .returnVoid());
+
+        return define(name, cf, RuntimeTaskDecorator.class, Task.class);
+
+    }
+
+    private Task compileSequence(Task[] tasks) {
+
+        final List<Class<?>> shape = new ArrayList<Class<?>>(tasks.length);
+        for (Task k : tasks) {
+            final Class<?> type = k.getClass();
+            final int mod = type.getModifiers();
+            // Exact types only where there can't be a subclass...
+            shape.add(Modifier.isPublic(mod) && Modifier.isFinal(mod) && loader.expose(type) 
+                                    ? type 
+                                    : Task.class);
+        }
+
+        Constructor<?> c = compiledSequences.get(shape);
+        if (c == null && !compiledSequences.containsKey(shape)) {
+            c = generateSequence(shape);
+            compiledSequences.put(shape, c);
+        }
+        if (c == null) {
+            // Run interpreted...
+            return null;
+        }
+
+        return (Task) newInstance(c, (Object) tasks);
+
+    }
+
+    private Constructor<?> generateSequence(List<Class<?>> shape) {
+
+        final String name = GENERATED_PACKAGE + "Sequence_" + (++generatedCount);
+        final String self = internalName(name);
+
+        final ClassFileBuilder cf = new ClassFileBuilder(self, COMPILED_SEQUENCE);
+        final int[] fields = new int[shape.size()];
+        for (int i = 0; i < fields.length; i++) {
+            final String descriptor = "L" + internalName(shape.get(i).getName()) + ";";
+            cf.addField(ClassFileBuilder.ACC_PRIVATE | ClassFileBuilder.ACC_FINAL, "task" + i, descriptor);
+            fields[i] = cf.fieldRef(self, "task" + i, descriptor);
+        }
+
+        // public <init>(Task[] tasks)
+        final ClassFileBuilder.Code init = new ClassFileBuilder.Code(3, 2)
+                    .aload(0)
+                    .invokespecial(cf.methodRef(COMPILED_SEQUENCE, "<init>", "()V"));
+        for (int i = 0; i < fields.length; i++) {
+            init.aload(0)
+                    .aload(1)
+                    .pushInt(i)
+                    .aaload()
+                    .checkcast(cf.classRef(internalName(shape.get(i).getName())))
+                    .putfield(fields[i]);
+        }
+        cf.addMethod(ClassFileBuilder.ACC_PUBLIC, "<init>", "([Lorg/danann/cernunnos/Task;)V", 
+                                                    init.returnVoid());
+
+        // public void perform(TaskRequest req, TaskResponse res)
+        final ClassFileBuilder.Code perform = new ClassFileBuilder.Code(3, 3);
+        for (int i = 0; i < fields.length; i++) {
+            final Class<?> type = shape.get(i);
+            perform.aload(0)
+                    .getfield(fields[i])
+                    .aload(1)
+                    .aload(2);
+            if (type == Task.class) {
+                perform.invokeinterface(cf.interfaceMethodRef(TASK, "perform", PERFORM_DESCRIPTOR), 2);
+            } else {
+                perform.invokevirtual(cf.methodRef(internalName(type.getName()), "perform", PERFORM_DESCRIPTOR));
+            }
+        }
+        cf.addMethod(ClassFileBuilder.ACC_PUBLIC, "perform", PERFORM_DESCRIPTOR, perform.returnVoid());
+
+        return define(name, cf, Task[].class);
+
+    }
+
+    private Constructor<?> define(String name, ClassFileBuilder cf, Class<?>... parameterTypes) {
+        try {
+            final Class<?> rslt = loader.define(name, cf.toByteArray());
+            return rslt.getConstructor(parameterTypes);
+        } catch (Throwable t) {
+            // Not fatal;  the tasks in question will run interpreted...
+            log.warn("Unable to generate class '" + name + "';  running interpreted instead", t);
+            return null;
+        }
+    }
+
+    private static Object newInstance(Constructor<?> c, Object... args) {
+        try {
+            return c.newInstance(args);
+        } catch (Throwable t) {
+            String msg = "Unable to create an instance of the generated class:  " 
+                                                + c.getDeclaringClass().getName();
+            throw new RuntimeException(msg, t);
+        }
+    }
+
+    private static String internalName(String className) {
+        return className.replace('.', '/');
+    }
+
+    /*
+     * Nested Types.
+     */
+
+    /**
+     * Defines the generated classes.  Task types are exposed to it by name, 
+     * since they may come from several <code>ClassLoader</code>s (e.g. those 
+     * of different grammars).
+     */
+    private static final class GeneratedClassLoader extends ClassLoader {
+
+        // Instance Members.
+        private final ConcurrentMap<String,Class<?>> exposed = new ConcurrentHashMap<String,Class<?>>();
+
+        GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Makes the specified class visible to generated classes, unless a 
+         * different class with the same name already is.
+         */
+        boolean expose(Class<?> c) {
+            if (c.getClassLoader() == this) {
+                // One of ours...
+                return true;
+            }
+            final Class<?> known = exposed.putIfAbsent(c.getName(), c);
+            return known == null || known == c;
+        }
+
+        Class<?> define(String name, byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) 
+                                                throws ClassNotFoundException {
+            final Class<?> rslt = exposed.get(name);
+            return rslt != null ? rslt : super.loadClass(name, resolve);
+        }
+
+    }
+
+}
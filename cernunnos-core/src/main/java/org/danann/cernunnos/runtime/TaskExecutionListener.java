@@ -0,0 +1,54 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.runtime;
+
+import org.danann.cernunnos.EntityConfig;
+
+/**
+ * Receives begin and end events for every task and phrase that runs under a 
+ * <code>ScriptRunner</code> with a listener attached (including scripts 
+ * invoked from within that run, e.g. by <code>&lt;cernunnos&gt;</code>).  
+ * Both methods are invoked synchronously on the executing thread, so 
+ * implementations may use <code>Thread.currentThread()</code> to tell 
+ * concurrent executions apart;  they must be thread-safe, and fast.
+ * 
+ * @see ScriptRunner#setExecutionListener(TaskExecutionListener)
+ * @see TraceWriter
+ */
+public interface TaskExecutionListener {
+
+    /**
+     * Called before the specified task or phrase executes.
+     * 
+     * @param config Configuration of the entity, including its entry name and 
+     * source
+     * @param nanoTime The value of <code>System.nanoTime()</code> at the start
+     */
+    void begin(EntityConfig config, long nanoTime);
+
+    /**
+     * Called after the specified task or phrase executes, whether or not it 
+     * completed normally.
+     * 
+     * @param config Configuration of the entity, including its entry name and 
+     * source
+     * @param nanoTime The value of <code>System.nanoTime()</code> at the end
+     * @param failed <code>true</code> if the entity threw an exception
+     */
+    void end(EntityConfig config, long nanoTime, boolean failed);
+
+}
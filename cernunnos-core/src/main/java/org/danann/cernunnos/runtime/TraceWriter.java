@@ -0,0 +1,294 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.runtime;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.danann.cernunnos.EntityConfig;
+
+/**
+ * <code>TaskExecutionListener</code> that records a trace of everything that 
+ * runs and writes it out in one of two formats:
+ * <ul>
+ *   <li><code>CHROME_TRACE</code>:  Trace Event JSON, which can be loaded in 
+ *   <code>chrome://tracing</code> or similar viewers</li>
+ *   <li><code>COLLAPSED_STACKS</code>:  one line per distinct stack with its 
+ *   self time in microseconds, the input format of 
+ *   <code>flamegraph.pl</code></li>
+ * </ul>
+ * Traces are kept in memory until written;  attach a <code>TraceWriter</code> 
+ * to profile a single run, not a long-lived application.
+ */
+public final class TraceWriter implements TaskExecutionListener {
+
+    // Instance Members.
+    private final Format format;
+    private final long originNanos;
+    private final ConcurrentLinkedQueue<String> events;
+    private final ConcurrentMap<String,AtomicLong> stacks;
+    private final ThreadLocal<LinkedList<Frame>> frames;
+
+    /*
+     * Public API.
+     */
+
+    public enum Format {
+
+        CHROME_TRACE,
+
+        COLLAPSED_STACKS;
+
+        /**
+         * Chooses <code>CHROME_TRACE</code> for <code>.json</code> files and 
+         * <code>COLLAPSED_STACKS</code> for anything else.
+         */
+        public static Format forFile(File f) {
+            return f.getName().toLowerCase().endsWith(".json") ? CHROME_TRACE : COLLAPSED_STACKS;
+        }
+
+    }
+
+    public TraceWriter(Format format) {
+
+        // Assertions...
+        if (format == null) {
+            String msg = "Argument 'format' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Instance Members.
+        this.format = format;
+        this.originNanos = System.nanoTime();
+        this.events = new ConcurrentLinkedQueue<String>();
+        this.stacks = new ConcurrentHashMap<String,AtomicLong>();
+        this.frames = new ThreadLocal<LinkedList<Frame>>();
+
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void begin(EntityConfig config, long nanoTime) {
+
+        final String name = frameName(config);
+        LinkedList<Frame> stack = frames.get();
+        if (stack == null) {
+            stack = new LinkedList<Frame>();
+            frames.set(stack);
+            if (format == Format.CHROME_TRACE) {
+                final Thread t = Thread.currentThread();
+                events.add("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + t.getId() 
+                            + ",\"args\":{\"name\":\"" + escape(t.getName()) + "\"}}");
+            }
+        }
+        stack.addLast(new Frame(name, nanoTime));
+
+        if (format == Format.CHROME_TRACE) {
+            events.add(chromeEvent("B", config, nanoTime));
+        }
+
+    }
+
+    public void end(EntityConfig config, long nanoTime, boolean failed) {
+
+        final LinkedList<Frame> stack = frames.get();
+        if (stack == null || stack.isEmpty()) {
+            // Began before this listener was attached;  nothing to match...
+            return;
+        }
+
+        switch (format) {
+            case CHROME_TRACE:
+                stack.removeLast();
+                events.add(chromeEvent("E", config, nanoTime));
+                break;
+            case COLLAPSED_STACKS:
+                final StringBuilder path = new StringBuilder();
+                for (Frame f : stack) {
+                    if (path.length() != 0) {
+                        path.append(';');
+                    }
+                    path.append(f.name);
+                }
+                final Frame f = stack.removeLast();
+                final long elapsed = nanoTime - f.startNanos;
+                if (!stack.isEmpty()) {
+                    stack.getLast().childNanos += elapsed;
+                }
+                addStackTime(path.toString(), elapsed - f.childNanos);
+                break;
+        }
+
+        if (stack.isEmpty()) {
+            frames.remove();
+        }
+
+    }
+
+    /**
+     * Writes the trace recorded so far to the specified <code>Writer</code>.
+     */
+    public void write(Writer w) throws IOException {
+
+        // Assertions...
+        if (w == null) {
+            String msg = "Argument 'w [Writer]' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        switch (format) {
+            case CHROME_TRACE:
+                w.write("{\"traceEvents\":[\n");
+                boolean first = true;
+                for (String e : events) {
+                    if (!first) {
+                        w.write(",\n");
+                    }
+                    w.write(e);
+                    first = false;
+                }
+                w.write("\n]}\n");
+                break;
+            case COLLAPSED_STACKS:
+                final List<String> paths = new ArrayList<String>(stacks.keySet());
+                Collections.sort(paths);
+                for (String p : paths) {
+                    w.write(p);
+                    w.write(' ');
+                    w.write(Long.toString(stacks.get(p).get() / 1000L));
+                    w.write('\n');
+                }
+                break;
+        }
+        w.flush();
+
+    }
+
+    /**
+     * Writes the trace recorded so far to the specified file (UTF-8).
+     */
+    public void write(File f) throws IOException {
+        final Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+        try {
+            write(w);
+        } finally {
+            w.close();
+        }
+    }
+
+    /*
+     * Private Stuff.
+     */
+
+    private String chromeEvent(String phase, EntityConfig config, long nanoTime) {
+        final StringBuilder rslt = new StringBuilder();
+        rslt.append("{\"name\":\"").append(escape(config.getEntryName()))
+                    .append("\",\"ph\":\"").append(phase)
+                    .append("\",\"ts\":").append((nanoTime - originNanos) / 1000L)
+                    .append('.').append((nanoTime - originNanos) % 1000L / 100L)
+                    .append(",\"pid\":1,\"tid\":").append(Thread.currentThread().getId());
+        if (config.getSource() != null) {
+            rslt.append(",\"args\":{\"source\":\"").append(escape(config.getSource())).append("\"}");
+        }
+        rslt.append('}');
+        return rslt.toString();
+    }
+
+    private void addStackTime(String path, long nanos) {
+        AtomicLong total = stacks.get(path);
+        if (total == null) {
+            final AtomicLong a = new AtomicLong();
+            total = stacks.putIfAbsent(path, a);
+            if (total == null) {
+                total = a;
+            }
+        }
+        total.addAndGet(nanos);
+    }
+
+    private static String frameName(EntityConfig config) {
+        // NB:  ';' separates frames in the collapsed format...
+        final String rslt = config.getSource() != null 
+                        ? config.getEntryName() + " " + config.getSource() 
+                        : config.getEntryName();
+        return rslt.replace(';', ',');
+    }
+
+    private static String escape(String s) {
+        final StringBuilder rslt = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    rslt.append("\\\"");
+                    break;
+                case '\\':
+                    rslt.append("\\\\");
+                    break;
+                case '\n':
+                    rslt.append("\\n");
+                    break;
+                case '\r':
+                    rslt.append("\\r");
+                    break;
+                case '\t':
+                    rslt.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        rslt.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        rslt.append(c);
+                    }
+                    break;
+            }
+        }
+        return rslt.toString();
+    }
+
+    /*
+     * Nested Types.
+     */
+
+    private static final class Frame {
+
+        final String name;
+        final long startNanos;
+        long childNanos;
+
+        Frame(String name, long startNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.childNanos = 0L;
+        }
+
+    }
+
+}
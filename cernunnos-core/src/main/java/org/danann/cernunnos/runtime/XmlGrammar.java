@@ -16,8 +16,9 @@
 
 package org.danann.cernunnos.runtime;
 
-import java.io.InputStream;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -28,11 +29,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.danann.cernunnos.Attributes;
-import org.danann.cernunnos.EntityConfig;
 import org.danann.cernunnos.Formula;
 import org.danann.cernunnos.Grammar;
 import org.danann.cernunnos.LiteralPhrase;
@@ -44,7 +45,6 @@ import org.dom4j.Document;
 import org.dom4j.DocumentFactory;
 import org.dom4j.Element;
 import org.dom4j.Node;
-import org.dom4j.io.SAXReader;
 
 /**
  * Represents a "task language" or syntax in Cernunnos.  <code>XmlGrammar</code>
@@ -65,6 +65,9 @@ public final class XmlGrammar implements Grammar {
     private final Grammar parent;
     private final ClassLoader loader;
     private ConcurrentMap<String,List<Entry>> entries;
+    private volatile ResolvedEntries resolvedEntries;
+    private final AtomicLong entriesVersion;  // Incremented whenever an entry is added
+    private volatile boolean lazyCompilation;
 	private final Log log = LogFactory.getLog(XmlGrammar.class);	// Don't declare as static in general libraries
 
     /*
@@ -77,8 +80,8 @@ public final class XmlGrammar implements Grammar {
     		// Create it...
     		try {
             	final Grammar root = new XmlGrammar("ROOT", null, null, XmlGrammar.class.getClassLoader());
-            	final InputStream inpt = XmlGrammar.class.getResourceAsStream(MAIN_GRAMMAR_LOCATION);
-                final Document doc = new SAXReader().read(inpt);
+            	final URL u = XmlGrammar.class.getResource(MAIN_GRAMMAR_LOCATION);
+                final Document doc = ScriptCache.load(u, root);
                 final Task k = new ScriptRunner(root).compileTask(doc.getRootElement());
         		final RuntimeRequestResponse req = new RuntimeRequestResponse();
         		final ReturnValueImpl rslt = new ReturnValueImpl();
@@ -103,6 +106,26 @@ public final class XmlGrammar implements Grammar {
         return origin;
     }
 
+    /**
+     * Indicates whether tasks created by this grammar are bootstrapped on 
+     * first use rather than immediately.  Grammars inherit this setting from 
+     * their parent when they are created.
+     */
+    public boolean isLazyCompilation() {
+        return lazyCompilation;
+    }
+
+    /**
+     * Specifies whether tasks created by this grammar should be bootstrapped 
+     * on first use (<code>true</code>) or immediately (<code>false</code>, 
+     * the default).  Lazy compilation saves time and memory for large scripts 
+     * with many branches that rarely run, but errors in a branch aren't 
+     * reported until that branch runs for the first time.
+     */
+    public void setLazyCompilation(boolean lazyCompilation) {
+        this.lazyCompilation = lazyCompilation;
+    }
+
     public Task newTask(Element e, Task parent) {
 
         // Assertions...
@@ -112,27 +135,7 @@ public final class XmlGrammar implements Grammar {
         }
         // NB:  parent may be null...
 
-        // Elements that define tasks *must* be normalized...
-        e.normalize();
-
-        String name = e.getName();
-        Entry n = getEntry(name, Entry.Type.TASK);
-
-        Task rslt = null;
-        EntityConfig config = null;
-        try {
-
-            // Create & bootstrap the result...
-        	config = prepareEntryConfig(n, e);
-            rslt = (Task) n.getFormula().getImplementationClass().newInstance();
-            rslt.init(config);
-
-        } catch (Throwable t) {
-            String msg = "Unable to create the specified task:  " + name;
-            throw new RuntimeException(msg, t);
-        }
-
-        return new RuntimeTaskDecorator(rslt, config);
+        return lazyCompilation ? new LazyTask(this, e, parent) : bootstrapTask(e, parent);
 
     }
 
@@ -148,96 +151,43 @@ public final class XmlGrammar implements Grammar {
             throw new IllegalArgumentException(msg);
         }
 
-        List<String> chunks = new LinkedList<String>();
-        String chunkMe = n.getText();
-        while (chunkMe.length() != 0) {
-            if (chunkMe.startsWith(Phrase.OPEN_PHRASE_DELIMITER)) {
-                chunks.add(Phrase.OPEN_PHRASE_DELIMITER);
-                chunkMe = chunkMe.substring(2);
-            } else {
-                chunks.add(chunkMe.substring(0, 1));
-                chunkMe = chunkMe.substring(1);
+        final PhraseTokenizer.Segment[] segments = PhraseTokenizer.tokenize(n.getText());
+        final Phrase[] children = new Phrase[segments.length];
+        String source = null;   // Calculated on demand;  getUniquePath() isn't cheap
+        for (int i = 0; i < segments.length; i++) {
+            final PhraseTokenizer.Segment s = segments[i];
+            if (!s.isDynamic()) {
+                children[i] = new LiteralPhrase(s.getText());
+                continue;
             }
-        }
 
-        List<Phrase> children = new LinkedList<Phrase>();
-        StringBuffer buffer = new StringBuffer();
-        int openCount = 0;
-        for (String chunk : chunks) {
-            switch (openCount) {
-                case 0:
-                    if (chunk.equals(Phrase.OPEN_PHRASE_DELIMITER)) {
-                        if (buffer.length() > 0) {
-                            children.add(new LiteralPhrase(buffer.toString()));
-                            buffer.setLength(0);
-                        }
-                        ++openCount;
-                    } else {
-                        buffer.append(chunk);
-                    }
-                    break;
-                default:
-                    if (chunk.equals(Phrase.OPEN_PHRASE_DELIMITER)) {
-                        ++openCount;
-                        buffer.append(chunk);
-                    } else if (chunk.equals(Phrase.CLOSE_PHRASE_DELIMITER)) {
-                        --openCount;
-                        if (openCount == 0) {
-
-                            // Time to create a dynamic component...
-                            String expression = buffer.toString();
-                            String name = null;     // Name of the phrase to use...
-                            String nested = null;   // Content passed to the phrase
-
-                            // Determine if a Phrase impl was specified or if we should use the default...
-                            int openParenIndex = expression.indexOf("(");
-                            if (openParenIndex != -1 && expression.endsWith(")")) {
-                                // A phrase impl was specified -- use it!
-                                try {
-                                    name = expression.substring(0, openParenIndex);
-                                    nested = expression.substring(expression.indexOf("(") + 1, expression.length() - 1);
-                                } catch (Throwable t) {
-                                    String msg = "The specified expression is not well formed:  " + expression;
-                                    throw new RuntimeException(msg, t);
-                                }
-                            } else {
-                                // Use the default phrase impl...
-                                name = Grammar.DEFAULT_PHRASE_IMPL.getName();
-                                nested = expression;
-                            }
-
-                            Entry y = getEntry(name, Entry.Type.PHRASE);
-                            Phrase p = null;
-                            try {
-
-                                // Create & bootstrap the phrase...
-                            	EntityConfig config = prepareEntryConfig(y, fac.createText(nested), n.getUniquePath());
-                                Phrase enclosed = (Phrase) y.getFormula().getImplementationClass().newInstance();
-                                enclosed.init(config);
-                                p = new RuntimePhraseDecorator(enclosed, config);
-
-                            } catch (Throwable t) {
-                                String msg = "Unable to create the specified phrase:  " + name;
-                                throw new RuntimeException(msg, t);
-                            }
-
-                            children.add(p);
-                            buffer.setLength(0);
-                        } else {
-                            buffer.append(chunk);
-                        }
-                    } else {
-                        buffer.append(chunk);
-                    }
-                    break;
+            // Time to create a dynamic component...
+            final String name = s.getPhraseName() != null 
+                                    ? s.getPhraseName() 
+                                    : Grammar.DEFAULT_PHRASE_IMPL.getName();
+            if (source == null) {
+                source = n.getUniquePath();
+            }
+
+            Entry y = getEntry(name, Entry.Type.PHRASE);
+            try {
+
+                // Create & bootstrap the phrase...
+            	SimpleEntityConfig config = prepareEntryConfig(y, fac.createText(s.getNestedText()), source, systemId(n));
+                Phrase enclosed = (Phrase) y.getFormula().getImplementationClass().newInstance();
+                enclosed.init(config);
+                children[i] = new RuntimePhraseDecorator(enclosed, config.compact());
+
+            } catch (Throwable t) {
+                String msg = "Unable to create the specified phrase:  " + name;
+                throw new RuntimeException(msg, t);
             }
-        }
-        if (buffer.length() > 0) {
-            // Add anything that's left...
-            children.add(new LiteralPhrase(buffer.toString()));
         }
 
-        return new ConcatenatingPhrase(children);
+        // Text without any dynamic parts compiles to a single literal;  this 
+        // lets phrases like AttributePhrase (and SimpleEntityConfig.getConstant()) 
+        // recognize constant reagents...
+        return ConcatenatingPhrase.fold(children);
 
     }
 
@@ -245,6 +195,37 @@ public final class XmlGrammar implements Grammar {
      * Package API.
      */
 
+    Grammar getParent() {
+        return parent;
+    }
+
+    Task bootstrapTask(Element e, Task parent) {
+
+        // Elements that define tasks *must* be normalized...
+        e.normalize();
+
+        String name = e.getName();
+        Entry n = getEntry(name, Entry.Type.TASK);
+
+        Task rslt = null;
+        SimpleEntityConfig config = null;
+        try {
+
+            // Create & bootstrap the result...
+        	config = prepareEntryConfig(n, e);
+            rslt = (Task) n.getFormula().getImplementationClass().newInstance();
+            rslt.init(config);
+
+        } catch (Throwable t) {
+            String msg = "Unable to create the specified task:  " + name;
+            throw new RuntimeException(msg, t);
+        }
+
+        // The decorator doesn't need reagent values (or the source DOM they reference)...
+        return new RuntimeTaskDecorator(rslt, config.compact());
+
+    }
+
 	/**
 	 * @deprecated
 	 */
@@ -271,12 +252,28 @@ public final class XmlGrammar implements Grammar {
         	}
         }
         list.add(e);
+        entriesVersion.incrementAndGet();
 
     }
     
     Set<Entry> getEntries() {
         return getEntries(true);
     }
+
+    /**
+     * Sums the entry versions of this grammar and its ancestors.  A grammar 
+     * resolves names through its parents, so its table of resolved entries 
+     * is stale whenever an entry is added to any of them -- but not when one 
+     * is added to an unrelated grammar.  (Each version only ever increases, 
+     * so the sum changes whenever any of them does.)
+     */
+    long getChainVersion() {
+        long rslt = 0L;
+        for (Grammar g = this; g instanceof XmlGrammar; g = ((XmlGrammar) g).parent) {
+            rslt += ((XmlGrammar) g).entriesVersion.get();
+        }
+        return rslt;
+    }
     
     Set<Entry> getEntries(boolean recursive) {
 
@@ -319,13 +316,38 @@ public final class XmlGrammar implements Grammar {
         this.origin = origin;
         this.parent = parent;
         this.loader = loader;
+        this.lazyCompilation = parent instanceof XmlGrammar 
+                                    && ((XmlGrammar) parent).isLazyCompilation();
 
         // NB:  Tasks & phrases are added after creation...
         this.entries = new ConcurrentHashMap<String, List<Entry>>();
+        this.entriesVersion = new AtomicLong();
+        this.resolvedEntries = new ResolvedEntries(getChainVersion());
 
     }
 
     private Entry getEntry(String name, Entry.Type type) {
+
+        // Read the version *before* resolving anything, so that an entry 
+        // added concurrently is never hidden by a stale result...
+        final long version = getChainVersion();
+        ResolvedEntries resolved = resolvedEntries;
+        if (resolved.version != version) {
+            resolved = new ResolvedEntries(version);
+            resolvedEntries = resolved;
+        }
+
+        final Map<String,Entry> map = resolved.get(type);
+        Entry rslt = map.get(name);
+        if (rslt == null) {
+            rslt = resolveEntry(name, type);
+            map.put(name, rslt);
+        }
+        return rslt;
+
+    }
+
+    private Entry resolveEntry(String name, Entry.Type type) {
     	
         Entry rslt = null;
 
@@ -355,11 +377,17 @@ public final class XmlGrammar implements Grammar {
 
     }
 
-    private EntityConfig prepareEntryConfig(Entry n, Node d) {
-    	return prepareEntryConfig(n, d, d.getUniquePath());
+    private SimpleEntityConfig prepareEntryConfig(Entry n, Node d) {
+    	return prepareEntryConfig(n, d, d.getUniquePath(), systemId(d));
+    }
+
+    private static String systemId(Node d) {
+        // SAXReader names each Document after its system ID...
+        final Document doc = d.getDocument();
+        return doc != null ? doc.getName() : null;
     }
     
-    private EntityConfig prepareEntryConfig(Entry n, Node d, String source) {
+    private SimpleEntityConfig prepareEntryConfig(Entry n, Node d, String source, String systemId) {
 
         // Assertions...
         if (n == null) {
@@ -433,7 +461,7 @@ public final class XmlGrammar implements Grammar {
             	throw new RuntimeException("Unsupported Entry Type:  " + n.getType());
             }
 
-            return new SimpleEntityConfig(this, entryName, source, n.getFormula(), mappings);
+            return new SimpleEntityConfig(this, entryName, source, systemId, n.getFormula(), mappings);
 
         } catch (Throwable t) {
 			StringBuilder msg = new StringBuilder();
@@ -444,4 +472,34 @@ public final class XmlGrammar implements Grammar {
 		}
 
     }
+
+    /*
+     * Nested Types.
+     */
+
+    /**
+     * Flattened <code>(name, type) -> Entry</code> table for one grammar, 
+     * including entries found in parent grammars and entries synthesized from 
+     * class names.  Replaced (never cleared) when entries are added.
+     */
+    private static final class ResolvedEntries {
+
+        // Instance Members.
+        private final long version;
+        private final Map<Entry.Type,ConcurrentMap<String,Entry>> byType;
+
+        public ResolvedEntries(long version) {
+            this.version = version;
+            this.byType = new EnumMap<Entry.Type,ConcurrentMap<String,Entry>>(Entry.Type.class);
+            for (Entry.Type y : Entry.Type.values()) {
+                byType.put(y, new ConcurrentHashMap<String,Entry>());
+            }
+        }
+
+        public ConcurrentMap<String,Entry> get(Entry.Type type) {
+            return byType.get(type);
+        }
+
+    }
+
 }
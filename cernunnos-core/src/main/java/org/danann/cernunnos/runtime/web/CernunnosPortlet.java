@@ -16,6 +16,7 @@
 
 package org.danann.cernunnos.runtime.web;
 
+import java.io.File;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -40,12 +41,21 @@ import org.apache.commons.fileupload.portlet.PortletFileUpload;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.danann.cernunnos.Attributes;
+import org.danann.cernunnos.CacheStatistics;
+import org.danann.cernunnos.DynamicCacheHelper;
 import org.danann.cernunnos.Grammar;
+import org.danann.cernunnos.ResourceStamp;
 import org.danann.cernunnos.ReturnValueImpl;
 import org.danann.cernunnos.Task;
+import org.danann.cernunnos.cache.BoundedCache;
+import org.danann.cernunnos.cache.TieredCache;
+import org.danann.cernunnos.runtime.ExecutionMetrics;
 import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptCache;
 import org.danann.cernunnos.runtime.ScriptRunner;
 import org.danann.cernunnos.runtime.XmlGrammar;
+import org.danann.cernunnos.sql.DataSourceRegistry;
+import org.danann.cernunnos.sql.SqlAttributes;
 import org.dom4j.Document;
 import org.dom4j.io.SAXReader;
 import org.springframework.context.ApplicationContext;
@@ -61,6 +71,7 @@ public class CernunnosPortlet extends GenericPortlet {
     final Map<URL,Task> tasks = new HashMap<URL,Task>();
     private Settings settings = null;
     private ApplicationContext spring_context = null;
+    private final DataSourceRegistry dataSources = new DataSourceRegistry();  // Shared pools this portlet's scripts use
     private final Log log = LogFactory.getLog(CernunnosPortlet.class);  // Don't declare as static in general libraries
 
     /*
@@ -118,6 +129,51 @@ public class CernunnosPortlet extends GenericPortlet {
             }
             settings = Settings.load(settingsMap);
 
+            // Reuse parsed scripts across restarts, if configured...
+            String scriptCacheDir = settings.getValue(Settings.Entry.SCRIPT_CACHE_DIRECTORY);
+            if (scriptCacheDir != null) {
+                runner.setScriptCache(new ScriptCache(new File(scriptCacheDir)));
+            }
+
+            // Share one bounded Attributes.CACHE across requests, if configured...
+            String cacheSpec = settings.getValue(Settings.Entry.CACHE_SPEC);
+            String offHeapMegabytes = settings.getValue(Settings.Entry.CACHE_OFF_HEAP_MEGABYTES);
+            if (offHeapMegabytes != null) {
+                // Keep entries the bounded cache evicts in serialized form off the heap...
+                BoundedCache<Object,Object> heapTier = cacheSpec != null ? BoundedCache.<Object,Object>fromSpec(cacheSpec) : new BoundedCache<Object,Object>();
+                runner.setCache(new TieredCache<Object,Object>(heapTier, Long.parseLong(offHeapMegabytes) * 1024L * 1024L));
+            } else if (cacheSpec != null) {
+                runner.setCache(BoundedCache.<Object,Object>fromSpec(cacheSpec));
+            }
+
+            // Adjust how often cached documents & scripts are compared with their files, if configured...
+            String checkInterval = settings.getValue(Settings.Entry.CACHE_CHECK_INTERVAL);
+            if (checkInterval != null) {
+                ResourceStamp.setCheckInterval(Long.parseLong(checkInterval));
+            }
+
+            // Size the object pools used by cache-model POOL, if configured...
+            String poolMinIdle = settings.getValue(Settings.Entry.CACHE_POOL_MIN_IDLE);
+            if (poolMinIdle != null) {
+                DynamicCacheHelper.setPoolMinIdle(Integer.parseInt(poolMinIdle));
+            }
+            String poolMaxIdle = settings.getValue(Settings.Entry.CACHE_POOL_MAX_IDLE);
+            if (poolMaxIdle != null) {
+                DynamicCacheHelper.setPoolMaxIdle(Integer.parseInt(poolMaxIdle));
+            }
+
+            // Publish execution metrics over JMX, if configured...
+            if (Boolean.parseBoolean(settings.getValue(Settings.Entry.EXECUTION_METRICS))) {
+                ExecutionMetrics.getInstance().setEnabled(true);
+                ExecutionMetrics.getInstance().registerMBean();
+            }
+
+            // Publish cache statistics over JMX, if configured...
+            if (Boolean.parseBoolean(settings.getValue(Settings.Entry.CACHE_STATISTICS))) {
+                CacheStatistics.getInstance().setEnabled(true);
+                CacheStatistics.getInstance().registerMBean();
+            }
+
         } catch (Throwable t) {
             String msg = "Failure in CernunnosPortlet.init()";
             throw new PortletException(msg, t);
@@ -125,6 +181,13 @@ public class CernunnosPortlet extends GenericPortlet {
 
     }
 
+    @Override
+    public void destroy() {
+        // Shared connection pools would otherwise outlive the webapp...
+        dataSources.closeAll();
+        super.destroy();
+    }
+
     @Override
     public void processAction(ActionRequest req, ActionResponse res) throws PortletException {
 
@@ -305,6 +368,7 @@ public class CernunnosPortlet extends GenericPortlet {
         // Basic, guaranteed request attributes...
         rrr.setAttribute(WebAttributes.REQUEST, req);
         rrr.setAttribute(WebAttributes.RESPONSE, res);
+        rrr.setAttribute(SqlAttributes.DATA_SOURCE_REGISTRY, dataSources);
         
         // Also let's check the request for multi-part form 
         // data & convert to request attributes if we find any...
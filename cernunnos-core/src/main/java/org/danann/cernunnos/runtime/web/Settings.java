@@ -140,7 +140,23 @@ public class Settings {
 
         DEFAULT_EDIT_VIEW("CernunnosPortlet.DEFAULT_EDIT_VIEW", null),
 
-        DEFAULT_HELP_VIEW("CernunnosPortlet.DEFAULT_HELP_VIEW", null);
+        DEFAULT_HELP_VIEW("CernunnosPortlet.DEFAULT_HELP_VIEW", null),
+
+        SCRIPT_CACHE_DIRECTORY("CernunnosPortlet.SCRIPT_CACHE_DIRECTORY", null),
+
+        EXECUTION_METRICS("CernunnosPortlet.EXECUTION_METRICS", "false"),
+
+        CACHE_SPEC("CernunnosPortlet.CACHE_SPEC", null),
+
+        CACHE_OFF_HEAP_MEGABYTES("CernunnosPortlet.CACHE_OFF_HEAP_MEGABYTES", null),
+
+        CACHE_STATISTICS("CernunnosPortlet.CACHE_STATISTICS", "false"),
+
+        CACHE_CHECK_INTERVAL("CernunnosPortlet.CACHE_CHECK_INTERVAL", null),
+
+        CACHE_POOL_MIN_IDLE("CernunnosPortlet.CACHE_POOL_MIN_IDLE", null),
+
+        CACHE_POOL_MAX_IDLE("CernunnosPortlet.CACHE_POOL_MAX_IDLE", null);
 
 		// Instance Members.
 		private final String name;
@@ -102,7 +102,10 @@ public final class ScriptEnginePhrase implements Phrase {
             
         	ScriptEngine scriptEngine = null;
         	try {
-        	    scriptEngine = SCRIPT_ENGINE_MANAGER.getEngineByName(key);
+        	    // ScriptEngineManager isn't documented as thread-safe...
+        	    synchronized (SCRIPT_ENGINE_MANAGER) {
+        	        scriptEngine = SCRIPT_ENGINE_MANAGER.getEngineByName(key);
+        	    }
         	} catch (Throwable t) {
         		final String msg = "SCRIPT_ENGINE_MANAGER could not get the specified engine:  " + key;
         		throw new RuntimeException(msg, t);
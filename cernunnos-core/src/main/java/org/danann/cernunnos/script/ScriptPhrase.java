@@ -25,6 +25,7 @@ import org.danann.cernunnos.DynamicCacheHelper;
 import org.danann.cernunnos.EntityConfig;
 import org.danann.cernunnos.Formula;
 import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.PoolingCacheHelper;
 import org.danann.cernunnos.Reagent;
 import org.danann.cernunnos.ReagentType;
 import org.danann.cernunnos.SimpleFormula;
@@ -35,7 +36,7 @@ import org.danann.cernunnos.Tuple;
 
 public class ScriptPhrase implements Phrase {
 	// Instance Members.
-    private CacheHelper<Tuple<ScriptEngine, String>, ScriptEvaluator> scriptEvaluatorCache;
+    private PoolingCacheHelper<Tuple<ScriptEngine, String>, ScriptEvaluator> scriptEvaluatorCache;
 	private Phrase enginePhrase;
 	private Phrase expression;
 
@@ -62,7 +63,7 @@ public class ScriptPhrase implements Phrase {
 		// Instance Members.
 		this.enginePhrase = (Phrase) config.getValue(ENGINE);
 		this.expression = (Phrase) config.getValue(EXPRESSION);
-        this.scriptEvaluatorCache = new DynamicCacheHelper<Tuple<ScriptEngine, String>, ScriptEvaluator>(config);
+        this.scriptEvaluatorCache = new DynamicCacheHelper<Tuple<ScriptEngine, String>, ScriptEvaluator>(config, true);
 	}
 
 	public Object evaluate(TaskRequest req, TaskResponse res) {
@@ -82,5 +83,8 @@ public class ScriptPhrase implements Phrase {
                     "\n\t\tENGINE_NAME:  " + engine.getFactory().getEngineName() +
                     "\n\t\tSCRIPT (follows):\n" + script + "\n", se);
         }
+		finally {
+		    this.scriptEvaluatorCache.releaseCachedObject(req, res, scriptEvaluatorKey, ScriptEvaluatorFactory.INSTANCE, scriptEvaluator);
+		}
 	}
 }
@@ -31,6 +31,7 @@ import org.danann.cernunnos.DynamicCacheHelper;
 import org.danann.cernunnos.EntityConfig;
 import org.danann.cernunnos.Formula;
 import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.PoolingCacheHelper;
 import org.danann.cernunnos.Reagent;
 import org.danann.cernunnos.ReagentType;
 import org.danann.cernunnos.SimpleFormula;
@@ -42,7 +43,7 @@ import org.danann.cernunnos.Tuple;
 public class ScriptTask extends AbstractContainerTask {
 
 	// Instance Members.
-    private CacheHelper<Tuple<ScriptEngine, String>, ScriptEvaluator> scriptEvaluatorCache;
+    private PoolingCacheHelper<Tuple<ScriptEngine, String>, ScriptEvaluator> scriptEvaluatorCache;
     private Phrase engine;
 	private Phrase script;
 
@@ -74,7 +75,7 @@ public class ScriptTask extends AbstractContainerTask {
 		// Instance Members.
 		this.engine = (Phrase) config.getValue(ENGINE);
 		this.script = (Phrase) config.getValue(SCRIPT);
-        this.scriptEvaluatorCache = new DynamicCacheHelper<Tuple<ScriptEngine, String>, ScriptEvaluator>(config);
+        this.scriptEvaluatorCache = new DynamicCacheHelper<Tuple<ScriptEngine, String>, ScriptEvaluator>(config, true);
 
 	}
 
@@ -101,6 +102,9 @@ public class ScriptTask extends AbstractContainerTask {
                     "\n\t\tENGINE_NAME:  " + engineName +
                     "\n\t\tSCRIPT (follows):\n" + script + "\n", se);
         }
+        finally {
+            this.scriptEvaluatorCache.releaseCachedObject(req, res, scriptEvaluatorKey, ScriptEvaluatorFactory.INSTANCE, scriptEvaluator);
+        }
         
         res.setAttribute(ScriptAttributes.ENGINE + "." + engineName, engine);
         super.performSubtasks(req, res);
@@ -22,8 +22,9 @@ import org.danann.cernunnos.TaskResponse;
  * explicitly to {@link #performWithDataSource(TaskRequest, TaskResponse, DataSource)}. 
  * 
  * Note that while the DataSource is attached to the response as well before {@link #performWithDataSource(TaskRequest, TaskResponse, DataSource)}
- * is called it is only valid for the duration of that call and is closed immediately after
- * {@link #performWithDataSource(TaskRequest, TaskResponse, DataSource)} returns.
+ * is called it is only valid for the duration of that call.  An unshared DataSource is closed immediately after
+ * {@link #performWithDataSource(TaskRequest, TaskResponse, DataSource)} returns;  a shared one comes from (and goes
+ * back to) the {@link DataSourceRegistry}.
  * 
  * @author Eric Dalquist
  * @version $Revision$
@@ -36,13 +37,29 @@ public abstract class BasicDataSourceTemplate {
     private final Phrase urlPhrase;
     private final Phrase usernamePhrase;
     private final Phrase passwordPhrase;
+    //Optional, null phrases mean an unshared DataSource with the default settings
+    private final Phrase sharedPhrase;
+    private final Phrase maxActivePhrase;
+    private final Phrase maxIdlePhrase;
+    private final Phrase minIdlePhrase;
+    private final Phrase validationQueryPhrase;
 
     public BasicDataSourceTemplate(Phrase attributeNamePhrase, Phrase driverPhrase, Phrase urlPhrase, Phrase usernamePhrase, Phrase passwordPhrase) {
+        this(attributeNamePhrase, driverPhrase, urlPhrase, usernamePhrase, passwordPhrase, null, null, null, null, null);
+    }
+
+    public BasicDataSourceTemplate(Phrase attributeNamePhrase, Phrase driverPhrase, Phrase urlPhrase, Phrase usernamePhrase, Phrase passwordPhrase, 
+            Phrase sharedPhrase, Phrase maxActivePhrase, Phrase maxIdlePhrase, Phrase minIdlePhrase, Phrase validationQueryPhrase) {
         this.attributeNamePhrase = attributeNamePhrase;
         this.driverPhrase = driverPhrase;
         this.urlPhrase = urlPhrase;
         this.usernamePhrase = usernamePhrase;
         this.passwordPhrase = passwordPhrase;
+        this.sharedPhrase = sharedPhrase;
+        this.maxActivePhrase = maxActivePhrase;
+        this.maxIdlePhrase = maxIdlePhrase;
+        this.minIdlePhrase = minIdlePhrase;
+        this.validationQueryPhrase = validationQueryPhrase;
     }
 
     
@@ -53,20 +70,22 @@ public abstract class BasicDataSourceTemplate {
         final String username = (String) this.usernamePhrase.evaluate(req, res);
         final String password = (String) this.passwordPhrase.evaluate(req, res);
         
+        final DataSourceRegistry.PoolSettings settings = this.getPoolSettings(req, res);
+        final boolean shared = this.sharedPhrase != null && Boolean.valueOf((String) this.sharedPhrase.evaluate(req, res));
+        
         final String dataSourceInfo = "driverClassName='" + driverClassName + "', url='" + url + "', username='" + username + "'";
-        this.logger.debug("Creating DataSource for " + dataSourceInfo + ".");
         
-        final BasicDataSource dataSource = new BasicDataSource();
+        final DataSourceRegistry registry = shared ? getRegistry(req) : null;
+        final BasicDataSource dataSource;
+        if (shared) {
+            this.logger.debug("Acquiring shared DataSource for " + dataSourceInfo + ".");
+            dataSource = registry.acquire(driverClassName, url, username, password, settings);
+        }
+        else {
+            this.logger.debug("Creating DataSource for " + dataSourceInfo + ".");
+            dataSource = settings.createDataSource(driverClassName, url, username, password);
+        }
         try {
-            //Configure the pooling DataSource
-            dataSource.setUrl(url);
-            dataSource.setDriverClassName(driverClassName);
-            dataSource.setUsername(username);
-            dataSource.setPassword(password);
-            dataSource.setPoolPreparedStatements(true);
-            dataSource.setMaxActive(-1);
-            dataSource.setMaxIdle(32);
-            
             //Provide the DataSource on the response environment
             final String dataSourceAttrName = (String) this.attributeNamePhrase.evaluate(req, res);
             res.setAttribute(dataSourceAttrName, dataSource);
@@ -76,13 +95,19 @@ public abstract class BasicDataSourceTemplate {
             this.performWithDataSource(req, res, dataSource);
         }
         finally {
-            try {
-                //Cleanup after the subtasks
-                dataSource.close();
-                this.logger.debug("Closed DataSource '" + dataSource + "' for " + dataSourceInfo + ".");
+            if (shared) {
+                //The pool stays open for the next execution
+                registry.release(dataSource);
             }
-            catch (SQLException e) {
-                throw new RuntimeException("Failed to close BasicDataSource '" + dataSource + "' for " + dataSourceInfo + ".", e);
+            else {
+                try {
+                    //Cleanup after the subtasks
+                    dataSource.close();
+                    this.logger.debug("Closed DataSource '" + dataSource + "' for " + dataSourceInfo + ".");
+                }
+                catch (SQLException e) {
+                    throw new RuntimeException("Failed to close BasicDataSource '" + dataSource + "' for " + dataSourceInfo + ".", e);
+                }
             }
         }
     }
@@ -91,4 +116,29 @@ public abstract class BasicDataSourceTemplate {
      * Sub-classes implement this method to execute with the specified DataSource
      */
     protected abstract void performWithDataSource(TaskRequest req, TaskResponse res, DataSource dataSource);
+    
+    /**
+     * The registry under SqlAttributes.DATA_SOURCE_REGISTRY, if any, otherwise the process-wide one
+     */
+    private static DataSourceRegistry getRegistry(TaskRequest req) {
+        final Object registry = req.hasAttribute(SqlAttributes.DATA_SOURCE_REGISTRY) 
+                ? req.getAttribute(SqlAttributes.DATA_SOURCE_REGISTRY) : null;
+        return registry != null ? (DataSourceRegistry) registry : DataSourceRegistry.getInstance();
+    }
+    
+    private DataSourceRegistry.PoolSettings getPoolSettings(TaskRequest req, TaskResponse res) {
+        if (this.maxActivePhrase == null && this.maxIdlePhrase == null 
+                && this.minIdlePhrase == null && this.validationQueryPhrase == null) {
+            return DataSourceRegistry.PoolSettings.DEFAULT;
+        }
+        
+        final String validationQuery = this.validationQueryPhrase != null ? (String) this.validationQueryPhrase.evaluate(req, res) : null;
+        return new DataSourceRegistry.PoolSettings(intValue(this.maxActivePhrase, req, res), intValue(this.maxIdlePhrase, req, res), 
+                intValue(this.minIdlePhrase, req, res), validationQuery);
+    }
+    
+    private static Integer intValue(Phrase p, TaskRequest req, TaskResponse res) {
+        final Object value = p != null ? p.evaluate(req, res) : null;
+        return value != null ? Integer.valueOf(value.toString().trim()) : null;
+    }
 }
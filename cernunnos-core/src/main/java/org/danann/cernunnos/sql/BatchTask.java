@@ -0,0 +1,105 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.sql;
+
+import org.danann.cernunnos.AbstractContainerTask;
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.Reagent;
+import org.danann.cernunnos.ReagentType;
+import org.danann.cernunnos.SimpleFormula;
+import org.danann.cernunnos.SimpleReagent;
+import org.danann.cernunnos.TaskRequest;
+import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
+
+/**
+ * Registers a {@link StatementBatch} as a request attribute, then invokes 
+ * <code>SUBTASKS</code>.  Statements performed by subtasks are gathered into 
+ * the batch and executed <code>BATCH_SIZE</code> at a time;  anything left 
+ * is executed when the subtasks complete.
+ */
+public final class BatchTask extends AbstractContainerTask {
+
+    // Instance Members.
+    private Phrase attributeNamePhrase;
+    private Phrase batchSizePhrase;
+    private Integer batchSize;  // Non-null if BATCH_SIZE is a literal
+
+    /*
+     * Public API.
+     */
+
+    public static final Reagent ATTRIBUTE_NAME = new SimpleReagent("ATTRIBUTE_NAME", "@attribute-name", ReagentType.PHRASE, String.class,
+            "Optional name under which the new StatementBatch will be registered as a request attribute.  If omitted, " +
+            "the name 'SqlAttributes.BATCH' will be used.", new LiteralPhrase(SqlAttributes.BATCH));
+
+    public static final Reagent BATCH_SIZE = new SimpleReagent("BATCH_SIZE", "@batch-size", ReagentType.PHRASE, String.class,
+            "Number of statements to gather before they are executed together, defaults to 1000.", new LiteralPhrase("1000"));
+
+    public Formula getFormula() {
+        Reagent[] reagents = new Reagent[] {ATTRIBUTE_NAME, BATCH_SIZE, AbstractContainerTask.SUBTASKS};
+        final Formula rslt = new SimpleFormula(BatchTask.class, reagents);
+        return rslt;
+    }
+
+    @Override
+    public void init(EntityConfig config) {
+        super.init(config);
+
+        // Instance Members.
+        this.attributeNamePhrase = (Phrase) config.getValue(ATTRIBUTE_NAME);
+        this.batchSizePhrase = (Phrase) config.getValue(BATCH_SIZE);
+        this.batchSize = SimpleEntityConfig.getConstant(config, BATCH_SIZE, Integer.class);
+    }
+
+    public void perform(TaskRequest req, TaskResponse res) {
+        final String attributeName = (String) this.attributeNamePhrase.evaluate(req, res);
+        final int size = this.batchSize != null 
+                ? this.batchSize 
+                : Integer.parseInt((String) this.batchSizePhrase.evaluate(req, res));
+        
+        final StatementBatch batch = new StatementBatch(size);
+        res.setAttribute(attributeName, batch);
+        
+        boolean completed = false;
+        try {
+            this.performSubtasks(req, res);
+            completed = true;
+        }
+        finally {
+            if (completed) {
+                batch.flush();
+            }
+            else {
+                // Don't execute a partial batch on top of the failure (wrap in 
+                // <sql-transaction> to roll back the batches already executed)...
+                final int discarded = batch.clear();
+                if (discarded != 0 && this.log.isWarnEnabled()) {
+                    this.log.warn("Discarded " + discarded + " pending statements because a subtask failed.");
+                }
+            }
+        }
+        
+        if (this.log.isDebugEnabled()) {
+            this.log.debug("Executed " + batch.getStatementCount() + " batched statements affecting " 
+                    + batch.getUpdateCount() + " rows.");
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.sql;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Registry of pooled <code>DataSource</code> objects, one per driver, URL, 
+ * username, and password.  Scripts that run <code>&lt;sql-datasource&gt;</code> 
+ * again and again (e.g. in a servlet) reuse warm connections and prepared 
+ * statements instead of opening new ones every time.
+ * 
+ * <p>Each <code>acquire</code> must be matched by a <code>release</code>.  
+ * Pools that aren't in use stay open until {@link #closeIdle()} or 
+ * {@link #closeAll()} is called, or the JVM shuts down.
+ * 
+ * <p>Scripts use the process-wide instance from <code>getInstance</code> 
+ * unless the request carries another one under 
+ * <code>SqlAttributes.DATA_SOURCE_REGISTRY</code>;  components that need to 
+ * close their pools when they're destroyed (e.g. <code>CernunnosServlet</code>) 
+ * create a registry of their own for this purpose.
+ */
+public final class DataSourceRegistry {
+
+    private static final DataSourceRegistry INSTANCE = new DataSourceRegistry();
+
+    // Instance Members.
+    private final Map<Key,Pool> pools = new HashMap<Key,Pool>();
+    private Thread shutdownHook = null;
+    private final Log log = LogFactory.getLog(DataSourceRegistry.class);  // Don't declare as static in general libraries
+
+    /*
+     * Public API.
+     */
+
+    /**
+     * Creates a registry of its own, whose pools aren't shared with the 
+     * process-wide instance.
+     */
+    public DataSourceRegistry() {
+    }
+
+    public static DataSourceRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the shared pool for the specified connection information, 
+     * creating it with the specified settings if there isn't one yet.  
+     * Settings only apply when the pool is created;  a warning is logged 
+     * (once per pool) if they differ from the settings it was created with.
+     */
+    public synchronized BasicDataSource acquire(String driverClassName, String url, String username, 
+                                    String password, PoolSettings settings) {
+
+        // Assertions...
+        if (url == null) {
+            String msg = "Argument 'url' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        if (settings == null) {
+            String msg = "Argument 'settings' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        final Key key = new Key(driverClassName, url, username, password);
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            pool = new Pool(settings.createDataSource(driverClassName, url, username, password), settings);
+            pools.put(key, pool);
+            if (shutdownHook == null) {
+                shutdownHook = new Thread(new Runnable() {
+                    public void run() {
+                        closeAll();
+                    }
+                }, "DataSourceRegistry-shutdown");
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Created a shared DataSource for " + key + ".");
+            }
+        } else if (!pool.settings.equals(settings) && !pool.warned) {
+            log.warn("The shared DataSource for " + key + " was created with settings " 
+                        + pool.settings + ";  ignoring different settings " + settings + ".");
+            pool.warned = true;
+        }
+        ++pool.users;
+        return pool.dataSource;
+
+    }
+
+    /**
+     * Indicates that the caller is finished with a <code>DataSource</code> 
+     * obtained from <code>acquire</code>.  The pool stays open.
+     */
+    public synchronized void release(DataSource dataSource) {
+        for (Pool pool : pools.values()) {
+            if (pool.dataSource == dataSource) {
+                if (pool.users > 0) {
+                    --pool.users;
+                }
+                return;
+            }
+        }
+        // NB:  The pool may have been closed by closeAll() in the meantime
+    }
+
+    /**
+     * Closes the pools that aren't in use.
+     * 
+     * @return The number of pools closed.
+     */
+    public int closeIdle() {
+        final List<BasicDataSource> closing = new ArrayList<BasicDataSource>();
+        synchronized (this) {
+            for (Iterator<Pool> it = pools.values().iterator(); it.hasNext();) {
+                final Pool pool = it.next();
+                if (pool.users == 0) {
+                    closing.add(pool.dataSource);
+                    it.remove();
+                }
+            }
+        }
+        close(closing);
+        return closing.size();
+    }
+
+    /**
+     * Closes every pool, whether or not it's in use;  for shutting down (e.g. 
+     * when a webapp is undeployed).
+     */
+    public void closeAll() {
+        final List<BasicDataSource> closing = new ArrayList<BasicDataSource>();
+        synchronized (this) {
+            for (Pool pool : pools.values()) {
+                closing.add(pool.dataSource);
+            }
+            pools.clear();
+            if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException ise) {
+                    // The JVM is already shutting down;  the hook is harmless...
+                }
+            }
+            shutdownHook = null;
+        }
+        close(closing);
+    }
+
+    /**
+     * @return The number of open pools.
+     */
+    public synchronized int size() {
+        return pools.size();
+    }
+
+    /*
+     * Implementation.
+     */
+
+    private void close(List<BasicDataSource> closing) {
+        for (BasicDataSource dataSource : closing) {
+            try {
+                dataSource.close();
+                if (log.isDebugEnabled()) {
+                    log.debug("Closed shared DataSource '" + dataSource.getUrl() + "'.");
+                }
+            } catch (SQLException e) {
+                log.warn("Failed to close shared DataSource '" + dataSource.getUrl() + "'.", e);
+            }
+        }
+    }
+
+    /*
+     * Nested Types.
+     */
+
+    /**
+     * Pool settings for <code>BasicDataSource</code>;  <code>null</code> 
+     * values leave the DBCP default alone.
+     */
+    public static final class PoolSettings {
+
+        /**
+         * The settings <code>&lt;sql-datasource&gt;</code> has always used:  no 
+         * limit on active connections and up to 32 idle ones.
+         */
+        public static final PoolSettings DEFAULT = new PoolSettings(-1, 32, null, null);
+
+        // Instance Members.
+        private final Integer maxActive;
+        private final Integer maxIdle;
+        private final Integer minIdle;
+        private final String validationQuery;
+
+        public PoolSettings(Integer maxActive, Integer maxIdle, Integer minIdle, String validationQuery) {
+            this.maxActive = maxActive;
+            this.maxIdle = maxIdle;
+            this.minIdle = minIdle;
+            this.validationQuery = validationQuery;
+        }
+
+        /**
+         * Creates a new, unshared <code>BasicDataSource</code> with these 
+         * settings.
+         */
+        public BasicDataSource createDataSource(String driverClassName, String url, String username, String password) {
+            final BasicDataSource rslt = new BasicDataSource();
+            rslt.setUrl(url);
+            rslt.setDriverClassName(driverClassName);
+            rslt.setUsername(username);
+            rslt.setPassword(password);
+            rslt.setPoolPreparedStatements(true);
+            if (maxActive != null) {
+                rslt.setMaxActive(maxActive);
+            }
+            if (maxIdle != null) {
+                rslt.setMaxIdle(maxIdle);
+            }
+            if (minIdle != null) {
+                rslt.setMinIdle(minIdle);
+            }
+            if (validationQuery != null) {
+                rslt.setValidationQuery(validationQuery);
+                rslt.setTestOnBorrow(true);
+            }
+            return rslt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PoolSettings)) {
+                return false;
+            }
+            final PoolSettings ps = (PoolSettings) o;
+            return Key.equal(maxActive, ps.maxActive) && Key.equal(maxIdle, ps.maxIdle) 
+                        && Key.equal(minIdle, ps.minIdle) && Key.equal(validationQuery, ps.validationQuery);
+        }
+
+        @Override
+        public int hashCode() {
+            int rslt = maxActive != null ? maxActive.hashCode() : 0;
+            rslt = 31 * rslt + (maxIdle != null ? maxIdle.hashCode() : 0);
+            rslt = 31 * rslt + (minIdle != null ? minIdle.hashCode() : 0);
+            rslt = 31 * rslt + (validationQuery != null ? validationQuery.hashCode() : 0);
+            return rslt;
+        }
+
+        @Override
+        public String toString() {
+            return "[maxActive=" + maxActive + ", maxIdle=" + maxIdle + ", minIdle=" + minIdle 
+                        + ", validationQuery='" + validationQuery + "']";
+        }
+
+    }
+
+    private static final class Pool {
+
+        // Instance Members.
+        private final BasicDataSource dataSource;
+        private final PoolSettings settings;
+        private int users = 0;
+        private boolean warned = false;
+
+        public Pool(BasicDataSource dataSource, PoolSettings settings) {
+            this.dataSource = dataSource;
+            this.settings = settings;
+        }
+
+    }
+
+    private static final class Key {
+
+        // Instance Members.
+        private final String driverClassName;
+        private final String url;
+        private final String username;
+        private final String password;
+
+        public Key(String driverClassName, String url, String username, String password) {
+            this.driverClassName = driverClassName;
+            this.url = url;
+            this.username = username;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key k = (Key) o;
+            return equal(driverClassName, k.driverClassName) && url.equals(k.url) 
+                        && equal(username, k.username) && equal(password, k.password);
+        }
+
+        @Override
+        public int hashCode() {
+            int rslt = url.hashCode();
+            rslt = 31 * rslt + (driverClassName != null ? driverClassName.hashCode() : 0);
+            rslt = 31 * rslt + (username != null ? username.hashCode() : 0);
+            return rslt;
+        }
+
+        @Override
+        public String toString() {
+            // NB:  Never the password
+            return "driverClassName='" + driverClassName + "', url='" + url + "', username='" + username + "'";
+        }
+
+        private static boolean equal(Object o1, Object o2) {
+            return o1 == null ? o2 == null : o1.equals(o2);
+        }
+
+    }
+
+}
@@ -32,9 +32,9 @@ import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
 
 /**
- * Creates a pooled {@link javax.sql.DataSource} using {@link BasicDataSource}. All of
- * the default pooling options are used. The {@link javax.sql.DataSource} resources
- * are cleaned up at the end of execution.
+ * Creates a pooled {@link javax.sql.DataSource} using {@link BasicDataSource}. By default 
+ * the pool is shared through the {@link DataSourceRegistry} and stays open for the next 
+ * execution;  an unshared pool is cleaned up at the end of execution.
  */
 public final class DataSourceTask extends AbstractContainerTask {
 
@@ -65,8 +65,33 @@ public final class DataSourceTask extends AbstractContainerTask {
 								"Optional password to use when opening the connection.  You must provide either " +
 								"DATA_SOURCE or DRIVER, URL, USERNAME, and PASSWORD.");
 
+	public static final Reagent SHARED = new SimpleReagent("SHARED", "@shared", ReagentType.PHRASE, String.class,
+								"If true (the default), the DataSource is a process-wide pool shared by every execution with the same " +
+								"DRIVER, URL, USERNAME, and PASSWORD, and its connections stay open between executions.  If false, " +
+								"a new pool is created for this execution and closed when SUBTASKS complete.  NB:  outside the Cernunnos servlet " +
+								"and portlet (which close their pools when destroyed), shared pools stay open until the JVM exits or " +
+								"DataSourceRegistry.closeIdle() or closeAll() is called;  before SHARED existed, every execution closed its " +
+								"pool.  Set SHARED to false to keep that behavior.", new LiteralPhrase("true"));
+
+	public static final Reagent MAX_ACTIVE = new SimpleReagent("MAX_ACTIVE", "@max-active", ReagentType.PHRASE, String.class,
+								"Optional maximum number of connections in use at once;  the default is -1 (no limit).  Pool settings " +
+								"only apply when a shared pool is created.", new LiteralPhrase("-1"));
+
+	public static final Reagent MAX_IDLE = new SimpleReagent("MAX_IDLE", "@max-idle", ReagentType.PHRASE, String.class,
+								"Optional maximum number of idle connections kept open;  the default is 32.", new LiteralPhrase("32"));
+
+	public static final Reagent MIN_IDLE = new SimpleReagent("MIN_IDLE", "@min-idle", ReagentType.PHRASE, String.class,
+								"Optional minimum number of idle connections kept open;  the default is DBCP's own (0).", 
+								new LiteralPhrase(null));
+
+	public static final Reagent VALIDATION_QUERY = new SimpleReagent("VALIDATION_QUERY", "@validation-query", ReagentType.PHRASE, String.class,
+								"Optional SQL query used to validate connections as they are borrowed from the pool (e.g. " +
+								"'SELECT 1').  Recommended for shared pools, whose connections may outlive the database's timeouts.", 
+								new LiteralPhrase(null));
+
 	public Formula getFormula() {
-		Reagent[] reagents = new Reagent[] {ATTRIBUTE_NAME, DRIVER, URL, USERNAME, PASSWORD, AbstractContainerTask.SUBTASKS};
+		Reagent[] reagents = new Reagent[] {ATTRIBUTE_NAME, DRIVER, URL, USERNAME, PASSWORD, SHARED, 
+								MAX_ACTIVE, MAX_IDLE, MIN_IDLE, VALIDATION_QUERY, AbstractContainerTask.SUBTASKS};
 		return new SimpleFormula(DataSourceTask.class, reagents);
 	}
 
@@ -80,8 +105,14 @@ public final class DataSourceTask extends AbstractContainerTask {
 		final Phrase urlPhrase = (Phrase) config.getValue(URL);
 		final Phrase usernamePhrase = (Phrase) config.getValue(USERNAME);
 		final Phrase passwordPhrase = (Phrase) config.getValue(PASSWORD);
+		final Phrase sharedPhrase = (Phrase) config.getValue(SHARED);
+		final Phrase maxActivePhrase = (Phrase) config.getValue(MAX_ACTIVE);
+		final Phrase maxIdlePhrase = (Phrase) config.getValue(MAX_IDLE);
+		final Phrase minIdlePhrase = (Phrase) config.getValue(MIN_IDLE);
+		final Phrase validationQueryPhrase = (Phrase) config.getValue(VALIDATION_QUERY);
 		
-		this.basicDataSourceTemplate = new BasicDataSourceTemplateImpl(attributeNamePhrase, driverPhrase, urlPhrase, usernamePhrase, passwordPhrase);
+		this.basicDataSourceTemplate = new BasicDataSourceTemplateImpl(attributeNamePhrase, driverPhrase, urlPhrase, usernamePhrase, passwordPhrase, 
+								sharedPhrase, maxActivePhrase, maxIdlePhrase, minIdlePhrase, validationQueryPhrase);
 	}
 
 	public void perform(TaskRequest req, TaskResponse res) {
@@ -94,8 +125,10 @@ public final class DataSourceTask extends AbstractContainerTask {
      * in the call-back.
      */
     private final class BasicDataSourceTemplateImpl extends BasicDataSourceTemplate {
-        private BasicDataSourceTemplateImpl(Phrase attributeNamePhrase, Phrase driverPhrase, Phrase urlPhrase, Phrase usernamePhrase, Phrase passwordPhrase) {
-            super(attributeNamePhrase, driverPhrase, urlPhrase, usernamePhrase, passwordPhrase);
+        private BasicDataSourceTemplateImpl(Phrase attributeNamePhrase, Phrase driverPhrase, Phrase urlPhrase, Phrase usernamePhrase, Phrase passwordPhrase, 
+                Phrase sharedPhrase, Phrase maxActivePhrase, Phrase maxIdlePhrase, Phrase minIdlePhrase, Phrase validationQueryPhrase) {
+            super(attributeNamePhrase, driverPhrase, urlPhrase, usernamePhrase, passwordPhrase, 
+                    sharedPhrase, maxActivePhrase, maxIdlePhrase, minIdlePhrase, validationQueryPhrase);
         }
 
         @Override
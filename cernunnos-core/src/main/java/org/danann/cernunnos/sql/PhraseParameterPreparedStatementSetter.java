@@ -49,4 +49,17 @@ class PhraseParameterPreparedStatementSetter implements PreparedStatementSetter
             ps.setObject(++parameterIndex, parameter);
         }
     }
+    
+    /**
+     * Evaluates the parameters without binding them, for statements that are executed later (e.g. in a 
+     * {@link StatementBatch}).
+     */
+    public final Object[] getValues() {
+        final Object[] values = new Object[this.parameters.size()];
+        int parameterIndex = 0;
+        for (final Phrase parameterPhrase : this.parameters) {
+            values[parameterIndex++] = parameterPhrase.evaluate(this.req, this.res);
+        }
+        return values;
+    }
 }
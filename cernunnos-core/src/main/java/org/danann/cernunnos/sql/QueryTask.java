@@ -17,7 +17,9 @@
 package org.danann.cernunnos.sql;
 
 import java.io.IOException;
+import java.sql.Clob;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -44,11 +46,14 @@ import org.danann.cernunnos.SimpleReagent;
 import org.danann.cernunnos.Task;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
 import org.dom4j.Node;
 import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlProvider;
 
 /**
  * Performs a specified query, then invokes child tasks once for each row in the
@@ -62,6 +67,21 @@ public final class QueryTask extends AbstractContainerTask {
 	private Phrase sql;
 	private List<Phrase> parameters;
 	private List<Task> emptyResult;
+	private Phrase fetchSizePhrase;
+	private Phrase maxRowsPhrase;
+	private Phrase queryTimeoutPhrase;
+	private Phrase resultSetTypePhrase;
+	private Phrase resultSetConcurrencyPhrase;
+	private Phrase clobsPhrase;
+	private Phrase bindColumnsPhrase;
+	// Non-null if the corresponding reagent is a literal
+	private Integer fetchSize;
+	private Integer maxRows;
+	private Integer queryTimeout;
+	private ResultSetType resultSetType;
+	private ResultSetConcurrency resultSetConcurrency;
+	private ClobMode clobs;
+	private ColumnBinding bindColumns;
 
 	/*
 	 * Public API.
@@ -90,8 +110,42 @@ public final class QueryTask extends AbstractContainerTask {
     public static final Reagent EMPTY_RESULT = new SimpleReagent("EMPTY_RESULT", "empty-result/*", ReagentType.NODE_LIST, List.class,
             "The set of tasks that will be executed if the query returns no results.", new LinkedList<Task>());
 
+    public static final Reagent FETCH_SIZE = new SimpleReagent("FETCH_SIZE", "@fetch-size", ReagentType.PHRASE, String.class,
+            "Optional number of rows the driver should fetch from the database at a time.  The default is the driver's " +
+            "own, which for some drivers means the whole result set is read into memory before the first row is " +
+            "processed.  (Some drivers only honor FETCH_SIZE under particular conditions, e.g. inside a transaction.)", 
+            new LiteralPhrase(null));
+
+    public static final Reagent MAX_ROWS = new SimpleReagent("MAX_ROWS", "@max-rows", ReagentType.PHRASE, String.class,
+            "Optional limit on the number of rows the query returns;  rows past the limit are silently dropped.  The " +
+            "default is no limit.", new LiteralPhrase(null));
+
+    public static final Reagent QUERY_TIMEOUT = new SimpleReagent("QUERY_TIMEOUT", "@query-timeout", ReagentType.PHRASE, String.class,
+            "Optional number of seconds the driver will wait for the query to execute.  The default is no limit.", 
+            new LiteralPhrase(null));
+
+    public static final Reagent RESULT_SET_TYPE = new SimpleReagent("RESULT_SET_TYPE", "@result-set-type", ReagentType.PHRASE, String.class,
+            "Optional type of ResultSet to request:  FORWARD_ONLY (the default), SCROLL_INSENSITIVE, or SCROLL_SENSITIVE.  " +
+            "Rows are always processed in order;  FORWARD_ONLY lets drivers stream them.", 
+            new LiteralPhrase(ResultSetType.FORWARD_ONLY.name()));
+
+    public static final Reagent RESULT_SET_CONCURRENCY = new SimpleReagent("RESULT_SET_CONCURRENCY", "@result-set-concurrency", ReagentType.PHRASE, String.class,
+            "Optional concurrency of ResultSet to request:  READ_ONLY (the default) or UPDATABLE.", 
+            new LiteralPhrase(ResultSetConcurrency.READ_ONLY.name()));
+
+    public static final Reagent CLOBS = new SimpleReagent("CLOBS", "@clobs", ReagentType.PHRASE, String.class,
+            "Optional treatment of CLOB columns:  STRING (the default) reads each value into a String;  READER provides " +
+            "a java.io.Reader instead, so large values are never held in memory.  A Reader is only valid until SUBTASKS " +
+            "complete for its row.", new LiteralPhrase(ClobMode.STRING.name()));
+
+    public static final Reagent BIND_COLUMNS = new SimpleReagent("BIND_COLUMNS", "@bind-columns", ReagentType.PHRASE, String.class,
+            "Optional choice of request attributes for column values:  BOTH (the default) binds each value under the " +
+            "column name (all uppercase) and the column index;  LABEL binds it under the name only, and INDEX under the " +
+            "index only.", new LiteralPhrase(ColumnBinding.BOTH.name()));
+
 	public Formula getFormula() {
-		Reagent[] reagents = new Reagent[] {DATA_SOURCE, CONNECTION, SQL, PARAMETERS, SUBTASKS, EMPTY_RESULT};
+		Reagent[] reagents = new Reagent[] {DATA_SOURCE, CONNECTION, SQL, PARAMETERS, SUBTASKS, EMPTY_RESULT, 
+						FETCH_SIZE, MAX_ROWS, QUERY_TIMEOUT, RESULT_SET_TYPE, RESULT_SET_CONCURRENCY, CLOBS, BIND_COLUMNS};
 		final Formula rslt = new SimpleFormula(QueryTask.class, reagents);
 		return rslt;
 	}
@@ -112,30 +166,225 @@ public final class QueryTask extends AbstractContainerTask {
             parameters.add(config.getGrammar().newPhrase(n));
         }
         this.emptyResult = this.loadSubtasks(config, EMPTY_RESULT, false);
+        this.fetchSizePhrase = (Phrase) config.getValue(FETCH_SIZE);
+        this.maxRowsPhrase = (Phrase) config.getValue(MAX_ROWS);
+        this.queryTimeoutPhrase = (Phrase) config.getValue(QUERY_TIMEOUT);
+        this.resultSetTypePhrase = (Phrase) config.getValue(RESULT_SET_TYPE);
+        this.resultSetConcurrencyPhrase = (Phrase) config.getValue(RESULT_SET_CONCURRENCY);
+        this.clobsPhrase = (Phrase) config.getValue(CLOBS);
+        this.bindColumnsPhrase = (Phrase) config.getValue(BIND_COLUMNS);
+        this.fetchSize = SimpleEntityConfig.getConstant(config, FETCH_SIZE, Integer.class);
+        this.maxRows = SimpleEntityConfig.getConstant(config, MAX_ROWS, Integer.class);
+        this.queryTimeout = SimpleEntityConfig.getConstant(config, QUERY_TIMEOUT, Integer.class);
+        this.resultSetType = SimpleEntityConfig.getConstant(config, RESULT_SET_TYPE, ResultSetType.class);
+        this.resultSetConcurrency = SimpleEntityConfig.getConstant(config, RESULT_SET_CONCURRENCY, ResultSetConcurrency.class);
+        this.clobs = SimpleEntityConfig.getConstant(config, CLOBS, ClobMode.class);
+        this.bindColumns = SimpleEntityConfig.getConstant(config, BIND_COLUMNS, ColumnBinding.class);
 	}
 
 	public void perform(TaskRequest req, TaskResponse res) {
 	    final DataSource dataSource = DataSourceRetrievalUtil.getDataSource(dataSourcePhrase, connectionPhrase, req, res);
 		
         final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        
+        //Apply the cursor settings, JdbcTemplate leaves the driver defaults alone for null values
+        final Integer fs = intValue(this.fetchSize, this.fetchSizePhrase, req, res);
+        if (fs != null) {
+            jdbcTemplate.setFetchSize(fs);
+        }
+        final Integer mr = intValue(this.maxRows, this.maxRowsPhrase, req, res);
+        if (mr != null) {
+            jdbcTemplate.setMaxRows(mr);
+        }
+        final Integer qt = intValue(this.queryTimeout, this.queryTimeoutPhrase, req, res);
+        if (qt != null) {
+            jdbcTemplate.setQueryTimeout(qt);
+        }
+        final ResultSetType type = this.resultSetType != null 
+                ? this.resultSetType 
+                : ResultSetType.valueOf(((String) this.resultSetTypePhrase.evaluate(req, res)).toUpperCase());
+        final ResultSetConcurrency concurrency = this.resultSetConcurrency != null 
+                ? this.resultSetConcurrency 
+                : ResultSetConcurrency.valueOf(((String) this.resultSetConcurrencyPhrase.evaluate(req, res)).toUpperCase());
+        final ClobMode clobMode = this.clobs != null 
+                ? this.clobs 
+                : ClobMode.valueOf(((String) this.clobsPhrase.evaluate(req, res)).toUpperCase());
+        final ColumnBinding columnBinding = this.bindColumns != null 
+                ? this.bindColumns 
+                : ColumnBinding.valueOf(((String) this.bindColumnsPhrase.evaluate(req, res)).toUpperCase());
 
         //Setup the parameter setter and row callback handler for this task and the request/response
         final PreparedStatementSetter preparedStatementSetter = new PhraseParameterPreparedStatementSetter(this.parameters, req, res);
-        final ResponseMappingRowCallbackHandler rowCallbackHandler = new ResponseMappingRowCallbackHandler(this, req, res);
+        final ResponseMappingRowCallbackHandler rowCallbackHandler = new ResponseMappingRowCallbackHandler(this, req, res, 
+                clobMode, columnBinding);
         
         //Get the SQL and run the query
         final String finalSql = (String) sql.evaluate(req, res);
-        jdbcTemplate.query(finalSql, preparedStatementSetter, rowCallbackHandler);
+        if (type == ResultSetType.FORWARD_ONLY && concurrency == ResultSetConcurrency.READ_ONLY) {
+            jdbcTemplate.query(finalSql, preparedStatementSetter, rowCallbackHandler);
+        }
+        else {
+            final PreparedStatementCreator creator = new ResultSetTypePreparedStatementCreator(finalSql, 
+                    preparedStatementSetter, type.getValue(), concurrency.getValue());
+            jdbcTemplate.query(creator, rowCallbackHandler);
+        }
         
         if (rowCallbackHandler.getRowCount() == 0) {
             this.performSubtasks(req, res, this.emptyResult);
         }
 	}
 	
+	/*
+	 * Nested Types.
+	 */
+
+	/**
+	 * Values for RESULT_SET_TYPE.
+	 */
+	public enum ResultSetType {
+	    FORWARD_ONLY(ResultSet.TYPE_FORWARD_ONLY),
+	    SCROLL_INSENSITIVE(ResultSet.TYPE_SCROLL_INSENSITIVE),
+	    SCROLL_SENSITIVE(ResultSet.TYPE_SCROLL_SENSITIVE);
+	    
+	    private final int value;
+	    
+	    private ResultSetType(int value) {
+	        this.value = value;
+	    }
+	    
+	    public int getValue() {
+	        return this.value;
+	    }
+	}
+
+	/**
+	 * Values for RESULT_SET_CONCURRENCY.
+	 */
+	public enum ResultSetConcurrency {
+	    READ_ONLY(ResultSet.CONCUR_READ_ONLY),
+	    UPDATABLE(ResultSet.CONCUR_UPDATABLE);
+	    
+	    private final int value;
+	    
+	    private ResultSetConcurrency(int value) {
+	        this.value = value;
+	    }
+	    
+	    public int getValue() {
+	        return this.value;
+	    }
+	}
+
+	/**
+	 * Values for CLOBS.
+	 */
+	public enum ClobMode {
+	    STRING,
+	    READER;
+	}
+
+	/**
+	 * Values for BIND_COLUMNS.
+	 */
+	public enum ColumnBinding {
+	    BOTH,
+	    LABEL,
+	    INDEX;
+	}
+
+	/*
+	 * Implementation.
+	 */
+
+	private static Integer intValue(Integer constant, Phrase p, TaskRequest req, TaskResponse res) {
+	    if (constant != null) {
+	        return constant;
+	    }
+	    final Object value = p.evaluate(req, res);
+	    return value != null ? Integer.valueOf(value.toString().trim()) : null;
+	}
+
 	/**
-	 * For each row the value of each column is bound to the response by the column name and
-	 * index along with the ResultSetMetaData. After binding this information {@link QueryTask#performSubtasks(TaskRequest, TaskResponse)}
+	 * Prepares the statement with the requested ResultSet type and concurrency, then binds the parameters.
+	 */
+	private static final class ResultSetTypePreparedStatementCreator implements PreparedStatementCreator, SqlProvider {
+	    private final String sql;
+	    private final PreparedStatementSetter preparedStatementSetter;
+	    private final int resultSetType;
+	    private final int resultSetConcurrency;
+	    
+	    private ResultSetTypePreparedStatementCreator(String sql, PreparedStatementSetter preparedStatementSetter, 
+	            int resultSetType, int resultSetConcurrency) {
+	        this.sql = sql;
+	        this.preparedStatementSetter = preparedStatementSetter;
+	        this.resultSetType = resultSetType;
+	        this.resultSetConcurrency = resultSetConcurrency;
+	    }
+	    
+	    /* (non-Javadoc)
+	     * @see org.springframework.jdbc.core.PreparedStatementCreator#createPreparedStatement(java.sql.Connection)
+	     */
+	    public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+	        final PreparedStatement ps = con.prepareStatement(this.sql, this.resultSetType, this.resultSetConcurrency);
+	        try {
+	            this.preparedStatementSetter.setValues(ps);
+	        }
+	        catch (SQLException ex) {
+	            ps.close();
+	            throw ex;
+	        }
+	        return ps;
+	    }
+	    
+	    /* (non-Javadoc)
+	     * @see org.springframework.jdbc.core.SqlProvider#getSql()
+	     */
+	    public String getSql() {
+	        return this.sql;
+	    }
+	}
+
+	/**
+	 * How each column is read from the ResultSet;  chosen once per column by 
+	 * {@link ResponseMappingRowCallbackHandler}.
+	 */
+	private enum ColumnReader {
+	    OBJECT {
+	        Object read(ResultSet rs, int columnIndex) throws SQLException {
+	            return rs.getObject(columnIndex);
+	        }
+	    },
+	    CLOB_STRING {
+	        Object read(ResultSet rs, int columnIndex) throws SQLException {
+	            final Clob clob = rs.getClob(columnIndex);
+	            if (clob == null) {
+	                return null;
+	            }
+	            try {
+	                return IOUtils.toString(clob.getCharacterStream());
+	            }
+	            catch (IOException ex) {
+	                throw new DataRetrievalFailureException("Error converting CLOB value to String", ex);
+	            }
+	        }
+	    },
+	    CLOB_READER {
+	        Object read(ResultSet rs, int columnIndex) throws SQLException {
+	            //Streamed straight from the driver;  only valid while this row is current
+	            return rs.getCharacterStream(columnIndex);
+	        }
+	    };
+	    
+	    abstract Object read(ResultSet rs, int columnIndex) throws SQLException;
+	}
+
+	/**
+	 * For each row the value of each column is bound to the response by the column name and/or
+	 * index;  the ResultSetMetaData is bound once. After binding this information {@link QueryTask#performSubtasks(TaskRequest, TaskResponse)}
 	 * is invoked.
+	 * 
+	 * The attribute names and readers for each column are worked out from the metadata on the first row
+	 * and reused for the rest of the result set.
 	 */
 	private static final class ResponseMappingRowCallbackHandler implements RowCallbackHandler {
 	    protected final Log logger = LogFactory.getLog(this.getClass());
@@ -143,48 +392,49 @@ public final class QueryTask extends AbstractContainerTask {
 	    private final QueryTask queryTask;
         private final TaskRequest req;
         private final TaskResponse res;
+        private final ClobMode clobMode;
+        private final ColumnBinding columnBinding;
         private int rowCount = 0;
+        
+        //The column plan, built on the first row
+        private ColumnReader[] readers;
+        private String[] indexAttrs;
+        private String[] labelAttrs;
 
-        private ResponseMappingRowCallbackHandler(QueryTask queryTask, TaskRequest req, TaskResponse res) {
+        private ResponseMappingRowCallbackHandler(QueryTask queryTask, TaskRequest req, TaskResponse res, 
+                ClobMode clobMode, ColumnBinding columnBinding) {
             this.queryTask = queryTask;
             this.req = req;
             this.res = res;
+            this.clobMode = clobMode;
+            this.columnBinding = columnBinding;
         }
 
         /* (non-Javadoc)
          * @see org.springframework.jdbc.core.RowCallbackHandler#processRow(java.sql.ResultSet)
          */
         public void processRow(ResultSet rs) throws SQLException {
-            this.rowCount++;
+            if (this.rowCount++ == 0) {
+                this.prepareColumns(rs);
+            }
             
-            final ResultSetMetaData rsmd = rs.getMetaData();
-            this.res.setAttribute(SqlAttributes.RESULT_SET_METADATA, rsmd);
+            final boolean debug = this.logger.isDebugEnabled();
             
             //Make all the data on the current row available to subtasks...
-            for (int columnIndex = 1; columnIndex <= rsmd.getColumnCount(); columnIndex++) {
-                final Object value;
-                if (rsmd.getColumnType(columnIndex) == java.sql.Types.CLOB) {
-                    try {
-                        value = IOUtils.toString(rs.getClob(columnIndex).getCharacterStream());
-                    }
-                    catch (IOException ex) {
-                		throw new DataRetrievalFailureException("Error converting CLOB value to String", ex);
-                	}
-                }
-                else {
-                    value = rs.getObject(columnIndex);
-                }
+            for (int i = 0; i < this.readers.length; i++) {
+                final Object value = this.readers[i].read(rs, i + 1);
 
-                final String columnIndexAttr = String.valueOf(columnIndex);
-                final String columnLabelAttr = rsmd.getColumnLabel(columnIndex).toUpperCase();
-
-                if (this.logger.isDebugEnabled()) {
-                    this.logger.debug("Setting response attributes '" + columnIndexAttr + "' and '" + columnLabelAttr + "' with value '" + value + "'");
+                if (debug) {
+                    this.logger.debug("Setting response attributes '" + this.indexAttrs[i] + "' and '" + this.labelAttrs[i] + "' with value '" + value + "'");
                 }
                 
                 // Access either by column name or column index...
-                this.res.setAttribute(columnIndexAttr, value);
-                this.res.setAttribute(columnLabelAttr, value);
+                if (this.indexAttrs[i] != null) {
+                    this.res.setAttribute(this.indexAttrs[i], value);
+                }
+                if (this.labelAttrs[i] != null) {
+                    this.res.setAttribute(this.labelAttrs[i], value);
+                }
             }
 
             // Invoke subtasks...
@@ -197,5 +447,30 @@ public final class QueryTask extends AbstractContainerTask {
         public int getRowCount() {
             return this.rowCount;
         }
+        
+        private void prepareColumns(ResultSet rs) throws SQLException {
+            final ResultSetMetaData rsmd = rs.getMetaData();
+            this.res.setAttribute(SqlAttributes.RESULT_SET_METADATA, rsmd);
+            
+            final int columnCount = rsmd.getColumnCount();
+            this.readers = new ColumnReader[columnCount];
+            this.indexAttrs = new String[columnCount];
+            this.labelAttrs = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                final int columnIndex = i + 1;
+                if (rsmd.getColumnType(columnIndex) != java.sql.Types.CLOB) {
+                    this.readers[i] = ColumnReader.OBJECT;
+                }
+                else {
+                    this.readers[i] = this.clobMode == ClobMode.READER ? ColumnReader.CLOB_READER : ColumnReader.CLOB_STRING;
+                }
+                if (this.columnBinding != ColumnBinding.LABEL) {
+                    this.indexAttrs[i] = String.valueOf(columnIndex);
+                }
+                if (this.columnBinding != ColumnBinding.INDEX) {
+                    this.labelAttrs[i] = rsmd.getColumnLabel(columnIndex).toUpperCase();
+                }
+            }
+        }
 	}
 }
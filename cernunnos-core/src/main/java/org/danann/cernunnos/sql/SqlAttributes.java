@@ -47,6 +47,13 @@ public final class SqlAttributes {
 	 */
 	public static final String DATA_SOURCE = SqlAttributes.class.getSimpleName() + ".DATA_SOURCE";
 
+	/**
+	 * The name under which a {@link DataSourceRegistry} may be registered as a
+	 * request attribute;  shared <code>DataSource</code> objects come from it
+	 * instead of the process-wide registry.
+	 */
+	public static final String DATA_SOURCE_REGISTRY = SqlAttributes.class.getSimpleName() + ".DATA_SOURCE_REGISTRY";
+
 	/**
 	 * The default name under which the new connection will be registered as a
 	 * request attribute.
@@ -67,6 +74,13 @@ public final class SqlAttributes {
 	 */
 	public static final String COLUMN_NAME = SqlAttributes.class.getSimpleName() + ".COLUMN_NAME";
 
+	/**
+	 * The default name under which a {@link StatementBatch} will be registered 
+	 * as a request attribute while performing the subtasks of a 
+	 * <code>BatchTask</code>.
+	 */
+	public static final String BATCH = SqlAttributes.class.getSimpleName() + ".BATCH";
+
 	/*
 	 * Nested Types.
 	 */
@@ -81,6 +95,7 @@ public final class SqlAttributes {
 		public final DataSource DATA_SOURCE;
 		public final ResultSetMetaData RESULT_SET_METADATA;
 		public final String COLUMN_NAME;
+		public final StatementBatch BATCH;
 		
 		public BindingsHelperImpl(Map<String,Object> bindings) {
 			
@@ -95,6 +110,7 @@ public final class SqlAttributes {
 			this.DATA_SOURCE = (DataSource) bindings.get(SqlAttributes.DATA_SOURCE);
 			this.RESULT_SET_METADATA = (ResultSetMetaData) bindings.get(SqlAttributes.RESULT_SET_METADATA);
 			this.COLUMN_NAME = (String) bindings.get(SqlAttributes.COLUMN_NAME);
+			this.BATCH = (StatementBatch) bindings.get(SqlAttributes.BATCH);
 			
 		}
 		
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Collects the parameter values of repeated SQL statements and executes them 
+ * with <code>addBatch</code>/<code>executeBatch</code> instead of one round-trip 
+ * per statement.  Rows are executed in the order they were added:  adding a 
+ * statement with different SQL (or for a different {@link DataSource}) flushes 
+ * the rows that are pending first.  A <code>StatementBatch</code> is created by 
+ * {@link BatchTask} and registered under {@link SqlAttributes#BATCH}.
+ * <p>
+ * Rows added inside a Spring-managed transaction (e.g. 
+ * <code>&lt;sql-transaction&gt;</code>) or a <code>&lt;sql-with-connection&gt;</code> 
+ * are executed before that scope completes, even if the batch itself was 
+ * created outside it;  they're discarded if the scope fails or rolls back.
+ */
+public final class StatementBatch {
+    
+    // Instance Members.
+    private final int batchSize;
+    private final List<Object[]> pending;
+    private DataSource dataSource;
+    private String sql;
+    private int updateCount = 0;
+    private int statementCount = 0;
+    private int[] lastUpdateCounts = new int[0];
+    private Completion completion;  // Registered with the scope of the pending rows, if any
+    private final Log log = LogFactory.getLog(StatementBatch.class);    // Don't declare as static in general libraries
+
+    /*
+     * Public API.
+     */
+
+    public StatementBatch(int batchSize) {
+        
+        // Assertions...
+        if (batchSize < 1) {
+            String msg = "Argument 'batchSize' must be greater than zero.";
+            throw new IllegalArgumentException(msg);
+        }
+        
+        // Instance Members.
+        this.batchSize = batchSize;
+        this.pending = new ArrayList<Object[]>(Math.min(batchSize, 1024));
+        
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Adds one execution of the specified SQL to this batch, executing the 
+     * batch if it's full.
+     */
+    public synchronized void add(DataSource dataSource, String sql, Object[] parameters) {
+        
+        // Assertions...
+        if (dataSource == null) {
+            String msg = "Argument 'dataSource' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        if (sql == null) {
+            String msg = "Argument 'sql' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        if (parameters == null) {
+            String msg = "Argument 'parameters' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        
+        final boolean inScope = isInScope(dataSource);
+        if (!pending.isEmpty() && (dataSource != this.dataSource || !sql.equals(this.sql) || !inScope)) {
+            flush();
+        }
+        if (!inScope) {
+            completion = register(dataSource);
+        }
+        this.dataSource = dataSource;
+        this.sql = sql;
+        pending.add(parameters);
+        
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+        
+    }
+
+    /**
+     * Executes any pending statements.
+     */
+    public synchronized void flush() {
+        
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        if (log.isDebugEnabled()) {
+            log.debug("Executing a batch of " + pending.size() + " statements:  " + sql);
+        }
+        
+        final Object[][] rows = pending.toArray(new Object[pending.size()][]);
+        pending.clear();
+        
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        final int[] counts = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                final Object[] parameters = rows[i];
+                for (int parameterIndex = 0; parameterIndex < parameters.length; parameterIndex++) {
+                    ps.setObject(parameterIndex + 1, parameters[parameterIndex]);
+                }
+            }
+            public int getBatchSize() {
+                return rows.length;
+            }
+        });
+        
+        // NB:  Drivers may report Statement.SUCCESS_NO_INFO (a negative number) for a row
+        for (int count : counts) {
+            if (count > 0) {
+                updateCount += count;
+            }
+        }
+        statementCount += rows.length;
+        lastUpdateCounts = counts;
+        
+    }
+    
+    /**
+     * Discards any pending statements without executing them.
+     * 
+     * @return The number of statements discarded.
+     */
+    public synchronized int clear() {
+        final int rslt = pending.size();
+        pending.clear();
+        return rslt;
+    }
+    
+    /**
+     * @return The number of statements waiting for the next flush.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+    
+    /**
+     * @return The number of statements executed so far.
+     */
+    public synchronized int getStatementCount() {
+        return statementCount;
+    }
+    
+    /**
+     * @return The total number of rows affected by the statements executed so 
+     * far, as far as the driver reports them.
+     */
+    public synchronized int getUpdateCount() {
+        return updateCount;
+    }
+    
+    /**
+     * @return The update counts returned by the most recent 
+     * <code>executeBatch</code>.
+     */
+    public synchronized int[] getLastUpdateCounts() {
+        return lastUpdateCounts.clone();
+    }
+
+    /*
+     * Implementation.
+     */
+
+    /**
+     * Returns true if rows added now belong to the same transaction or 
+     * connection scope as the pending rows.
+     */
+    private boolean isInScope(DataSource dataSource) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            return completion != null && TransactionSynchronizationManager.getSynchronizations().contains(completion);
+        }
+        final Object holder = TransactionSynchronizationManager.getResource(dataSource);
+        if (holder instanceof WithConnectionTask.ScopedConnectionHolder) {
+            return completion != null && ((WithConnectionTask.ScopedConnectionHolder) holder).isRegistered(completion);
+        }
+        return completion == null;
+    }
+
+    private Completion register(DataSource dataSource) {
+        final Completion rslt;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            rslt = new Completion();
+            TransactionSynchronizationManager.registerSynchronization(rslt);
+        } else {
+            final Object holder = TransactionSynchronizationManager.getResource(dataSource);
+            if (holder instanceof WithConnectionTask.ScopedConnectionHolder) {
+                rslt = new Completion();
+                ((WithConnectionTask.ScopedConnectionHolder) holder).registerSynchronization(rslt);
+            } else {
+                rslt = null;
+            }
+        }
+        return rslt;
+    }
+
+    /*
+     * Nested Types.
+     */
+
+    /**
+     * Executes the pending rows before the transaction (or connection scope) 
+     * they were added in completes, or discards them if it fails.
+     */
+    private final class Completion extends TransactionSynchronizationAdapter {
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            synchronized (StatementBatch.this) {
+                if (completion == this) {
+                    // NB:  Not TransactionSynchronization.flush()
+                    StatementBatch.this.flush();
+                }
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            synchronized (StatementBatch.this) {
+                if (completion != this) {
+                    return;
+                }
+                completion = null;
+                if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                    final int discarded = StatementBatch.this.clear();
+                    if (discarded != 0 && log.isWarnEnabled()) {
+                        log.warn("Discarded " + discarded + " pending statements because the transaction or connection scope they were added in failed.");
+                    }
+                }
+            }
+        }
+
+    }
+
+}
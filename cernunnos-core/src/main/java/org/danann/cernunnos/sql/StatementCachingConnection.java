@@ -0,0 +1,232 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Wraps a <code>Connection</code> so that <code>prepareStatement(String)</code> 
+ * hands out cached statements, keyed by SQL text.  Closing a cached statement 
+ * only clears its parameters and restores its settings;  the statements are 
+ * closed for real by {@link #closeStatements()}.  A statement that is still 
+ * open (e.g. a query running inside the subtasks of the same query) is never 
+ * handed out twice;  the second caller gets an ordinary, uncached statement.
+ * 
+ * <p>Like the <code>Connection</code> itself, instances are meant for one 
+ * thread at a time.
+ */
+final class StatementCachingConnection {
+
+    // Instance Members.
+    private final Connection target;
+    private final int maxStatements;
+    private final Connection proxy;
+    private final Map<String,CachedStatement> statements;
+    private final Log log = LogFactory.getLog(StatementCachingConnection.class);  // Don't declare as static in general libraries
+
+    /*
+     * Public API.
+     */
+
+    public StatementCachingConnection(Connection target, int maxStatements) {
+
+        // Assertions...
+        if (target == null) {
+            String msg = "Argument 'target' cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Instance Members.
+        this.target = target;
+        this.maxStatements = maxStatements;
+        this.proxy = (Connection) Proxy.newProxyInstance(StatementCachingConnection.class.getClassLoader(), 
+                        new Class<?>[] {Connection.class}, new ConnectionHandler());
+        this.statements = new LinkedHashMap<String,CachedStatement>(16, 0.75f, true);  // Access order
+
+    }
+
+    /**
+     * @return The <code>Connection</code> to hand out in place of the target.
+     */
+    public Connection getConnection() {
+        return proxy;
+    }
+
+    /**
+     * @return The number of cached statements.
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes every cached statement;  the target connection stays open.
+     */
+    public void closeStatements() {
+        for (CachedStatement cs : statements.values()) {
+            closeQuietly(cs.target);
+        }
+        statements.clear();
+    }
+
+    /*
+     * Implementation.
+     */
+
+    private PreparedStatement prepareStatement(String sql) throws SQLException {
+
+        CachedStatement cs = statements.get(sql);
+        if (cs == null) {
+            if (maxStatements < 1) {
+                return target.prepareStatement(sql);
+            }
+            cs = new CachedStatement(target.prepareStatement(sql));
+            statements.put(sql, cs);
+            evict();
+        } else if (cs.inUse) {
+            // Still open further up the stack...
+            return target.prepareStatement(sql);
+        }
+
+        cs.inUse = true;
+        return cs.proxy;
+
+    }
+
+    private void evict() {
+        // NB:  Statements that are in use can't be evicted;  the cache may 
+        // grow past maxStatements until they're closed
+        for (Iterator<CachedStatement> it = statements.values().iterator(); 
+                            statements.size() > maxStatements && it.hasNext();) {
+            final CachedStatement cs = it.next();
+            if (!cs.inUse) {
+                it.remove();
+                closeQuietly(cs.target);
+            }
+        }
+    }
+
+    private void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            log.debug("Failed to close a cached PreparedStatement.", e);
+        }
+    }
+
+    private static Object invoke(Object target, Method m, Object[] args) throws Throwable {
+        try {
+            return m.invoke(target, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getTargetException();
+        }
+    }
+
+    /*
+     * Nested Types.
+     */
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            final String name = m.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("close")) {
+                // The owner of the target closes it...
+                return null;
+            } else if (name.equals("prepareStatement") && args.length == 1) {
+                return prepareStatement((String) args[0]);
+            }
+            return StatementCachingConnection.invoke(target, m, args);
+        }
+
+    }
+
+    private final class CachedStatement implements InvocationHandler {
+
+        // Instance Members.
+        private final PreparedStatement target;
+        private final PreparedStatement proxy;
+        private final int maxRows;
+        private final int queryTimeout;
+        private final int fetchSize;
+        private boolean inUse = false;
+
+        public CachedStatement(PreparedStatement target) throws SQLException {
+            this.target = target;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(StatementCachingConnection.class.getClassLoader(), 
+                            new Class<?>[] {PreparedStatement.class}, this);
+            this.maxRows = target.getMaxRows();
+            this.queryTimeout = target.getQueryTimeout();
+            this.fetchSize = target.getFetchSize();
+        }
+
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            final String name = m.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("getConnection")) {
+                return StatementCachingConnection.this.proxy;
+            } else if (name.equals("close")) {
+                release();
+                return null;
+            }
+            return StatementCachingConnection.invoke(target, m, args);
+        }
+
+        private void release() throws SQLException {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            
+            // Don't let one task's parameters, batched rows, or settings leak 
+            // into the next...
+            target.clearParameters();
+            target.clearBatch();
+            target.clearWarnings();
+            if (target.getMaxRows() != maxRows) {
+                target.setMaxRows(maxRows);
+            }
+            if (target.getQueryTimeout() != queryTimeout) {
+                target.setQueryTimeout(queryTimeout);
+            }
+            if (target.getFetchSize() != fetchSize) {
+                target.setFetchSize(fetchSize);
+            }
+        }
+
+    }
+
+}
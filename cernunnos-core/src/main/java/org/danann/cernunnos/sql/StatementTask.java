@@ -49,6 +49,7 @@ public class StatementTask implements Task {
     private Phrase dataSourcePhrase;
     private Phrase connectionPhrase;
     private Phrase sql;
+    private Phrase batchPhrase;
 	private List<Phrase> parameters;
     protected final Log log = LogFactory.getLog(this.getClass());
 
@@ -68,12 +69,17 @@ public class StatementTask implements Task {
 	public static final Reagent SQL = new SimpleReagent("SQL", "@sql", ReagentType.PHRASE, String.class,
 					"The SQL statement that will be executed.");
 
+	public static final Reagent BATCH = new SimpleReagent("BATCH", "@batch", ReagentType.PHRASE, StatementBatch.class,
+					"Optional StatementBatch that will execute this statement together with others.  The default is the value " +
+					"of the 'SqlAttributes.BATCH' request attribute (if specified) or null, in which case the statement is " +
+					"executed immediately.", new AttributePhrase(SqlAttributes.BATCH, new LiteralPhrase(null)));
+
 	public static final Reagent PARAMETERS = new SimpleReagent("PARAMETERS", "parameter/@value", ReagentType.NODE_LIST, List.class,
 					"The parameters (if any) for the PreparedStatement that will execute the SQL.",
 					Collections.emptyList());
 
 	public Formula getFormula() {
-		Reagent[] reagents = new Reagent[] {DATA_SOURCE, CONNECTION, SQL, PARAMETERS};
+		Reagent[] reagents = new Reagent[] {DATA_SOURCE, CONNECTION, SQL, BATCH, PARAMETERS};
 		final Formula rslt = new SimpleFormula(StatementTask.class, reagents);
 		return rslt;
 	}
@@ -83,6 +89,7 @@ public class StatementTask implements Task {
 	    this.dataSourcePhrase = (Phrase) config.getValue(DATA_SOURCE);
 	    this.connectionPhrase = (Phrase) config.getValue(CONNECTION);
         this.sql = (Phrase) config.getValue(SQL);
+        this.batchPhrase = (Phrase) config.getValue(BATCH);
 		this.parameters = new LinkedList<Phrase>();
 		
 		final List<Node> nodes = (List<Node>) config.getValue(PARAMETERS);
@@ -93,6 +100,14 @@ public class StatementTask implements Task {
 
 	public void perform(TaskRequest req, TaskResponse res) {
 	    final DataSource dataSource = DataSourceRetrievalUtil.getDataSource(dataSourcePhrase, connectionPhrase, req, res);
+	    
+	    //Inside a batch just gather the SQL and parameter values, the batch executes them later
+	    final StatementBatch batch = (StatementBatch) batchPhrase.evaluate(req, res);
+	    if (batch != null) {
+	        final Object[] values = new PhraseParameterPreparedStatementSetter(this.parameters, req, res).getValues();
+	        batch.add(dataSource, (String) sql.evaluate(req, res), values);
+	        return;
+	    }
 		
         final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
 
@@ -48,6 +48,7 @@ public final class UpsertTask implements Task {
 	private Phrase connectionPhrase;
 	private Phrase update_sql;
 	private Phrase insert_sql;
+	private Phrase batchPhrase;
 	private List<Phrase> parameters;
 	private List<Phrase> update_parameters;
 	private List<Phrase> insert_parameters;
@@ -72,6 +73,12 @@ public final class UpsertTask implements Task {
 	public static final Reagent INSERT_SQL = new SimpleReagent("INSERT_SQL", "insert-statement", ReagentType.PHRASE, String.class,
 										"The SQL statement that performs the Insert portion of the 'Upsert' operation.");
 
+	public static final Reagent BATCH = new SimpleReagent("BATCH", "@batch", ReagentType.PHRASE, StatementBatch.class,
+										"Optional StatementBatch with statements that must be executed before this upsert.  The default is the "
+										+ "value of the 'SqlAttributes.BATCH' request attribute (if specified) or null.  The upsert itself is "
+										+ "never batched, since the INSERT depends on the result of the UPDATE.", 
+										new AttributePhrase(SqlAttributes.BATCH, new LiteralPhrase(null)));
+
 	public static final Reagent PARAMETERS = new SimpleReagent("PARAMETERS", "parameter/@value", ReagentType.NODE_LIST, List.class,
 										"The parameters (if any) for the PreparedStatement objects that will perform this upsert.  "
 										+ "WARNING:  Parameters must appear in the same order as the associated SQL.",
@@ -89,7 +96,7 @@ public final class UpsertTask implements Task {
 
 	public Formula getFormula() {
 		Reagent[] reagents = new Reagent[] {DATA_SOURCE, CONNECTION, UPDATE_SQL, INSERT_SQL,
-						PARAMETERS, UPDATE_PARAMETERS, INSERT_PARAMETERS};
+						BATCH, PARAMETERS, UPDATE_PARAMETERS, INSERT_PARAMETERS};
 		final Formula rslt = new SimpleFormula(UpsertTask.class, reagents);
 		return rslt;
 	}
@@ -101,6 +108,7 @@ public final class UpsertTask implements Task {
 		this.connectionPhrase = (Phrase) config.getValue(CONNECTION);
 		this.update_sql = (Phrase) config.getValue(UPDATE_SQL);
 		this.insert_sql = (Phrase) config.getValue(INSERT_SQL);
+		this.batchPhrase = (Phrase) config.getValue(BATCH);
 
 		List<Node> nodes = null;
 
@@ -139,6 +147,12 @@ public final class UpsertTask implements Task {
 
 	public void perform(TaskRequest req, TaskResponse res) {
 	    final DataSource dataSource = DataSourceRetrievalUtil.getDataSource(dataSourcePhrase, connectionPhrase, req, res);
+	    
+	    //The UPDATE must see the rows from any earlier statements that are still pending
+	    final StatementBatch batch = (StatementBatch) batchPhrase.evaluate(req, res);
+	    if (batch != null) {
+	        batch.flush();
+	    }
 		
         final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
 
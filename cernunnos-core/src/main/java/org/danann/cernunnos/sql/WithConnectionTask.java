@@ -0,0 +1,168 @@
+/*
+ * Copyright 2009 Andrew Wills
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.danann.cernunnos.sql;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.danann.cernunnos.AbstractContainerTask;
+import org.danann.cernunnos.AttributePhrase;
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.Reagent;
+import org.danann.cernunnos.ReagentType;
+import org.danann.cernunnos.SimpleFormula;
+import org.danann.cernunnos.SimpleReagent;
+import org.danann.cernunnos.TaskRequest;
+import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Binds one <code>Connection</code> to the current thread (the way Spring's 
+ * transaction managers do) while SUBTASKS execute, so that every Cernunnos sql 
+ * task -- or <code>DataSourceUtils</code>/<code>JdbcTemplate</code> call -- on 
+ * the same DataSource reuses it instead of checking out a connection of its 
+ * own.  Batched statements (see {@link StatementBatch}) added while SUBTASKS 
+ * execute are executed before the connection is released.
+ */
+public final class WithConnectionTask extends AbstractContainerTask {
+
+    // Instance Members.
+    private Phrase dataSourcePhrase;
+    private Phrase statementCacheSizePhrase;
+    private Integer statementCacheSize;    // Parsed once if STATEMENT_CACHE_SIZE is a literal
+
+    /*
+     * Public API.
+     */
+
+    public static final Reagent DATA_SOURCE = new SimpleReagent("DATA_SOURCE", "@data-source", ReagentType.PHRASE, DataSource.class,
+            "Optional DataSource object.  The default is the value of the 'SqlAttributes.DATA_SOURCE' request attribute.", 
+            new AttributePhrase(SqlAttributes.DATA_SOURCE));
+
+    public static final Reagent STATEMENT_CACHE_SIZE = new SimpleReagent("STATEMENT_CACHE_SIZE", "@statement-cache-size", ReagentType.PHRASE, Integer.class,
+            "Optional maximum number of PreparedStatements (one per distinct SQL text) kept open on the bound connection " +
+            "for reuse by SUBTASKS.  Use 0 to disable statement caching.  The default is 32.", new LiteralPhrase("32"));
+
+    public Formula getFormula() {
+        Reagent[] reagents = new Reagent[] {DATA_SOURCE, STATEMENT_CACHE_SIZE, AbstractContainerTask.SUBTASKS};
+        final Formula rslt = new SimpleFormula(WithConnectionTask.class, reagents);
+        return rslt;
+    }
+
+    @Override
+    public void init(EntityConfig config) {
+        super.init(config);
+
+        // Instance Members.
+        this.dataSourcePhrase = (Phrase) config.getValue(DATA_SOURCE);
+        this.statementCacheSizePhrase = (Phrase) config.getValue(STATEMENT_CACHE_SIZE);
+        this.statementCacheSize = SimpleEntityConfig.getConstant(config, STATEMENT_CACHE_SIZE, Integer.class);
+    }
+
+    public void perform(TaskRequest req, TaskResponse res) {
+
+        final DataSource dataSource = (DataSource) this.dataSourcePhrase.evaluate(req, res);
+
+        if (TransactionSynchronizationManager.hasResource(dataSource)) {
+            // A transaction (or an enclosing <sql-with-connection>) already 
+            // provides a connection;  nothing to do...
+            if (log.isDebugEnabled()) {
+                log.debug("A Connection is already bound to this thread for DataSource '" 
+                                    + dataSource + "';  it will be used by the subtasks.");
+            }
+            performSubtasks(req, res);
+            return;
+        }
+
+        final int cacheSize = statementCacheSize != null 
+                    ? statementCacheSize 
+                    : Integer.parseInt(String.valueOf(statementCacheSizePhrase.evaluate(req, res)));
+
+        final Connection conn = DataSourceUtils.getConnection(dataSource);
+        final StatementCachingConnection cachingConn = new StatementCachingConnection(conn, cacheSize);
+        final ScopedConnectionHolder holder = new ScopedConnectionHolder(cachingConn.getConnection());
+        TransactionSynchronizationManager.bindResource(dataSource, holder);
+        boolean completed = false;
+        try {
+            performSubtasks(req, res);
+            holder.beforeCompletion();
+            completed = true;
+        } finally {
+            holder.afterCompletion(completed);
+            TransactionSynchronizationManager.unbindResource(dataSource);
+            cachingConn.closeStatements();
+            DataSourceUtils.releaseConnection(conn, dataSource);
+        }
+
+    }
+
+    /*
+     * Nested Types.
+     */
+
+    /**
+     * The <code>ConnectionHolder</code> bound while SUBTASKS execute.  Unlike 
+     * a transaction, a connection scope has no synchronizations of its own;  
+     * this holder lets {@link StatementBatch} run its pending rows before the 
+     * scope completes.
+     */
+    static final class ScopedConnectionHolder extends ConnectionHolder {
+
+        // Instance Members.
+        private final List<TransactionSynchronization> synchronizations = new ArrayList<TransactionSynchronization>();
+
+        public ScopedConnectionHolder(Connection conn) {
+            super(conn);
+        }
+
+        public void registerSynchronization(TransactionSynchronization synchronization) {
+            synchronizations.add(synchronization);
+        }
+
+        public boolean isRegistered(TransactionSynchronization synchronization) {
+            return synchronizations.contains(synchronization);
+        }
+
+        private void beforeCompletion() {
+            // NB:  Synchronizations may register others while they run
+            for (int i = 0; i < synchronizations.size(); i++) {
+                synchronizations.get(i).beforeCommit(false);
+            }
+        }
+
+        private void afterCompletion(boolean completed) {
+            final int status = completed ? TransactionSynchronization.STATUS_COMMITTED 
+                                    : TransactionSynchronization.STATUS_ROLLED_BACK;
+            for (TransactionSynchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(status);
+            }
+            synchronizations.clear();
+        }
+
+    }
+
+}
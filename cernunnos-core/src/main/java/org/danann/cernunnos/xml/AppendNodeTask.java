@@ -16,7 +16,6 @@
 
 package org.danann.cernunnos.xml;
 
-import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -48,7 +47,7 @@ public final class AppendNodeTask implements Task {
 	private Phrase node;
 	private Phrase parent;
 	private Phrase sibling;
-	private List<?> content;
+	private Node[] content;	// Detached from the source document
 	private Phrase apply_namespace;
 	private Grammar grammar;
 	private final Log log = LogFactory.getLog(AppendNodeTask.class);	// Don't declare as static in general libraries
@@ -91,7 +90,7 @@ public final class AppendNodeTask implements Task {
 		this.node = (Phrase) config.getValue(NODE);
 		this.parent = (Phrase) config.getValue(PARENT);
 		this.sibling = (Phrase) config.getValue(SIBLING);
-		this.content = (List<?>) config.getValue(CONTENT);
+		this.content = NodeProcessor.detachedCopies((List<?>) config.getValue(CONTENT));
 		this.apply_namespace = (Phrase) config.getValue(APPLY_NAMESPACE);
 		this.grammar = config.getGrammar();
 
@@ -115,18 +114,15 @@ public final class AppendNodeTask implements Task {
 		}
 
 		// Figure out what content to add...
-		List list = null;
-		if (content != null && content.size() > 0) {
-			list = content;
-		} else {
-			list = new LinkedList();
-			list.add(node.evaluate(req, res));
+		Node[] list = content;
+		if (list == null) {
+			list = new Node[] {(Node) node.evaluate(req, res)};
 		}
 
 		// Evaluate phrases & add...
-		for (Object o : list) {
+		for (Node o : list) {
 
-			Node n = (Node) ((Node) o).clone();
+			Node n = (Node) o.clone();
 			NodeProcessor.evaluatePhrases(n, grammar, req, res);
 
 			// If the parent is an element, check if we should
@@ -17,6 +17,7 @@
 package org.danann.cernunnos.xml;
 
 import java.util.Iterator;
+import java.util.List;
 
 import org.dom4j.Branch;
 import org.dom4j.Element;
@@ -63,7 +64,14 @@ public final class NodeProcessor {
 		}
 
 		final XPath xpath = XPATH_LOCAL.get();
-		for (Iterator<?> it = xpath.selectNodes(n).iterator(); it.hasNext();) {
+		final List<?> nodes;
+		try {
+			nodes = xpath.selectNodes(n);
+		} finally {
+			// NB:  dom4j would otherwise keep n (and its Document) in this thread's XPath...
+			xpath.setNamespaceContext(null);
+		}
+		for (Iterator<?> it = nodes.iterator(); it.hasNext();) {
 			Node d =  (Node) it.next();
 			if (d.getText().trim().length() != 0) {
 				Phrase p = g.newPhrase(d);
@@ -104,6 +112,30 @@ public final class NodeProcessor {
 
 	}
 
+	/**
+	 * Copies the specified nodes (typically a NODE_LIST reagent value) so that 
+	 * a compiled task can keep them without pinning the source 
+	 * <code>Document</code> they came from.
+	 *
+	 * @param nodes Nodes to copy;  may be <code>null</code>.
+	 * @return Parentless copies of the nodes, or <code>null</code> if there 
+	 * are none.
+	 */
+	public static Node[] detachedCopies(List<?> nodes) {
+
+		if (nodes == null || nodes.size() == 0) {
+			return null;
+		}
+
+		final Node[] rslt = new Node[nodes.size()];
+		int i = 0;
+		for (Object o : nodes) {
+			rslt[i++] = (Node) ((Node) o).clone();
+		}
+		return rslt;
+
+	}
+
 	/*
 	 * Implementation.
 	 */
@@ -16,6 +16,7 @@
 
 package org.danann.cernunnos.xml;
 
+import java.net.MalformedURLException;
 import java.net.URL;
 
 import org.danann.cernunnos.AbstractCacheHelperFactory;
@@ -33,6 +34,7 @@ import org.danann.cernunnos.SimpleFormula;
 import org.danann.cernunnos.SimpleReagent;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.CacheHelper.ResourceFactory;
 import org.dom4j.Document;
 import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
@@ -85,7 +87,8 @@ public final class ParseXmlPhrase implements Phrase {
         
     }
     
-    protected static final class DocumentFactory extends AbstractCacheHelperFactory<String, Element> {
+    protected static final class DocumentFactory extends AbstractCacheHelperFactory<String, Element> 
+            implements ResourceFactory<String, Element> {
         private final EntityResolver resolver;
         
         public DocumentFactory(EntityResolver resolver) {
@@ -114,6 +117,18 @@ public final class ParseXmlPhrase implements Phrase {
             }
         }
 
+        /* (non-Javadoc)
+         * @see org.danann.cernunnos.CacheHelper.ResourceFactory#getResource(java.io.Serializable)
+         */
+        public URL getResource(String key) {
+            try {
+                return new URL(key);
+            }
+            catch (MalformedURLException mue) {
+                return null;
+            }
+        }
+
         /* (non-Javadoc)
          * @see org.danann.cernunnos.CacheHelper.Factory#getMutex(java.lang.Object)
          */
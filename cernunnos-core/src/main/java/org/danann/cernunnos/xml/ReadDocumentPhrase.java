@@ -16,6 +16,7 @@
 
 package org.danann.cernunnos.xml;
 
+import java.net.MalformedURLException;
 import java.net.URL;
 
 import org.danann.cernunnos.AbstractCacheHelperFactory;
@@ -35,6 +36,7 @@ import org.danann.cernunnos.SimpleReagent;
 import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
 import org.danann.cernunnos.Tuple;
+import org.danann.cernunnos.CacheHelper.ResourceFactory;
 import org.dom4j.Document;
 import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
@@ -119,7 +121,8 @@ public final class ReadDocumentPhrase implements Phrase {
         }
     }
     
-    protected static final class DocumentFactory extends AbstractCacheHelperFactory<Tuple<String, String>, Element> {
+    public static final class DocumentFactory extends AbstractCacheHelperFactory<Tuple<String, String>, Element> 
+            implements ResourceFactory<Tuple<String, String>, Element> {
         private final EntityResolver resolver;
         
         public DocumentFactory(EntityResolver resolver) {
@@ -153,6 +156,18 @@ public final class ReadDocumentPhrase implements Phrase {
             }
         }
 
+        /* (non-Javadoc)
+         * @see org.danann.cernunnos.CacheHelper.ResourceFactory#getResource(java.io.Serializable)
+         */
+        public URL getResource(Tuple<String, String> key) {
+            try {
+                return new URL(new URL(key.first), key.second);
+            }
+            catch (MalformedURLException mue) {
+                return null;
+            }
+        }
+
         /* (non-Javadoc)
          * @see org.danann.cernunnos.CacheHelper.Factory#getMutex(java.lang.Object)
          */
@@ -26,6 +26,7 @@ import org.danann.cernunnos.DynamicCacheHelper;
 import org.danann.cernunnos.EntityConfig;
 import org.danann.cernunnos.Formula;
 import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.PoolingCacheHelper;
 import org.danann.cernunnos.Reagent;
 import org.danann.cernunnos.ReagentType;
 import org.danann.cernunnos.SimpleFormula;
@@ -36,7 +37,7 @@ import org.danann.cernunnos.TaskResponse;
 public final class SingleNodePhrase  implements Phrase {
 
 	// Instance Members.
-    private CacheHelper<String, XPath> xpathCache;
+    private PoolingCacheHelper<String, XPath> xpathCache;
 	private Phrase source;
 	private Phrase xpath;
 
@@ -60,7 +61,7 @@ public final class SingleNodePhrase  implements Phrase {
 	public void init(EntityConfig config) {
 
 		// Instance Members.
-	    this.xpathCache = new DynamicCacheHelper<String, XPath>(config);
+	    this.xpathCache = new DynamicCacheHelper<String, XPath>(config, true);
 		this.source = (Phrase) config.getValue(SOURCE); 
 		this.xpath = (Phrase) config.getValue(XPATH); 
 		
@@ -77,6 +78,7 @@ public final class SingleNodePhrase  implements Phrase {
 		}
 		finally {
 		    xpath.setVariableContext(null);
+		    this.xpathCache.releaseCachedObject(req, res, xpathExpresion, XPathCacheFactory.INSTANCE, xpath);
 		}
 	}
 	
@@ -23,6 +23,7 @@ import org.danann.cernunnos.DynamicCacheHelper;
 import org.danann.cernunnos.EntityConfig;
 import org.danann.cernunnos.Formula;
 import org.danann.cernunnos.Phrase;
+import org.danann.cernunnos.PoolingCacheHelper;
 import org.danann.cernunnos.Reagent;
 import org.danann.cernunnos.ReagentType;
 import org.danann.cernunnos.SimpleFormula;
@@ -40,7 +41,7 @@ import org.dom4j.XPath;
 public final class ValueOfPhrase implements Phrase {
 
 	// Instance Members.
-    private CacheHelper<String, XPath> xpathCache;
+    private PoolingCacheHelper<String, XPath> xpathCache;
     private Phrase source;
 	private Phrase expression;
 
@@ -64,7 +65,7 @@ public final class ValueOfPhrase implements Phrase {
 	public void init(EntityConfig config) {
 
 		// Instance Members.
-	    this.xpathCache = new DynamicCacheHelper<String, XPath>(config);
+	    this.xpathCache = new DynamicCacheHelper<String, XPath>(config, true);
 		this.source = (Phrase) config.getValue(SOURCE); 
 		this.expression = (Phrase) config.getValue(EXPRESSION); 
 		
@@ -81,6 +82,7 @@ public final class ValueOfPhrase implements Phrase {
         }
         finally {
             xpath.setVariableContext(null);
+            this.xpathCache.releaseCachedObject(req, res, xpathExpresion, XPathCacheFactory.INSTANCE, xpath);
         }
 		
 	}
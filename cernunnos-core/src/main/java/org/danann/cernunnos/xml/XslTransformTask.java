@@ -51,6 +51,7 @@ import org.danann.cernunnos.TaskRequest;
 import org.danann.cernunnos.TaskResponse;
 import org.danann.cernunnos.Tuple;
 import org.danann.cernunnos.CacheHelper.Factory;
+import org.danann.cernunnos.CacheHelper.ResourceFactory;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.DocumentFactory;
@@ -250,9 +251,16 @@ public final class XslTransformTask extends AbstractContainerTask {
     /**
      * Factory to create new Transformer instances
      */
-    protected static class CachedTransformerFactory extends AbstractCacheHelperFactory<Tuple<String, String>, Templates> {
+    public static class CachedTransformerFactory extends AbstractCacheHelperFactory<Tuple<String, String>, Templates> 
+            implements ResourceFactory<Tuple<String, String>, Templates> {
         private final CachedTransformerFactoryMutex MUTEX = new CachedTransformerFactoryMutex();
-        private final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+        // TransformerFactory isn't thread-safe, and stylesheets for different keys compile concurrently
+        private final ThreadLocal<TransformerFactory> transformerFactory = new ThreadLocal<TransformerFactory>() {
+            @Override
+            protected TransformerFactory initialValue() {
+                return TransformerFactory.newInstance();
+            }
+        };
         
         /* (non-Javadoc)
          * @see org.danann.cernunnos.cache.CacheHelper.Factory#createObject(java.lang.Object)
@@ -268,7 +276,7 @@ public final class XslTransformTask extends AbstractContainerTask {
             }
             
             try {
-                return this.transformerFactory.newTemplates(new StreamSource(xslUrl.toExternalForm()));
+                return this.transformerFactory.get().newTemplates(new StreamSource(xslUrl.toExternalForm()));
             }
             catch (TransformerConfigurationException tce) {
                 throw new RuntimeException("Failed to create Transformer for XSL='" + xslUrl.toExternalForm() + "'", tce);
@@ -283,6 +291,18 @@ public final class XslTransformTask extends AbstractContainerTask {
             return true;
         }
 
+        /* (non-Javadoc)
+         * @see org.danann.cernunnos.CacheHelper.ResourceFactory#getResource(java.io.Serializable)
+         */
+        public URL getResource(Tuple<String, String> key) {
+            try {
+                return new URL(new URL(key.first), key.second);
+            }
+            catch (MalformedURLException mue) {
+                return null;
+            }
+        }
+
         /* (non-Javadoc)
          * @see org.danann.cernunnos.CacheHelper.Factory#getMutex(java.lang.Object)
          */
@@ -0,0 +1,139 @@
+package org.danann.cernunnos;
+
+import org.danann.cernunnos.CacheHelper.CacheMode;
+import org.danann.cernunnos.cache.BoundedCache;
+import org.danann.cernunnos.cache.CacheStatisticsTask;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
+import org.danann.cernunnos.runtime.XmlGrammar;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+class CacheStatisticsTest {
+
+    @Before
+    void setUp() {
+        CacheStatistics.getInstance().setEnabled(true);
+    }
+
+    @After
+    void tearDown() {
+        // Statistics are off by default...
+        CacheStatistics.getInstance().setEnabled(false);
+    }
+
+    @Test
+    void testHitsMissesAndEvictionsPerNamespace() {
+    
+        def cache = new BoundedCache(1);
+        def helper = createHelper('ALL', cache);
+        def req = new RuntimeRequestResponse();
+        def factory = new TestNamedCacheFactory(namespace: 'testHitsMissesAndEvictions');
+
+        helper.getCachedObject(req, req, 'a', factory);
+        helper.getCachedObject(req, req, 'a', factory);
+        helper.getCachedObject(req, req, 'b', factory);   // Evicts 'a'
+
+        def s = CacheStatistics.getInstance().getNamespaceStatistics('testHitsMissesAndEvictions', CacheMode.ALL);
+        Assert.assertEquals(1, s.getHitCount());
+        Assert.assertEquals(2, s.getMissCount());
+        Assert.assertEquals(1, s.getEvictionCount());
+        Assert.assertEquals(1.0d / 3.0d, s.getHitRatio(), 0.0001d);
+    
+    }
+
+    @Test
+    void testPoolEvictionsAreCountedAsPool() {
+    
+        def cache = new BoundedCache(1);
+        def helper = createHelper('POOL', cache, true);
+        def req = new RuntimeRequestResponse();
+        def factory = new TestNamedCacheFactory(namespace: 'testPoolEvictions', threadSafe: false);
+
+        helper.releaseCachedObject(req, req, 'a', factory, helper.getCachedObject(req, req, 'a', factory));
+        helper.getCachedObject(req, req, 'b', factory);   // Evicts the pool for 'a'
+
+        def pool = CacheStatistics.getInstance().getNamespaceStatistics('testPoolEvictions', CacheMode.POOL);
+        def all = CacheStatistics.getInstance().getNamespaceStatistics('testPoolEvictions', CacheMode.ALL);
+        Assert.assertEquals(1, pool.getEvictionCount());
+        Assert.assertEquals(0, all.getEvictionCount());
+    
+    }
+
+    @Test
+    void testCacheOneCountsReplacements() {
+    
+        def helper = createHelper('ONE', new BoundedCache());
+        def req = new RuntimeRequestResponse();
+        def factory = new TestNamedCacheFactory(namespace: 'testCacheOneCountsReplacements');
+
+        ['a', 'a', 'b', 'b', 'a'].each { helper.getCachedObject(req, req, it, factory) };
+
+        def s = CacheStatistics.getInstance().getNamespaceStatistics('testCacheOneCountsReplacements', CacheMode.ONE);
+        Assert.assertEquals(2, s.getHitCount());
+        Assert.assertEquals(3, s.getMissCount());
+        Assert.assertEquals(2, s.getEvictionCount());
+    
+    }
+
+    @Test
+    void testDisabledStatisticsAreNotRecorded() {
+    
+        def helper = createHelper('NONE', new BoundedCache());
+        def req = new RuntimeRequestResponse();
+        def factory = new TestNamedCacheFactory(namespace: 'testDisabledStatistics');
+
+        CacheStatistics.getInstance().setEnabled(false);
+        try {
+            helper.getCachedObject(req, req, 'a', factory);
+        } finally {
+            CacheStatistics.getInstance().setEnabled(true);
+        }
+        helper.getCachedObject(req, req, 'a', factory);
+
+        def s = CacheStatistics.getInstance().getNamespaceStatistics('testDisabledStatistics', CacheMode.NONE);
+        Assert.assertEquals(1, s.getMissCount());
+    
+    }
+
+    @Test
+    void testReportListsLargestNamespacesFirst() {
+    
+        def cache = new BoundedCache();
+        def req = new RuntimeRequestResponse();
+        def helper = createHelper('ALL', cache);
+        def small = new TestNamedCacheFactory(namespace: 'testReportSmall');
+        def large = new TestNamedCacheFactory(namespace: 'testReportLarge');
+        helper.getCachedObject(req, req, 'a', small);
+        ['a', 'b', 'c'].each { helper.getCachedObject(req, req, it, large) };
+
+        def bytes = new ByteArrayOutputStream();
+        def mappings = [(CacheStatisticsTask.STREAM):new LiteralPhrase(new PrintStream(bytes, true)), 
+                        (CacheStatisticsTask.CACHE):new LiteralPhrase(cache),
+                        (CacheStatisticsTask.LIMIT):new LiteralPhrase(new Integer(2))];
+        def task = new CacheStatisticsTask();
+        task.init(new SimpleEntityConfig(XmlGrammar.getMainGrammar(), 'cache-statistics', null, task.getFormula(), mappings));
+        task.perform(req, req);
+
+        def lines = bytes.toString().readLines();
+        Assert.assertEquals(3, lines.size());
+        Assert.assertTrue(lines[1], lines[1].contains('testReportLarge (ALL)'));
+        Assert.assertTrue(lines[1], lines[1].endsWith('entries=3'));
+        Assert.assertTrue(lines[2], lines[2].contains('testReportSmall (ALL)'));
+    
+    }
+
+    private CacheHelper createHelper(String mode, Map cache) {
+        return createHelper(mode, cache, false);
+    }
+
+    private CacheHelper createHelper(String mode, Map cache, boolean poolable) {
+        def mappings = [(CacheHelper.CACHE):new LiteralPhrase(cache), 
+                        (CacheHelper.CACHE_MODEL):new LiteralPhrase(mode)];
+        def f = new SimpleFormula(getClass(), [CacheHelper.CACHE, CacheHelper.CACHE_MODEL] as Reagent[]);
+        return new DynamicCacheHelper(new SimpleEntityConfig(XmlGrammar.getMainGrammar(), 'test', null, f, mappings), poolable);
+    }
+
+}
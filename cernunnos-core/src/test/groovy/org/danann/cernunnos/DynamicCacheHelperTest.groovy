@@ -0,0 +1,190 @@
+package org.danann.cernunnos;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.SimpleEntityConfig;
+import org.danann.cernunnos.runtime.XmlGrammar;
+import org.junit.Assert;
+import org.junit.Test;
+
+class DynamicCacheHelperTest {
+
+    @Test
+    void testSlowLoadDoesNotBlockOtherKeys() {
+    
+        def helper = createHelper('ALL');
+        def req = new RuntimeRequestResponse();
+        def release = new CountDownLatch(1);
+        def factory = new TestCacheFactory(release: release, slowKey: 'slow');
+
+        def slow = Thread.start { helper.getCachedObject(req, req, 'slow', factory) };
+        Assert.assertTrue(factory.slowStarted.await(5, TimeUnit.SECONDS));
+
+        // Other keys load (and hit) while 'slow' is still loading...
+        Assert.assertEquals('fast!', helper.getCachedObject(req, req, 'fast', factory));
+        Assert.assertEquals('fast!', helper.getCachedObject(req, req, 'fast', factory));
+
+        release.countDown();
+        slow.join();
+        Assert.assertEquals(2, factory.created.get());
+    
+    }
+
+    @Test
+    void testConcurrentMissesLoadOnce() {
+    
+        ['ONE', 'ALL'].each { mode ->
+            def helper = createHelper(mode);
+            def req = new RuntimeRequestResponse();
+            def release = new CountDownLatch(1);
+            def factory = new TestCacheFactory(release: release, slowKey: 'key');
+
+            def results = Collections.synchronizedList([]);
+            def threads = (1..8).collect {
+                Thread.start { results.add(helper.getCachedObject(req, req, 'key', factory)) }
+            };
+            Assert.assertTrue(factory.slowStarted.await(5, TimeUnit.SECONDS));
+            release.countDown();
+            threads.each { it.join() };
+
+            Assert.assertEquals(8, results.size());
+            Assert.assertEquals(1, factory.created.get());
+            results.each { Assert.assertSame(results[0], it) };
+        }
+    
+    }
+
+    @Test
+    void testModifiedFileIsReadAgain() {
+    
+        ['ONE', 'ALL'].each { mode ->
+            def f = File.createTempFile('DynamicCacheHelperTest', '.txt');
+            f.deleteOnExit();
+            f.text = 'first';
+
+            def helper = createHelper(mode);
+            def req = new RuntimeRequestResponse();
+            def factory = new TestFileCacheFactory();
+            def key = f.toURI().toURL().toExternalForm();
+
+            ResourceStamp.setCheckInterval(0L);
+            try {
+                Assert.assertEquals('first', helper.getCachedObject(req, req, key, factory));
+                Assert.assertEquals('first', helper.getCachedObject(req, req, key, factory));
+                Assert.assertEquals(1, factory.created.get());
+
+                f.text = 'second!';
+                Assert.assertEquals('second!', helper.getCachedObject(req, req, key, factory));
+                Assert.assertEquals('second!', helper.getCachedObject(req, req, key, factory));
+                Assert.assertEquals(2, factory.created.get());
+            } finally {
+                ResourceStamp.setCheckInterval(ResourceStamp.DEFAULT_CHECK_INTERVAL);
+            }
+        }
+    
+    }
+
+    @Test
+    void testJarResourceStampsTheArchive() {
+    
+        def f = File.createTempFile('DynamicCacheHelperTest', '.jar');
+        f.deleteOnExit();
+        def stamp = ResourceStamp.forResource(new URL('jar:' + f.toURI().toURL().toExternalForm() + '!/META-INF/MANIFEST.MF'));
+        Assert.assertEquals(f.getCanonicalFile(), stamp.getFile().getCanonicalFile());
+        Assert.assertNull(ResourceStamp.forResource(new URL('http://www.example.com/doc.xml')));
+    
+    }
+
+    @Test
+    void testPoolLendsEachObjectToOneUserAtATime() {
+    
+        def helper = createHelper('POOL', true);
+        def req = new RuntimeRequestResponse();
+        def factory = new TestCacheFactory(threadSafe: false);
+
+        def first = helper.getCachedObject(req, req, 'key', factory);
+        def second = helper.getCachedObject(req, req, 'key', factory);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, factory.created.get());
+
+        helper.releaseCachedObject(req, req, 'key', factory, first);
+        Assert.assertSame(first, helper.getCachedObject(req, req, 'key', factory));
+        Assert.assertEquals(2, factory.created.get());
+    
+    }
+
+    @Test
+    void testPoolDiscardsObjectsBeyondMaxIdle() {
+    
+        def helper = createHelper('POOL', true);
+        def req = new RuntimeRequestResponse();
+        def factory = new TestCacheFactory(threadSafe: false);
+
+        DynamicCacheHelper.setPoolMaxIdle(1);
+        try {
+            def objects = (1..3).collect { helper.getCachedObject(req, req, 'key', factory) };
+            objects.each { helper.releaseCachedObject(req, req, 'key', factory, it) };
+            helper.getCachedObject(req, req, 'key', factory);
+            helper.getCachedObject(req, req, 'key', factory);
+            Assert.assertEquals(4, factory.created.get());
+        } finally {
+            DynamicCacheHelper.setPoolMaxIdle(8);
+        }
+    
+    }
+
+    @Test
+    void testPoolIsAllForCallersThatDontRelease() {
+    
+        def helper = createHelper('POOL', false);
+        def req = new RuntimeRequestResponse();
+        def factory = new TestCacheFactory(threadSafe: false);
+
+        Assert.assertSame(helper.getCachedObject(req, req, 'key', factory), helper.getCachedObject(req, req, 'key', factory));
+        Assert.assertEquals(1, factory.created.get());
+    
+    }
+
+    @Test
+    void testFailedResourceLookupDoesNotStrandLaterCallers() {
+    
+        ['ONE', 'ALL'].each { mode ->
+            def helper = createHelper(mode);
+            def req = new RuntimeRequestResponse();
+            def factory = [createObject:{ key -> 'never' }, isThreadSafe:{ key, instance -> true }, 
+                           getMutex:{ key -> 'mutex' }, getCacheNamespace:{ key -> 'testFailedResourceLookup' }, 
+                           getResource:{ key -> throw new IllegalStateException('No resource') }] as CacheHelper.ResourceFactory;
+
+            // Each call fails on its own instead of waiting on a placeholder left by the first...
+            def failures = Collections.synchronizedList([]);
+            def t = Thread.start {
+                2.times {
+                    try {
+                        helper.getCachedObject(req, req, 'key', factory);
+                    } catch (IllegalStateException ise) {
+                        failures.add(ise);
+                    }
+                }
+            };
+            t.join(5000);
+            Assert.assertFalse(mode, t.isAlive());
+            Assert.assertEquals(mode, 2, failures.size());
+        }
+    
+    }
+
+    private PoolingCacheHelper createHelper(String mode) {
+        return createHelper(mode, false);
+    }
+
+    private PoolingCacheHelper createHelper(String mode, boolean poolable) {
+        def mappings = [(CacheHelper.CACHE):new LiteralPhrase(new ConcurrentHashMap()), 
+                        (CacheHelper.CACHE_MODEL):new LiteralPhrase(mode)];
+        def f = new SimpleFormula(getClass(), [CacheHelper.CACHE, CacheHelper.CACHE_MODEL] as Reagent[]);
+        return new DynamicCacheHelper(new SimpleEntityConfig(XmlGrammar.getMainGrammar(), 'test', null, f, mappings), poolable);
+    }
+
+}
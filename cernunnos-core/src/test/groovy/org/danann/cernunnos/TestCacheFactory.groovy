@@ -0,0 +1,33 @@
+package org.danann.cernunnos;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the objects it creates;  creating <code>slowKey</code> blocks until 
+ * <code>release</code> is counted down.
+ */
+class TestCacheFactory extends AbstractCacheHelperFactory {
+    CountDownLatch release;
+    String slowKey;
+    boolean threadSafe = true;
+    CountDownLatch slowStarted = new CountDownLatch(1);
+    AtomicInteger created = new AtomicInteger();
+
+    Object createObject(Serializable key) {
+        created.incrementAndGet();
+        if (key == slowKey) {
+            slowStarted.countDown();
+            release.await();
+        }
+        return new String(key + '!');
+    }
+
+    boolean isThreadSafe(Serializable key, Object instance) {
+        return threadSafe;
+    }
+
+    Object getMutex(Serializable key) {
+        return TestCacheFactory.class;
+    }
+}
@@ -0,0 +1,27 @@
+package org.danann.cernunnos;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the text of the URL it's given as a key and counts the reads.
+ */
+class TestFileCacheFactory extends AbstractCacheHelperFactory implements CacheHelper.ResourceFactory {
+    AtomicInteger created = new AtomicInteger();
+
+    Object createObject(Serializable key) {
+        created.incrementAndGet();
+        return new URL(key).text;
+    }
+
+    boolean isThreadSafe(Serializable key, Object instance) {
+        return true;
+    }
+
+    Object getMutex(Serializable key) {
+        return TestFileCacheFactory.class;
+    }
+
+    URL getResource(Serializable key) {
+        return new URL(key);
+    }
+}
@@ -0,0 +1,26 @@
+package org.danann.cernunnos;
+
+/**
+ * Creates objects (thread-safe unless told otherwise) in the cache namespace 
+ * it's given.
+ */
+class TestNamedCacheFactory extends AbstractCacheHelperFactory {
+    String namespace;
+    boolean threadSafe = true;
+
+    Object createObject(Serializable key) {
+        return new String(key + '!');
+    }
+
+    boolean isThreadSafe(Serializable key, Object instance) {
+        return threadSafe;
+    }
+
+    Object getMutex(Serializable key) {
+        return TestNamedCacheFactory.class;
+    }
+
+    Serializable getCacheNamespace(Serializable key) {
+        return namespace;
+    }
+}
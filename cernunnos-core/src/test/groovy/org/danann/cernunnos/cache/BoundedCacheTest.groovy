@@ -0,0 +1,112 @@
+package org.danann.cernunnos.cache;
+
+import org.danann.cernunnos.CacheHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+class BoundedCacheTest {
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+    
+        def evicted = [];
+        def cache = new BoundedCache(3);
+        cache.registerCacheEvictionListener({ k, v -> evicted.add(k) } as CacheHelper.CacheEvictionListener);
+        
+        cache.put('a', 1);
+        cache.put('b', 2);
+        cache.put('c', 3);
+        Assert.assertEquals(1, cache.get('a'));    // 'b' is now the eldest
+        cache.put('d', 4);
+        
+        Assert.assertEquals(['b'], evicted);
+        Assert.assertEquals(3, cache.size());
+        Assert.assertNull(cache.get('b'));
+        Assert.assertEquals(4, cache.get('d'));
+    
+    }
+
+    @Test
+    void testMaxWeight() {
+    
+        def weigher = { k, v -> v.length() } as BoundedCache.Weigher;
+        def cache = new BoundedCache(100, 10L, weigher, 0L, 0L);
+        cache.put('a', '12345');
+        cache.put('b', '12345');
+        cache.put('c', '1');
+        Assert.assertNull(cache.get('a'));
+        Assert.assertEquals(2, cache.size());
+    
+    }
+
+    @Test
+    void testExpireAfterWrite() {
+    
+        def evicted = [];
+        def cache = new BoundedCache(10, 0L, 20L);
+        cache.registerCacheEvictionListener({ k, v -> evicted.add(k) } as CacheHelper.CacheEvictionListener);
+        cache.put('a', 1);
+        Assert.assertEquals(1, cache.get('a'));
+        Thread.sleep(50);
+        Assert.assertNull(cache.get('a'));
+        Assert.assertEquals(['a'], evicted);
+        Assert.assertNull(cache.putIfAbsent('a', 2));
+        Assert.assertEquals(2, cache.get('a'));
+    
+    }
+
+    @Test
+    void testConcurrentMapContract() {
+    
+        def cache = new BoundedCache();
+        Assert.assertNull(cache.putIfAbsent('k', 'v1'));
+        Assert.assertEquals('v1', cache.putIfAbsent('k', 'v2'));
+        Assert.assertFalse(cache.replace('k', 'v2', 'v3'));
+        Assert.assertTrue(cache.replace('k', 'v1', 'v3'));
+        Assert.assertEquals('v3', cache.replace('k', 'v4'));
+        Assert.assertFalse(cache.remove('k', 'v3'));
+        Assert.assertTrue(cache.remove('k', 'v4'));
+        Assert.assertTrue(cache.isEmpty());
+    
+    }
+
+    @Test
+    void testFromSpec() {
+    
+        def cache = BoundedCache.fromSpec('maxEntries=500, expireAfterAccessSeconds=60');
+        Assert.assertEquals(500, cache.getMaxEntries());
+        Assert.assertEquals(BoundedCache.DEFAULT_MAX_ENTRIES, BoundedCache.fromSpec('').getMaxEntries());
+        try {
+            BoundedCache.fromSpec('maxSize=5');
+            Assert.fail('Expected IllegalArgumentException');
+        } catch (IllegalArgumentException iae) {
+            // expected...
+        }
+    
+    }
+
+    @Test
+    void testWeightFromSpec() {
+    
+        // The built-in estimate is used unless another weigher is named...
+        def cache = BoundedCache.fromSpec('maxEntries=100, maxWeight=1000');
+        Assert.assertEquals(1000L, cache.getMaxWeight());
+        cache.put('large', 'x' * 1000);
+        cache.put('small', 'v');
+        Assert.assertNull(cache.get('large'));
+        Assert.assertEquals('v', cache.get('small'));
+
+        cache = BoundedCache.fromSpec('maxWeight=1000, weigher=' + BoundedCache.EstimatingWeigher.class.getName());
+        cache.put('large', 'x' * 1000);
+        Assert.assertNull(cache.get('large'));
+
+        try {
+            BoundedCache.fromSpec('maxWeight=1000, weigher=java.lang.String');
+            Assert.fail('Expected IllegalArgumentException');
+        } catch (IllegalArgumentException iae) {
+            // expected...
+        }
+    
+    }
+
+}
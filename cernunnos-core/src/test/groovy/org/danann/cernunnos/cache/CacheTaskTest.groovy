@@ -0,0 +1,59 @@
+package org.danann.cernunnos.cache;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+class CacheTaskTest {
+
+    private static final String SCRIPT = '<cache key="VALUE" cache-key="refreshed" cache-model="ALL" thread-safe="true" ' +
+            'refresh-after="%s" expire-after="%s" factory="${jexl(COUNTER.incrementAndGet())}" ' +
+            'refresh-executor="${req(EXECUTOR)}"><subtasks><return value="${req(VALUE)}"/></subtasks></cache>';
+
+    @Test
+    void testStaleValueIsServedWhileRefreshing() {
+    
+        def runner = new ScriptRunner();
+        runner.setCache(new BoundedCache());
+        def k = runner.compileTask(DocumentHelper.parseText(String.format(SCRIPT, '0.05', '60')).getRootElement());
+        def counter = new AtomicInteger();
+        def queued = [];
+        def executor = { Runnable r -> queued.add(r) } as Executor;
+        def attrs = ['COUNTER':counter, 'EXECUTOR':executor];
+
+        Assert.assertEquals(1, runner.evaluate(k, new RuntimeRequestResponse(attrs)));
+        Thread.sleep(100);
+
+        // Past refresh-after:  the old value is returned, and only one reload is scheduled...
+        Assert.assertEquals(1, runner.evaluate(k, new RuntimeRequestResponse(attrs)));
+        Assert.assertEquals(1, runner.evaluate(k, new RuntimeRequestResponse(attrs)));
+        Assert.assertEquals(1, queued.size());
+        Assert.assertEquals(1, counter.get());
+
+        queued[0].run();
+        Assert.assertEquals(2, runner.evaluate(k, new RuntimeRequestResponse(attrs)));
+    
+    }
+
+    @Test
+    void testExpiredValueIsReloadedInline() {
+    
+        def runner = new ScriptRunner();
+        runner.setCache(new BoundedCache());
+        def k = runner.compileTask(DocumentHelper.parseText(String.format(SCRIPT, '0', '0.05')).getRootElement());
+        def counter = new AtomicInteger();
+        def attrs = ['COUNTER':counter, 'EXECUTOR':({ Runnable r -> Assert.fail() } as Executor)];
+
+        Assert.assertEquals(1, runner.evaluate(k, new RuntimeRequestResponse(attrs)));
+        Assert.assertEquals(1, runner.evaluate(k, new RuntimeRequestResponse(attrs)));
+        Thread.sleep(100);
+        Assert.assertEquals(2, runner.evaluate(k, new RuntimeRequestResponse(attrs)));
+    
+    }
+
+}
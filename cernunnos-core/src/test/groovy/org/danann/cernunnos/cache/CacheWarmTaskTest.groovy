@@ -0,0 +1,82 @@
+package org.danann.cernunnos.cache;
+
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+class CacheWarmTaskTest {
+
+    private static final String XSL = '<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform"/>';
+
+    @Test
+    void testStylesheetsAreCachedUnderTheirLookupKeys() {
+    
+        def dir = createTempDir();
+        new File(dir, 'a.xsl').text = XSL;
+        new File(dir, 'b.xsl').text = XSL;
+        new File(dir, 'c.txt').text = 'not a stylesheet';
+        def ctx = dir.toURI().toURL().toExternalForm();
+        
+        def cache = new BoundedCache();
+        def runner = new ScriptRunner();
+        runner.setCache(cache);
+        runner.run(compile(runner, '<cache-warm type="stylesheet" context="${req(CTX)}" includes="*.xsl" threads="2"/>'), 
+                new RuntimeRequestResponse(['CTX':ctx]));
+        
+        Assert.assertEquals(['a.xsl', 'b.xsl'] as Set, cache.keySet().findAll { it.first == 'CachedTransformerFactory' && it.second.first == ctx }.collect { it.second.second } as Set);
+    
+    }
+
+    @Test
+    void testLaterLookupsHit() {
+    
+        def dir = createTempDir();
+        new File(dir, 'hello.crn').text = '<echo>hello</echo>';
+        def ctx = dir.toURI().toURL().toExternalForm();
+        
+        def cache = new BoundedCache();
+        def runner = new ScriptRunner();
+        runner.setCache(cache);
+        runner.run(compile(runner, '<cache-warm type="script" context="${req(CTX)}" locations="hello.crn, missing.crn"/>'), 
+                new RuntimeRequestResponse(['CTX':ctx]));
+        Assert.assertEquals(1, cache.size());
+        def entry = cache.get(cache.keySet().iterator().next());
+        
+        runner.run(compile(runner, '<crn context="${req(CTX)}" location="hello.crn" cache-model="ALL"/>'), 
+                new RuntimeRequestResponse(['CTX':ctx]));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertSame(entry, cache.get(cache.keySet().iterator().next()));
+    
+    }
+
+    @Test
+    void testDocumentsAreRejected() {
+    
+        def cache = new BoundedCache();
+        def runner = new ScriptRunner();
+        runner.setCache(cache);
+        try {
+            runner.run(compile(runner, '<cache-warm type="document" locations="a.xml"/>'), new RuntimeRequestResponse());
+            Assert.fail('Expected RuntimeException');
+        } catch (RuntimeException re) {
+            // expected...
+        }
+        Assert.assertEquals(0, cache.size());
+    
+    }
+
+    private static def compile(runner, xml) {
+        return runner.compileTask(DocumentHelper.parseText(xml).getRootElement());
+    }
+
+    private static File createTempDir() {
+        def rslt = File.createTempFile('CacheWarmTaskTest', '');
+        rslt.delete();
+        rslt.mkdirs();
+        rslt.deleteOnExit();
+        return rslt;
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.danann.cernunnos.cache;
+
+import org.danann.cernunnos.Attributes;
+import org.danann.cernunnos.CacheHelper;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.XmlGrammar;
+import org.junit.Assert;
+import org.junit.Test;
+
+class TieredCacheTest {
+
+    @Test
+    void testEvictedEntriesMoveOffHeap() {
+    
+        def evicted = [];
+        def cache = new TieredCache(new BoundedCache(2), 1024L * 1024L);
+        cache.registerCacheEvictionListener({ k, v -> evicted.add(k) } as CacheHelper.CacheEvictionListener);
+        
+        cache.put('a', 'apple');
+        cache.put('b', 'banana');
+        cache.put('c', 'cherry');    // 'a' moves off-heap
+        
+        Assert.assertEquals([], evicted);
+        Assert.assertEquals(1, cache.getOffHeapSize());
+        Assert.assertTrue(cache.getOffHeapBytes() > 0L);
+        Assert.assertEquals(3, cache.size());
+        
+        Assert.assertEquals('apple', cache.get('a'));    // 'b' moves off-heap in its place
+        Assert.assertEquals(1, cache.getOffHeapSize());
+        Assert.assertEquals('banana', cache.get('b'));
+        Assert.assertEquals(['a', 'b', 'c'] as Set, cache.keySet());
+    
+    }
+
+    @Test
+    void testValuesThatArentSerializableAreEvicted() {
+    
+        def evicted = [];
+        def cache = new TieredCache(new BoundedCache(1), 1024L * 1024L);
+        cache.registerCacheEvictionListener({ k, v -> evicted.add(k) } as CacheHelper.CacheEvictionListener);
+        
+        cache.put('a', new ThreadLocal());
+        cache.put('b', 'banana');
+        
+        Assert.assertEquals(['a'], evicted);
+        Assert.assertEquals(0, cache.getOffHeapSize());
+        Assert.assertNull(cache.get('a'));
+    
+    }
+
+    @Test
+    void testCachedDocumentsMoveOffHeap() {
+    
+        def docs = ['a', 'b'].collect { name ->
+            def f = File.createTempFile('TieredCacheTest', '.xml');
+            f.deleteOnExit();
+            f.write('<doc name="' + name + '"/>', 'UTF-8');
+            f.toURI().toURL().toExternalForm()
+        };
+        def cache = new TieredCache(new BoundedCache(1), 1024L * 1024L);
+        def req = new RuntimeRequestResponse();
+        req.setAttribute(Attributes.CACHE, cache);
+        req.setAttribute(Attributes.CACHE_MODEL, 'ALL');
+        def phrases = docs.collect { XmlGrammar.getMainGrammar().newPhrase('${doc(' + it + ')}') };
+        
+        // ReadDocumentPhrase keeps each document in a ThreadLocal...
+        def first = phrases[0].evaluate(req, new RuntimeRequestResponse());
+        Assert.assertEquals('b', phrases[1].evaluate(req, new RuntimeRequestResponse()).attributeValue('name'));
+        Assert.assertEquals(1, cache.getOffHeapSize());
+        
+        def promoted = phrases[0].evaluate(req, new RuntimeRequestResponse());
+        Assert.assertNotSame(first, promoted);
+        Assert.assertEquals(first.asXML(), promoted.asXML());
+        Assert.assertEquals(1, cache.getOffHeapSize());    // 'b' in its place
+        Assert.assertSame(promoted, phrases[0].evaluate(req, new RuntimeRequestResponse()));
+    
+    }
+
+    @Test
+    void testOffHeapTierIsBounded() {
+    
+        def evicted = [];
+        def cache = new TieredCache(new BoundedCache(1), 300L);
+        cache.registerCacheEvictionListener({ k, v -> evicted.add([k, v]) } as CacheHelper.CacheEvictionListener);
+        
+        cache.put('a', 'x' * 200);
+        cache.put('b', 'y' * 200);    // 'a' moves off-heap
+        cache.put('c', 'z' * 200);    // 'b' moves off-heap;  'a' no longer fits
+        
+        Assert.assertEquals([['a', null]], evicted);
+        Assert.assertNull(cache.get('a'));
+        Assert.assertEquals('y' * 200, cache.get('b'));
+    
+    }
+
+    @Test
+    void testConcurrentMapContract() {
+    
+        def cache = new TieredCache(new BoundedCache(1), 1024L * 1024L);
+        cache.put('a', 1);
+        cache.put('b', 2);    // 'a' moves off-heap
+        
+        Assert.assertEquals(1, cache.putIfAbsent('a', 3));
+        Assert.assertTrue(cache.replace('b', 2, 4));    // 'b' is off-heap by now
+        Assert.assertEquals(4, cache.get('b'));
+        Assert.assertTrue(cache.remove('a', 1));
+        Assert.assertEquals(4, cache.remove('b'));
+        Assert.assertEquals(0, cache.size());
+    
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    void testExpireAfterWriteIsRejected() {
+        new TieredCache(new BoundedCache(10, 0L, 1000L), 1024L);
+    }
+
+}
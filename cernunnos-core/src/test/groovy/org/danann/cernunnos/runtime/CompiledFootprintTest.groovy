@@ -0,0 +1,48 @@
+package org.danann.cernunnos.runtime;
+
+import java.lang.ref.WeakReference;
+
+import org.dom4j.DocumentHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+class CompiledFootprintTest {
+
+    private static final String SCRIPT = '<with-attribute key="Attributes.NODE" value="${newDoc(example)}">' +
+            '<append-node><book author="${req(AUTHOR)}"/></append-node>' +
+            '<choose><when test="${false()}"><return value="failure"/></when>' +
+            '<otherwise><return value="success"/></otherwise></choose></with-attribute>';
+
+    @Test
+    void testCompiledTaskDoesNotRetainTheSourceDocument() {
+    
+        def runner = new ScriptRunner();
+        def k = compileAndCollect(runner, SCRIPT);
+        Assert.assertEquals('success', runner.evaluate(k, new RuntimeRequestResponse(['AUTHOR':'George Eliot'])));
+    
+    }
+
+    @Test
+    void testSimpleContainerDoesNotRetainTheSourceDocument() {
+    
+        def runner = new ScriptRunner();
+        def k = compileAndCollect(runner, '<sequence><echo>hi</echo><return value="${req(AUTHOR)}"/></sequence>');
+        Assert.assertEquals('George Eliot', runner.evaluate(k, new RuntimeRequestResponse(['AUTHOR':'George Eliot'])));
+    
+    }
+
+    private def compileAndCollect(ScriptRunner runner, String script) {
+        def doc = DocumentHelper.parseText(script);
+        def ref = new WeakReference(doc);
+        def k = runner.compileTask(doc.getRootElement());
+        doc = null;
+        
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertNull('The compiled task still references its source Document', ref.get());
+        return k;
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.danann.cernunnos.runtime;
+
+import org.danann.cernunnos.ManagedException;
+import org.danann.cernunnos.sql.SqlAttributes;
+import org.dom4j.DocumentHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+class CompiledModeTest {
+
+    private static final String SCRIPT = '<sql-with-connection><for-each items="${req(IDS)}" attribute-name="id">' +
+            '<sql-statement sql="INSERT INTO items(id, name) VALUES(?, ?)">' +
+            '<parameter value="${id}"/><parameter value="item"/></sql-statement>' +
+            '<org.danann.cernunnos.NoOpTask/></for-each>' +
+            '<sql-query><sql>SELECT id, name FROM items ORDER BY id</sql><subtasks>' +
+            '<sql-statement sql="INSERT INTO copies(id, name) VALUES(?, ?)">' +
+            '<parameter value="${req(ID)}"/><parameter value="${req(NAME)}"/></sql-statement>' +
+            '<org.danann.cernunnos.NoOpTask/></subtasks></sql-query></sql-with-connection>';
+
+    private def dataSource;
+    private def jdbcTemplate;
+
+    @Before
+    void setUp() {
+        dataSource = new SingleConnectionDataSource('jdbc:hsqldb:mem:CompiledModeTest', 'sa', '', true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute('CREATE TABLE items (id INTEGER PRIMARY KEY, name VARCHAR(32))');
+        jdbcTemplate.execute('CREATE TABLE copies (id INTEGER PRIMARY KEY, name VARCHAR(32))');
+    }
+
+    @After
+    void tearDown() {
+        ExecutionMetrics.getInstance().setEnabled(false);
+        ExecutionMetrics.getInstance().reset();
+        jdbcTemplate.execute('SHUTDOWN');
+        dataSource.destroy();
+    }
+
+    @Test
+    void testCompiledScriptsBehaveTheSame() {
+
+        def runner = new ScriptRunner();
+        runner.setCompiledMode(true);
+        Assert.assertTrue(runner.isCompiledMode());
+
+        def k = runner.compileTask(DocumentHelper.parseText(SCRIPT).getRootElement());
+        Assert.assertTrue(k instanceof CompiledTask);
+        runner.run(k, new RuntimeRequestResponse([(SqlAttributes.DATA_SOURCE):dataSource, 'IDS':(1..5).toList()]));
+
+        Assert.assertEquals(5, jdbcTemplate.queryForObject('SELECT COUNT(*) FROM items', Integer.class));
+        Assert.assertEquals(5, jdbcTemplate.queryForObject('SELECT COUNT(*) FROM copies', Integer.class));
+        Assert.assertEquals('item', jdbcTemplate.queryForObject('SELECT name FROM copies WHERE id = 5', String.class));
+
+        // The default is still interpreted...
+        Assert.assertFalse(new ScriptRunner().compileTask(DocumentHelper.parseText(SCRIPT).getRootElement()) instanceof CompiledTask);
+
+    }
+
+    @Test
+    void testErrorsNameTheFailingTask() {
+
+        def runner = new ScriptRunner();
+        runner.setCompiledMode(true);
+        def k = runner.compileTask(DocumentHelper.parseText('<sql-with-connection>' +
+                '<for-each items="${req(IDS)}" attribute-name="id"><org.danann.cernunnos.NoOpTask/>' +
+                '<sql-statement sql="INSERT INTO nosuch(id) VALUES(?)"><parameter value="${id}"/></sql-statement>' +
+                '</for-each></sql-with-connection>').getRootElement());
+
+        try {
+            runner.run(k, new RuntimeRequestResponse([(SqlAttributes.DATA_SOURCE):dataSource, 'IDS':[1]]));
+            Assert.fail('Expected a ManagedException');
+        } catch (ManagedException me) {
+            Assert.assertTrue(me.getMessage(), me.getMessage().contains('Entity Name:  <sql-statement>'));
+            Assert.assertTrue(me.getMessage(), me.getMessage().contains('Source:  /sql-with-connection/for-each/sql-statement'));
+        }
+
+    }
+
+    @Test
+    void testMetricsAreStillRecorded() {
+
+        def metrics = ExecutionMetrics.getInstance();
+        def runner = new ScriptRunner();
+        runner.setCompiledMode(true);
+        def doc = DocumentHelper.parseText('<for-each items="${req(IDS)}" attribute-name="id">' +
+                '<org.danann.cernunnos.NoOpTask/><org.danann.cernunnos.NoOpTask/></for-each>');
+        doc.setName('file:/compiled.crn');
+        def k = runner.compileTask(doc.getRootElement());
+
+        metrics.setEnabled(true);
+        runner.run(k, new RuntimeRequestResponse(['IDS':(1..3).toList()]));
+
+        def list = metrics.getEntryMetrics().findAll { it.getSystemId() == 'file:/compiled.crn' &&
+                                it.getEntryName() == '<org.danann.cernunnos.NoOpTask>' };
+        Assert.assertEquals(2, list.size());
+        list.each { Assert.assertEquals(3L, it.getInvocationCount()) };
+
+    }
+
+}
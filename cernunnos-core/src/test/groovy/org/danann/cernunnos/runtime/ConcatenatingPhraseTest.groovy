@@ -0,0 +1,38 @@
+package org.danann.cernunnos.runtime;
+
+import org.danann.cernunnos.AttributePhrase;
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.Phrase;
+import org.junit.Assert;
+import org.junit.Test;
+
+class ConcatenatingPhraseTest {
+
+    @Test
+    void testLiteralsAreFolded() {
+    
+        def p = ConcatenatingPhrase.fold([new LiteralPhrase('a'), new LiteralPhrase(null), 
+                        new LiteralPhrase(3)] as Phrase[]);
+        Assert.assertTrue(p instanceof LiteralPhrase);
+        Assert.assertEquals('anull3', p.evaluate(null, null));
+        
+        // Empty text is a literal too...
+        p = XmlGrammar.getMainGrammar().newPhrase('');
+        Assert.assertTrue(p instanceof LiteralPhrase);
+        Assert.assertEquals('', p.evaluate(null, null));
+    
+    }
+
+    @Test
+    void testDynamicPhrasesAreEvaluatedPerCall() {
+    
+        def p = ConcatenatingPhrase.fold([new LiteralPhrase('cache-'), new LiteralPhrase('model-'), 
+                        new AttributePhrase('MODE')] as Phrase[]);
+        Assert.assertTrue(p instanceof ConcatenatingPhrase);
+        
+        Assert.assertEquals('cache-model-ALL', p.evaluate(new RuntimeRequestResponse(['MODE':'ALL']), new RuntimeRequestResponse()));
+        Assert.assertEquals('cache-model-ONE', p.evaluate(new RuntimeRequestResponse(['MODE':'ONE']), new RuntimeRequestResponse()));
+    
+    }
+
+}
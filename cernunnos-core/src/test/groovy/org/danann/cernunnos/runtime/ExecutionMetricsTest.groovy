@@ -0,0 +1,85 @@
+package org.danann.cernunnos.runtime;
+
+import org.dom4j.DocumentHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+class ExecutionMetricsTest {
+
+    @After
+    void tearDown() {
+        ExecutionMetrics.getInstance().setEnabled(false);
+        ExecutionMetrics.getInstance().reset();
+    }
+
+    @Test
+    void testRecordAndReset() {
+    
+        def metrics = ExecutionMetrics.getInstance();
+        def runner = new ScriptRunner();
+        def k = runner.compileTask(DocumentHelper.parseText('<return value="done"/>').getRootElement());
+
+        // Nothing is recorded while disabled...
+        runner.evaluate(k);
+        Assert.assertNull(find('<return>'));
+
+        metrics.setEnabled(true);
+        runner.evaluate(k);
+        runner.evaluate(k);
+        def m = find('<return>');
+        Assert.assertNotNull(m);
+        Assert.assertEquals(2L, m.getInvocationCount());
+        Assert.assertEquals(0L, m.getErrorCount());
+        Assert.assertTrue(m.getMaxNanos() <= m.getTotalNanos());
+
+        metrics.reset();
+        Assert.assertEquals(0L, m.getInvocationCount());
+        Assert.assertEquals(0L, m.getMaxNanos());
+    
+    }
+
+    @Test
+    void testScriptsAreKeptApart() {
+    
+        def metrics = ExecutionMetrics.getInstance();
+        def runner = new ScriptRunner();
+        metrics.setEnabled(true);
+        ['file:/one.crn', 'file:/two.crn'].each { systemId ->
+            def doc = DocumentHelper.parseText('<return value="done"/>');
+            doc.setName(systemId);
+            runner.evaluate(runner.compileTask(doc.getRootElement()));
+        };
+
+        // Same entry at the same path, but in different scripts...
+        def list = metrics.getEntryMetrics().findAll { it.getEntryName() == '<return>' && it.getSystemId() != null };
+        Assert.assertEquals(['file:/one.crn', 'file:/two.crn'], list.collect { it.getSystemId() }.sort());
+        list.each { Assert.assertEquals(1L, it.getInvocationCount()) };
+
+        def row = metrics.getEntries().get(['<return>', 'file:/one.crn', '/return'] as Object[]);
+        Assert.assertNotNull(row);
+        Assert.assertEquals(1L, row.get('invocationCount'));
+        Assert.assertTrue(row.get('totalNanos') instanceof Long);
+    
+    }
+
+    @Test
+    void testConcurrentRecording() {
+    
+        def m = new EntryMetrics('echo', null, null);
+        def threads = (1..8).collect { 
+            Thread.start { 1000.times { m.record(10L, it % 10 == 0) } }
+        };
+        threads.each { it.join() };
+        Assert.assertEquals(8000L, m.getInvocationCount());
+        Assert.assertEquals(80000L, m.getTotalNanos());
+        Assert.assertEquals(800L, m.getErrorCount());
+        Assert.assertEquals(10L, m.getMaxNanos());
+    
+    }
+
+    private EntryMetrics find(String entryName) {
+        return ExecutionMetrics.getInstance().getEntryMetrics().find { it.getEntryName() == entryName && it.getSystemId() == null };
+    }
+
+}
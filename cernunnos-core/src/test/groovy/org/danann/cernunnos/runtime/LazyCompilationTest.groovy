@@ -0,0 +1,61 @@
+package org.danann.cernunnos.runtime;
+
+import org.dom4j.DocumentHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+class LazyCompilationTest {
+
+    private static final String SCRIPT = '<choose><when test="${false()}"><no.such.Task/></when>' +
+            '<otherwise><return value="success"/></otherwise></choose>';
+
+    @Test
+    void testUnusedBranchIsNotCompiled() {
+    
+        def runner = new ScriptRunner();
+        runner.setLazyCompilation(true);
+        Assert.assertTrue(runner.isLazyCompilation());
+        
+        def k = runner.compileTask(DocumentHelper.parseText(SCRIPT).getRootElement());
+        Assert.assertEquals('success', runner.evaluate(k));
+        Assert.assertEquals('success', runner.evaluate(k));
+        
+        // The main grammar itself is unaffected...
+        Assert.assertFalse(XmlGrammar.getMainGrammar().isLazyCompilation());
+    
+    }
+
+    @Test
+    void testFailedCompileIsNotRetried() {
+    
+        def runner = new ScriptRunner();
+        runner.setLazyCompilation(true);
+        def k = runner.compileTask(DocumentHelper.parseText('<no.such.Task/>').getRootElement());
+        
+        def first = null;
+        try {
+            runner.evaluate(k);
+            Assert.fail('Expected a RuntimeException');
+        } catch (RuntimeException re) {
+            first = re;
+        }
+        try {
+            runner.evaluate(k);
+            Assert.fail('Expected a RuntimeException');
+        } catch (RuntimeException re) {
+            // Later calls report the original failure...
+            def cause = re;
+            while (cause != null && cause != first) {
+                cause = cause.getCause();
+            }
+            Assert.assertSame(first, cause);
+        }
+    
+    }
+
+    @Test(expected=RuntimeException.class)
+    void testEagerCompilationFails() {
+        new ScriptRunner().compileTask(DocumentHelper.parseText(SCRIPT).getRootElement());
+    }
+
+}
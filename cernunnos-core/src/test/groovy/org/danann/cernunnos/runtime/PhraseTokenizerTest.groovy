@@ -0,0 +1,89 @@
+package org.danann.cernunnos.runtime;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+class PhraseTokenizerTest {
+
+    @Test
+    void testLiteralOnly() {
+    
+        def segments = PhraseTokenizer.tokenize('select * from foo where bar = {baz}');
+        Assert.assertEquals(1, segments.length);
+        Assert.assertFalse(segments[0].isDynamic());
+        Assert.assertEquals('select * from foo where bar = {baz}', segments[0].getText());
+    
+    }
+
+    @Test
+    void testMixedSegments() {
+    
+        def segments = PhraseTokenizer.tokenize('customers/${xpath(customer/@name)}.xml?${Attributes.NODE}');
+        Assert.assertEquals(4, segments.length);
+        Assert.assertEquals('customers/', segments[0].getText());
+        Assert.assertTrue(segments[1].isDynamic());
+        Assert.assertEquals('xpath', segments[1].getPhraseName());
+        Assert.assertEquals('customer/@name', segments[1].getNestedText());
+        Assert.assertEquals('.xml?', segments[2].getText());
+        Assert.assertTrue(segments[3].isDynamic());
+        Assert.assertNull(segments[3].getPhraseName());
+        Assert.assertEquals('Attributes.NODE', segments[3].getNestedText());
+    
+    }
+
+    @Test
+    void testNestedPhrasesAreKeptVerbatim() {
+    
+        def segments = PhraseTokenizer.tokenize('${req(${Attributes.STRING})}');
+        Assert.assertEquals(1, segments.length);
+        Assert.assertEquals('req', segments[0].getPhraseName());
+        Assert.assertEquals('${Attributes.STRING}', segments[0].getNestedText());
+    
+    }
+
+    @Test
+    void testUnclosedPhraseBecomesLiteral() {
+    
+        def segments = PhraseTokenizer.tokenize('foo${bar');
+        Assert.assertEquals(2, segments.length);
+        Assert.assertEquals('foo', segments[0].getText());
+        Assert.assertFalse(segments[1].isDynamic());
+        Assert.assertEquals('bar', segments[1].getText());
+    
+    }
+
+    @Test
+    void testLargeInputTokenizesInOnePass() {
+    
+        // The previous implementation rebuilt the remaining text after every 
+        // segment;  each character must now end up in exactly one segment 
+        // (see PhraseBenchmark for timings)...
+        def buffer = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            buffer.append('row ').append(i).append(' = ${Attributes.NODE}\n');
+        }
+        def segments = PhraseTokenizer.tokenize(buffer.toString());
+        def rebuilt = new StringBuilder();
+        for (segment in segments) {
+            if (segment.isDynamic()) {
+                rebuilt.append('${').append(segment.getText()).append('}');
+            } else {
+                rebuilt.append(segment.getText());
+            }
+        }
+        Assert.assertEquals(buffer.toString(), rebuilt.toString());
+
+        // A literal and a phrase per row, plus the trailing newline...
+        Assert.assertEquals(40001, segments.length);
+        Assert.assertEquals('row 0 = ', segments[0].getText());
+        Assert.assertTrue(segments[1].isDynamic());
+        Assert.assertEquals('Attributes.NODE', segments[1].getNestedText());
+        Assert.assertEquals('\nrow 1 = ', segments[2].getText());
+        Assert.assertEquals('\nrow 19999 = ', segments[39998].getText());
+        Assert.assertTrue(segments[39999].isDynamic());
+        Assert.assertFalse(segments[40000].isDynamic());
+        Assert.assertEquals('\n', segments[40000].getText());
+    
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.danann.cernunnos.runtime;
 
+import org.danann.cernunnos.AttributeSlot;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -15,4 +16,82 @@ class RuntimeRequestResponseTest {
     
     }
 
+    @Test
+    void testEnclosedLookupFallsThroughToParent() {
+    
+        def parent = new RuntimeRequestResponse([ foo:'bar', baz:null ]);
+        def child = new RuntimeRequestResponse();
+        child.enclose(parent);
+        
+        Assert.assertEquals('bar', child.getAttribute('foo'));
+        Assert.assertTrue(child.hasAttribute('baz'));
+        Assert.assertNull(child.getAttribute('baz'));
+        Assert.assertFalse(child.hasAttribute('qux'));
+    
+    }
+
+    @Test
+    void testChildWritesCoverButDoNotLeak() {
+    
+        def parent = new RuntimeRequestResponse([ foo:'bar' ]);
+        def child = new RuntimeRequestResponse();
+        child.enclose(parent);
+        child.setAttribute('foo', 'monkey');
+        child.setAttribute('qux', 'quux');
+        
+        Assert.assertEquals('monkey', child.getAttribute('foo'));
+        Assert.assertEquals('bar', parent.getAttribute('foo'));
+        Assert.assertFalse(parent.hasAttribute('qux'));
+    
+    }
+
+    @Test
+    void testMergedViews() {
+    
+        def grandparent = new RuntimeRequestResponse([ a:'1', b:'2' ]);
+        def parent = new RuntimeRequestResponse([ b:'3' ]);
+        parent.enclose(grandparent);
+        def child = new RuntimeRequestResponse([ c:'4' ]);
+        child.enclose(parent);
+        
+        Assert.assertEquals([ a:'1', b:'3', c:'4' ], new HashMap(child.getAttributes()));
+        Assert.assertEquals([ 'a', 'b', 'c' ] as Set, new HashSet(child.getAttributeNames()));
+        Assert.assertEquals('3', child.getAttributes().get('b'));
+        
+        // The views are live...
+        def attrs = child.getAttributes();
+        grandparent.setAttribute('d', '5');
+        Assert.assertEquals('5', attrs.get('d'));
+        Assert.assertEquals(4, attrs.size());
+    
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    void testMergedViewIsReadOnly() {
+    
+        def rrr = new RuntimeRequestResponse([ foo:'bar' ]);
+        rrr.getAttributes().put('foo', 'baz');
+    
+    }
+
+    @Test
+    void testFindAttributeBySlot() {
+    
+        def parent = new RuntimeRequestResponse([ 'slotTest.before':'1' ]);
+        def slot = AttributeSlot.forName('slotTest.before');
+        def child = new RuntimeRequestResponse();
+        child.enclose(parent);
+        
+        // Set before the slot existed...
+        Assert.assertEquals('1', child.findAttribute(slot));
+        
+        // Set after the slot existed...
+        child.setAttribute('slotTest.before', '2');
+        Assert.assertEquals('2', child.findAttribute(slot));
+        Assert.assertEquals('1', parent.findAttribute(slot));
+        
+        Assert.assertSame(AttributeSlot.UNDEFINED, child.findAttribute(AttributeSlot.forName('slotTest.missing')));
+    
+    }
+
 }
@@ -0,0 +1,112 @@
+package org.danann.cernunnos.runtime;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+class ScriptCacheTest {
+
+    @Test
+    void testRoundTrip() {
+    
+        def dir = createTempDir();
+        def script = new File(dir, 'script.crn');
+        script.write('<sequence xmlns:foo="urn:foo"><!-- comment --><echo>Hello ${Attributes.STRING}</echo>' +
+                '<foo:bar baz="qux"><![CDATA[a < b]]></foo:bar><?target data?></sequence>', 'UTF-8');
+        def origin = script.toURI().toURL();
+        def cache = new ScriptCache(new File(dir, 'cache'));
+        
+        def parsed = cache.read(origin);
+        Assert.assertEquals(1, new File(dir, 'cache').listFiles().length);
+        
+        def cached = cache.read(origin);
+        Assert.assertNotSame(parsed, cached);
+        Assert.assertEquals(parsed.asXML(), cached.asXML());
+        Assert.assertEquals(origin.toExternalForm(), parsed.getName());
+        Assert.assertEquals(origin.toExternalForm(), cached.getName());
+    
+    }
+
+    @Test
+    void testEntriesAreKeptApartByGrammar() {
+    
+        def dir = createTempDir();
+        def script = new File(dir, 'script.crn');
+        script.write('<echo>one</echo>', 'UTF-8');
+        def origin = script.toURI().toURL();
+        def cacheDir = new File(dir, 'cache');
+        def cache = new ScriptCache(cacheDir);
+        def main = XmlGrammar.getMainGrammar();
+        
+        cache.read(origin, main);
+        cache.read(origin, main);
+        Assert.assertEquals(1, cacheDir.listFiles().length);
+        cache.read(origin, new XmlGrammar('custom', 'file:/custom.grammar', main));
+        Assert.assertEquals(2, cacheDir.listFiles().length);
+    
+    }
+
+    @Test
+    void testChangedScriptIsReparsed() {
+    
+        def dir = createTempDir();
+        def script = new File(dir, 'script.crn');
+        script.write('<echo>one</echo>', 'UTF-8');
+        def origin = script.toURI().toURL();
+        def cache = new ScriptCache(new File(dir, 'cache'));
+        
+        Assert.assertEquals('one', cache.read(origin).getRootElement().getText());
+        script.write('<echo>two</echo>', 'UTF-8');
+        Assert.assertEquals('two', cache.read(origin).getRootElement().getText());
+        Assert.assertEquals('two', cache.read(origin).getRootElement().getText());
+    
+    }
+
+    @Test
+    void testOlderScriptsAreValidatedByTimestamp() {
+    
+        def dir = createTempDir();
+        def script = new File(dir, 'script.crn');
+        script.write('<echo>one</echo>', 'UTF-8');
+        def modified = System.currentTimeMillis() - 60000;
+        script.setLastModified(modified);
+        def origin = script.toURI().toURL();
+        def cache = new ScriptCache(new File(dir, 'cache'));
+        
+        Assert.assertEquals('one', cache.read(origin).getRootElement().getText());
+        
+        // Same length & timestamp:  the entry is used without reading the script...
+        script.write('<echo>two</echo>', 'UTF-8');
+        script.setLastModified(modified);
+        Assert.assertEquals('one', cache.read(origin).getRootElement().getText());
+        
+        script.setLastModified(modified + 1000);
+        Assert.assertEquals('two', cache.read(origin).getRootElement().getText());
+    
+    }
+
+    @Test
+    void testNestedScriptsUseTheRunnersCache() {
+    
+        def dir = createTempDir();
+        new File(dir, 'sub.crn').write('<return value="ok"/>', 'UTF-8');
+        def script = new File(dir, 'script.crn');
+        script.write('<return value="${crn(sub.crn)}"/>', 'UTF-8');
+        def cacheDir = new File(dir, 'cache');
+        
+        def runner = new ScriptRunner();
+        runner.setScriptCache(new ScriptCache(cacheDir));
+        Assert.assertEquals('ok', runner.evaluate(script.toURI().toURL().toExternalForm()));
+        Assert.assertEquals(2, cacheDir.listFiles().length);
+        Assert.assertNull(ScriptCache.current());
+    
+    }
+
+    private File createTempDir() {
+        def rslt = File.createTempFile('ScriptCacheTest', '');
+        rslt.delete();
+        rslt.mkdirs();
+        rslt.deleteOnExit();
+        return rslt;
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.danann.cernunnos.runtime;
+
+import org.danann.cernunnos.AttributePhrase;
+import org.danann.cernunnos.CacheHelper.CacheMode;
+import org.danann.cernunnos.LiteralPhrase;
+import org.danann.cernunnos.Reagent;
+import org.danann.cernunnos.ReagentType;
+import org.danann.cernunnos.SimpleFormula;
+import org.danann.cernunnos.SimpleReagent;
+import org.danann.cernunnos.core.EchoTask;
+import org.junit.Assert;
+import org.junit.Test;
+
+class SimpleEntityConfigTest {
+
+    @Test
+    void testLiteralPhrases() {
+    
+        def str = new SimpleReagent('STR', '@str', ReagentType.PHRASE, String.class, 'A string.');
+        def num = new SimpleReagent('NUM', '@num', ReagentType.PHRASE, Integer.class, 'A number.');
+        def f = new SimpleFormula(EchoTask.class, [str, num] as Reagent[]);
+        def literal = new LiteralPhrase('value');
+        def config = new SimpleEntityConfig(XmlGrammar.getMainGrammar(), 'echo', null, f, 
+                        [(str):literal, (num):literal]);
+
+        // Well-typed literals are handed out directly...
+        Assert.assertSame(literal, config.getValue(str));
+        
+        // Others keep the type-checking decorator...
+        Assert.assertTrue(config.getValue(num) instanceof RuntimeReagentDecorator);
+        Assert.assertEquals('value', config.getValue(num).evaluate(null, null));
+    
+    }
+
+    @Test
+    void testConstants() {
+    
+        def mode = new SimpleReagent('MODE', '@mode', ReagentType.PHRASE, String.class, 'A cache mode.');
+        def flag = new SimpleReagent('FLAG', '@flag', ReagentType.PHRASE, String.class, 'A flag.');
+        def num = new SimpleReagent('NUM', '@num', ReagentType.PHRASE, String.class, 'A number.');
+        def attr = new SimpleReagent('ATTR', '@attr', ReagentType.PHRASE, String.class, 'A dynamic value.');
+        def f = new SimpleFormula(EchoTask.class, [mode, flag, num, attr] as Reagent[]);
+        def g = XmlGrammar.getMainGrammar();
+        def config = new SimpleEntityConfig(g, 'echo', null, f, [(mode):g.newPhrase('ALL'), 
+                        (flag):g.newPhrase('false'), (num):new LiteralPhrase('four'), 
+                        (attr):new AttributePhrase('FLAG')]);
+
+        Assert.assertEquals(CacheMode.ALL, SimpleEntityConfig.getConstant(config, mode, CacheMode.class));
+        Assert.assertEquals(Boolean.FALSE, SimpleEntityConfig.getConstant(config, flag, Boolean.class));
+        Assert.assertEquals('ALL', SimpleEntityConfig.getConstant(config, mode, String.class));
+        
+        // Values that can't be converted exactly are left for evaluation...
+        Assert.assertNull(SimpleEntityConfig.getConstant(config, num, Integer.class));
+        Assert.assertNull(SimpleEntityConfig.getConstant(config, mode, Boolean.class));
+        
+        // Dynamic phrases are never constant...
+        Assert.assertNull(SimpleEntityConfig.getConstant(config, attr, Boolean.class));
+    
+    }
+
+    @Test
+    void testExactConversions() {
+    
+        Assert.assertEquals(Boolean.TRUE, new LiteralPhrase('true').getValue(Boolean.class));
+        Assert.assertEquals(new Integer(42), new LiteralPhrase('42').getValue(Integer.class));
+        Assert.assertEquals(1.5d, new LiteralPhrase('1.5').getValue(Double.class), 0.0001d);
+        Assert.assertNull(new LiteralPhrase(null).getValue(Integer.class));
+        
+        // Typos, padding, and other inexact spellings are not converted...
+        ['ture', 'TRUE', ' true', 'yes'].each { Assert.assertFalse(it, new LiteralPhrase(it).isConvertible(Boolean.class)) };
+        ['007', '+7', ' 7', '7.0'].each { Assert.assertFalse(it, new LiteralPhrase(it).isConvertible(Integer.class)) };
+        Assert.assertFalse(new LiteralPhrase('all').isConvertible(CacheMode.class));
+        try {
+            new LiteralPhrase('ture').getValue(Boolean.class);
+            Assert.fail('Expected an IllegalArgumentException');
+        } catch (IllegalArgumentException iae) {
+            // Expected...
+        }
+    
+    }
+
+}
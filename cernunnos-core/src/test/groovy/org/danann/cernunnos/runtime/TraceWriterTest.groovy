@@ -0,0 +1,79 @@
+package org.danann.cernunnos.runtime;
+
+import org.dom4j.DocumentHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+class TraceWriterTest {
+
+    private static final String SCRIPT = '<sequence><return value="done"/></sequence>';
+    private static final String THREADED_SCRIPT = '<sequence><thread-pool threads="2"><concurrent><org.danann.cernunnos.NoOpTask/></concurrent></thread-pool><return value="done"/></sequence>';
+
+    @Test
+    void testCollapsedStacks() {
+    
+        def trace = new TraceWriter(TraceWriter.Format.COLLAPSED_STACKS);
+        def out = run(trace);
+        
+        def lines = out.readLines();
+        Assert.assertTrue(lines.any { it.startsWith('<sequence>') && !it.contains(';') });
+        Assert.assertTrue(lines.any { it.startsWith('<sequence>') && it.contains(';<return>') });
+        lines.each { Assert.assertTrue(it ==~ /.+ \d+/) };
+    
+    }
+
+    @Test
+    void testChromeTrace() {
+    
+        def trace = new TraceWriter(TraceWriter.Format.CHROME_TRACE);
+        def out = run(trace);
+        
+        Assert.assertTrue(out.startsWith('{"traceEvents":['));
+        Assert.assertEquals(2, out.count('"name":"<return>","ph":"'));
+        Assert.assertEquals(1, out.count('"ph":"M"'));
+    
+    }
+
+    @Test
+    void testWorkerThreadsAreTraced() {
+    
+        def trace = new TraceWriter(TraceWriter.Format.COLLAPSED_STACKS);
+        def out = run(trace, THREADED_SCRIPT);
+        
+        // The worker starts its own stack, so the subtask is a root frame there
+        def lines = out.readLines();
+        Assert.assertTrue(lines.any { it.startsWith('<org.danann.cernunnos.NoOpTask>') });
+        Assert.assertFalse(lines.any { it.contains(';<org.danann.cernunnos.NoOpTask>') });
+    
+    }
+
+    @Test
+    void testDetachedRunner() {
+    
+        def trace = new TraceWriter(TraceWriter.Format.COLLAPSED_STACKS);
+        def runner = new ScriptRunner();
+        def k = runner.compileTask(DocumentHelper.parseText(SCRIPT).getRootElement());
+        Assert.assertEquals('done', runner.evaluate(k, new RuntimeRequestResponse()));
+        def out = new StringWriter();
+        trace.write(out);
+        Assert.assertEquals('', out.toString());
+        Assert.assertNull(ExecutionTrace.current());
+    
+    }
+
+    private String run(TraceWriter trace) {
+        return run(trace, SCRIPT);
+    }
+
+    private String run(TraceWriter trace, String script) {
+        def runner = new ScriptRunner();
+        runner.setExecutionListener(trace);
+        def k = runner.compileTask(DocumentHelper.parseText(script).getRootElement());
+        Assert.assertEquals('done', runner.evaluate(k, new RuntimeRequestResponse()));
+        Assert.assertNull(ExecutionTrace.current());
+        def rslt = new StringWriter();
+        trace.write(rslt);
+        return rslt.toString();
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.danann.cernunnos.runtime;
+
+import org.danann.cernunnos.NoOpTask;
+import org.dom4j.DocumentHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+class XmlGrammarTest {
+
+    @Test
+    void testChildSeesEntryAddedToParent() {
+    
+        def parent = new XmlGrammar('parent', null, XmlGrammar.getMainGrammar());
+        def child = new XmlGrammar('child', null, parent);
+        def e = DocumentHelper.parseText('<no-op/>').getRootElement();
+        
+        // Resolves (and remembers) 'no-op' before it's defined...
+        try {
+            child.newTask(e, null);
+            Assert.fail('No entry should exist for <no-op>');
+        } catch (RuntimeException re) {
+            // Expected...
+        }
+        
+        parent.addEntry(new Entry('no-op', null, NoOpTask.class.getName(), null, parent, []));
+        Assert.assertNotNull(child.newTask(e, null));
+    
+    }
+
+    @Test
+    void testUnrelatedGrammarIsNotInvalidated() {
+    
+        def parent = new XmlGrammar('parent', null, XmlGrammar.getMainGrammar());
+        def child = new XmlGrammar('child', null, parent);
+        def other = new XmlGrammar('other', null, XmlGrammar.getMainGrammar());
+        def childVersion = child.getChainVersion();
+        def otherVersion = other.getChainVersion();
+        
+        parent.addEntry(new Entry('no-op', null, NoOpTask.class.getName(), null, parent, []));
+        Assert.assertTrue(child.getChainVersion() != childVersion);
+        Assert.assertEquals(otherVersion, other.getChainVersion());
+    
+    }
+
+}
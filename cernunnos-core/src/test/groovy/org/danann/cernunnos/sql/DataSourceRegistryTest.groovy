@@ -0,0 +1,91 @@
+package org.danann.cernunnos.sql;
+
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+class DataSourceRegistryTest {
+
+    private static final String DRIVER = 'org.hsqldb.jdbc.JDBCDriver';
+    private static final String URL = 'jdbc:hsqldb:mem:DataSourceRegistryTest';
+
+    @After
+    void tearDown() {
+        DataSourceRegistry.getInstance().closeAll();
+    }
+
+    @Test
+    void testPoolsAreSharedAndReferenceCounted() {
+    
+        def registry = DataSourceRegistry.getInstance();
+        def ds1 = registry.acquire(DRIVER, URL, 'sa', '', DataSourceRegistry.PoolSettings.DEFAULT);
+        def ds2 = registry.acquire(DRIVER, URL, 'sa', '', new DataSourceRegistry.PoolSettings(4, 2, 1, 'SELECT 1 FROM (VALUES(0))'));
+        Assert.assertSame(ds1, ds2);
+        
+        // A different user gets a pool of its own...
+        Assert.assertNotSame(ds1, registry.acquire(DRIVER, URL, 'other', '', DataSourceRegistry.PoolSettings.DEFAULT));
+        Assert.assertEquals(2, registry.size());
+        
+        registry.release(ds1);
+        Assert.assertEquals(0, registry.closeIdle());
+        registry.release(ds2);
+        Assert.assertEquals(1, registry.closeIdle());
+        Assert.assertEquals(1, registry.size());
+    
+    }
+
+    @Test
+    void testScriptsReuseTheSharedPool() {
+    
+        def runner = new ScriptRunner();
+        def k = runner.compileTask(DocumentHelper.parseText('<sql-datasource driver="' + DRIVER + '" url="' + URL +
+                '" username="sa" password=""><return value="${req(SqlAttributes.DATA_SOURCE)}"/></sql-datasource>').getRootElement());
+        def ds = runner.evaluate(k, new RuntimeRequestResponse());
+        Assert.assertSame(ds, runner.evaluate(k, new RuntimeRequestResponse()));
+        
+        // Still open after the script...
+        ds.getConnection().close();
+        Assert.assertEquals(1, DataSourceRegistry.getInstance().size());
+        
+        k = runner.compileTask(DocumentHelper.parseText('<sql-datasource driver="' + DRIVER + '" url="' + URL +
+                '" username="sa" password="" shared="false"><return value="${req(SqlAttributes.DATA_SOURCE)}"/></sql-datasource>').getRootElement());
+        Assert.assertNotSame(ds, runner.evaluate(k, new RuntimeRequestResponse()));
+        Assert.assertEquals(1, DataSourceRegistry.getInstance().size());
+    
+    }
+
+    @Test
+    void testComponentRegistryIsClosedOnItsOwn() {
+    
+        def own = new DataSourceRegistry();
+        def runner = new ScriptRunner();
+        def k = runner.compileTask(DocumentHelper.parseText('<sql-datasource driver="' + DRIVER + '" url="' + URL +
+                '" username="sa" password=""><return value="${req(SqlAttributes.DATA_SOURCE)}"/></sql-datasource>').getRootElement());
+        def global = runner.evaluate(k, new RuntimeRequestResponse());
+        def ds = runner.evaluate(k, new RuntimeRequestResponse([(SqlAttributes.DATA_SOURCE_REGISTRY):own]));
+        Assert.assertNotSame(global, ds);
+        Assert.assertEquals(1, own.size());
+        
+        // Closing the component's pools leaves the process-wide ones alone...
+        own.closeAll();
+        Assert.assertEquals(0, own.size());
+        Assert.assertEquals(1, DataSourceRegistry.getInstance().size());
+        global.getConnection().close();
+    
+    }
+
+    @Test
+    void testPoolSettingsEquality() {
+    
+        def settings = new DataSourceRegistry.PoolSettings(4, 2, 1, 'SELECT 1');
+        Assert.assertEquals(settings, new DataSourceRegistry.PoolSettings(4, 2, 1, 'SELECT 1'));
+        Assert.assertEquals(settings.hashCode(), new DataSourceRegistry.PoolSettings(4, 2, 1, 'SELECT 1').hashCode());
+        Assert.assertFalse(settings.equals(new DataSourceRegistry.PoolSettings(4, 2, null, 'SELECT 1')));
+        Assert.assertFalse(settings.equals(DataSourceRegistry.PoolSettings.DEFAULT));
+    
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.danann.cernunnos.sql;
+
+import org.danann.cernunnos.EntityConfig;
+import org.danann.cernunnos.Formula;
+import org.danann.cernunnos.Reagent;
+import org.danann.cernunnos.SimpleFormula;
+import org.danann.cernunnos.Task;
+import org.danann.cernunnos.TaskRequest;
+import org.danann.cernunnos.TaskResponse;
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+class QueryTaskTest {
+
+    private def dataSource;
+    private def jdbcTemplate;
+
+    @Before
+    void setUp() {
+        dataSource = new SingleConnectionDataSource('jdbc:hsqldb:mem:QueryTaskTest', 'sa', '', true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute('CREATE TABLE docs (id INTEGER PRIMARY KEY, body CLOB)');
+        for (int i = 1; i <= 5; i++) {
+            jdbcTemplate.update('INSERT INTO docs(id, body) VALUES(?, ?)', [i, 'body' + i] as Object[]);
+        }
+    }
+
+    @After
+    void tearDown() {
+        jdbcTemplate.execute('SHUTDOWN');
+        dataSource.destroy();
+    }
+
+    @Test
+    void testCursorSettings() {
+    
+        def rows = query('<sql-query fetch-size="2" max-rows="3" query-timeout="10" result-set-type="SCROLL_INSENSITIVE">' +
+                '<sql>SELECT id, body FROM docs ORDER BY id</sql>' +
+                '<subtasks><org.danann.cernunnos.sql.RecordBodyTask/></subtasks>' +
+                '</sql-query>');
+        Assert.assertEquals(['body1', 'body2', 'body3'], rows);
+    
+    }
+
+    @Test
+    void testClobsAsReaders() {
+    
+        def rows = query('<sql-query clobs="READER"><sql>SELECT id, body FROM docs ORDER BY id</sql>' +
+                '<subtasks><org.danann.cernunnos.sql.RecordBodyTask/></subtasks>' +
+                '</sql-query>');
+        // The Reader is read while its row is current...
+        Assert.assertEquals((1..5).collect { 'reader:body' + it }, rows);
+    
+    }
+
+    @Test
+    void testColumnBindings() {
+    
+        def sql = '<sql>SELECT id, body FROM docs WHERE id = 1</sql>';
+        def bindings = { mode -> 
+            query('<sql-query bind-columns="' + mode + '">' + sql + '<subtasks><org.danann.cernunnos.sql.RecordBindingsTask/></subtasks></sql-query>')[0];
+        };
+        Assert.assertEquals(['BODY':true, '2':true], bindings('BOTH'));
+        Assert.assertEquals(['BODY':true, '2':false], bindings('LABEL'));
+        Assert.assertEquals(['BODY':false, '2':true], bindings('INDEX'));
+    
+    }
+
+    private def query(xml) {
+        def rows = [];
+        def runner = new ScriptRunner();
+        def k = runner.compileTask(DocumentHelper.parseText(xml).getRootElement());
+        runner.run(k, new RuntimeRequestResponse([(SqlAttributes.DATA_SOURCE):dataSource, 'ROWS':rows]));
+        return rows;
+    }
+
+}
+
+/**
+ * Adds the BODY column of each row to the 'ROWS' list, reading it if it's a Reader.
+ */
+class RecordBodyTask implements Task {
+
+    Formula getFormula() {
+        return new SimpleFormula(RecordBodyTask.class, [] as Reagent[]);
+    }
+
+    void init(EntityConfig config) {}
+
+    void perform(TaskRequest req, TaskResponse res) {
+        def body = req.getAttribute('BODY');
+        req.getAttribute('ROWS').add(body instanceof Reader ? 'reader:' + body.text : body);
+    }
+
+}
+
+/**
+ * Adds which of the 'BODY' and '2' attributes are bound for each row to the 'ROWS' list.
+ */
+class RecordBindingsTask implements Task {
+
+    Formula getFormula() {
+        return new SimpleFormula(RecordBindingsTask.class, [] as Reagent[]);
+    }
+
+    void init(EntityConfig config) {}
+
+    void perform(TaskRequest req, TaskResponse res) {
+        req.getAttribute('ROWS').add(['BODY':req.hasAttribute('BODY'), '2':req.hasAttribute('2')]);
+    }
+
+}
@@ -0,0 +1,136 @@
+package org.danann.cernunnos.sql;
+
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class StatementBatchTest {
+
+    private def dataSource;
+    private def jdbcTemplate;
+
+    @Before
+    void setUp() {
+        dataSource = new SingleConnectionDataSource('jdbc:hsqldb:mem:StatementBatchTest', 'sa', '', true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute('CREATE TABLE items (id INTEGER PRIMARY KEY, name VARCHAR(32))');
+    }
+
+    @After
+    void tearDown() {
+        jdbcTemplate.execute('SHUTDOWN');
+        dataSource.destroy();
+    }
+
+    @Test
+    void testStatementsAreExecutedWhenTheBatchIsFull() {
+    
+        def batch = new StatementBatch(10);
+        for (int i = 0; i < 25; i++) {
+            batch.add(dataSource, 'INSERT INTO items(id, name) VALUES(?, ?)', [i, 'item' + i] as Object[]);
+        }
+        Assert.assertEquals(20, batch.getStatementCount());
+        Assert.assertEquals(5, batch.getPendingCount());
+        Assert.assertEquals(20, count());
+        
+        batch.flush();
+        Assert.assertEquals(25, batch.getUpdateCount());
+        Assert.assertEquals(0, batch.getPendingCount());
+        Assert.assertEquals(25, count());
+    
+    }
+
+    @Test
+    void testStatementsKeepTheirOrder() {
+    
+        def batch = new StatementBatch(100);
+        batch.add(dataSource, 'INSERT INTO items(id, name) VALUES(?, ?)', [1, 'before'] as Object[]);
+        batch.add(dataSource, 'UPDATE items SET name = ? WHERE id = ?', ['after', 1] as Object[]);
+        batch.flush();
+        
+        // The INSERT was executed on its own when the SQL changed...
+        Assert.assertEquals(2, batch.getStatementCount());
+        Assert.assertEquals(1, batch.getLastUpdateCounts().length);
+        Assert.assertEquals('after', jdbcTemplate.queryForObject('SELECT name FROM items WHERE id = 1', String.class));
+    
+    }
+
+    @Test
+    void testBatchTask() {
+    
+        def runner = new ScriptRunner();
+        def k = runner.compileTask(DocumentHelper.parseText('<sql-batch batch-size="4">' +
+                '<for-each items="${req(IDS)}" attribute-name="id">' +
+                '<sql-statement sql="INSERT INTO items(id, name) VALUES(?, ?)">' +
+                '<parameter value="${id}"/><parameter value="item"/></sql-statement></for-each>' +
+                '<sql-upsert><update-statement>UPDATE items SET name = ? WHERE id = 9</update-statement>' +
+                '<insert-statement>INSERT INTO items(id, name) VALUES(9, ?)</insert-statement>' +
+                '<parameter value="upserted"/></sql-upsert></sql-batch>').getRootElement());
+        runner.run(k, new RuntimeRequestResponse([(SqlAttributes.DATA_SOURCE):dataSource, 'IDS':(0..9).toList()]));
+        
+        // The upsert found the row that was still pending in the batch...
+        Assert.assertEquals(10, count());
+        Assert.assertEquals('upserted', jdbcTemplate.queryForObject('SELECT name FROM items WHERE id = 9', String.class));
+    
+    }
+
+    @Test
+    void testRowsAreExecutedWhenANestedScopeCompletes() {
+    
+        // The batch was created outside the <sql-transaction> and <sql-with-connection>...
+        def batch = new StatementBatch(100);
+        def runner = new ScriptRunner();
+        def tx = runner.compileTask(DocumentHelper.parseText('<sql-transaction>' +
+                '<for-each items="${req(IDS)}" attribute-name="id">' +
+                '<sql-statement sql="INSERT INTO items(id, name) VALUES(?, ?)">' +
+                '<parameter value="${id}"/><parameter value="tx"/></sql-statement></for-each></sql-transaction>').getRootElement());
+        runner.run(tx, new RuntimeRequestResponse([(SqlAttributes.DATA_SOURCE):dataSource, (SqlAttributes.BATCH):batch, 
+                'IDS':(0..2).toList()]));
+        
+        Assert.assertEquals(0, batch.getPendingCount());
+        Assert.assertEquals(3, count());
+        
+        def conn = runner.compileTask(DocumentHelper.parseText('<sql-with-connection>' +
+                '<for-each items="${req(IDS)}" attribute-name="id">' +
+                '<sql-statement sql="INSERT INTO items(id, name) VALUES(?, ?)">' +
+                '<parameter value="${id}"/><parameter value="conn"/></sql-statement></for-each></sql-with-connection>').getRootElement());
+        runner.run(conn, new RuntimeRequestResponse([(SqlAttributes.DATA_SOURCE):dataSource, (SqlAttributes.BATCH):batch, 
+                'IDS':(3..4).toList()]));
+        
+        Assert.assertEquals(0, batch.getPendingCount());
+        Assert.assertEquals(5, batch.getStatementCount());
+        Assert.assertEquals(5, count());
+    
+    }
+
+    @Test
+    void testRowsAreDiscardedWhenTheTransactionRollsBack() {
+    
+        def batch = new StatementBatch(100);
+        def template = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        template.execute({ status ->
+            batch.add(dataSource, 'INSERT INTO items(id, name) VALUES(?, ?)', [1, 'item'] as Object[]);
+            status.setRollbackOnly();
+            return null;
+        } as TransactionCallback);
+        
+        Assert.assertEquals(0, batch.getPendingCount());
+        Assert.assertEquals(0, batch.getStatementCount());
+        Assert.assertEquals(0, count());
+    
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject('SELECT COUNT(*) FROM items', Integer.class);
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.danann.cernunnos.sql;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.danann.cernunnos.runtime.RuntimeRequestResponse;
+import org.danann.cernunnos.runtime.ScriptRunner;
+import org.dom4j.DocumentHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class WithConnectionTaskTest {
+
+    private def dataSource;
+    private def jdbcTemplate;
+    private def checkouts = new AtomicInteger();
+
+    @Before
+    void setUp() {
+        // Counts the connections checked out of the target DataSource...
+        def target = new DriverManagerDataSource('jdbc:hsqldb:mem:WithConnectionTaskTest', 'sa', '');
+        dataSource = [getConnection:{ -> checkouts.incrementAndGet(); target.getConnection() }] as DataSource;
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute('CREATE TABLE items (id INTEGER PRIMARY KEY, name VARCHAR(32))');
+        checkouts.set(0);
+    }
+
+    @After
+    void tearDown() {
+        jdbcTemplate.execute('SHUTDOWN');
+    }
+
+    @Test
+    void testSubtasksShareOneConnection() {
+    
+        def runner = new ScriptRunner();
+        def k = runner.compileTask(DocumentHelper.parseText('<sql-with-connection>' +
+                '<for-each items="${req(IDS)}" attribute-name="id">' +
+                '<sql-statement sql="INSERT INTO items(id, name) VALUES(?, ?)">' +
+                '<parameter value="${id}"/><parameter value="item"/></sql-statement></for-each>' +
+                '<sql-transaction><sql-upsert><update-statement>UPDATE items SET name = ? WHERE id = 4</update-statement>' +
+                '<insert-statement>INSERT INTO items(id, name) VALUES(4, ?)</insert-statement>' +
+                '<parameter value="upserted"/></sql-upsert></sql-transaction>' +
+                '<sql-query><sql>SELECT id FROM items</sql><subtasks>' +
+                '<sql-statement sql="UPDATE items SET name = name WHERE id = ?"><parameter value="${req(ID)}"/></sql-statement>' +
+                '</subtasks></sql-query></sql-with-connection>').getRootElement());
+        runner.run(k, new RuntimeRequestResponse([(SqlAttributes.DATA_SOURCE):dataSource, 'IDS':(0..4).toList()]));
+        
+        Assert.assertEquals(1, checkouts.get());
+        Assert.assertFalse(TransactionSynchronizationManager.hasResource(dataSource));
+        Assert.assertEquals(5, jdbcTemplate.queryForObject('SELECT COUNT(*) FROM items', Integer.class));
+        Assert.assertEquals('upserted', jdbcTemplate.queryForObject('SELECT name FROM items WHERE id = 4', String.class));
+    
+    }
+
+    @Test
+    void testBatchInsideConnectionScope() {
+    
+        def runner = new ScriptRunner();
+        def k = runner.compileTask(DocumentHelper.parseText('<sql-with-connection>' +
+                '<sql-batch batch-size="3"><for-each items="${req(IDS)}" attribute-name="id">' +
+                '<sql-statement sql="INSERT INTO items(id, name) VALUES(?, ?)">' +
+                '<parameter value="${id}"/><parameter value="item"/></sql-statement></for-each></sql-batch>' +
+                '<sql-statement sql="UPDATE items SET name = ? WHERE id = 7"><parameter value="updated"/></sql-statement>' +
+                '</sql-with-connection>').getRootElement());
+        runner.run(k, new RuntimeRequestResponse([(SqlAttributes.DATA_SOURCE):dataSource, 'IDS':(0..7).toList()]));
+        
+        Assert.assertEquals(1, checkouts.get());
+        Assert.assertEquals(8, jdbcTemplate.queryForObject('SELECT COUNT(*) FROM items', Integer.class));
+        Assert.assertEquals('updated', jdbcTemplate.queryForObject('SELECT name FROM items WHERE id = 7', String.class));
+    
+    }
+
+    @Test
+    void testBatchedRowsAreClearedOnRelease() {
+    
+        def conn = dataSource.getConnection();
+        def cache = new StatementCachingConnection(conn, 2);
+        try {
+            def c = cache.getConnection();
+            def ps = c.prepareStatement('INSERT INTO items(id, name) VALUES(?, ?)');
+            ps.setInt(1, 1);
+            ps.setString(2, 'abandoned');
+            ps.addBatch();
+            ps.close();
+            
+            // The next user of the statement doesn't execute the abandoned row...
+            def again = c.prepareStatement('INSERT INTO items(id, name) VALUES(?, ?)');
+            Assert.assertSame(ps, again);
+            Assert.assertEquals(0, again.executeBatch().length);
+            again.close();
+            Assert.assertEquals(0, jdbcTemplate.queryForObject('SELECT COUNT(*) FROM items', Integer.class));
+        } finally {
+            cache.closeStatements();
+            conn.close();
+        }
+    
+    }
+
+    @Test
+    void testStatementsAreCachedBySql() {
+    
+        def conn = dataSource.getConnection();
+        def cache = new StatementCachingConnection(conn, 2);
+        try {
+            def c = cache.getConnection();
+            def ps = c.prepareStatement('SELECT name FROM items WHERE id = ?');
+            ps.setInt(1, 1);
+            ps.setMaxRows(10);
+
+            // Still open, so a second caller can't share it...
+            def other = c.prepareStatement('SELECT name FROM items WHERE id = ?');
+            Assert.assertNotSame(ps, other);
+            other.close();
+
+            ps.close();
+            def again = c.prepareStatement('SELECT name FROM items WHERE id = ?');
+            Assert.assertSame(ps, again);
+            Assert.assertEquals(0, again.getMaxRows());
+            Assert.assertSame(c, again.getConnection());
+            again.close();
+
+            // Least recently used statements are closed past the limit...
+            c.prepareStatement('SELECT 1 FROM items').close();
+            c.prepareStatement('SELECT 2 FROM items').close();
+            Assert.assertEquals(2, cache.size());
+            Assert.assertNotSame(ps, c.prepareStatement('SELECT name FROM items WHERE id = ?'));
+        } finally {
+            cache.closeStatements();
+            conn.close();
+        }
+    
+    }
+
+}